@@ -0,0 +1,22 @@
+#!/bin/sh
+#
+# Builds nocturne and the benchmarks, runs JMH and writes JSON results into results/<name>.json,
+# compare the files of two releases to find regressions.
+#
+# Usage: ./run.sh [name] [JMH options], for example: ./run.sh 1.4.0 -f 1 LinksBenchmark
+# By default Maven works offline: run once with MAVEN_ARGS= to download dependencies.
+#
+set -e
+
+cd "$(dirname "$0")"
+
+name=${1:-$(git describe --tags --always --dirty 2>/dev/null || echo current)}
+[ $# -gt 0 ] && shift
+
+maven_args=${MAVEN_ARGS--o}
+
+mvn -B -q $maven_args -f ../code/pom.xml -DskipTests install
+mvn -B -q $maven_args package
+
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff "results/$name.json" "$@"
@@ -0,0 +1,47 @@
+package org.nocturne.benchmark;
+
+import org.nocturne.main.ApplicationContext;
+import org.nocturne.main.BenchmarkHelper;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caption lookup as done by {@code <@caption>} and {@code $()}: plain captions, captions with
+ * arguments and missing captions which fall back to the shortcut.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CaptionsBenchmark {
+    private ApplicationContext applicationContext;
+
+    @Setup
+    public void setup() throws ServletException {
+        BenchmarkHelper.getRequestDispatcher();
+        applicationContext = ApplicationContext.getInstance();
+    }
+
+    @Benchmark
+    public String find() {
+        return applicationContext.getCaption(Locale.ENGLISH, "Message");
+    }
+
+    @Benchmark
+    public String findWithArguments() {
+        return applicationContext.getCaption(Locale.ENGLISH, "Hello, {0}! You have {1} new messages.", "tourist", "17");
+    }
+
+    @Benchmark
+    public String findMissing() {
+        return applicationContext.getCaption(Locale.ENGLISH, "Missing caption");
+    }
+}
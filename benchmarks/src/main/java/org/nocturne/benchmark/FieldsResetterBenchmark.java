@@ -0,0 +1,75 @@
+package org.nocturne.benchmark;
+
+import org.nocturne.annotation.Parameter;
+import org.nocturne.main.BenchmarkHelper;
+import org.nocturne.main.Frame;
+import org.nocturne.reset.ComponentFieldsResetter;
+import org.nocturne.reset.annotation.Persist;
+import org.nocturne.reset.annotation.Reset;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resetting fields of the component after the request.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class FieldsResetterBenchmark {
+    private ComponentFieldsResetter fieldsResetter;
+
+    @Setup
+    public void setup() throws ServletException {
+        // Reset strategy and annotations are read from the configuration.
+        BenchmarkHelper.getRequestDispatcher();
+        fieldsResetter = new ComponentFieldsResetter(new SampleFrame());
+    }
+
+    @Benchmark
+    public void resetFields() {
+        fieldsResetter.resetFields();
+    }
+
+    @SuppressWarnings("unused")
+    @Reset
+    public static class SampleFrame extends Frame {
+        @Parameter
+        private String handle;
+
+        @Parameter
+        private long contestId;
+
+        @Parameter
+        private int pageIndex;
+
+        @Parameter
+        private boolean friendsOnly;
+
+        private double rating;
+        private char division;
+        private String title;
+        private List<String> tags;
+        private Map<String, Object> attributes;
+        private Object[] rows;
+
+        @Persist
+        private String cachedTitle;
+
+        @Persist
+        private long counter;
+
+        @Override
+        public void action() {
+            // No operations.
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.nocturne.benchmark;
+
+import org.nocturne.benchmark.page.*;
+import org.nocturne.link.Links;
+import org.nocturne.main.BenchmarkHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Link matching and link generation.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinksBenchmark {
+    private Map<String, Object> contestProblemParams;
+    private Map<String, Object> blogEntryParams;
+
+    @Setup
+    public void setup() {
+        BenchmarkHelper.setContextPath("/benchmark");
+
+        Links.add(ProblemsetPage.class);
+        Links.add(ProfilePage.class);
+        Links.add(ContestProblemPage.class);
+        Links.add(BlogEntryPage.class);
+        Links.add(SettingsPage.class);
+
+        contestProblemParams = new HashMap<>();
+        contestProblemParams.put("contestId", 1234L);
+        contestProblemParams.put("problemIndex", "C");
+
+        blogEntryParams = new HashMap<>();
+        blogEntryParams.put("blogEntryId", 98765L);
+        blogEntryParams.put("locale", "en");
+    }
+
+    @Benchmark
+    public Object matchStatic() {
+        return Links.match("/problemset");
+    }
+
+    @Benchmark
+    public Object matchParameters() {
+        return Links.match("/contest/1234/problem/C?locale=en");
+    }
+
+    @Benchmark
+    public Object matchMissing() {
+        return Links.match("/contest/1234/submission/5678");
+    }
+
+    @Benchmark
+    public String getLinkByMapParameters() {
+        return Links.getLinkByMap(ContestProblemPage.class, contestProblemParams);
+    }
+
+    @Benchmark
+    public String getLinkByMapBestMatch() {
+        return Links.getLinkByMap(BlogEntryPage.class, blogEntryParams);
+    }
+}
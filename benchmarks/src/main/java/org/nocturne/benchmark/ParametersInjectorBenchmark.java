@@ -0,0 +1,97 @@
+package org.nocturne.benchmark;
+
+import org.nocturne.annotation.Parameter;
+import org.nocturne.main.BenchmarkHelper;
+import org.nocturne.main.ParametersInjector;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Injection of the request parameters into @Parameter fields.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParametersInjectorBenchmark {
+    private static final Map<String, String[]> PARAMETERS = new HashMap<>();
+
+    static {
+        PARAMETERS.put("handle", new String[]{"tourist"});
+        PARAMETERS.put("contestId", new String[]{"1234"});
+        PARAMETERS.put("pageIndex", new String[]{"17"});
+        PARAMETERS.put("friendsOnly", new String[]{"true"});
+        PARAMETERS.put("rating", new String[]{"3779.5"});
+        PARAMETERS.put("tags", new String[]{"dp", "graphs", "math"});
+        PARAMETERS.put("comment", new String[]{"<b>Hello</b>, world"});
+    }
+
+    private final Target target = new Target();
+    private final ParametersInjector parametersInjector = new ParametersInjector(target);
+
+    private HttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        request = ServletMocks.newRequest("GET", "/", PARAMETERS);
+        BenchmarkHelper.setRequestAndResponse(request, ServletMocks.newResponse());
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkHelper.unsetRequestAndResponse();
+    }
+
+    /**
+     * Typical case: components of the page share the request, so the request parameters are parsed once.
+     */
+    @Benchmark
+    public Object inject() {
+        parametersInjector.inject(request);
+        return target;
+    }
+
+    /**
+     * Also includes parsing of the request parameters.
+     */
+    @Benchmark
+    public Object injectNewRequest() {
+        parametersInjector.inject(ServletMocks.newRequest("GET", "/", PARAMETERS));
+        return target;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Target {
+        @Parameter
+        private String handle;
+
+        @Parameter
+        private long contestId;
+
+        @Parameter
+        private int pageIndex;
+
+        @Parameter
+        private boolean friendsOnly;
+
+        @Parameter
+        private double rating;
+
+        @Parameter
+        private String[] tags;
+
+        @Parameter(stripMode = Parameter.StripMode.SAFE)
+        private String comment;
+
+        @Parameter
+        private Integer missing;
+    }
+}
@@ -0,0 +1,63 @@
+package org.nocturne.benchmark;
+
+import org.nocturne.main.BenchmarkHelper;
+import org.nocturne.main.RequestDispatcher;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full request processing by {@link RequestDispatcher#doFilter} of the helloworld sample application
+ * (see nocturne.properties): page rendering and the request which doesn't match any page.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class RequestDispatcherBenchmark {
+    private static final Map<String, String[]> NO_PARAMETERS = Collections.emptyMap();
+
+    private RequestDispatcher requestDispatcher;
+    private HttpServletResponse response;
+    private FilterChain filterChain;
+    private int chainCount;
+
+    @Setup
+    public void setup() throws IOException, ServletException {
+        requestDispatcher = BenchmarkHelper.getRequestDispatcher();
+        response = ServletMocks.newResponse();
+        filterChain = (chainRequest, chainResponse) -> ++chainCount;
+
+        indexPage();
+        if (ServletMocks.getWrittenByteCount(response) == 0 || chainCount != 0) {
+            throw new IllegalStateException("Index page has not been rendered.");
+        }
+
+        notFound();
+        if (chainCount != 1) {
+            throw new IllegalStateException("Unknown page has been processed by nocturne.");
+        }
+    }
+
+    @Benchmark
+    public HttpServletResponse indexPage() throws IOException, ServletException {
+        requestDispatcher.doFilter(ServletMocks.newRequest("GET", "/", NO_PARAMETERS), response, filterChain);
+        return response;
+    }
+
+    @Benchmark
+    public int notFound() throws IOException, ServletException {
+        requestDispatcher.doFilter(ServletMocks.newRequest("GET", "/no/such/page", NO_PARAMETERS), response, filterChain);
+        return chainCount;
+    }
+}
@@ -0,0 +1,69 @@
+package org.nocturne.benchmark;
+
+import org.nocturne.util.RequestUtil;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting parameters of the form-heavy request by {@link RequestUtil#getRequestParams(HttpServletRequest)}:
+ * the page reads a few of them, the validation reads all of them.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestParamsBenchmark {
+    /**
+     * Number of the request parameters.
+     */
+    @Param({"50"})
+    public int parameterCount;
+
+    private final Map<String, String[]> parameters = new HashMap<>();
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < parameterCount; ++i) {
+            parameters.put("field" + i, new String[]{"value of the field " + i});
+        }
+        parameters.put("tags[]", new String[]{"math", "greedy", "dp"});
+        parameters.put("action", new String[]{"submit"});
+
+        attributes.put("source", new byte[64 * 1024]);
+        attributes.put("source::name", "solution.cpp");
+    }
+
+    @Benchmark
+    public String readFewParameters() {
+        Map<String, List<String>> requestParams = RequestUtil.getRequestParams(newRequest());
+        return RequestUtil.getFirst(requestParams, "action") + RequestUtil.getFirst(requestParams, "field1")
+                + RequestUtil.getFirst(requestParams, "tags");
+    }
+
+    @Benchmark
+    public int readAllParameters() {
+        int result = 0;
+        for (Map.Entry<String, List<String>> entry : RequestUtil.getRequestParams(newRequest()).entrySet()) {
+            result += entry.getValue().size();
+        }
+        return result;
+    }
+
+    private HttpServletRequest newRequest() {
+        HttpServletRequest request = ServletMocks.newRequest("GET", "/problemset/submit", parameters);
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            request.setAttribute(entry.getKey(), entry.getValue());
+        }
+        return request;
+    }
+}
@@ -0,0 +1,266 @@
+package org.nocturne.benchmark;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Minimal in-memory servlet objects to run nocturne without a servlet container.
+ * Unsupported methods return {@code null}, {@code false} or zero.
+ *
+ * @author Mike Mirzayanov
+ */
+public final class ServletMocks {
+    private ServletMocks() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param basePath Directory to resolve real paths.
+     * @return Servlet context.
+     */
+    public static ServletContext newServletContext(File basePath) {
+        Map<String, Object> attributes = new HashMap<>();
+
+        return newProxy(ServletContext.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String) args[0]);
+                    return null;
+                case "getAttributeNames":
+                    return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+                case "getRealPath":
+                    return new File(basePath, (String) args[0]).getAbsolutePath();
+                case "getContextPath":
+                    return "";
+                case "getInitParameterNames":
+                    return Collections.emptyEnumeration();
+                default:
+                    return getDefaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @param servletContext Servlet context.
+     * @return Filter config without init parameters.
+     */
+    public static FilterConfig newFilterConfig(ServletContext servletContext) {
+        return newProxy(FilterConfig.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getServletContext":
+                    return servletContext;
+                case "getFilterName":
+                    return "nocturne";
+                case "getInitParameterNames":
+                    return Collections.emptyEnumeration();
+                default:
+                    return getDefaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @param method      HTTP method.
+     * @param servletPath Servlet path.
+     * @param parameters  Request parameters.
+     * @return GET or POST (without body) request.
+     */
+    public static HttpServletRequest newRequest(String method, String servletPath, Map<String, String[]> parameters) {
+        Map<String, Object> attributes = new HashMap<>();
+        Map<String, String[]> parameterMap = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        HttpSession session = newSession();
+
+        return newProxy(HttpServletRequest.class, (proxy, invokedMethod, args) -> {
+            switch (invokedMethod.getName()) {
+                case "getMethod":
+                    return method;
+                case "getServletPath":
+                case "getRequestURI":
+                    return servletPath;
+                case "getRequestURL":
+                    return new StringBuffer("http://localhost").append(servletPath);
+                case "getContextPath":
+                case "getQueryString":
+                    return "";
+                case "getParameterMap":
+                    return parameterMap;
+                case "getParameter": {
+                    String[] values = parameterMap.get((String) args[0]);
+                    return values == null || values.length == 0 ? null : values[0];
+                }
+                case "getParameterValues":
+                    return parameterMap.get((String) args[0]);
+                case "getParameterNames":
+                    return Collections.enumeration(parameterMap.keySet());
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String) args[0]);
+                    return null;
+                case "getAttributeNames":
+                    return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+                case "getHeaderNames":
+                case "getHeaders":
+                case "getLocales":
+                    return Collections.emptyEnumeration();
+                case "getSession":
+                    return session;
+                case "getCookies":
+                    return new Cookie[0];
+                case "getRemoteAddr":
+                    return "127.0.0.1";
+                case "getScheme":
+                    return "http";
+                case "getServerName":
+                    return "localhost";
+                case "getServerPort":
+                    return 80;
+                case "getCharacterEncoding":
+                    return StandardCharsets.UTF_8.name();
+                case "getLocale":
+                    return Locale.ENGLISH;
+                default:
+                    return getDefaultValue(invokedMethod);
+            }
+        });
+    }
+
+    /**
+     * @return Response which counts written bytes and drops them, see {@link #getWrittenByteCount(HttpServletResponse)}.
+     */
+    public static HttpServletResponse newResponse() {
+        CountingServletOutputStream outputStream = new CountingServletOutputStream();
+        PrintWriter writer = new PrintWriter(outputStream, false, StandardCharsets.UTF_8);
+        Map<String, String> headers = new HashMap<>();
+
+        return newProxy(HttpServletResponse.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getOutputStream":
+                    return outputStream;
+                case "getWriter":
+                    return writer;
+                case "setHeader":
+                case "addHeader":
+                    headers.put((String) args[0], String.valueOf(args[1]));
+                    return null;
+                case "getHeader":
+                    return headers.get((String) args[0]);
+                case "containsHeader":
+                    return headers.containsKey((String) args[0]);
+                case "getCharacterEncoding":
+                    return StandardCharsets.UTF_8.name();
+                case "getStatus":
+                    return HttpServletResponse.SC_OK;
+                default:
+                    return getDefaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @param response Response created by {@link #newResponse()}.
+     * @return Number of bytes written into the response output stream.
+     */
+    public static long getWrittenByteCount(HttpServletResponse response) {
+        try {
+            return ((CountingServletOutputStream) response.getOutputStream()).count;
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't get output stream.", e);
+        }
+    }
+
+    private static HttpSession newSession() {
+        Map<String, Object> attributes = new HashMap<>();
+
+        return newProxy(HttpSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String) args[0]);
+                    return null;
+                case "getAttributeNames":
+                    return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+                case "getId":
+                    return "benchmark";
+                default:
+                    return getDefaultValue(method);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T newProxy(Class<T> clazz, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ServletMocks.class.getClassLoader(), new Class<?>[]{clazz}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return clazz.getSimpleName() + "Mock";
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+
+    private static Object getDefaultValue(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) {
+            return false;
+        } else if (returnType == int.class) {
+            return 0;
+        } else if (returnType == long.class) {
+            return 0L;
+        } else if (returnType == Enumeration.class) {
+            return Collections.emptyEnumeration();
+        } else {
+            return null;
+        }
+    }
+
+    private static final class CountingServletOutputStream extends ServletOutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            // No operations.
+        }
+    }
+}
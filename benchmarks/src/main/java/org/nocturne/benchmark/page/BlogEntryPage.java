@@ -0,0 +1,14 @@
+package org.nocturne.benchmark.page;
+
+import org.nocturne.link.Link;
+import org.nocturne.main.Page;
+
+/**
+ * @author Mike Mirzayanov
+ */
+@Link("blog/entry/{blogEntryId(long,positive)};blog/entry/{blogEntryId(long,positive)}/{locale:ru,en}")
+public class BlogEntryPage extends Page {
+    @Override
+    public void action() {
+    }
+}
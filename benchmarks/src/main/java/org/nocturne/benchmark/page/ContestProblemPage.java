@@ -0,0 +1,14 @@
+package org.nocturne.benchmark.page;
+
+import org.nocturne.link.Link;
+import org.nocturne.main.Page;
+
+/**
+ * @author Mike Mirzayanov
+ */
+@Link("contest/{contestId(long,positive)}/problem/{problemIndex(alphanumeric)};gym/{contestId(long,positive)}/problem/{problemIndex(alphanumeric)}")
+public class ContestProblemPage extends Page {
+    @Override
+    public void action() {
+    }
+}
@@ -0,0 +1,14 @@
+package org.nocturne.benchmark.page;
+
+import org.nocturne.link.Link;
+import org.nocturne.main.Page;
+
+/**
+ * @author Mike Mirzayanov
+ */
+@Link("problemset;problemset/page/{pageIndex(int,positive)}")
+public class ProblemsetPage extends Page {
+    @Override
+    public void action() {
+    }
+}
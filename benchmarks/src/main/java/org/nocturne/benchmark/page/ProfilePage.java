@@ -0,0 +1,14 @@
+package org.nocturne.benchmark.page;
+
+import org.nocturne.link.Link;
+import org.nocturne.main.Page;
+
+/**
+ * @author Mike Mirzayanov
+ */
+@Link("profile/{handle(!blank)}")
+public class ProfilePage extends Page {
+    @Override
+    public void action() {
+    }
+}
@@ -0,0 +1,14 @@
+package org.nocturne.benchmark.page;
+
+import org.nocturne.link.Link;
+import org.nocturne.main.Page;
+
+/**
+ * @author Mike Mirzayanov
+ */
+@Link("settings/{section:general,social,password}")
+public class SettingsPage extends Page {
+    @Override
+    public void action() {
+    }
+}
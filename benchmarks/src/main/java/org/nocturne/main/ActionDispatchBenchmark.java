@@ -0,0 +1,91 @@
+package org.nocturne.main;
+
+import org.nocturne.annotation.Action;
+import org.nocturne.annotation.Parameter;
+import org.nocturne.annotation.Validate;
+import org.nocturne.benchmark.ServletMocks;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invoking validate and action methods of the component, including the method parameters
+ * taken from the request. It is in {@code org.nocturne.main} because
+ * {@link Component#internalRunAction(String)} is not public.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class ActionDispatchBenchmark {
+    private SamplePage page;
+
+    @Setup
+    public void setup() throws ServletException {
+        BenchmarkHelper.getRequestDispatcher();
+
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("action", new String[]{"view"});
+        parameters.put("contestId", new String[]{"566"});
+        parameters.put("problemIndex", new String[]{"A"});
+        parameters.put("locale", new String[]{"ru"});
+        HttpServletRequest request = ServletMocks.newRequest("GET", "/contest/566/problem/A", parameters);
+        BenchmarkHelper.setRequestAndResponse(request, ServletMocks.newResponse());
+
+        page = new SamplePage();
+        page.setRequest(request);
+
+        page.internalRunAction("view");
+        if (page.contestId != 566 || !"A".equals(page.problemIndex)) {
+            throw new IllegalStateException("Action parameters have not been passed.");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkHelper.unsetRequestAndResponse();
+    }
+
+    @Benchmark
+    public Object defaultAction() {
+        page.internalRunAction("");
+        return page;
+    }
+
+    @Benchmark
+    public Object parameterizedAction() {
+        page.internalRunAction("view");
+        return page;
+    }
+
+    @SuppressWarnings("unused")
+    public static class SamplePage extends Page {
+        private long contestId;
+        private String problemIndex;
+
+        @Override
+        public void action() {
+            // No operations.
+        }
+
+        @Validate("view")
+        public boolean validateView(@Parameter(name = "contestId") long contestId) {
+            return contestId > 0;
+        }
+
+        @Action("view")
+        public void onView(@Parameter(name = "contestId") long contestId,
+                           @Parameter(name = "problemIndex") String problemIndex) {
+            this.contestId = contestId;
+            this.problemIndex = problemIndex;
+        }
+    }
+}
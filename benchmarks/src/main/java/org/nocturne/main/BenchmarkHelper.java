@@ -0,0 +1,59 @@
+package org.nocturne.main;
+
+import org.nocturne.benchmark.ServletMocks;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+
+/**
+ * Gives benchmarks access to the package private parts of nocturne.
+ *
+ * @author Mike Mirzayanov
+ */
+public final class BenchmarkHelper {
+    /**
+     * Web application directory, used to resolve real paths.
+     */
+    private static final String WEBAPP_DIR = System.getProperty(
+            "nocturne.benchmark.webapp-dir", "../samples/helloworld/src/main/webapp"
+    );
+
+    private static RequestDispatcher requestDispatcher;
+
+    private BenchmarkHelper() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Initializes the application described by nocturne.properties on the first call.
+     *
+     * @return Initialized request dispatcher, the same instance for all the calls.
+     * @throws ServletException if initialization fails.
+     */
+    public static synchronized RequestDispatcher getRequestDispatcher() throws ServletException {
+        if (requestDispatcher == null) {
+            ServletContext servletContext = ServletMocks.newServletContext(new File(WEBAPP_DIR));
+
+            RequestDispatcher dispatcher = new RequestDispatcher();
+            dispatcher.init(ServletMocks.newFilterConfig(servletContext));
+            requestDispatcher = dispatcher;
+        }
+
+        return requestDispatcher;
+    }
+
+    public static void setContextPath(String contextPath) {
+        ApplicationContext.getInstance().setContextPath(contextPath);
+    }
+
+    public static void setRequestAndResponse(HttpServletRequest request, HttpServletResponse response) {
+        ApplicationContext.getInstance().setRequestAndResponse(request, response);
+    }
+
+    public static void unsetRequestAndResponse() {
+        ApplicationContext.getInstance().unsetRequestAndResponse();
+    }
+}
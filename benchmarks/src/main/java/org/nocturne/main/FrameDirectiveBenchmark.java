@@ -0,0 +1,69 @@
+package org.nocturne.main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_CLOSE_PREFIX;
+import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_OPEN_PREFIX;
+
+/**
+ * Removing duplicate unique blocks (styles and scripts of component templates) from the rendered page.
+ * It is in {@code org.nocturne.main} because {@link FrameDirective} is package private.
+ *
+ * @author Mike Mirzayanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameDirectiveBenchmark {
+    /**
+     * Number of unique blocks on the page.
+     */
+    @Param({"20", "200"})
+    public int blockCount;
+
+    /**
+     * Number of distinct keys among the blocks, others are duplicates.
+     */
+    @Param({"10"})
+    public int keyCount;
+
+    private String html;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder("<html><head><title>Benchmark</title></head><body>\n");
+        for (int i = 0; i < blockCount; ++i) {
+            String key = "Frame" + i % keyCount + "#style";
+            sb.append(UNIQUE_MAGIC_OPEN_PREFIX).append(key).append(">\n");
+            sb.append("<style>.frame").append(i % keyCount).append(" { margin: 0; padding: 1em; }</style>");
+            sb.append('\n').append(UNIQUE_MAGIC_CLOSE_PREFIX).append(key).append(">\n");
+            sb.append("<div class=\"frame").append(i % keyCount).append("\">Content of the frame ")
+                    .append(i).append(".</div>\n");
+        }
+        html = sb.append("</body></html>\n").toString();
+    }
+
+    @Benchmark
+    public String processComponentUniques() {
+        return new FrameDirective().processComponentUniques(html);
+    }
+
+    @Benchmark
+    public Object uniqueFilterWriter() throws IOException {
+        StringWriter out = new StringWriter(html.length());
+        Writer writer = new UniqueFilterWriter(new FrameDirective(), out);
+        for (int offset = 0; offset < html.length(); offset += 512) {
+            writer.write(html, offset, Math.min(512, html.length() - offset));
+        }
+        writer.close();
+        return out;
+    }
+}
@@ -24,4 +24,14 @@ public interface CacheHandler {
     String intercept(Component component);
 
     void postprocess(Component component, String result);
+
+    /**
+     * Called after the component has been processed, even if #postprocess() hasn't been called
+     * (for example, the template has been skipped or an exception has been thrown).
+     *
+     * @param component Processed component.
+     */
+    default void finish(Component component) {
+        // No operations.
+    }
 }
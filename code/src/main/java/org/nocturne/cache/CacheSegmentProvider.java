@@ -0,0 +1,17 @@
+package org.nocturne.cache;
+
+/**
+ * Implement it in a page or frame marked with {@link org.nocturne.cache.annotation.Cached}
+ * if its parsed result depends on the user (for example, anonymous users, users and administrators
+ * see different content).
+ *
+ * @author Mike Mirzayanov
+ */
+public interface CacheSegmentProvider {
+    /**
+     * Called after the parameters have been set, but before initializeAction().
+     *
+     * @return User segment, a part of the cache key. Use as few segments as possible.
+     */
+    String getCacheSegment();
+}
@@ -0,0 +1,348 @@
+package org.nocturne.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import io.prometheus.client.Gauge;
+import org.apache.log4j.Logger;
+import org.nocturne.annotation.Parameter;
+import org.nocturne.cache.annotation.Cached;
+import org.nocturne.exception.ConfigurationException;
+import org.nocturne.exception.NocturneException;
+import org.nocturne.main.ApplicationContext;
+import org.nocturne.main.Component;
+import org.nocturne.prometheus.Prometheus;
+import org.nocturne.util.ReflectionUtil;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Caches parsed results of the pages and frames marked with {@link Cached}. Nocturne uses the
+ * instance returned by {@link #getInstance()} for such components unless other cache handler has been set.
+ * </p>
+ * <p>
+ * The cache is bounded by the total length of the cached results
+ * (see {@link ApplicationContext#getFragmentCacheMaxSize()}), least recently used results are evicted first.
+ * Only one thread renders a component for a key: other threads get the expired result (see
+ * {@link Cached#stale()}) or wait for the new one.
+ * </p>
+ *
+ * @author Mike Mirzayanov
+ */
+public class FragmentCacheHandler implements CacheHandler {
+    private static final Logger logger = Logger.getLogger(FragmentCacheHandler.class);
+
+    /**
+     * Other threads wait for the rendering thread at most this time, after it the rendering is
+     * considered to be abandoned.
+     */
+    private static final long LOAD_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final ClassValue<KeyPlan> keyPlans = new ClassValue<KeyPlan>() {
+        @Override
+        protected KeyPlan computeValue(Class<?> type) {
+            return new KeyPlan(type);
+        }
+    };
+
+    private static final Object instanceLock = new Object();
+    private static volatile FragmentCacheHandler instance;
+
+    private final Cache<String, Entry> entries;
+    private final AtomicLong weight = new AtomicLong();
+
+    /**
+     * Renderings in progress by key.
+     */
+    private final ConcurrentMap<String, Load> loadsByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Renderings in progress by rendering component.
+     */
+    private final ConcurrentMap<Component, Load> loadsByComponent = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize Maximal total length of the cached results.
+     */
+    public FragmentCacheHandler(long maxSize) {
+        entries = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((String key, Entry entry) -> entry.html.length())
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    /**
+     * @return Shared instance used for the components marked with {@link Cached}.
+     */
+    public static FragmentCacheHandler getInstance() {
+        FragmentCacheHandler result = instance;
+
+        if (result == null) {
+            synchronized (instanceLock) {
+                result = instance;
+                if (result == null) {
+                    result = new FragmentCacheHandler(ApplicationContext.getInstance().getFragmentCacheMaxSize());
+                    result.exportMetrics();
+                    instance = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param clazz Component class.
+     * @return {@code true} iff the component class is marked with {@link Cached}.
+     */
+    public static boolean isCached(Class<? extends Component> clazz) {
+        return keyPlans.get(ReflectionUtil.getOriginalClass(clazz)).cached != null;
+    }
+
+    @Override
+    public String intercept(Component component) {
+        abandon(loadsByComponent.remove(component));
+
+        Class<?> componentClass = ReflectionUtil.getOriginalClass(component.getClass());
+        KeyPlan keyPlan = keyPlans.get(componentClass);
+        if (keyPlan.cached == null) {
+            return null;
+        }
+
+        String className = componentClass.getSimpleName();
+        String key = keyPlan.getKey(component);
+        long now = System.currentTimeMillis();
+
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.expirationTime > now) {
+            Prometheus.getFragmentCacheRequestsCounter().labels(className, "hit").inc();
+            return entry.html;
+        }
+
+        Load load = new Load(key, keyPlan.cached.ttl(), now);
+        while (true) {
+            Load currentLoad = loadsByKey.putIfAbsent(key, load);
+            if (currentLoad == null) {
+                break;
+            }
+
+            if (currentLoad.startTime + LOAD_TIMEOUT_MILLIS <= now) {
+                if (loadsByKey.replace(key, currentLoad, load)) {
+                    currentLoad.complete(null);
+                    break;
+                }
+                continue;
+            }
+
+            if (entry != null && keyPlan.cached.stale()) {
+                Prometheus.getFragmentCacheRequestsCounter().labels(className, "stale").inc();
+                return entry.html;
+            }
+
+            String html = currentLoad.await(currentLoad.startTime + LOAD_TIMEOUT_MILLIS - now);
+            if (html != null) {
+                Prometheus.getFragmentCacheRequestsCounter().labels(className, "wait").inc();
+                return html;
+            }
+
+            // The rendering thread failed, render in this thread but don't wait for others.
+            load = new Load(key, keyPlan.cached.ttl(), now);
+            loadsByComponent.put(component, load);
+            Prometheus.getFragmentCacheRequestsCounter().labels(className, "miss").inc();
+            return null;
+        }
+
+        loadsByComponent.put(component, load);
+        Prometheus.getFragmentCacheRequestsCounter().labels(className, "miss").inc();
+        return null;
+    }
+
+    @Override
+    public void postprocess(Component component, String result) {
+        Load load = loadsByComponent.remove(component);
+        if (load == null) {
+            return;
+        }
+
+        if (result != null) {
+            Entry entry = new Entry(result, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(load.ttl));
+            weight.addAndGet(result.length());
+            entries.put(load.key, entry);
+        }
+
+        loadsByKey.remove(load.key, load);
+        load.complete(result);
+    }
+
+    @Override
+    public void finish(Component component) {
+        abandon(loadsByComponent.remove(component));
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    /**
+     * @return Total length of the cached results.
+     */
+    public long getSize() {
+        return weight.get();
+    }
+
+    private void abandon(Load load) {
+        if (load != null) {
+            loadsByKey.remove(load.key, load);
+            load.complete(null);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, Entry> notification) {
+        Entry entry = notification.getValue();
+        if (entry != null) {
+            weight.addAndGet(-entry.html.length());
+        }
+
+        if (notification.wasEvicted()) {
+            Prometheus.getFragmentCacheEvictionsCounter().inc();
+        }
+    }
+
+    private void exportMetrics() {
+        Prometheus.getFragmentCacheSize().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return getSize();
+            }
+        });
+    }
+
+    private static final class Entry {
+        private final String html;
+        private final long expirationTime;
+
+        private Entry(String html, long expirationTime) {
+            this.html = html;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private static final class Load {
+        private final String key;
+        private final long ttl;
+        private final long startTime;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private Load(String key, long ttl, long startTime) {
+            this.key = key;
+            this.ttl = ttl;
+            this.startTime = startTime;
+        }
+
+        private void complete(String html) {
+            result.complete(html);
+        }
+
+        private String await(long timeoutMillis) {
+            try {
+                return result.get(Math.max(0L, timeoutMillis), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NocturneException("Interrupted while waiting for cached component [key=" + key + "].", e);
+            } catch (ExecutionException | TimeoutException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Describes how to build the cache key for the component class.
+     */
+    private static final class KeyPlan {
+        private final Cached cached;
+        private final Field[] fields;
+
+        private KeyPlan(Class<?> componentClass) {
+            cached = componentClass.getAnnotation(Cached.class);
+            if (cached == null) {
+                fields = new Field[0];
+                return;
+            }
+
+            Map<String, Field> fieldsByName = new LinkedHashMap<>();
+            List<Field> parameterFields = new ArrayList<>();
+            for (Class<?> clazz = componentClass; clazz != null; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    fieldsByName.putIfAbsent(field.getName(), field);
+                    if (field.isAnnotationPresent(Parameter.class)) {
+                        parameterFields.add(field);
+                    }
+                }
+            }
+
+            List<Field> keyFields;
+            if (cached.parameters().length == 0) {
+                keyFields = parameterFields;
+            } else {
+                keyFields = new ArrayList<>(cached.parameters().length);
+                for (String name : cached.parameters()) {
+                    Field field = fieldsByName.get(name);
+                    if (field == null) {
+                        logger.error("Can't find field '" + name + "' in " + componentClass.getName() + " for @Cached.");
+                        throw new ConfigurationException("Can't find field '" + name + "' in "
+                                + componentClass.getName() + " for @Cached.");
+                    }
+                    keyFields.add(field);
+                }
+            }
+
+            for (Field field : keyFields) {
+                field.setAccessible(true);
+            }
+            fields = keyFields.toArray(new Field[0]);
+        }
+
+        private String getKey(Component component) {
+            StringBuilder key = new StringBuilder(64);
+            key.append(component.getClass().getName());
+
+            key.append('\u0000').append(ApplicationContext.getInstance().getRequestAction());
+
+            if (cached.locale()) {
+                key.append('\u0000').append(ApplicationContext.getInstance().getLocale());
+            }
+
+            if (component instanceof CacheSegmentProvider) {
+                key.append('\u0000').append(((CacheSegmentProvider) component).getCacheSegment());
+            }
+
+            for (Field field : fields) {
+                Object value;
+                try {
+                    value = field.get(component);
+                } catch (IllegalAccessException e) {
+                    logger.error("Can't get field " + field.getName() + " of " + component.getClass().getName() + '.', e);
+                    throw new NocturneException("Can't get field " + field.getName()
+                            + " of " + component.getClass().getName() + '.', e);
+                }
+
+                key.append('\u0000');
+                if (value != null && value.getClass().isArray()) {
+                    key.append(Arrays.deepToString(new Object[]{value}));
+                } else {
+                    key.append(value);
+                }
+            }
+
+            return key.toString();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.nocturne.cache.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>
+ * Mark page or frame class with it to cache its parsed result in
+ * {@link org.nocturne.cache.FragmentCacheHandler}.
+ * </p>
+ * <p>
+ * The cache key consists of the component class, the action, the values of the fields
+ * listed in {@link #parameters()} (after they have been set from the request), the current locale
+ * (if {@link #locale()}) and the segment returned by the component
+ * (if it implements {@link org.nocturne.cache.CacheSegmentProvider}).
+ * </p>
+ *
+ * @author Mike Mirzayanov
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+    /**
+     * @return Time to live of the cached result in seconds.
+     */
+    long ttl() default 60;
+
+    /**
+     * @return Names of the fields (usually marked with @Parameter) which form the cache key.
+     * Empty array means all the fields marked with @Parameter.
+     */
+    String[] parameters() default {};
+
+    /**
+     * @return Is the current locale a part of the cache key?
+     */
+    boolean locale() default true;
+
+    /**
+     * @return If {@code true}, the expired result is returned while other thread renders the new one,
+     * otherwise the thread waits for the new result.
+     */
+    boolean stale() default true;
+}
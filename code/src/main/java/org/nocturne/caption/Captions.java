@@ -41,4 +41,15 @@ public interface Captions {
      * @return String Caption value.
      */
     String find(String shortcut, Object... args);
+
+    /**
+     * Reads the captions again, for example, after the properties files have been updated in production.
+     * Use {@link org.nocturne.main.ApplicationContext#reloadCaptions()} to call it. The implementations which
+     * read captions once should also call {@link org.nocturne.main.ApplicationContext#clearTemplateCache()}:
+     * static captions ("{{shortcut}}") are substituted into the compiled templates.
+     * The default implementation does nothing.
+     */
+    default void reload() {
+        // No operations.
+    }
 }
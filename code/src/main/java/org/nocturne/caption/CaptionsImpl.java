@@ -8,9 +8,13 @@ import org.apache.log4j.Logger;
 import org.nocturne.exception.ConfigurationException;
 import org.nocturne.main.ApplicationContext;
 
+import javax.annotation.Nullable;
 import java.io.*;
+import java.text.Format;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,7 +29,12 @@ import java.util.regex.Pattern;
  * for default language which will have value equals to shortcut.
  * </p>
  * <p>
- * In the production mode it just read them exactly once (on startup) and doesn't save them.
+ * In the production mode it just read them exactly once (on startup) and doesn't save them,
+ * use {@link ApplicationContext#reloadCaptions()} to read them again.
+ * </p>
+ * <p>
+ * The loaded values are immutable tables per language with precompiled message formats,
+ * so the lookup takes no locks. The shortcuts which are not found are kept apart from the tables.
  * </p>
  *
  * @author Mike Mirzayanov
@@ -34,24 +43,34 @@ import java.util.regex.Pattern;
 public class CaptionsImpl implements Captions {
     private static final Logger logger = Logger.getLogger(CaptionsImpl.class);
 
-    private static final Pattern CAPTIONS_FILE_PATTERN = Pattern.compile("captions_[\\w]{2}\\.properties");
+    private static final Pattern CAPTIONS_FILE_PATTERN = Pattern.compile("captions_([\\w]{2})\\.properties");
 
     /**
-     * Stores properties per language.
+     * Magic value to store empty value.
      */
-    private final Map<String, Properties> propertiesMap = new Hashtable<>();
+    private static final String NULL = "nocturne.null";
 
     /**
-     * Magic value to store empty value.
+     * Caption tables by language, replaced as a whole on reload.
      */
-    private static final String NULL = "nocturne.null";
+    private volatile Map<String, CaptionTable> tables = Collections.emptyMap();
+
+    /**
+     * Captions of the shortcuts not found in the default language, the value equals to shortcut.
+     */
+    private final ConcurrentMap<String, Caption> missingCaptions = new ConcurrentHashMap<>();
+
+    /**
+     * Shortcuts not found per language, used to save properties in the development mode.
+     */
+    private final ConcurrentMap<String, Set<String>> missingShortcutsByLanguage = new ConcurrentHashMap<>();
 
     /**
      * Constructs new CaptionsImpl.
      */
     public CaptionsImpl() {
         // Load properties on startup.
-        loadProperties();
+        loadTables();
     }
 
     @Override
@@ -61,69 +80,118 @@ public class CaptionsImpl implements Captions {
 
     @Override
     public String find(Locale locale, String shortcut, Object... args) {
-        // Default locale. It is possible equals with current "locale".
-        Locale defaultLocale = ApplicationContext.getInstance().getDefaultLocale();
-
-        // Current language.
         String language = locale.getLanguage();
 
-        // If doesn't contain locale properties?
-        if (!propertiesMap.containsKey(language)) {
-            // Add empty properties.
-            propertiesMap.put(language, new Properties());
+        CaptionTable table = tables.get(language);
+        Caption caption = table == null ? null : table.getCaption(shortcut);
+
+        // No such value?
+        if (caption == null) {
+            caption = findMissing(language, shortcut);
         }
 
-        // It exists anyway.
-        Properties properties = propertiesMap.get(language);
+        return caption.format(args);
+    }
 
-        // It can be absent.
-        String value = properties.getProperty(shortcut);
+    /**
+     * Reads properties files again and replaces all the captions at once.
+     * Lookups which run concurrently use either old or new captions. The compiled templates
+     * are dropped, so the static captions in them are substituted again.
+     */
+    @Override
+    public synchronized void reload() {
+        loadTables();
+        ApplicationContext.getInstance().clearTemplateCache();
+    }
 
-        // No such value?
-        if (value == null || value.equals(NULL)) {
-            // Is it NOT default locale?
-            if (defaultLocale == locale) {
-                // Set default.
-                properties.setProperty(shortcut, shortcut);
-            }
-            // Use default locale to find value.
-            value = find(defaultLocale, shortcut, args);
-            // Save all properties.
-            if (ApplicationContext.getInstance().isDebug()) {
-                saveProperties();
+    private synchronized void loadTables() {
+        Map<String, Properties> propertiesByLanguage;
+        if (ApplicationContext.getInstance().isDebug()) {
+            propertiesByLanguage = loadPropertiesForDebug();
+        } else {
+            propertiesByLanguage = loadPropertiesForProduction();
+        }
+
+        Map<String, CaptionTable> newTables = new HashMap<>();
+        for (Map.Entry<String, Properties> entry : propertiesByLanguage.entrySet()) {
+            newTables.put(entry.getKey(), new CaptionTable(entry.getValue()));
+        }
+
+        tables = Collections.unmodifiableMap(newTables);
+        missingCaptions.clear();
+        missingShortcutsByLanguage.clear();
+    }
+
+    /**
+     * @param language Language of the lookup.
+     * @param shortcut Shortcut which is not found for the language.
+     * @return Caption of the default language or shortcut itself.
+     */
+    private Caption findMissing(String language, String shortcut) {
+        String defaultLanguage = ApplicationContext.getInstance().getDefaultLocale().getLanguage();
+
+        boolean added = missingShortcutsByLanguage.computeIfAbsent(language, key -> ConcurrentHashMap.newKeySet())
+                .add(shortcut);
+
+        Caption caption = null;
+        if (!language.equals(defaultLanguage)) {
+            CaptionTable defaultTable = tables.get(defaultLanguage);
+            caption = defaultTable == null ? null : defaultTable.getCaption(shortcut);
+            if (caption == null) {
+                added |= missingShortcutsByLanguage.computeIfAbsent(
+                        defaultLanguage, key -> ConcurrentHashMap.newKeySet()
+                ).add(shortcut);
             }
         }
 
-        if (args.length > 0) {
-            return MessageFormat.format(value, args);
-        } else {
-            return value;
+        if (caption == null) {
+            caption = missingCaptions.computeIfAbsent(shortcut, Caption::new);
+        }
+
+        // Save all properties.
+        if (added && ApplicationContext.getInstance().isDebug()) {
+            saveProperties(defaultLanguage);
         }
+
+        return caption;
     }
 
     /**
      * Synchronizes all the properties and saves them.
+     *
+     * @param defaultLanguage Language which gets missing shortcuts as values.
      */
-    private void saveProperties() {
+    private synchronized void saveProperties(String defaultLanguage) {
+        Map<String, CaptionTable> currentTables = tables;
+
+        Set<String> languages = new TreeSet<>(currentTables.keySet());
+        languages.addAll(missingShortcutsByLanguage.keySet());
+
         // Find all possible keys.
         Set<String> keys = new TreeSet<>();
-        for (Map.Entry<String, Properties> entry : propertiesMap.entrySet()) {
-            Set<Object> names = entry.getValue().keySet();
-            for (Object name : names) {
-                keys.add(name.toString());
-            }
+        for (CaptionTable table : currentTables.values()) {
+            keys.addAll(table.values.keySet());
+        }
+        for (Set<String> shortcuts : missingShortcutsByLanguage.values()) {
+            keys.addAll(shortcuts);
         }
 
         // Add empty value for each key if no such found.
-        for (Map.Entry<String, Properties> entry : propertiesMap.entrySet()) {
-            Properties properties = entry.getValue();
+        for (String language : languages) {
+            CaptionTable table = currentTables.get(language);
+            Set<String> missingShortcuts = missingShortcutsByLanguage.getOrDefault(language, Collections.emptySet());
+
+            Properties properties = new Properties();
             for (String key : keys) {
-                if (!properties.containsKey(key)) {
-                    properties.setProperty(key, NULL);
+                String value = table == null ? null : table.values.get(key);
+                if (value == null || (value.equals(NULL) && missingShortcuts.contains(key))) {
+                    value = language.equals(defaultLanguage) && missingShortcuts.contains(key) ? key : NULL;
                 }
+                properties.setProperty(key, value);
             }
+
             // And save properties.
-            save(properties, entry.getKey());
+            save(properties, language);
         }
     }
 
@@ -144,59 +212,49 @@ public class CaptionsImpl implements Captions {
     }
 
     /**
-     * Method loadProperties ...
+     * @return Properties of the allowed languages from the classpath.
      */
-    private void loadProperties() {
-        if (ApplicationContext.getInstance().isDebug()) {
-            loadPropertiesForDebug();
-        } else {
-            loadPropertiesForProduction();
-        }
-    }
+    private Map<String, Properties> loadPropertiesForProduction() {
+        Map<String, Properties> propertiesByLanguage = new HashMap<>();
 
-    /**
-     * Method loadPropertiesForProduction ...
-     */
-    private void loadPropertiesForProduction() {
-        if (propertiesMap.isEmpty()) {
-            List<String> languages = ApplicationContext.getInstance().getAllowedLanguages();
-            for (String language : languages) {
-                InputStream inputStream = getClass().getResourceAsStream(getCaptionsFileName(language));
-                if (inputStream != null) {
-                    try {
-                        Reader reader = new InputStreamReader(inputStream, ApplicationContext.getInstance().getCaptionFilesEncoding());
-                        Properties properties = new Properties();
-                        properties.load(reader);
-                        reader.close();
-                        propertiesMap.put(language, properties);
-                    } catch (IOException e) {
-                        logger.error("Can't load caption properties for language " + language + '.', e);
-                        throw new ConfigurationException("Can't load caption properties for language " + language + '.', e);
-                    }
+        List<String> languages = ApplicationContext.getInstance().getAllowedLanguages();
+        for (String language : languages) {
+            InputStream inputStream = getClass().getResourceAsStream(getCaptionsFileName(language));
+            if (inputStream != null) {
+                try {
+                    Reader reader = new InputStreamReader(inputStream, ApplicationContext.getInstance().getCaptionFilesEncoding());
+                    Properties properties = new Properties();
+                    properties.load(reader);
+                    reader.close();
+                    propertiesByLanguage.put(language, properties);
+                } catch (IOException e) {
+                    logger.error("Can't load caption properties for language " + language + '.', e);
+                    throw new ConfigurationException("Can't load caption properties for language " + language + '.', e);
                 }
             }
         }
+
+        return propertiesByLanguage;
     }
 
     /**
-     * Method loadPropertiesForDebug ...
+     * @return Properties of all the languages found in the nocturne.debug-captions-dir.
      */
-    private void loadPropertiesForDebug() {
-        File debugCaptionsDir = new File(ApplicationContext.getInstance().getDebugCaptionsDir());
+    private static Map<String, Properties> loadPropertiesForDebug() {
+        Map<String, Properties> propertiesByLanguage = new HashMap<>();
 
-        File[] captionFiles = debugCaptionsDir.listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name) {
-                return CAPTIONS_FILE_PATTERN.matcher(name).matches();
-            }
-        });
+        File debugCaptionsDir = new File(ApplicationContext.getInstance().getDebugCaptionsDir());
+        File[] captionFiles = debugCaptionsDir.listFiles(
+                (dir, name) -> CAPTIONS_FILE_PATTERN.matcher(name).matches()
+        );
 
-        propertiesMap.clear();
+        if (captionFiles == null) {
+            return propertiesByLanguage;
+        }
 
         for (File captionFile : captionFiles) {
             if (captionFile.isFile()) {
-                Pattern pattern = Pattern.compile("captions_([\\w]{2})\\.properties");
-                Matcher matcher = pattern.matcher(captionFile.getName());
+                Matcher matcher = CAPTIONS_FILE_PATTERN.matcher(captionFile.getName());
                 if (matcher.matches()) {
                     String language = matcher.group(1);
                     try {
@@ -204,7 +262,7 @@ public class CaptionsImpl implements Captions {
                                 ApplicationContext.getInstance().getCaptionFilesEncoding());
                         Properties properties = new Properties();
                         properties.load(reader);
-                        propertiesMap.put(language, properties);
+                        propertiesByLanguage.put(language, properties);
                         reader.close();
                     } catch (IOException ignored) {
                         // No operations.
@@ -212,6 +270,8 @@ public class CaptionsImpl implements Captions {
                 }
             }
         }
+
+        return propertiesByLanguage;
     }
 
     /**
@@ -223,4 +283,95 @@ public class CaptionsImpl implements Captions {
     private static String getCaptionsFileName(String language) {
         return "/captions_" + language + ".properties";
     }
+
+    /**
+     * Immutable captions of the language.
+     */
+    private static final class CaptionTable {
+        /**
+         * Values as they are in the file, including nocturne.null.
+         */
+        private final Map<String, String> values;
+
+        /**
+         * Captions for not empty values.
+         */
+        private final Map<String, Caption> captions;
+
+        private CaptionTable(Properties properties) {
+            Map<String, String> tableValues = new HashMap<>();
+            Map<String, Caption> tableCaptions = new HashMap<>();
+
+            for (String key : properties.stringPropertyNames()) {
+                String value = properties.getProperty(key);
+                tableValues.put(key, value);
+                if (!value.equals(NULL)) {
+                    tableCaptions.put(key, new Caption(value));
+                }
+            }
+
+            values = Collections.unmodifiableMap(tableValues);
+            captions = Collections.unmodifiableMap(tableCaptions);
+        }
+
+        @Nullable
+        private Caption getCaption(String shortcut) {
+            return captions.get(shortcut);
+        }
+    }
+
+    /**
+     * Caption value with the message format parsed once.
+     */
+    private static final class Caption {
+        private final String value;
+
+        /**
+         * Parsed value or {@code null} if the value is not a valid pattern.
+         */
+        private final MessageFormat format;
+
+        /**
+         * MessageFormat without subformats keeps no state while formatting and is shared by threads,
+         * otherwise it is cloned because subformats (like DecimalFormat) are not thread-safe.
+         */
+        private final boolean shared;
+
+        private Caption(String value) {
+            this.value = value;
+
+            MessageFormat messageFormat;
+            try {
+                messageFormat = new MessageFormat(value);
+            } catch (IllegalArgumentException ignored) {
+                messageFormat = null;
+            }
+            this.format = messageFormat;
+
+            boolean noSubformats = true;
+            if (messageFormat != null) {
+                for (Format subformat : messageFormat.getFormats()) {
+                    if (subformat != null) {
+                        noSubformats = false;
+                        break;
+                    }
+                }
+            }
+            this.shared = noSubformats;
+        }
+
+        private String format(Object... args) {
+            if (args.length == 0) {
+                return value;
+            }
+
+            if (format == null) {
+                // Throws the same exception as before.
+                return MessageFormat.format(value, args);
+            }
+
+            MessageFormat messageFormat = shared ? format : (MessageFormat) format.clone();
+            return messageFormat.format(args);
+        }
+    }
 }
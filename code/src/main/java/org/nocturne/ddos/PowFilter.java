@@ -1,8 +1,9 @@
 package org.nocturne.ddos;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.nocturne.gzip.AcceptEncoding;
 import org.nocturne.util.StringUtil;
 
 import javax.servlet.*;
@@ -11,13 +12,52 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * <p>
+ * Lets through only the clients which have solved proof-of-work challenge in javascript.
+ * </p>
+ * <p>
+ * By default the challenge and the pass token are kept in the session. Set init parameter "stateless"
+ * to "true" to use signed tokens instead (see {@link PowTokens}): they don't create sessions and are
+ * checked without shared state. Other init parameters of the stateless mode:
+ * <ul>
+ * <li>secret &mdash; signing secret, servers with the same secret accept the tokens of each other;
+ * by default it is random for each start;</li>
+ * <li>key-rotation-minutes &mdash; the signing key changes with this period, default is 60.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Requests are counted per fingerprint (ip and user agent) in {@link RequestRateCounter} of the filter, the rates
+ * are available to {@link RequestFilter}s with {@link #getRequestRate(HttpServletRequest)}. Init parameters
+ * which use them (rates are in requests per second, zero disables a parameter):
+ * <ul>
+ * <li>rate-window-seconds &mdash; the rates are counted in this sliding window, default is 10;</li>
+ * <li>limit-rate &mdash; faster clients get 429 without a challenge;</li>
+ * <li>challenge-load &mdash; if the total rate is lower, the clients pass without a challenge (unless
+ * they are faster than challenge-rate), each doubling of the total rate above it makes the challenge
+ * harder; by default all the clients are challenged;</li>
+ * <li>challenge-rate &mdash; faster clients get harder challenge;</li>
+ * <li>difficulty &mdash; number of leading hex zeros in the hash of the solution, default is 4;</li>
+ * <li>max-difficulty &mdash; the challenge never gets harder, default is 6.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The challenge page is rendered once, it is sent gzipped to the clients which accept it unless init
+ * parameter "gzip-challenge" is "false".
+ * </p>
+ * <p>
+ * Set system property PowFilter.logging to "true" to log the processing of the requests
+ * (see {@link PowFilterLog}), PowFilter.loggingSampling sets the part of the requests to log (default is 1.0).
+ * </p>
+ */
 @SuppressWarnings("unused")
 public class PowFilter implements Filter {
     private static final Logger logger = Logger.getLogger(PowFilter.class);
@@ -26,32 +66,178 @@ public class PowFilter implements Filter {
 
     private static final boolean logging = System.getProperty("PowFilter.logging", "false").equals("true");
 
+    private static final double loggingSampling = getLoggingSampling();
+
     private static final Random RANDOM = new SecureRandom(Long.toString(System.nanoTime()
             ^ System.currentTimeMillis()
             ^ Runtime.getRuntime().freeMemory()).getBytes(StandardCharsets.UTF_8));
 
     private static final List<RequestFilter> REQUEST_FILTERS = new ArrayList<>();
 
-    private static final ThreadLocal<String> rayIdLocal = new ThreadLocal<>();
+    private static final ThreadLocal<PowFilterLog> logLocal = new ThreadLocal<>();
+
+    private static final String POW_COOKIE_NAME = "pow";
+    private static final long DEFAULT_KEY_ROTATION_MINUTES = 60;
+    private static final int RANDOM_SECRET_LENGTH = 32;
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RATE_WINDOW_SECONDS = 10;
+    private static final int RATE_COUNTER_WIDTH = 16384;
+    private static final int DEFAULT_DIFFICULTY = 4;
+    private static final int DEFAULT_MAX_DIFFICULTY = 6;
+    private static final int MAX_DIFFICULTY = 8;
+
+    /**
+     * Request attribute with {@link RequestRateCounter} of the filter which has processed the request.
+     */
+    private static final String REQUEST_RATE_COUNTER_ATTRIBUTE = PowFilter.class.getName() + ".requestRateCounter";
+
+    /**
+     * Challenge pages by difficulty.
+     */
+    private static final byte[][] CHALLENGE_PAGES = getChallengePages();
+
+    /**
+     * Gzipped challenge pages by difficulty.
+     */
+    private static final byte[][] GZIPPED_CHALLENGE_PAGES = gzip(CHALLENGE_PAGES);
+
+    /**
+     * Signed tokens of the stateless mode, {@code null} in the session mode.
+     */
+    private PowTokens tokens;
+
+    private RequestRateCounter requestRateCounter;
+    private long rateWindowSeconds = DEFAULT_RATE_WINDOW_SECONDS;
+    private double limitRate;
+    private double challengeLoad;
+    private double challengeRate;
+    private int difficulty = DEFAULT_DIFFICULTY;
+    private int maxDifficulty = DEFAULT_MAX_DIFFICULTY;
+    private boolean gzipChallenge = true;
 
     @Override
-    public void init(FilterConfig filterConfig) {
-        // No operations.
+    public void init(FilterConfig filterConfig) throws ServletException {
+        rateWindowSeconds = (long) getNonNegativeParameter(filterConfig, "rate-window-seconds", rateWindowSeconds);
+        if (rateWindowSeconds == 0) {
+            logger.error("Init parameter rate-window-seconds of PowFilter should be positive.");
+            throw new ServletException("Init parameter rate-window-seconds of PowFilter should be positive.");
+        }
+        requestRateCounter = new RequestRateCounter(TimeUnit.SECONDS.toMillis(rateWindowSeconds), RATE_COUNTER_WIDTH);
+
+        limitRate = getNonNegativeParameter(filterConfig, "limit-rate", limitRate);
+        challengeLoad = getNonNegativeParameter(filterConfig, "challenge-load", challengeLoad);
+        challengeRate = getNonNegativeParameter(filterConfig, "challenge-rate", challengeRate);
+        difficulty = (int) getNonNegativeParameter(filterConfig, "difficulty", difficulty);
+        maxDifficulty = (int) getNonNegativeParameter(filterConfig, "max-difficulty", maxDifficulty);
+        if (difficulty < 1 || difficulty > maxDifficulty || maxDifficulty > MAX_DIFFICULTY) {
+            logger.error("Init parameters difficulty and max-difficulty of PowFilter should satisfy "
+                    + "1 <= difficulty <= max-difficulty <= " + MAX_DIFFICULTY + '.');
+            throw new ServletException("Init parameters difficulty and max-difficulty of PowFilter should satisfy "
+                    + "1 <= difficulty <= max-difficulty <= " + MAX_DIFFICULTY + '.');
+        }
+
+        gzipChallenge = !"false".equalsIgnoreCase(filterConfig.getInitParameter("gzip-challenge"));
+
+        if (!"true".equalsIgnoreCase(filterConfig.getInitParameter("stateless"))) {
+            return;
+        }
+
+        byte[] secret;
+        String secretParameter = filterConfig.getInitParameter("secret");
+        if (StringUtil.isEmpty(secretParameter)) {
+            secret = new byte[RANDOM_SECRET_LENGTH];
+            new SecureRandom().nextBytes(secret);
+        } else {
+            secret = secretParameter.getBytes(StandardCharsets.UTF_8);
+        }
+
+        long keyRotationMinutes = DEFAULT_KEY_ROTATION_MINUTES;
+        String keyRotationMinutesParameter = filterConfig.getInitParameter("key-rotation-minutes");
+        if (keyRotationMinutesParameter != null) {
+            try {
+                keyRotationMinutes = Long.parseLong(keyRotationMinutesParameter.trim());
+            } catch (NumberFormatException e) {
+                keyRotationMinutes = 0;
+            }
+            if (keyRotationMinutes <= 0) {
+                logger.error("Init parameter key-rotation-minutes of PowFilter should be a positive integer.");
+                throw new ServletException("Init parameter key-rotation-minutes of PowFilter should be a positive integer.");
+            }
+        }
+
+        tokens = new PowTokens(secret, TimeUnit.MINUTES.toMillis(keyRotationMinutes), TimeUnit.DAYS.toMillis(1));
+    }
+
+    private static double getNonNegativeParameter(FilterConfig filterConfig, String name, double defaultValue)
+            throws ServletException {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        double result;
+        try {
+            result = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            result = -1;
+        }
+
+        if (!(result >= 0) || Double.isInfinite(result)) {
+            logger.error("Init parameter " + name + " of PowFilter should be a non-negative number.");
+            throw new ServletException("Init parameter " + name + " of PowFilter should be a non-negative number.");
+        }
+
+        return result;
+    }
+
+    /**
+     * @param request Request.
+     * @return Estimated number of requests per second by the client (ip and user agent) of the request
+     * in the recent window of {@link PowFilter} which has processed the request (including the request itself),
+     * 0.0 if no one has.
+     */
+    public static double getRequestRate(HttpServletRequest request) {
+        RequestRateCounter counter = (RequestRateCounter) request.getAttribute(REQUEST_RATE_COUNTER_ATTRIBUTE);
+        return counter == null ? 0.0 : counter.getRate(getRequestFingerprint(request));
+    }
+
+    /**
+     * @param request Request.
+     * @return Number of requests per second in the recent window of {@link PowFilter} which has processed
+     * the request, 0.0 if no one has.
+     */
+    public static double getTotalRequestRate(HttpServletRequest request) {
+        RequestRateCounter counter = (RequestRateCounter) request.getAttribute(REQUEST_RATE_COUNTER_ATTRIBUTE);
+        return counter == null ? 0.0 : counter.getTotalRate();
     }
 
     @Override
     public void destroy() {
-        // No operations.
+        PowFilterLog.stop();
     }
 
-    private void info(String message) {
-        if (logging) {
-            message = "PowFilter: powRayId=" + rayIdLocal.get() + ": " + message;
-            logger.info(message);
+    private static double getLoggingSampling() {
+        try {
+            double sampling = Double.parseDouble(System.getProperty("PowFilter.loggingSampling", "1"));
+            return sampling >= 0.0 ? sampling : 1.0;
+        } catch (NumberFormatException ignored) {
+            return 1.0;
+        }
+    }
 
-            String print = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + ": " + message;
-            System.out.println(print);
-            System.err.println(print);
+    /**
+     * Adds the event to the log record of the current request if the request is logged.
+     *
+     * @param event     Event name.
+     * @param keyValues Keys and values, alternately.
+     */
+    private static void info(String event, Object... keyValues) {
+        if (logging) {
+            PowFilterLog log = logLocal.get();
+            if (log != null) {
+                log.add(event, keyValues);
+            }
         }
     }
 
@@ -62,61 +248,77 @@ public class PowFilter implements Filter {
             HttpServletRequest httpServletRequest = (HttpServletRequest) request;
             HttpServletResponse httpServletResponse = (HttpServletResponse) response;
 
-            String rayId = RandomStringUtils.randomAlphanumeric(8);
-            rayIdLocal.set(rayId);
-
-            info("Starting processing request [uri=" + httpServletRequest.getRequestURI()
-                    + ", url=" + httpServletRequest.getRequestURL()
-                    + ", query=" + httpServletRequest.getQueryString()
-                    + ", ip=" + getIp(httpServletRequest) + "].");
+            PowFilterLog log = logging ? PowFilterLog.start(loggingSampling) : null;
+            if (log != null) {
+                logLocal.set(log);
+                logRequest(log, httpServletRequest);
+            }
 
-            if (logging) {
-                info("Headers:");
-                Enumeration<String> headerNames = httpServletRequest.getHeaderNames();
-                while (headerNames.hasMoreElements()) {
-                    String headerName = headerNames.nextElement();
-                    info("    " + headerName + ": " + httpServletRequest.getHeader(headerName));
+            try {
+                doHttpFilter(httpServletRequest, httpServletResponse, chain);
+            } finally {
+                if (log != null) {
+                    logLocal.remove();
+                    log.finish();
                 }
+            }
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
 
-                HttpSession session = httpServletRequest.getSession(true);
-                if (session != null) {
-                    info("Session attributes:");
-                    Enumeration<String> attributeNames = session.getAttributeNames();
-                    while (attributeNames.hasMoreElements()) {
-                        String attributeName = attributeNames.nextElement();
-                        info("    " + attributeName + ": " + session.getAttribute(attributeName));
-                    }
-                }
+    private static void logRequest(PowFilterLog log, HttpServletRequest request) {
+        log.add("request", "uri", request.getRequestURI(), "url", request.getRequestURL(),
+                "query", request.getQueryString(), "ip", getIp(request));
 
-                info("Cookies:");
-                Cookie[] cookies = httpServletRequest.getCookies();
-                if (cookies != null) {
-                    for (Cookie cookie : cookies) {
-                        info("    " + cookie.getName() + ": " + cookie.getValue());
-                    }
-                }
+        Enumeration<String> headerNames = request.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            String headerName = headerNames.nextElement();
+            log.add("header", "name", headerName, "value", request.getHeader(headerName));
+        }
+
+        // Doesn't create session, the logging shouldn't change the processing.
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            log.add("session", "id", session.getId());
+            Enumeration<String> attributeNames = session.getAttributeNames();
+            while (attributeNames.hasMoreElements()) {
+                String attributeName = attributeNames.nextElement();
+                log.add("sessionAttribute", "name", attributeName, "value", session.getAttribute(attributeName));
             }
+        }
 
-            for (RequestFilter requestFilter : REQUEST_FILTERS) {
-                Integer verdict = requestFilter.filter(httpServletRequest);
-                info("Request filter " + requestFilter.getClass().getSimpleName() + " returned " + verdict + ".");
-
-                if (verdict != null) {
-                    if (verdict == 0) {
-                        info("Do 'chain.doFilter(request, response);' and return.");
-                        chain.doFilter(request, response);
-                    } else {
-                        info("Send error " + verdict + " and return.");
-                        httpServletResponse.sendError(verdict);
-                    }
-                    return;
-                }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                log.add("cookie", "name", cookie.getName(), "value", cookie.getValue());
             }
+        }
+    }
 
-            doInternalFilter(httpServletRequest, httpServletResponse, chain);
-        } else {
-            chain.doFilter(request, response);
+    private void doHttpFilter(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+                              FilterChain chain) throws IOException, ServletException {
+        String requestFingerprint = getRequestFingerprint(httpServletRequest);
+        requestRateCounter.increment(requestFingerprint);
+        httpServletRequest.setAttribute(REQUEST_RATE_COUNTER_ATTRIBUTE, requestRateCounter);
+
+        for (RequestFilter requestFilter : REQUEST_FILTERS) {
+            Integer verdict = requestFilter.filter(httpServletRequest);
+            info("requestFilter", "class", requestFilter.getClass().getSimpleName(), "verdict", verdict);
+
+            if (verdict != null) {
+                if (verdict == 0) {
+                    info("pass");
+                    chain.doFilter(httpServletRequest, httpServletResponse);
+                } else {
+                    info("error", "status", verdict);
+                    httpServletResponse.sendError(verdict);
+                }
+                return;
+            }
         }
+
+        doInternalFilter(httpServletRequest, httpServletResponse, chain, requestFingerprint);
     }
 
     private static String getIp(HttpServletRequest httpRequest) {
@@ -136,18 +338,38 @@ public class PowFilter implements Filter {
         return "#" + getIp(request) + "!" + getUserAgent(request);
     }
 
-    private void doInternalFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
-            throws IOException, ServletException {
+    private void doInternalFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                                  String requestFingerprint) throws IOException, ServletException {
+        double requestRate = requestRateCounter.getRate(requestFingerprint);
+        if (limitRate > 0 && requestRate >= limitRate) {
+            info("rateLimit", "requestRate", requestRate);
+            response.setStatus(SC_TOO_MANY_REQUESTS);
+            response.setHeader("Retry-After", Long.toString(rateWindowSeconds));
+            response.setContentLength(0);
+            return;
+        }
+
+        double totalRate = requestRateCounter.getTotalRate();
+        if (challengeLoad > 0 && totalRate < challengeLoad && (challengeRate <= 0 || requestRate < challengeRate)) {
+            info("noChallenge", "requestRate", requestRate, "totalRate", totalRate);
+            chain.doFilter(request, response);
+            return;
+        }
+
+        int currentDifficulty = getDifficulty(requestRate, totalRate);
+        if (tokens != null) {
+            doStatelessFilter(request, response, chain, requestFingerprint, currentDifficulty);
+            return;
+        }
+
         HttpSession session = request.getSession();
 
         String secret = (String) session.getAttribute("secret");
         String sha = (String) session.getAttribute("sha");
-        String requestFingerprint = getRequestFingerprint(request);
+        Integer sessionDifficulty = (Integer) session.getAttribute("difficulty");
 
-        info("sessionId= " + session.getId()
-                + ", secret=" + secret
-                + ", sha=" + sha
-                + ", requestFingerprint=" + requestFingerprint + ".");
+        info("sessionState", "sessionId", session.getId(), "secret", secret, "sha", sha,
+                "requestFingerprint", requestFingerprint);
 
         if (StringUtil.isEmpty(secret)
                 || StringUtil.isEmpty(sha)
@@ -156,71 +378,166 @@ public class PowFilter implements Filter {
             session.setAttribute("secret", secret);
             sha = DigestUtils.sha1Hex(secret + requestFingerprint);
             session.setAttribute("sha", sha);
-            info("If empty case: secret=" + secret + ", sha=" + sha + ".");
+            info("newSecret", "secret", secret, "sha", sha);
         }
 
-        String half = sha.substring(0, 20);
-        String cookie = null;
-        if (request.getCookies() != null) {
-            for (Cookie c : request.getCookies()) {
-                if (c.getName().equals("pow")) {
-                    cookie = c.getValue();
-                    break;
-                }
-            }
-        }
+        String half = sha.substring(0, PowTokens.CHALLENGE_LENGTH);
+        String cookie = getPowCookie(request);
 
-        info("half=" + half + ", cookie=" + cookie + ".");
+        info("cookie", "half", half, "cookie", cookie);
 
         if (cookie != null && cookie.equals(sha)) {
-            info("cookie != null && cookie.equals(sha).");
+            info("validPassToken");
+            chain.doFilter(request, response);
+        } else if (cookie != null && isResult(cookie, half,
+                sessionDifficulty == null ? difficulty : sessionDifficulty)) {
+            addPowCookie(response, sha);
+            info("solved", "passToken", sha);
+            chain.doFilter(request, response);
+        } else {
+            session.setAttribute("difficulty", currentDifficulty);
+            addPowCookie(response, half);
+            writeChallengePage(request, response, currentDifficulty);
+            info("challenge", "challenge", half, "difficulty", currentDifficulty);
+        }
+    }
+
+    private void doStatelessFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                                   String requestFingerprint, int currentDifficulty)
+            throws IOException, ServletException {
+        String cookie = getPowCookie(request);
+        long currentTimeMillis = System.currentTimeMillis();
+
+        info("statelessState", "requestFingerprint", requestFingerprint, "cookie", cookie);
+
+        if (cookie != null && tokens.isPassToken(cookie, requestFingerprint, currentTimeMillis)) {
+            info("validPassToken");
             chain.doFilter(request, response);
-        } else if (cookie != null && isResult(cookie, half)) {
-            info("cookie != null && isResult(cookie, half): cookie=" + cookie + ", half=" + half + ".");
-            Cookie powCookie = new Cookie("pow", sha);
-            powCookie.setPath("/");
-            powCookie.setMaxAge((int) TimeUnit.DAYS.toSeconds(1));
-            response.addCookie(powCookie);
-            info("Set-Cookie: pow=" + sha + ".");
+        } else if (cookie != null && cookie.length() > PowTokens.CHALLENGE_LENGTH
+                && isResult(cookie, cookie.substring(cookie.length() - PowTokens.CHALLENGE_LENGTH),
+                tokens.getChallengeDifficulty(cookie.substring(cookie.length() - PowTokens.CHALLENGE_LENGTH),
+                        requestFingerprint, currentTimeMillis))) {
+            String passToken = tokens.newPassToken(requestFingerprint, currentTimeMillis);
+            addPowCookie(response, passToken);
+            info("solved", "passToken", passToken);
             chain.doFilter(request, response);
         } else {
-            info("else case: cookie=" + cookie + ", half=" + half + ".");
-            Cookie powCookie = new Cookie("pow", half);
-            powCookie.setPath("/");
-            powCookie.setMaxAge((int) TimeUnit.DAYS.toSeconds(1));
-            response.addCookie(powCookie);
-            response.setContentType("text/html");
-            printResponse(response);
-            info("writer.flush(), Set-Cookie: pow=" + half + ".");
+            String challenge = tokens.getChallenge(requestFingerprint, currentDifficulty, currentTimeMillis);
+            addPowCookie(response, challenge);
+            writeChallengePage(request, response, currentDifficulty);
+            info("challenge", "challenge", challenge, "difficulty", currentDifficulty);
+        }
+    }
+
+    private static String getPowCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals(POW_COOKIE_NAME)) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void addPowCookie(HttpServletResponse response, String value) {
+        Cookie powCookie = new Cookie(POW_COOKIE_NAME, value);
+        powCookie.setPath("/");
+        powCookie.setMaxAge((int) TimeUnit.DAYS.toSeconds(1));
+        response.addCookie(powCookie);
+    }
+
+    /**
+     * @return Difficulty of the challenge for the client: each doubling of the total rate above challenge-load
+     * and exceeding challenge-rate by the client make it one hex zero harder.
+     */
+    int getDifficulty(double requestRate, double totalRate) {
+        int result = difficulty;
+        if (challengeLoad > 0 && totalRate >= challengeLoad) {
+            result += (int) (Math.log(totalRate / challengeLoad) / Math.log(2.0));
+        }
+        if (challengeRate > 0 && requestRate >= challengeRate) {
+            ++result;
         }
+        return Math.min(result, maxDifficulty);
     }
 
-    private static void printResponse(HttpServletResponse response) throws IOException {
-        PrintWriter writer = response.getWriter();
-        writer.println("<style>\n" +
-                "p {\n" +
-                "    height: 100vh;\n" +
-                "    display: flex;\n" +
-                "    justify-content: center;\n" +
-                "    align-items: center;\n" +
-                "}\n" +
-                "</style>\n<p>Please wait. Your browser is being checked. It may take a few seconds...</p>");
-        writer.println("<script>");
-        writer.println(getObfuscatedJsCode());
-//        writer.println(getJsCode());
-        writer.println("</script>");
-        writer.flush();
+    private void writeChallengePage(HttpServletRequest request, HttpServletResponse response, int difficulty)
+            throws IOException {
+        byte[] page = CHALLENGE_PAGES[difficulty];
+        if (gzipChallenge) {
+            response.addHeader("Vary", "Accept-Encoding");
+            if (AcceptEncoding.parse(request.getHeader("Accept-Encoding")).accepts("gzip")) {
+                response.setHeader("Content-Encoding", "gzip");
+                page = GZIPPED_CHALLENGE_PAGES[difficulty];
+            }
+        }
+
+        response.setContentType("text/html");
+        response.setContentLength(page.length);
+        OutputStream outputStream = response.getOutputStream();
+        outputStream.write(page);
+        outputStream.flush();
     }
 
-    private boolean isResult(String cookie, String halfSecret) {
-        if (StringUtil.isNotEmpty(cookie) && cookie.endsWith("_" + halfSecret)) {
+    static boolean isResult(String cookie, String halfSecret, int difficulty) {
+        if (difficulty > 0 && StringUtil.isNotEmpty(cookie) && cookie.endsWith("_" + halfSecret)) {
             String hash = DigestUtils.sha1Hex(cookie);
-            return hash.startsWith("0000");
+            for (int i = 0; i < difficulty; ++i) {
+                if (hash.charAt(i) != '0') {
+                    return false;
+                }
+            }
+            return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * @return Challenge pages by difficulty, the original script checks four leading zeros.
+     */
+    private static byte[][] getChallengePages() {
+        String script = getObfuscatedJsCode();
+        String check = "](0x0,0x4);if(_0x2a4818===_cs[0x10]+_cs[0x4])";
+        if (script.indexOf(check) < 0 || script.indexOf(check) != script.lastIndexOf(check)) {
+            throw new IllegalStateException("Can't find the check of the solution in the client script.");
+        }
+
+        byte[][] result = new byte[MAX_DIFFICULTY + 1][];
+        for (int difficulty = 1; difficulty <= MAX_DIFFICULTY; ++difficulty) {
+            String challengeScript = difficulty == DEFAULT_DIFFICULTY ? script : script.replace(check,
+                    "](0x0," + difficulty + ");if(_0x2a4818==='" + StringUtils.repeat('0', difficulty) + "')");
+            result[difficulty] = ("<style>\n" +
+                    "p {\n" +
+                    "    height: 100vh;\n" +
+                    "    display: flex;\n" +
+                    "    justify-content: center;\n" +
+                    "    align-items: center;\n" +
+                    "}\n" +
+                    "</style>\n<p>Please wait. Your browser is being checked. It may take a few seconds...</p>\n" +
+                    "<script>\n" + challengeScript + "\n</script>\n").getBytes(StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    private static byte[][] gzip(byte[][] pages) {
+        byte[][] result = new byte[pages.length][];
+        for (int i = 0; i < pages.length; ++i) {
+            if (pages[i] != null) {
+                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+                    gzipOutputStream.write(pages[i]);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Can't gzip challenge page.", e);
+                }
+                result[i] = byteArrayOutputStream.toByteArray();
+            }
+        }
+        return result;
+    }
+
     private synchronized static String nextSecret() {
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < 4; i++) {
@@ -0,0 +1,192 @@
+package org.nocturne.ddos;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Diagnostic record of {@link PowFilter} about one request: the ray id followed by the events with
+ * key=value pairs, like "PowFilter: powRayId=k3x9q0 | request uri=/ ip=1.2.3.4 | challenge difficulty=4".
+ * </p>
+ * <p>
+ * The record is written to log4j in the background thread when the request has been processed, so the
+ * request thread neither formats dates nor waits for the appenders. If the writer falls behind, the records
+ * are dropped (and the number of dropped records is logged), the requests are never blocked.
+ * The writer is started by the first record and stopped by {@link #stop()} (the queued records are written
+ * before it exits), a record after that starts it again.
+ * </p>
+ */
+final class PowFilterLog {
+    private static final Logger logger = Logger.getLogger(PowFilter.class);
+
+    private static final int QUEUE_CAPACITY = 65536;
+
+    private static final BlockingQueue<String> records = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong droppedRecordCount = new AtomicLong();
+
+    /**
+     * Time to wait for the writer to write the queued records on stop.
+     */
+    private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Writer thread or {@code null} if it is not started, changed under the lock on PowFilterLog.class.
+     */
+    private static volatile Thread writer;
+
+    private final StringBuilder record = new StringBuilder(512);
+
+    private PowFilterLog(String rayId) {
+        record.append("PowFilter: powRayId=").append(rayId);
+    }
+
+    /**
+     * @param sampling Part of the requests to log, from 0.0 to 1.0.
+     * @return Record for the request or {@code null} if the request is not sampled.
+     */
+    static PowFilterLog start(double sampling) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sampling < 1.0 && random.nextDouble() >= sampling) {
+            return null;
+        }
+
+        if (writer == null) {
+            startWriter();
+        }
+        return new PowFilterLog(Long.toString(random.nextLong() & Long.MAX_VALUE, 36));
+    }
+
+    /**
+     * @param event     Event name.
+     * @param keyValues Keys and values, alternately.
+     */
+    void add(String event, Object... keyValues) {
+        record.append(" | ").append(event);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            record.append(' ').append(keyValues[i]).append('=');
+            appendValue(keyValues[i + 1]);
+        }
+    }
+
+    private void appendValue(Object value) {
+        String s = String.valueOf(value);
+
+        boolean quote = s.isEmpty();
+        for (int i = 0; i < s.length() && !quote; ++i) {
+            char c = s.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '|';
+        }
+
+        if (quote) {
+            record.append('"');
+            for (int i = 0; i < s.length(); ++i) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    record.append('\\');
+                }
+                record.append(c < ' ' ? ' ' : c);
+            }
+            record.append('"');
+        } else {
+            record.append(s);
+        }
+    }
+
+    /**
+     * Passes the record to the writer.
+     */
+    void finish() {
+        if (!records.offer(record.toString())) {
+            droppedRecordCount.incrementAndGet();
+        }
+    }
+
+    private static synchronized void startWriter() {
+        if (writer == null) {
+            Thread thread = new Thread(PowFilterLog::write, "PowFilterLog");
+            thread.setDaemon(true);
+            thread.start();
+            writer = thread;
+        }
+    }
+
+    /**
+     * Stops the writer thread after it writes the queued records, so the thread doesn't outlive the webapp.
+     */
+    static synchronized void stop() {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+
+        writer = null;
+        thread.interrupt();
+        try {
+            thread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            logger.warn("PowFilter: log writer hasn't stopped in " + STOP_TIMEOUT_MILLIS + " ms.");
+        }
+    }
+
+    private static void write() {
+        try {
+            while (true) {
+                String record;
+                try {
+                    record = records.take();
+                } catch (InterruptedException ignored) {
+                    List<String> remainingRecords = new ArrayList<>();
+                    records.drainTo(remainingRecords);
+                    for (String remainingRecord : remainingRecords) {
+                        writeRecord(remainingRecord);
+                    }
+                    return;
+                }
+
+                writeRecord(record);
+            }
+        } finally {
+            // The thread may die of an error, the next record starts new one.
+            if (writer == Thread.currentThread()) {
+                clearWriter(Thread.currentThread());
+            }
+        }
+    }
+
+    private static synchronized void clearWriter(Thread thread) {
+        if (writer == thread) {
+            writer = null;
+        }
+    }
+
+    /**
+     * Failure of the appenders drops the record, the writer keeps working.
+     */
+    private static void writeRecord(String record) {
+        try {
+            logger.info(record);
+        } catch (RuntimeException ignored) {
+            droppedRecordCount.incrementAndGet();
+        }
+
+        long droppedCount = droppedRecordCount.getAndSet(0);
+        if (droppedCount > 0) {
+            try {
+                logger.warn("PowFilter: " + droppedCount + " log records have been dropped.");
+            } catch (RuntimeException ignored) {
+                droppedRecordCount.addAndGet(droppedCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.nocturne.ddos;
+
+import org.apache.commons.codec.binary.Hex;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * <p>
+ * Signed tokens of {@link PowFilter} in stateless mode, they are checked without session or any other
+ * server state. Time is split into periods, each period has its own key derived from the secret
+ * (HMAC-SHA256 of the period number), so the signing key rotates every period and the servers which share
+ * the secret accept the tokens of each other.
+ * </p>
+ * <p>
+ * Challenge is the difficulty (hex digit) followed by the signature of the difficulty and the request
+ * fingerprint with the key of the current period, it is accepted in the current and the previous periods. Pass token contains the period it was issued in and is accepted
+ * during the given number of periods.
+ * </p>
+ */
+@ThreadSafe
+final class PowTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Length of the challenge, the client script uses first 20 characters of the cookie.
+     */
+    static final int CHALLENGE_LENGTH = 20;
+
+    private static final String PASS_TOKEN_PREFIX = "p";
+    private static final int PASS_TOKEN_SIGNATURE_LENGTH = 32;
+
+    /**
+     * Pass tokens are accepted during at most this number of periods, the keys of all of them are kept.
+     */
+    private static final long MAX_PASS_TOKEN_PERIODS = 65536;
+
+    private static final ThreadLocal<MacCache> macCaches = ThreadLocal.withInitial(MacCache::new);
+
+    private final SecretKeySpec secretKey;
+    private final long periodMillis;
+    private final long passTokenPeriods;
+
+    /**
+     * Keys of the periods in which pass tokens are accepted (at least the current and the previous ones),
+     * replaced when the period changes.
+     */
+    private volatile PeriodKeys periodKeys;
+
+    /**
+     * @param secret           Secret, the same for all the servers which should accept the tokens of each other.
+     * @param periodMillis     Key rotation period.
+     * @param passTokenMillis  Pass token lifetime.
+     */
+    PowTokens(byte[] secret, long periodMillis, long passTokenMillis) {
+        if (periodMillis <= 0 || passTokenMillis <= 0) {
+            throw new IllegalArgumentException("Period and pass token lifetime should be positive.");
+        }
+        if (passTokenMillis / periodMillis >= MAX_PASS_TOKEN_PERIODS) {
+            throw new IllegalArgumentException("Pass token lifetime should be less than "
+                    + MAX_PASS_TOKEN_PERIODS + " periods.");
+        }
+
+        this.secretKey = new SecretKeySpec(secret, ALGORITHM);
+        this.periodMillis = periodMillis;
+        this.passTokenPeriods = Math.max(1, (passTokenMillis + periodMillis - 1) / periodMillis);
+    }
+
+    /**
+     * @param fingerprint   Request fingerprint.
+     * @param difficulty    Number of leading hex zeros in the hash of the solution, from 1 to 15.
+     * @param currentMillis Current time.
+     * @return Challenge for the client.
+     */
+    String getChallenge(String fingerprint, int difficulty, long currentMillis) {
+        return getChallenge(getPeriodKeys(currentMillis).get(0), fingerprint, Character.forDigit(difficulty, 16));
+    }
+
+    /**
+     * @param challenge     Challenge of the client.
+     * @param fingerprint   Request fingerprint.
+     * @param currentMillis Current time.
+     * @return Difficulty of the challenge or -1 if it has not been issued for the fingerprint in the current
+     * or the previous period.
+     */
+    int getChallengeDifficulty(String challenge, String fingerprint, long currentMillis) {
+        if (challenge.length() != CHALLENGE_LENGTH) {
+            return -1;
+        }
+
+        char difficulty = challenge.charAt(0);
+        PeriodKeys keys = getPeriodKeys(currentMillis);
+        if (isEqual(challenge, getChallenge(keys.get(0), fingerprint, difficulty))
+                || isEqual(challenge, getChallenge(keys.get(1), fingerprint, difficulty))) {
+            return Character.digit(difficulty, 16);
+        }
+        return -1;
+    }
+
+    private static String getChallenge(SecretKeySpec key, String fingerprint, char difficulty) {
+        return difficulty + sign(key, "c" + difficulty + fingerprint, CHALLENGE_LENGTH - 1);
+    }
+
+    /**
+     * @param fingerprint   Request fingerprint.
+     * @param currentMillis Current time.
+     * @return Token for the client which has solved the challenge.
+     */
+    String newPassToken(String fingerprint, long currentMillis) {
+        PeriodKeys keys = getPeriodKeys(currentMillis);
+        return PASS_TOKEN_PREFIX + Long.toString(keys.period, 36) + '_'
+                + sign(keys.get(0), "p" + fingerprint, PASS_TOKEN_SIGNATURE_LENGTH);
+    }
+
+    /**
+     * @param token         Token of the client.
+     * @param fingerprint   Request fingerprint.
+     * @param currentMillis Current time.
+     * @return {@code true} iff the token has been issued for the fingerprint and has not expired.
+     */
+    boolean isPassToken(String token, String fingerprint, long currentMillis) {
+        int separatorIndex = token.indexOf('_');
+        if (!token.startsWith(PASS_TOKEN_PREFIX) || separatorIndex < 0
+                || token.length() - separatorIndex - 1 != PASS_TOKEN_SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        long period;
+        try {
+            period = Long.parseLong(token.substring(PASS_TOKEN_PREFIX.length(), separatorIndex), 36);
+        } catch (NumberFormatException ignored) {
+            return false;
+        }
+
+        // The period is compared with the bounds, the difference of the periods may overflow.
+        PeriodKeys keys = getPeriodKeys(currentMillis);
+        if (period > keys.period || period < keys.period - passTokenPeriods + 1) {
+            return false;
+        }
+
+        SecretKeySpec key = keys.get((int) (keys.period - period));
+        return isEqual(token.substring(separatorIndex + 1), sign(key, "p" + fingerprint, PASS_TOKEN_SIGNATURE_LENGTH));
+    }
+
+    private PeriodKeys getPeriodKeys(long currentMillis) {
+        long period = Math.floorDiv(currentMillis, periodMillis);
+
+        PeriodKeys keys = periodKeys;
+        if (keys == null || keys.period != period) {
+            // The keys of the periods which are still accepted are taken from the previous instance.
+            SecretKeySpec[] periodKeyArray = new SecretKeySpec[(int) Math.max(2, passTokenPeriods)];
+            for (int i = 0; i < periodKeyArray.length; ++i) {
+                long keyPeriod = period - i;
+                periodKeyArray[i] = keys != null && keyPeriod <= keys.period && keyPeriod > keys.period - periodKeyArray.length
+                        ? keys.get((int) (keys.period - keyPeriod)) : deriveKey(keyPeriod);
+            }
+            keys = new PeriodKeys(period, periodKeyArray);
+            periodKeys = keys;
+        }
+
+        return keys;
+    }
+
+    private SecretKeySpec deriveKey(long period) {
+        return new SecretKeySpec(hmac(secretKey, "period" + period), ALGORITHM);
+    }
+
+    private static String sign(SecretKeySpec key, String data, int length) {
+        return Hex.encodeHexString(hmac(key, data)).substring(0, length);
+    }
+
+    private static byte[] hmac(SecretKeySpec key, String data) {
+        return macCaches.get().getMac(key).doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isEqual(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.US_ASCII), b.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Initialized instances of {@link Mac} of the thread for the recently used keys, least recently used
+     * is replaced: pass tokens of the older periods don't evict the keys of the current and the previous periods
+     * which are used by most requests.
+     */
+    private static final class MacCache {
+        private static final int SIZE = 4;
+
+        /**
+         * Most recently used first.
+         */
+        private final SecretKeySpec[] keys = new SecretKeySpec[SIZE];
+        private final Mac[] macs = new Mac[SIZE];
+
+        private Mac getMac(SecretKeySpec key) {
+            int index = 0;
+            while (index < SIZE - 1 && keys[index] != key) {
+                ++index;
+            }
+
+            Mac mac = macs[index];
+            if (keys[index] != key) {
+                try {
+                    if (mac == null) {
+                        mac = Mac.getInstance(ALGORITHM);
+                    }
+                    mac.init(key);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Can't initialize " + ALGORITHM + '.', e);
+                }
+            }
+
+            System.arraycopy(keys, 0, keys, 1, index);
+            System.arraycopy(macs, 0, macs, 1, index);
+            keys[0] = key;
+            macs[0] = mac;
+            return mac;
+        }
+    }
+
+    private static final class PeriodKeys {
+        private final long period;
+
+        /**
+         * Key of the period {@code period - i} at index {@code i}.
+         */
+        private final SecretKeySpec[] keys;
+
+        private PeriodKeys(long period, SecretKeySpec[] keys) {
+            this.period = period;
+            this.keys = keys;
+        }
+
+        private SecretKeySpec get(int periodsAgo) {
+            return keys[periodsAgo];
+        }
+    }
+}
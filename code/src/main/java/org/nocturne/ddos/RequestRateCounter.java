@@ -0,0 +1,187 @@
+package org.nocturne.ddos;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Request rates per key (like request fingerprint) in the sliding window, the memory doesn't depend
+ * on the number of keys. Counts are kept in count-min sketch: a key has one counter in each row,
+ * the estimation is the minimal of them, so it may only exceed the real count because of collisions.
+ * Only the minimal counters are incremented (conservative update), it makes the excess much smaller.
+ * Increments of the same key are serialized, the minimal counters are chosen by the snapshot and incremented
+ * unconditionally, so concurrent increments may be over-counted but never lost.
+ * </p>
+ * <p>
+ * The window is approximated with two sketches: the current period and the previous one, the latter is
+ * weighted by the part of it which is still in the window.
+ * </p>
+ */
+@ThreadSafe
+public final class RequestRateCounter {
+    private static final int DEPTH = 4;
+    private static final int LOCK_COUNT = 64;
+
+    /**
+     * Seeded to make collisions unpredictable for the clients.
+     */
+    private final HashFunction hashFunction = Hashing.murmur3_128(new SecureRandom().nextInt());
+
+    /**
+     * Increments of the keys with the same hash are made under the same lock.
+     */
+    private final Object[] locks = new Object[LOCK_COUNT];
+
+    private final long windowMillis;
+    private final int widthMask;
+
+    private volatile Period current;
+    private volatile Period previous;
+
+    /**
+     * @param windowMillis Window length.
+     * @param width        Number of counters in a row, it is rounded up to a power of 2.
+     */
+    public RequestRateCounter(long windowMillis, int width) {
+        if (windowMillis <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Window and width should be positive.");
+        }
+
+        this.windowMillis = windowMillis;
+        int roundedWidth = Integer.highestOneBit(width) == width ? width : Integer.highestOneBit(width) << 1;
+        this.widthMask = roundedWidth - 1;
+
+        for (int i = 0; i < LOCK_COUNT; ++i) {
+            locks[i] = new Object();
+        }
+
+        long index = Math.floorDiv(System.currentTimeMillis(), windowMillis);
+        previous = new Period(index - 1, roundedWidth);
+        current = new Period(index, roundedWidth);
+    }
+
+    /**
+     * Counts request by the key.
+     *
+     * @param key Key, like request fingerprint.
+     */
+    public void increment(String key) {
+        increment(key, System.currentTimeMillis());
+    }
+
+    void increment(String key, long currentTimeMillis) {
+        long hash = hashFunction.hashString(key, StandardCharsets.UTF_8).asLong();
+        Period period = getCurrentPeriod(currentTimeMillis);
+
+        period.total.incrementAndGet();
+
+        int[] indices = new int[DEPTH];
+        int[] counts = new int[DEPTH];
+        synchronized (locks[(int) (hash >>> 32) & (LOCK_COUNT - 1)]) {
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH; ++row) {
+                indices[row] = getIndex(hash, row);
+                counts[row] = period.counts.get(indices[row]);
+                min = Math.min(min, counts[row]);
+            }
+
+            for (int row = 0; row < DEPTH; ++row) {
+                if (counts[row] == min) {
+                    period.counts.incrementAndGet(indices[row]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param key Key, like request fingerprint.
+     * @return Estimated number of requests by the key per second in the window.
+     */
+    public double getRate(String key) {
+        return getRate(key, System.currentTimeMillis());
+    }
+
+    double getRate(String key, long currentTimeMillis) {
+        long hash = hashFunction.hashString(key, StandardCharsets.UTF_8).asLong();
+        Period period = getCurrentPeriod(currentTimeMillis);
+        Period previousPeriod = previous;
+
+        double previousWeight = getPreviousWeight(period, currentTimeMillis);
+        double result = Double.MAX_VALUE;
+        for (int row = 0; row < DEPTH; ++row) {
+            int index = getIndex(hash, row);
+            double count = period.counts.get(index);
+            if (previousPeriod.index == period.index - 1) {
+                count += previousPeriod.counts.get(index) * previousWeight;
+            }
+            result = Math.min(result, count);
+        }
+
+        return result * 1000.0 / windowMillis;
+    }
+
+    /**
+     * @return Number of all the requests per second in the window.
+     */
+    public double getTotalRate() {
+        return getTotalRate(System.currentTimeMillis());
+    }
+
+    double getTotalRate(long currentTimeMillis) {
+        Period period = getCurrentPeriod(currentTimeMillis);
+        Period previousPeriod = previous;
+
+        double count = period.total.get();
+        if (previousPeriod.index == period.index - 1) {
+            count += previousPeriod.total.get() * getPreviousWeight(period, currentTimeMillis);
+        }
+
+        return count * 1000.0 / windowMillis;
+    }
+
+    private double getPreviousWeight(Period period, long currentTimeMillis) {
+        double elapsed = (currentTimeMillis - period.index * windowMillis) / (double) windowMillis;
+        return Math.max(0.0, 1.0 - elapsed);
+    }
+
+    private int getIndex(long hash, int row) {
+        // Kirsch-Mitzenmacher: row hashes are combinations of two halves of the hash.
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return (row * (widthMask + 1)) + (combined & widthMask);
+    }
+
+    private Period getCurrentPeriod(long currentTimeMillis) {
+        long index = Math.floorDiv(currentTimeMillis, windowMillis);
+        Period period = current;
+
+        if (period.index < index) {
+            synchronized (this) {
+                period = current;
+                if (period.index < index) {
+                    previous = period.index == index - 1 ? period : new Period(index - 1, widthMask + 1);
+                    period = new Period(index, widthMask + 1);
+                    current = period;
+                }
+            }
+        }
+
+        return period;
+    }
+
+    private static final class Period {
+        private final long index;
+        private final AtomicIntegerArray counts;
+        private final AtomicLong total = new AtomicLong();
+
+        private Period(long index, int width) {
+            this.index = index;
+            this.counts = new AtomicIntegerArray(DEPTH * width);
+        }
+    }
+}
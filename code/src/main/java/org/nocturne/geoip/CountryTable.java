@@ -0,0 +1,348 @@
+package org.nocturne.geoip;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Ints;
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.DatabaseRecord;
+import com.maxmind.db.InvalidNetworkException;
+import com.maxmind.db.Network;
+import com.maxmind.db.Networks;
+import com.maxmind.db.Reader;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.*;
+
+/**
+ * <p>
+ * Country codes by ip-address ranges, built once from GeoLite2-Country database. The networks of the
+ * database are merged into sorted range bounds (adjacent networks of the same country make one range),
+ * so the lookup is a binary search over a primitive array.
+ * </p>
+ * <p>
+ * Results for IPv4 addresses are cached per /24 block if the whole block belongs to the same range.
+ * The cache is a fixed-size array, the entries are replaced without locking.
+ * </p>
+ *
+ * @author Mike Mirzayanov (mirzayanovmr@gmail.com)
+ */
+@ThreadSafe
+final class CountryTable {
+    /**
+     * Index of the country for the addresses which are absent in the database.
+     */
+    private static final short UNKNOWN = -1;
+
+    /**
+     * Number of the cached /24 blocks, power of 2.
+     */
+    private static final int IPV4_BLOCK_CACHE_SIZE = 1 << 14;
+
+    private static final CountryTable EMPTY = new Builder().build();
+
+    private final String[] countryCodes;
+
+    /**
+     * Lower bounds of IPv4 ranges, sign bit is flipped to compare unsigned values as ints.
+     */
+    private final int[] ipv4Bounds;
+    private final short[] ipv4Countries;
+
+    private final long[] ipv6HighBounds;
+    private final long[] ipv6LowBounds;
+    private final short[] ipv6Countries;
+
+    private final Ipv4Block[] ipv4BlockCache = new Ipv4Block[IPV4_BLOCK_CACHE_SIZE];
+
+    private CountryTable(String[] countryCodes, Bounds ipv4, Bounds ipv6) {
+        this.countryCodes = countryCodes;
+
+        ipv4Bounds = new int[ipv4.size];
+        for (int i = 0; i < ipv4.size; ++i) {
+            ipv4Bounds[i] = (int) ipv4.lows[i] ^ Integer.MIN_VALUE;
+        }
+        ipv4Countries = Arrays.copyOf(ipv4.countries, ipv4.size);
+
+        ipv6HighBounds = Arrays.copyOf(ipv6.highs, ipv6.size);
+        ipv6LowBounds = Arrays.copyOf(ipv6.lows, ipv6.size);
+        ipv6Countries = Arrays.copyOf(ipv6.countries, ipv6.size);
+    }
+
+    /**
+     * @return Table without ranges, it finds nothing.
+     */
+    static CountryTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Reads all the networks of the database, the stream is not closed.
+     *
+     * @param inputStream Stream of GeoLite2-Country (or GeoIP2-Country) database.
+     * @return Table of the database.
+     * @throws IOException if the database can't be read.
+     */
+    @SuppressWarnings("rawtypes")
+    static CountryTable read(InputStream inputStream) throws IOException {
+        Builder builder = new Builder();
+
+        try (Reader reader = new Reader(inputStream, new CHMCache())) {
+            Networks<Map> networks = reader.networks(false, Map.class);
+            while (networks.hasNext()) {
+                DatabaseRecord<Map> record = networks.next();
+                Network network = record.getNetwork();
+                builder.add(network.getNetworkAddress(), network.getPrefixLength(), getIsoCode(record.getData()));
+            }
+        } catch (InvalidNetworkException | RuntimeException e) {
+            throw new IOException("Can't read networks of GeoIP database.", e);
+        }
+
+        return builder.build();
+    }
+
+    @Nullable
+    private static String getIsoCode(@Nullable Map<?, ?> data) {
+        Object country = data == null ? null : data.get("country");
+        Object isoCode = country instanceof Map ? ((Map<?, ?>) country).get("iso_code") : null;
+        return isoCode instanceof String ? (String) isoCode : null;
+    }
+
+    /**
+     * @param address Ip-address.
+     * @return The ISO two-letter country code or {@code null} if not found.
+     */
+    @Nullable
+    String getCountryCode(InetAddress address) {
+        if (address instanceof Inet6Address) {
+            Inet6Address inet6Address = (Inet6Address) address;
+            if (InetAddresses.hasEmbeddedIPv4ClientAddress(inet6Address)) {
+                return getIpv4CountryCode(InetAddresses.getEmbeddedIPv4ClientAddress(inet6Address));
+            }
+            return getIpv6CountryCode(inet6Address);
+        }
+
+        return getIpv4CountryCode((Inet4Address) address);
+    }
+
+    @Nullable
+    private String getIpv4CountryCode(Inet4Address address) {
+        int ip = Ints.fromByteArray(address.getAddress());
+        int block = ip >>> 8;
+        int slot = (block ^ (block >>> 14)) & (IPV4_BLOCK_CACHE_SIZE - 1);
+
+        Ipv4Block cached = ipv4BlockCache[slot];
+        if (cached != null && cached.block == block) {
+            return cached.countryCode;
+        }
+
+        int index = findBound(ipv4Bounds, ip ^ Integer.MIN_VALUE);
+        if (index < 0) {
+            return null;
+        }
+
+        String countryCode = getCountryCode(ipv4Countries[index]);
+
+        // The whole block is in the range?
+        int blockStart = (block << 8) ^ Integer.MIN_VALUE;
+        int blockEnd = (block << 8 | 0xFF) ^ Integer.MIN_VALUE;
+        if (ipv4Bounds[index] <= blockStart && (index + 1 == ipv4Bounds.length || ipv4Bounds[index + 1] > blockEnd)) {
+            ipv4BlockCache[slot] = new Ipv4Block(block, countryCode);
+        }
+
+        return countryCode;
+    }
+
+    @Nullable
+    private String getIpv6CountryCode(Inet6Address address) {
+        byte[] bytes = address.getAddress();
+        long high = toLong(bytes, 0);
+        long low = toLong(bytes, 8);
+
+        // The last bound which is not greater than the address.
+        int left = -1;
+        int right = ipv6HighBounds.length;
+        while (right - left > 1) {
+            int middle = (left + right) >>> 1;
+            if (compare(ipv6HighBounds[middle], ipv6LowBounds[middle], high, low) <= 0) {
+                left = middle;
+            } else {
+                right = middle;
+            }
+        }
+
+        return left < 0 ? null : getCountryCode(ipv6Countries[left]);
+    }
+
+    @Nullable
+    private String getCountryCode(short country) {
+        return country == UNKNOWN ? null : countryCodes[country];
+    }
+
+    /**
+     * @return Index of the last bound which is not greater than the key or -1.
+     */
+    private static int findBound(int[] bounds, int key) {
+        int index = Arrays.binarySearch(bounds, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; ++i) {
+            result = (result << 8) | (bytes[i] & 0xFF);
+        }
+        return result;
+    }
+
+    private static int compare(long high, long low, long otherHigh, long otherLow) {
+        int result = Long.compareUnsigned(high, otherHigh);
+        return result == 0 ? Long.compareUnsigned(low, otherLow) : result;
+    }
+
+    /**
+     * Country of the cached /24 block.
+     */
+    private static final class Ipv4Block {
+        private final int block;
+        private final String countryCode;
+
+        private Ipv4Block(int block, @Nullable String countryCode) {
+            this.block = block;
+            this.countryCode = countryCode;
+        }
+    }
+
+    /**
+     * Sorted range bounds, a range lasts up to the next bound.
+     */
+    private static final class Bounds {
+        private long[] highs = new long[16];
+        private long[] lows = new long[16];
+        private short[] countries = new short[16];
+        private int size;
+
+        private void add(long high, long low, short country) {
+            if (size > 0 && countries[size - 1] == country) {
+                return;
+            }
+
+            if (size == highs.length) {
+                highs = Arrays.copyOf(highs, size * 2);
+                lows = Arrays.copyOf(lows, size * 2);
+                countries = Arrays.copyOf(countries, size * 2);
+            }
+
+            highs[size] = high;
+            lows[size] = low;
+            countries[size] = country;
+            ++size;
+        }
+    }
+
+    /**
+     * Collects networks and makes the table.
+     */
+    static final class Builder {
+        private final Map<String, Short> countryIndices = new HashMap<>();
+        private final List<CountryNetwork> ipv4Networks = new ArrayList<>();
+        private final List<CountryNetwork> ipv6Networks = new ArrayList<>();
+
+        /**
+         * @param address      Network address.
+         * @param prefixLength Network prefix length.
+         * @param countryCode  The ISO two-letter country code of the network or {@code null}.
+         */
+        void add(InetAddress address, int prefixLength, @Nullable String countryCode) {
+            short country = UNKNOWN;
+            if (countryCode != null) {
+                country = countryIndices.computeIfAbsent(countryCode, key -> (short) countryIndices.size());
+            }
+
+            byte[] bytes = address.getAddress();
+            if (bytes.length == 4) {
+                ipv4Networks.add(new CountryNetwork(0, toLong(new byte[]{0, 0, 0, 0, bytes[0], bytes[1], bytes[2], bytes[3]}, 0),
+                        prefixLength + 96, country));
+            } else {
+                ipv6Networks.add(new CountryNetwork(toLong(bytes, 0), toLong(bytes, 8), prefixLength, country));
+            }
+        }
+
+        CountryTable build() {
+            String[] countryCodes = new String[countryIndices.size()];
+            for (Map.Entry<String, Short> entry : countryIndices.entrySet()) {
+                countryCodes[entry.getValue()] = entry.getKey();
+            }
+
+            return new CountryTable(
+                    countryCodes,
+                    toBounds(ipv4Networks, 0, 0xFFFFFFFFL),
+                    toBounds(ipv6Networks, -1L, -1L)
+            );
+        }
+
+        /**
+         * @param networks Networks, they are not expected to overlap.
+         * @param maxHigh  High bits of the maximal address.
+         * @param maxLow   Low bits of the maximal address.
+         * @return Bounds of the ranges which cover all the addresses up to the maximal.
+         */
+        private static Bounds toBounds(List<CountryNetwork> networks, long maxHigh, long maxLow) {
+            networks.sort((a, b) -> compare(a.high, a.low, b.high, b.low));
+
+            Bounds bounds = new Bounds();
+            long nextHigh = 0;
+            long nextLow = 0;
+            boolean end = false;
+
+            for (CountryNetwork network : networks) {
+                if (end || compare(network.high, network.low, nextHigh, nextLow) < 0) {
+                    // Overlapping network, ignore it.
+                    continue;
+                }
+
+                if (compare(network.high, network.low, nextHigh, nextLow) > 0) {
+                    bounds.add(nextHigh, nextLow, UNKNOWN);
+                }
+                bounds.add(network.high, network.low, network.country);
+
+                int hostBits = 128 - network.prefixLength;
+                long highMask = hostBits > 64 ? -1L >>> (128 - hostBits) : 0;
+                long lowMask = hostBits >= 64 ? -1L : hostBits == 0 ? 0 : -1L >>> (64 - hostBits);
+                long lastHigh = network.high | highMask;
+                long lastLow = network.low | lowMask;
+
+                if (lastHigh == maxHigh && lastLow == maxLow) {
+                    end = true;
+                } else {
+                    nextLow = lastLow + 1;
+                    nextHigh = nextLow == 0 ? lastHigh + 1 : lastHigh;
+                }
+            }
+
+            if (!end) {
+                bounds.add(nextHigh, nextLow, UNKNOWN);
+            }
+
+            return bounds;
+        }
+    }
+
+    private static final class CountryNetwork {
+        private final long high;
+        private final long low;
+        private final int prefixLength;
+        private final short country;
+
+        private CountryNetwork(long high, long low, int prefixLength, short country) {
+            this.high = high;
+            this.low = low;
+            this.prefixLength = prefixLength;
+            this.country = country;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.nocturne.geoip;
 
+import com.google.common.net.InetAddresses;
 import com.maxmind.db.CHMCache;
 import com.maxmind.db.Reader;
 import com.maxmind.geoip2.DatabaseReader;
@@ -20,36 +21,54 @@ import java.nio.file.Files;
 import java.util.*;
 
 /**
+ * Detects countries and cities by ip-addresses. Ip-addresses are parsed as literals only,
+ * host names are not resolved. Countries are found in {@link CountryTable} built on the first use
+ * (or by {@link #loadCountries()} on startup), GeoLite2-City database is loaded on the first city lookup.
+ *
  * @author Mike Mirzayanov (mirzayanovmr@gmail.com)
  */
 @SuppressWarnings("WeakerAccess")
 public final class GeoIpUtil {
     private static final Logger logger = Logger.getLogger(GeoIpUtil.class);
 
-    private static final DatabaseReader COUNTRY_DETECTION_SERVICE;
-    private static final DatabaseReader CITY_DETECTION_SERVICE;
+    private static final String UNKNOWN_COUNTRY_CODE = "--";
 
     private GeoIpUtil() {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Builds the country table if it is not built yet, so the first request doesn't wait for it.
+     */
+    public static void loadCountries() {
+        // Reading the field initializes the holder class.
+        Objects.requireNonNull(CountryTableHolder.COUNTRY_TABLE);
+    }
+
     /**
      * @param ip IPv4 or IPv6 ip-address.
      * @return The ISO two-letter country code of country or "--". Example: RU.
      */
     @Nonnull
     public static String getCountryCodeByIp(@Nonnull String ip) {
-        try {
-            return COUNTRY_DETECTION_SERVICE.country(InetAddress.getByName(ip)).getCountry().getIsoCode();
-        } catch (IOException | GeoIp2Exception | RuntimeException ignored) {
-            return "--";
+        InetAddress address = parseIp(ip);
+        if (address == null) {
+            return UNKNOWN_COUNTRY_CODE;
         }
+
+        String countryCode = CountryTableHolder.COUNTRY_TABLE.getCountryCode(address);
+        return countryCode == null ? UNKNOWN_COUNTRY_CODE : countryCode;
     }
 
     @Nullable
     public static String getCityByIp(@Nonnull String ip) {
+        InetAddress address = parseIp(ip);
+        if (address == null || CityDetectionServiceHolder.CITY_DETECTION_SERVICE == null) {
+            return null;
+        }
+
         try {
-            CityResponse cityResponse = CITY_DETECTION_SERVICE.city(InetAddress.getByName(ip));
+            CityResponse cityResponse = CityDetectionServiceHolder.CITY_DETECTION_SERVICE.city(address);
             if (cityResponse.getCity().getName() == null) {
                 return cityResponse.getCountry().getName();
             } else {
@@ -88,37 +107,77 @@ public final class GeoIpUtil {
             return getCountryCodeByIp(ip);
         }
 
-        return "--";
+        return UNKNOWN_COUNTRY_CODE;
     }
 
-    static {
-        String countryResourcePath = "/org/nocturne/geoip2/GeoLite2-Country.mmdb";
+    /**
+     * @param ip IPv4 or IPv6 ip-address.
+     * @return Address or {@code null} if the string is not an ip-address literal, never uses DNS.
+     */
+    @Nullable
+    private static InetAddress parseIp(String ip) {
+        String address = ip.trim();
+        // IPv6 address can be in brackets, like in URLs.
+        if (address.length() > 2 && address.charAt(0) == '[' && address.charAt(address.length() - 1) == ']') {
+            address = address.substring(1, address.length() - 1);
+        }
 
         try {
-            COUNTRY_DETECTION_SERVICE = new DatabaseReader.Builder(GeoIpUtil.class.getResourceAsStream(
-                    countryResourcePath)).withCache(new CHMCache()).fileMode(Reader.FileMode.MEMORY).build();
-        } catch (IOException e) {
-            throw new RuntimeException("Can't read resource '" + countryResourcePath + "'.", e);
+            return InetAddresses.forString(address);
+        } catch (IllegalArgumentException ignored) {
+            return null;
         }
+    }
 
-        DatabaseReader cityDatabaseReader = null;
-        List<String> citiesPaths = Arrays.asList("/srv/app/GeoLite2-City.mmdb", "C:/Temp/GeoLite2-City.mmdb");
-        for (String citiesPath : citiesPaths) {
-            if (cityDatabaseReader == null) {
-                try (InputStream cityInputStream = Files.newInputStream(new File(citiesPath).toPath())) {
-                    cityDatabaseReader = new DatabaseReader.Builder(cityInputStream)
-                            .withCache(new CHMCache()).fileMode(Reader.FileMode.MEMORY).build();
-                    logger.info("GeoLite2-City loaded from '" + citiesPath + "'.");
-                } catch (Exception e) {
-                    logger.info("Can't find \"" + citiesPath + "\".");
+    private static final class CountryTableHolder {
+        private static final CountryTable COUNTRY_TABLE;
+
+        static {
+            String countryResourcePath = "/org/nocturne/geoip2/GeoLite2-Country.mmdb";
+            CountryTable countryTable;
+
+            try (InputStream countryInputStream = GeoIpUtil.class.getResourceAsStream(countryResourcePath)) {
+                if (countryInputStream == null) {
+                    logger.warn("Can't find resource '" + countryResourcePath + "', countries will not be detected.");
+                    countryTable = CountryTable.empty();
+                } else {
+                    long startTimeMillis = System.currentTimeMillis();
+                    countryTable = CountryTable.read(countryInputStream);
+                    logger.info("GeoLite2-Country loaded from '" + countryResourcePath + "' in "
+                            + (System.currentTimeMillis() - startTimeMillis) + " ms.");
                 }
+            } catch (IOException e) {
+                logger.error("Can't read resource '" + countryResourcePath + "', countries will not be detected.", e);
+                countryTable = CountryTable.empty();
             }
-        }
 
-        if (cityDatabaseReader == null) {
-            logger.warn("Can't find GeoLite2-City.mmdb in paths: " + StringUtils.join(citiesPaths, ", ") + ".");
+            COUNTRY_TABLE = countryTable;
         }
+    }
 
-        CITY_DETECTION_SERVICE = cityDatabaseReader;
+    private static final class CityDetectionServiceHolder {
+        private static final DatabaseReader CITY_DETECTION_SERVICE;
+
+        static {
+            DatabaseReader cityDatabaseReader = null;
+            List<String> citiesPaths = Arrays.asList("/srv/app/GeoLite2-City.mmdb", "C:/Temp/GeoLite2-City.mmdb");
+            for (String citiesPath : citiesPaths) {
+                if (cityDatabaseReader == null) {
+                    try (InputStream cityInputStream = Files.newInputStream(new File(citiesPath).toPath())) {
+                        cityDatabaseReader = new DatabaseReader.Builder(cityInputStream)
+                                .withCache(new CHMCache()).fileMode(Reader.FileMode.MEMORY).build();
+                        logger.info("GeoLite2-City loaded from '" + citiesPath + "'.");
+                    } catch (Exception e) {
+                        logger.info("Can't find \"" + citiesPath + "\".");
+                    }
+                }
+            }
+
+            if (cityDatabaseReader == null) {
+                logger.warn("Can't find GeoLite2-City.mmdb in paths: " + StringUtils.join(citiesPaths, ", ") + ".");
+            }
+
+            CITY_DETECTION_SERVICE = cityDatabaseReader;
+        }
     }
 }
@@ -0,0 +1,85 @@
+package org.nocturne.gzip;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed Accept-Encoding header: content codings with their q-values. A coding with q=0 is not acceptable,
+ * "*" matches the codings which are not listed explicitly.
+ */
+public final class AcceptEncoding {
+    private static final AcceptEncoding EMPTY = new AcceptEncoding(Collections.emptyMap());
+
+    private final Map<String, Double> qualityByEncoding;
+
+    private AcceptEncoding(Map<String, Double> qualityByEncoding) {
+        this.qualityByEncoding = qualityByEncoding;
+    }
+
+    /**
+     * @param header Accept-Encoding header of the request, may be {@code null}.
+     * @return Parsed header, it accepts nothing if the header is absent.
+     */
+    public static AcceptEncoding parse(@Nullable String header) {
+        if (header == null || header.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, Double> qualityByEncoding = new HashMap<>();
+        for (String item : header.split(",")) {
+            String[] parts = item.split(";");
+            String encoding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (!encoding.isEmpty()) {
+                qualityByEncoding.put(encoding, parseQuality(parts));
+            }
+        }
+
+        return new AcceptEncoding(qualityByEncoding);
+    }
+
+    /**
+     * @param encoding Content coding, like "gzip".
+     * @return Quality of the coding from 0.0 (not acceptable) to 1.0.
+     */
+    public double getQuality(String encoding) {
+        Double quality = qualityByEncoding.get(encoding.toLowerCase(Locale.ENGLISH));
+        if (quality == null) {
+            quality = qualityByEncoding.get("*");
+        }
+        return quality == null ? 0.0 : quality;
+    }
+
+    /**
+     * @param encoding Content coding, like "gzip".
+     * @return {@code true} iff the coding is acceptable.
+     */
+    public boolean accepts(String encoding) {
+        return getQuality(encoding) > 0.0;
+    }
+
+    /**
+     * @param parts Coding and its parameters.
+     * @return Value of parameter q, 1.0 if absent and 0.0 if malformed.
+     */
+    private static double parseQuality(String[] parts) {
+        for (int i = 1; i < parts.length; ++i) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 1 && Character.toLowerCase(parameter.charAt(0)) == 'q') {
+                int equalsIndex = parameter.indexOf('=');
+                if (equalsIndex < 0 || !parameter.substring(1, equalsIndex).trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    double quality = Double.parseDouble(parameter.substring(equalsIndex + 1).trim());
+                    return quality >= 0.0 && quality <= 1.0 ? quality : 0.0;
+                } catch (NumberFormatException ignored) {
+                    return 0.0;
+                }
+            }
+        }
+        return 1.0;
+    }
+}
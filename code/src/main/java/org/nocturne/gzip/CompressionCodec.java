@@ -0,0 +1,30 @@
+package org.nocturne.gzip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Content coding used by {@link GzipFilter} to compress responses. The filter always has {@link GzipCodec},
+ * other implementations (brotli, zstd) are found with {@link java.util.ServiceLoader}: list them in
+ * META-INF/services/org.nocturne.gzip.CompressionCodec. They are preferred to gzip if a client
+ * accepts them with the same quality.
+ * </p>
+ * <p>
+ * Implementations should be thread-safe, the same instance is used for all the responses.
+ * </p>
+ */
+public interface CompressionCodec {
+    /**
+     * @return Content coding as in Accept-Encoding and Content-Encoding headers, like "gzip" or "br".
+     */
+    String getEncoding();
+
+    /**
+     * @param out Stream to write compressed content into.
+     * @return Stream which compresses written content, {@code flush()} should send all the written content
+     * to {@code out}, {@code close()} should finish the compressed content and close {@code out}.
+     * @throws IOException if the stream can't be created.
+     */
+    OutputStream newOutputStream(OutputStream out) throws IOException;
+}
@@ -0,0 +1,65 @@
+package org.nocturne.gzip;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Set of content types, an item "type/*" matches all the subtypes. Parameters (like charset) are ignored.
+ */
+final class ContentTypes {
+    /**
+     * Content types which are compressed already, compressing them again is a waste of time.
+     */
+    static final ContentTypes DEFAULT_EXCLUDED = parse("image/png, image/jpeg, image/gif, image/webp, image/avif,"
+            + " video/*, audio/*, font/woff, font/woff2, application/font-woff, application/pdf,"
+            + " application/zip, application/gzip, application/x-gzip, application/x-bzip2, application/x-xz,"
+            + " application/x-7z-compressed, application/x-rar-compressed, application/zstd");
+
+    private final Set<String> types;
+    private final Set<String> typesWithAnySubtype;
+
+    private ContentTypes(Set<String> types, Set<String> typesWithAnySubtype) {
+        this.types = types;
+        this.typesWithAnySubtype = typesWithAnySubtype;
+    }
+
+    /**
+     * @param contentTypes Comma-separated content types.
+     * @return Set of the content types.
+     */
+    static ContentTypes parse(String contentTypes) {
+        Set<String> types = new HashSet<>();
+        Set<String> typesWithAnySubtype = new HashSet<>();
+
+        for (String item : contentTypes.split(",")) {
+            String contentType = item.trim().toLowerCase(Locale.ENGLISH);
+            if (contentType.endsWith("/*")) {
+                typesWithAnySubtype.add(contentType.substring(0, contentType.length() - 2));
+            } else if (!contentType.isEmpty()) {
+                types.add(contentType);
+            }
+        }
+
+        return new ContentTypes(types, typesWithAnySubtype);
+    }
+
+    /**
+     * @param contentType Content type, like "text/html; charset=UTF-8".
+     * @return {@code true} iff the content type is in the set.
+     */
+    boolean contains(@Nullable String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+
+        int parametersIndex = contentType.indexOf(';');
+        String mediaType = (parametersIndex >= 0 ? contentType.substring(0, parametersIndex) : contentType)
+                .trim().toLowerCase(Locale.ENGLISH);
+        if (types.contains(mediaType)) {
+            return true;
+        }
+
+        int slashIndex = mediaType.indexOf('/');
+        return slashIndex >= 0 && typesWithAnySubtype.contains(mediaType.substring(0, slashIndex));
+    }
+}
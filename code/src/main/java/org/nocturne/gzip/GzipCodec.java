@@ -0,0 +1,165 @@
+package org.nocturne.gzip;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip content coding. Each thread keeps its {@link Deflater} (with the buffer and the checksum)
+ * and reuses it for the responses, so compression allocates nothing per response.
+ */
+public final class GzipCodec implements CompressionCodec {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Gzip header: magic, deflate method, no flags, no modification time, no extra flags, unknown OS.
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int level;
+
+    /**
+     * Idle compressor of the thread, it is taken out while used.
+     */
+    private final ThreadLocal<Compressor> compressors = new ThreadLocal<>();
+
+    public GzipCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level Compression level, 1 (fastest) to 9 (best compression), or -1 for the default one.
+     */
+    public GzipCodec(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Illegal compression level " + level + '.');
+        }
+        this.level = level;
+    }
+
+    @Override
+    public String getEncoding() {
+        return "gzip";
+    }
+
+    @Override
+    public OutputStream newOutputStream(OutputStream out) throws IOException {
+        Compressor compressor = compressors.get();
+        if (compressor == null) {
+            compressor = new Compressor(level);
+        } else {
+            compressors.remove();
+        }
+
+        return new GzipStream(out, compressor);
+    }
+
+    private static final class Compressor {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Compressor(int level) {
+            deflater = new Deflater(level, true);
+        }
+
+        private void reset() {
+            deflater.reset();
+            crc.reset();
+        }
+    }
+
+    private final class GzipStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] singleByte = new byte[1];
+        private Compressor compressor;
+
+        private GzipStream(OutputStream out, Compressor compressor) throws IOException {
+            this.out = out;
+            this.compressor = compressor;
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByte[0] = (byte) b;
+            write(singleByte, 0, 1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            if (len == 0) {
+                return;
+            }
+
+            compressor.crc.update(b, off, len);
+            Deflater deflater = compressor.deflater;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+
+            // Buffer is filled completely if the deflater may have more output.
+            while (deflate(Deflater.SYNC_FLUSH) == BUFFER_SIZE) {
+                // No operations.
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (compressor == null) {
+                return;
+            }
+
+            try {
+                Deflater deflater = compressor.deflater;
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+
+                writeIntLittleEndian((int) compressor.crc.getValue());
+                writeIntLittleEndian((int) deflater.getBytesRead());
+
+                compressor.reset();
+                compressors.set(compressor);
+            } finally {
+                compressor = null;
+                out.close();
+            }
+        }
+
+        private int deflate(int flush) throws IOException {
+            byte[] buffer = compressor.buffer;
+            int length = compressor.deflater.deflate(buffer, 0, buffer.length, flush);
+            if (length > 0) {
+                out.write(buffer, 0, length);
+            }
+            return length;
+        }
+
+        private void writeIntLittleEndian(int value) throws IOException {
+            byte[] buffer = compressor.buffer;
+            buffer[0] = (byte) value;
+            buffer[1] = (byte) (value >>> 8);
+            buffer[2] = (byte) (value >>> 16);
+            buffer[3] = (byte) (value >>> 24);
+            out.write(buffer, 0, 4);
+        }
+
+        private void ensureOpen() throws IOException {
+            if (compressor == null) {
+                throw new IOException("Stream is closed.");
+            }
+        }
+    }
+}
@@ -8,22 +8,53 @@
  */
 package org.nocturne.gzip;
 
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nullable;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.*;
 
+/**
+ * <p>
+ * Compresses responses with the best content coding accepted by the client (see Accept-Encoding and
+ * its q-values). Gzip is always available, more codings can be plugged in as {@link CompressionCodec}.
+ * </p>
+ * <p>
+ * Init parameters:
+ * <ul>
+ * <li>min-size &mdash; responses shorter than this number of bytes are sent uncompressed, default is
+ * {@value #DEFAULT_MIN_SIZE};</li>
+ * <li>excluded-content-types &mdash; comma-separated content types (like "image/png, video/*") which are
+ * never compressed, by default they are common already compressed formats.</li>
+ * </ul>
+ * </p>
+ */
 public class GzipFilter implements Filter {
+    private static final Logger logger = Logger.getLogger(GzipFilter.class);
+
+    static final int DEFAULT_MIN_SIZE = 1024;
+
+    private int minSize = DEFAULT_MIN_SIZE;
+    private ContentTypes excludedContentTypes = ContentTypes.DEFAULT_EXCLUDED;
+
+    /**
+     * Codecs in the order of preference.
+     */
+    private List<CompressionCodec> codecs = Collections.singletonList(new GzipCodec());
+
     @Override
     public void doFilter(ServletRequest req, ServletResponse res,
                          FilterChain chain) throws IOException, ServletException {
         if (req instanceof HttpServletRequest) {
             HttpServletRequest request = (HttpServletRequest) req;
             HttpServletResponse response = (HttpServletResponse) res;
-            String ae = request.getHeader("accept-encoding");
-            if (ae != null && ae.indexOf("gzip") != -1) {
+            CompressionCodec codec = selectCodec(request.getHeader("Accept-Encoding"));
+            if (codec != null) {
                 GzipResponseWrapper wrappedResponse =
-                        new GzipResponseWrapper(response);
+                        new GzipResponseWrapper(response, codec, minSize, excludedContentTypes);
                 chain.doFilter(req, wrappedResponse);
                 wrappedResponse.finishResponse();
                 return;
@@ -32,9 +63,59 @@ public class GzipFilter implements Filter {
         }
     }
 
+    /**
+     * @param acceptEncoding Accept-Encoding header of the request.
+     * @return The codec with the highest quality for the client, the first one in {@link #codecs} among
+     * equal qualities, or {@code null} if the client accepts none of them.
+     */
+    @Nullable
+    CompressionCodec selectCodec(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+
+        AcceptEncoding parsedAcceptEncoding = AcceptEncoding.parse(acceptEncoding);
+        CompressionCodec result = null;
+        double resultQuality = 0.0;
+
+        for (CompressionCodec codec : codecs) {
+            double quality = parsedAcceptEncoding.getQuality(codec.getEncoding());
+            if (quality > resultQuality) {
+                result = codec;
+                resultQuality = quality;
+            }
+        }
+
+        return result;
+    }
+
     @Override
-    public void init(FilterConfig filterConfig) {
-        // noop
+    public void init(FilterConfig filterConfig) throws ServletException {
+        String minSizeParameter = filterConfig.getInitParameter("min-size");
+        if (minSizeParameter != null) {
+            try {
+                minSize = Integer.parseInt(minSizeParameter.trim());
+            } catch (NumberFormatException e) {
+                minSize = -1;
+            }
+            if (minSize < 0) {
+                logger.error("Init parameter min-size of GzipFilter should be a non-negative integer.");
+                throw new ServletException("Init parameter min-size of GzipFilter should be a non-negative integer.");
+            }
+        }
+
+        String excludedContentTypesParameter = filterConfig.getInitParameter("excluded-content-types");
+        if (excludedContentTypesParameter != null) {
+            excludedContentTypes = ContentTypes.parse(excludedContentTypesParameter);
+        }
+
+        List<CompressionCodec> loadedCodecs = new ArrayList<>();
+        for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class)) {
+            logger.info("GzipFilter uses content coding " + codec.getEncoding() + '.');
+            loadedCodecs.add(codec);
+        }
+        loadedCodecs.add(new GzipCodec());
+        codecs = loadedCodecs;
     }
 
     @Override
@@ -4,24 +4,58 @@ import javax.annotation.Nonnull;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPOutputStream;
-
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Compresses the response while it is written. The first {@code minSize} bytes are kept in the buffer:
+ * if the whole response fits into it, the response is sent as is with Content-Length. Otherwise the stream
+ * decides once whether to compress (the content type is not already compressed and the response has no
+ * Content-Encoding) and streams the content to the client, the container uses chunked transfer encoding.
+ * </p>
+ * <p>
+ * {@link #flush()} does nothing until the decision is made, after that it sends all the written content.
+ * </p>
+ */
 public class GzipResponseStream extends ServletOutputStream {
-    private final ByteArrayOutputStream baos;
-    private final GZIPOutputStream gzipStream;
-    private boolean closed;
     private final HttpServletResponse response;
-    private final ServletOutputStream output;
+    private final CompressionCodec codec;
+    private final ContentTypes excludedContentTypes;
+
+    /**
+     * Content before the decision.
+     */
+    private byte[] buffer;
+    private int bufferSize;
+
+    /**
+     * Output stream of the response, {@code null} before the decision.
+     */
+    private ServletOutputStream output;
+
+    /**
+     * The output or compressing stream over it, {@code null} before the decision.
+     */
+    private OutputStream out;
+
+    /**
+     * Content length set by the application, it is used only if the content is not compressed.
+     */
+    private long contentLength = -1;
+
+    private boolean closed;
 
-    public GzipResponseStream(HttpServletResponse response) throws IOException {
-        super();
-        closed = false;
+    public GzipResponseStream(HttpServletResponse response) {
+        this(response, new GzipCodec(), GzipFilter.DEFAULT_MIN_SIZE, ContentTypes.DEFAULT_EXCLUDED);
+    }
+
+    GzipResponseStream(HttpServletResponse response, CompressionCodec codec, int minSize,
+                       ContentTypes excludedContentTypes) {
         this.response = response;
-        this.output = response.getOutputStream();
-        baos = new ByteArrayOutputStream();
-        gzipStream = new GZIPOutputStream(baos);
+        this.codec = codec;
+        this.excludedContentTypes = excludedContentTypes;
+        this.buffer = new byte[minSize];
     }
 
     @Override
@@ -29,18 +63,22 @@ public class GzipResponseStream extends ServletOutputStream {
         if (closed) {
             throw new IOException("This output stream has already been closed");
         }
+        closed = true;
 
-        gzipStream.finish();
-        byte[] bytes = baos.toByteArray();
-
-        response.addHeader("Content-Length", Integer.toString(bytes.length));
-        response.addHeader("Content-Encoding", "gzip");
-
-        output.write(bytes);
-        output.flush();
-        output.close();
+        if (out == null) {
+            // Small response, send it as is. The length set by the application is kept for HEAD requests.
+            if (bufferSize > 0) {
+                response.setContentLength(bufferSize);
+            } else if (contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+            output = response.getOutputStream();
+            out = output;
+            out.write(buffer, 0, bufferSize);
+            buffer = null;
+        }
 
-        closed = true;
+        out.close();
     }
 
     @Override
@@ -49,7 +87,9 @@ public class GzipResponseStream extends ServletOutputStream {
             throw new IOException("Cannot flush a closed output stream");
         }
 
-        gzipStream.flush();
+        if (out != null) {
+            out.flush();
+        }
     }
 
     @Override
@@ -58,7 +98,15 @@ public class GzipResponseStream extends ServletOutputStream {
             throw new IOException("Cannot write to a closed output stream");
         }
 
-        gzipStream.write(b);
+        if (out == null) {
+            if (bufferSize < buffer.length) {
+                buffer[bufferSize++] = (byte) b;
+                return;
+            }
+            startOutput();
+        }
+
+        out.write(b);
     }
 
     @Override
@@ -72,16 +120,72 @@ public class GzipResponseStream extends ServletOutputStream {
             throw new IOException("Cannot write to a closed output stream");
         }
 
-        gzipStream.write(b, off, len);
+        if (out == null) {
+            if (bufferSize + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, bufferSize, len);
+                bufferSize += len;
+                return;
+            }
+            startOutput();
+        }
+
+        out.write(b, off, len);
+    }
+
+    /**
+     * Drops the content which has not been sent yet.
+     *
+     * @return {@code true} iff the content has been dropped, it is not possible after the decision.
+     */
+    boolean resetBuffer() {
+        if (out == null) {
+            bufferSize = 0;
+            return true;
+        }
+        return false;
+    }
+
+    void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Chooses compression or not and writes the buffered content.
+     */
+    private void startOutput() throws IOException {
+        if (isCompressible()) {
+            response.setHeader("Content-Encoding", codec.getEncoding());
+            response.addHeader("Vary", "Accept-Encoding");
+            output = response.getOutputStream();
+            out = codec.newOutputStream(output);
+        } else {
+            if (contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+            output = response.getOutputStream();
+            out = output;
+        }
+
+        out.write(buffer, 0, bufferSize);
+        buffer = null;
+    }
+
+    private boolean isCompressible() {
+        return !response.containsHeader("Content-Encoding")
+                && !excludedContentTypes.contains(response.getContentType());
     }
 
     @Override
     public boolean isReady() {
-        return output.isReady();
+        return output == null || output.isReady();
     }
 
     @Override
     public void setWriteListener(WriteListener writeListener) {
-        output.setWriteListener(writeListener);
+        try {
+            response.getOutputStream().setWriteListener(writeListener);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't get output stream of the response.", e);
+        }
     }
 }
@@ -9,13 +9,32 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 
 public class GzipResponseWrapper extends HttpServletResponseWrapper {
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
     protected HttpServletResponse response;
     protected ServletOutputStream stream;
     protected PrintWriter writer;
 
+    private final CompressionCodec codec;
+    private final int minSize;
+    private final ContentTypes excludedContentTypes;
+
+    /**
+     * Content length set by the application before the stream has been created.
+     */
+    private long contentLength = -1;
+
     public GzipResponseWrapper(HttpServletResponse response) {
+        this(response, new GzipCodec(), GzipFilter.DEFAULT_MIN_SIZE, ContentTypes.DEFAULT_EXCLUDED);
+    }
+
+    GzipResponseWrapper(HttpServletResponse response, CompressionCodec codec, int minSize,
+                        ContentTypes excludedContentTypes) {
         super(response);
         this.response = response;
+        this.codec = codec;
+        this.minSize = minSize;
+        this.excludedContentTypes = excludedContentTypes;
     }
 
     public void finishResponse() throws IOException {
@@ -24,17 +43,52 @@ public class GzipResponseWrapper extends HttpServletResponseWrapper {
         } else {
             if (stream != null) {
                 stream.close();
+            } else if (contentLength >= 0) {
+                // No content has been written (like HEAD request), the length set by the application is sent.
+                response.setContentLengthLong(contentLength);
             }
         }
     }
 
-    private ServletOutputStream createOutputStream() throws IOException {
-        return new GzipResponseStream(response);
+    private ServletOutputStream createOutputStream() {
+        GzipResponseStream result = new GzipResponseStream(response, codec, minSize, excludedContentTypes);
+        result.setContentLength(contentLength);
+        return result;
     }
 
     @Override
     public void flushBuffer() throws IOException {
-        stream.flush();
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        resetStreamBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        contentLength = -1;
+        resetStreamBuffer();
+    }
+
+    private void resetStreamBuffer() {
+        if (stream instanceof GzipResponseStream) {
+            if (writer != null) {
+                // Drops the content buffered in the writer by pushing it to the stream first.
+                writer.flush();
+            }
+            if (!((GzipResponseStream) stream).resetBuffer()) {
+                throw new IllegalStateException("Response has already been committed.");
+            }
+            ((GzipResponseStream) stream).setContentLength(-1);
+        }
     }
 
     @Override
@@ -65,8 +119,66 @@ public class GzipResponseWrapper extends HttpServletResponseWrapper {
         return writer;
     }
 
+    /**
+     * The length is sent only if the content is not compressed.
+     */
     @Override
     public void setContentLength(int length) {
-        // No operations.
+        setContentLengthLong(length);
+    }
+
+    /**
+     * The length is sent only if the content is not compressed.
+     */
+    @Override
+    public void setContentLengthLong(long length) {
+        contentLength = length;
+        if (stream instanceof GzipResponseStream) {
+            ((GzipResponseStream) stream).setContentLength(length);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            setContentLengthHeader(value);
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            setContentLengthHeader(value);
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    private void setContentLengthHeader(String value) {
+        try {
+            setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+        } catch (NumberFormatException ignored) {
+            setContentLengthLong(-1);
+        }
     }
 }
@@ -7,7 +7,6 @@ import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateSequenceModel;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.nocturne.annotation.Name;
 import org.nocturne.collection.SingleEntryList;
 import org.nocturne.exception.ConfigurationException;
@@ -25,7 +24,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -47,9 +45,18 @@ public class Links {
 
     private static final Lock addLinkLock = new ReentrantLock();
 
-    private static final int INTERCEPTOR_MAX_PERMIT_COUNT = 8 * Runtime.getRuntime().availableProcessors();
-    private static final Semaphore interceptorSemaphore = new Semaphore(INTERCEPTOR_MAX_PERMIT_COUNT);
-    private static final Map<String, Interceptor> interceptorByNameMap = new LinkedHashMap<>();
+    /**
+     * getLink() with at most this number of parameters doesn't build the parameters map.
+     */
+    private static final int MAX_PARAMETER_PAIR_COUNT = 3;
+
+    private static final Lock interceptorLock = new ReentrantLock();
+
+    /**
+     * Interceptors by names. The map is never modified after publication, addInterceptor()
+     * and removeInterceptor() replace it by a modified copy.
+     */
+    private static volatile Map<String, Interceptor> interceptorByNameMap = Collections.emptyMap();
 
 
     /**
@@ -68,6 +75,18 @@ public class Links {
      */
     private static final ConcurrentMap<String, List<LinkSection>> sectionsByLinkText = new ConcurrentHashMap<>();
 
+    /**
+     * Immutable routing tree over all the registered link patterns. It is rebuilt
+     * (copy-on-write) by add(), so match() reads it without any locks.
+     */
+    private static volatile RoutingNode routingTree = new RoutingNode();
+
+    /**
+     * Compiled link generation plans by page classes. Lazily filled by getLinkByMap(),
+     * replaced by an empty map on each add().
+     */
+    private static volatile ConcurrentMap<Class<? extends Page>, PagePlan> pagePlansByClass = new ConcurrentHashMap<>();
+
     private static List<Link> getLinksViaReflection(Class<? extends Page> clazz) {
         List<Link> result = new ArrayList<>();
         Link link = clazz.getAnnotation(Link.class);
@@ -170,11 +189,62 @@ public class Links {
             }
 
             linksByPage.put(clazz, links);
+
+            routingTree = buildRoutingTree();
+            pagePlansByClass = new ConcurrentHashMap<>();
         } finally {
             addLinkLock.unlock();
         }
     }
 
+    /**
+     * Builds routing tree. Each route gets rank equal to its position in the order
+     * the patterns were scanned by the linear matching, so the tree keeps the same priority
+     * if several patterns match a link.
+     *
+     * @return New routing tree.
+     */
+    private static RoutingNode buildRoutingTree() {
+        RoutingNode root = new RoutingNode();
+        int rank = 0;
+
+        for (Map.Entry<Class<? extends Page>, Map<String, Link>> listEntry : linksByPage.entrySet()) {
+            Map<String, Link> patterns = listEntry.getValue();
+            if (patterns == null) {
+                continue;
+            }
+
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (patterns) {
+                for (Map.Entry<String, Link> patternEntry : patterns.entrySet()) {
+                    String linkText = patternEntry.getKey();
+                    Route route = new Route(listEntry.getKey(), linkText, patternEntry.getValue(), rank++);
+
+                    RoutingNode node = root;
+                    node.updateMinRank(route.rank);
+
+                    for (LinkSection section : sectionsByLinkText.get(linkText)) {
+                        node = node.getOrCreateChild(section);
+                        node.updateMinRank(route.rank);
+                    }
+
+                    if (node.route == null || node.route.rank > route.rank) {
+                        node.route = route;
+                    }
+                }
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * @return All the page classes added into Links.
+     */
+    public static Collection<Class<? extends Page>> getPageClasses() {
+        return Collections.unmodifiableCollection(new ArrayList<>(classesByName.values()));
+    }
+
     /**
      * @param clazz Page class to be added into Links.
      *              After it you can get it's link via getLink, or using @link directive
@@ -198,43 +268,25 @@ public class Links {
      * @return link for page. If there many links for page, returns one of them, which matches better
      * @throws NoSuchLinkException if no such link exists
      */
-    @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
     public static String getLinkByMap(Class<? extends Page> clazz, @Nullable String linkName, Map<String, ?> params) {
-        MutableBoolean multiValueParams = new MutableBoolean();
-        Map<String, List<String>> nonEmptyParams = getNonEmptyParams(params, multiValueParams);
+        PagePlan pagePlan = getPagePlan(clazz);
+        long presentParameterMask = pagePlan.getPresentParameterMask(params);
+        boolean anyLinkName = linkName == null || linkName.isEmpty();
 
-        int bestMatchedCount = -1;
-        List<LinkSection> bestMatchedLinkSections = null;
-        Link bestMatchedLink = null;
+        LinkPlan bestMatchedPlan = null;
 
-        for (Map.Entry<String, Link> entry : getLinksByPageClass(clazz).entrySet()) {
-            if (linkName != null && !linkName.isEmpty() && !linkName.equals(entry.getValue().name())) {
+        for (LinkPlan plan : pagePlan.linkPlans) {
+            if (!anyLinkName && !linkName.equals(plan.link.name())) {
                 continue;
             }
 
-            List<LinkSection> sections = sectionsByLinkText.get(entry.getKey());
-            boolean matched = true;
-            int matchedCount = 0;
-            for (LinkSection section : sections) {
-                if (section.isParameter()) {
-                    ++matchedCount;
-                    List<String> values = nonEmptyParams.get(section.getParameterName());
-                    String value = values == null ? null : values.get(0);
-                    if (value == null || !section.isSuitable(value)) {
-                        matched = false;
-                        break;
-                    }
-                }
-            }
-            if (matched && matchedCount > bestMatchedCount) {
-                bestMatchedCount = matchedCount;
-                bestMatchedLinkSections = sections;
-                bestMatchedLink = entry.getValue();
+            if (plan.isCandidate(presentParameterMask, bestMatchedPlan) && plan.isMatched(params)) {
+                bestMatchedPlan = plan;
             }
         }
 
-        if (bestMatchedLinkSections == null) {
-            if (linkName == null || linkName.isEmpty()) {
+        if (bestMatchedPlan == null) {
+            if (anyLinkName) {
                 throw new NoSuchLinkException("Can't find link for page " + clazz.getName() + '.');
             } else {
                 throw new NoSuchLinkException("Can't find link with name '"
@@ -242,154 +294,211 @@ public class Links {
             }
         }
 
-        StringBuilder result = new StringBuilder(ApplicationContext.getInstance().getContextPath());
-        Set<String> usedKeys = new HashSet<>();
+        String linkResult = bestMatchedPlan.generate(ApplicationContext.getInstance().getContextPath(), params);
+        return postprocess(linkResult, bestMatchedPlan, clazz, linkName, params);
+    }
 
-        for (LinkSection section : bestMatchedLinkSections) {
-            String item;
+    /**
+     * The same as {@link #getLinkByMap(Class, String, Map)} with any link name, but the parameters
+     * are read from the array of distinct string keys and values, so no map is built unless there are interceptors.
+     *
+     * @param clazz Page class.
+     * @param pairs Keys and values, alternately, see {@link #isParameterPairs(Object...)}.
+     * @return link for page.
+     * @throws NoSuchLinkException if no such link exists
+     */
+    private static String getLinkByPairs(Class<? extends Page> clazz, Object[] pairs) {
+        PagePlan pagePlan = getPagePlan(clazz);
+        long presentParameterMask = pagePlan.getPresentParameterMask(pairs);
 
-            if (section.isParameter()) {
-                usedKeys.add(section.getParameterName());
-                item = nonEmptyParams.get(section.getParameterName()).get(0);
-            } else {
-                item = section.getValue();
-            }
+        LinkPlan bestMatchedPlan = null;
 
-            result.append('/').append(item);
+        for (LinkPlan plan : pagePlan.linkPlans) {
+            if (plan.isCandidate(presentParameterMask, bestMatchedPlan) && plan.isMatched(pairs)) {
+                bestMatchedPlan = plan;
+            }
         }
 
-        if (nonEmptyParams.size() > usedKeys.size() || multiValueParams.isTrue()) {
-            boolean first = true;
-            for (Map.Entry<String, List<String>> entry : nonEmptyParams.entrySet()) {
-                List<String> values = entry.getValue();
-                int valueCount = values.size();
-                int startIndex = valueCount;
-
-                if (usedKeys.contains(entry.getKey())) {
-                    if (valueCount > 1) {
-                        startIndex = 1;
-                    }
-                } else {
-                    startIndex = 0;
-                }
+        if (bestMatchedPlan == null) {
+            throw new NoSuchLinkException("Can't find link for page " + clazz.getName() + '.');
+        }
 
-                for (int i = startIndex; i < valueCount; ++i) {
-                    if (first) {
-                        result.append('?');
-                        first = false;
-                    } else {
-                        result.append('&');
-                    }
+        String linkResult = bestMatchedPlan.generate(ApplicationContext.getInstance().getContextPath(), pairs);
 
-                    try {
-                        result.append(entry.getKey()).append('=').append(URLEncoder.encode(values.get(i), StandardCharsets.UTF_8.name()));
-                    } catch (UnsupportedEncodingException e) {
-                        // No operations.
-                    }
-                }
-            }
+        if (interceptorByNameMap.isEmpty()) {
+            return linkResult;
+        } else {
+            return postprocess(linkResult, bestMatchedPlan, clazz, null, convertArrayToMap(pairs));
         }
+    }
 
-        String linkResult = result.toString();
-
-        interceptorSemaphore.acquireUninterruptibly();
-        try {
-            for (Map.Entry<String, Interceptor> e : interceptorByNameMap.entrySet()) {
-                boolean skip = false;
-                for (String skipInterceptor : bestMatchedLink.skipInterceptors()) {
-                    if (skipInterceptor.equals(e.getKey())) {
-                        skip = true;
-                        break;
-                    }
-                }
-                if (!skip) {
+    private static String postprocess(String linkResult, LinkPlan plan, Class<? extends Page> clazz,
+                                      @Nullable String linkName, Map<String, ?> params) {
+        Map<String, Interceptor> interceptors = interceptorByNameMap;
+        if (!interceptors.isEmpty()) {
+            for (Map.Entry<String, Interceptor> e : interceptors.entrySet()) {
+                if (!plan.skipInterceptors.contains(e.getKey())) {
                     linkResult = e.getValue().postprocess(linkResult, clazz, linkName, params);
                 }
             }
-        } finally {
-            interceptorSemaphore.release();
         }
 
         return linkResult;
     }
 
-    private static Map<String, List<String>> getNonEmptyParams(Map<String, ?> params, MutableBoolean multiValueParams) {
-        multiValueParams.setValue(false);
-        Map<String, List<String>> nonEmptyParams = new LinkedHashMap<>();
-
-        for (Map.Entry<String, ?> entry : params.entrySet()) {
-            Object value = entry.getValue();
-            if (!isMissingValue(value)) {
-                List<String> list = toStringList(value);
-                int count = list.size();
+    private static PagePlan getPagePlan(Class<? extends Page> clazz) {
+        ConcurrentMap<Class<? extends Page>, PagePlan> plans = pagePlansByClass;
+        PagePlan pagePlan = plans.get(clazz);
 
-                if (count > 0) {
-                    nonEmptyParams.put(entry.getKey(), list);
+        if (pagePlan == null) {
+            Map<String, Link> links = getLinksByPageClass(clazz);
+            if (links == null) {
+                throw new NoSuchLinkException("Can't find link for page " + clazz.getName() + '.');
+            }
 
-                    if (count > 1) {
-                        multiValueParams.setValue(true);
-                    }
-                }
+            pagePlan = new PagePlan(links);
+            PagePlan previousPagePlan = plans.putIfAbsent(clazz, pagePlan);
+            if (previousPagePlan != null) {
+                pagePlan = previousPagePlan;
             }
         }
 
-        return nonEmptyParams;
+        return pagePlan;
     }
 
-    @Nonnull
-    private static List<String> toStringList(@Nonnull Object value) {
+    /**
+     * @param value Parameter value: scalar, array, collection or Freemarker sequence.
+     * @return The first non-null item of the value as a string or {@code null} if the value is missing.
+     * Scalar value is missing if it is {@code null} or its string representation is empty.
+     */
+    @Nullable
+    private static String getFirstValue(@Nullable Object value) {
+        if (value == null) {
+            return null;
+        }
+
         if (value instanceof TemplateSequenceModel) {
-            return toStringList((TemplateSequenceModel) value);
+            TemplateSequenceModel sequence = (TemplateSequenceModel) value;
+            int count = getSize(sequence);
+            for (int i = 0; i < count; ++i) {
+                TemplateModel item = getItem(sequence, i);
+                if (item != null) {
+                    return item.toString();
+                }
+            }
+            return null;
         } else if (value instanceof Collection) {
-            return toStringList((Collection) value);
+            for (Object item : (Collection<?>) value) {
+                if (item != null) {
+                    return item.toString();
+                }
+            }
+            return null;
         } else if (value.getClass().isArray()) {
             int count = Array.getLength(value);
-            List<String> list = new ArrayList<>(count);
-
             for (int i = 0; i < count; ++i) {
                 Object item = Array.get(value, i);
                 if (item != null) {
-                    list.add(item.toString());
+                    return item.toString();
                 }
             }
-
-            return list;
+            return null;
         } else {
-            return new SingleEntryList<>(value.toString());
+            String result = value.toString();
+            return result.isEmpty() ? null : result;
         }
     }
 
-    private static List<String> toStringList(@Nonnull TemplateSequenceModel sequence) {
-        int count = getSize(sequence);
-        List<String> list = new ArrayList<>(count);
-
-        for (int i = 0; i < count; ++i) {
-            TemplateModel item;
-            try {
-                item = sequence.get(i);
-            } catch (TemplateModelException e) {
-                logger.error("Can't get item of Freemarker sequence.", e);
-                throw new NocturneException("Can't get item of Freemarker sequence.", e);
-            }
+    /**
+     * Appends "key=value" pairs to the query string for all non-null items of the value.
+     *
+     * @param result     Link to append to.
+     * @param pathLength Length of the link without query string.
+     * @param key        Parameter name.
+     * @param value      Parameter value: scalar, array, collection or Freemarker sequence.
+     * @param skipFirst  Skip the first non-null item, because it has been used in the link path.
+     */
+    private static void appendQueryValues(StringBuilder result, int pathLength, String key, @Nullable Object value,
+                                          boolean skipFirst) {
+        if (value == null) {
+            return;
+        }
 
-            if (item != null) {
-                list.add(item.toString());
+        if (value instanceof TemplateSequenceModel) {
+            TemplateSequenceModel sequence = (TemplateSequenceModel) value;
+            int count = getSize(sequence);
+            for (int i = 0; i < count; ++i) {
+                TemplateModel item = getItem(sequence, i);
+                if (item != null) {
+                    if (skipFirst) {
+                        skipFirst = false;
+                    } else {
+                        appendQueryValue(result, pathLength, key, item.toString());
+                    }
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                if (item != null) {
+                    if (skipFirst) {
+                        skipFirst = false;
+                    } else {
+                        appendQueryValue(result, pathLength, key, item.toString());
+                    }
+                }
+            }
+        } else if (value.getClass().isArray()) {
+            int count = Array.getLength(value);
+            for (int i = 0; i < count; ++i) {
+                Object item = Array.get(value, i);
+                if (item != null) {
+                    if (skipFirst) {
+                        skipFirst = false;
+                    } else {
+                        appendQueryValue(result, pathLength, key, item.toString());
+                    }
+                }
+            }
+        } else if (!skipFirst) {
+            String item = value.toString();
+            if (!item.isEmpty()) {
+                appendQueryValue(result, pathLength, key, item);
             }
         }
-
-        return list;
     }
 
-    private static List<String> toStringList(@Nonnull Collection collection) {
-        List<String> list = new ArrayList<>(collection.size());
+    private static void appendQueryValue(StringBuilder result, int pathLength, String key, String value) {
+        result.append(result.length() == pathLength ? '?' : '&').append(key).append('=');
+
+        if (isUrlSafe(value)) {
+            result.append(value);
+        } else {
+            result.append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+        }
+    }
 
-        for (Object item : collection) {
-            if (item != null) {
-                list.add(item.toString());
+    /**
+     * @param value Value to check.
+     * @return {@code true} iff URLEncoder will return the value unchanged.
+     */
+    private static boolean isUrlSafe(String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '.' || c == '-' || c == '*' || c == '_')) {
+                return false;
             }
         }
+        return true;
+    }
 
-        return list;
+    private static TemplateModel getItem(@Nonnull TemplateSequenceModel sequence, int index) {
+        try {
+            return sequence.get(index);
+        } catch (TemplateModelException e) {
+            logger.error("Can't get item of Freemarker sequence.", e);
+            throw new NocturneException("Can't get item of Freemarker sequence.", e);
+        }
     }
 
     private static int getSize(@Nonnull TemplateSequenceModel sequence) {
@@ -445,22 +554,6 @@ public class Links {
         return getLinkByMap(name, null, params);
     }
 
-    private static boolean isMissingValue(Object value) {
-        if (value == null) {
-            return true;
-        }
-
-        if (value instanceof TemplateSequenceModel) {
-            return getSize((TemplateSequenceModel) value) <= 0;
-        } else if (value instanceof Collection) {
-            return ((Collection) value).isEmpty();
-        } else if (value.getClass().isArray()) {
-            return Array.getLength(value) <= 0;
-        } else {
-            return value.toString().isEmpty();
-        }
-    }
-
     /**
      * @param params Array of values.
      * @return Correspondent map.
@@ -486,6 +579,46 @@ public class Links {
         return map;
     }
 
+    /**
+     * @param params Keys and values, alternately.
+     * @return {@code true} iff there are at most {@link #MAX_PARAMETER_PAIR_COUNT} pairs with distinct string keys,
+     * so the link can be generated without building the map.
+     */
+    private static boolean isParameterPairs(Object... params) {
+        int paramCount = params.length;
+        if (paramCount % 2 != 0 || paramCount > 2 * MAX_PARAMETER_PAIR_COUNT) {
+            return false;
+        }
+
+        for (int i = 0; i < paramCount; i += 2) {
+            if (!(params[i] instanceof String)) {
+                return false;
+            }
+            for (int j = 0; j < i; j += 2) {
+                if (params[i].equals(params[j])) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param pairs Keys and values, alternately.
+     * @param key   Parameter name.
+     * @return Value of the parameter or {@code null} if absent.
+     */
+    @Nullable
+    private static Object getPairValue(Object[] pairs, String key) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (key.equals(pairs[i])) {
+                return pairs[i + 1];
+            }
+        }
+        return null;
+    }
+
     /**
      * @param pageClass Page class.
      * @return link for page. If there many links for page, returns one of them, which matches better
@@ -504,6 +637,9 @@ public class Links {
      * @throws NoSuchLinkException if no such link exists
      */
     public static String getLink(Class<? extends Page> pageClass, Object... params) {
+        if (isParameterPairs(params)) {
+            return getLinkByPairs(pageClass, params);
+        }
         return getLinkByMap(pageClass, null, convertArrayToMap(params));
     }
 
@@ -516,6 +652,16 @@ public class Links {
      * @throws NoSuchLinkException if no such link exists
      */
     public static String getLink(String name, Object... params) {
+        if (isParameterPairs(params)) {
+            Class<? extends Page> clazz = classesByName.get(name);
+
+            if (clazz == null) {
+                logger.error("Can't find link for page " + name + '.');
+                throw new NoSuchLinkException("Can't find link for page " + name + '.');
+            } else {
+                return getLinkByPairs(clazz, params);
+            }
+        }
         return getLinkByMap(name, null, convertArrayToMap(params));
     }
 
@@ -542,26 +688,54 @@ public class Links {
 
         String[] linkTokens = StringUtil.Patterns.SLASH_PATTERN.split(link.substring(1));
 
-        for (Map.Entry<Class<? extends Page>, Map<String, Link>> listEntry : linksByPage.entrySet()) {
-            Map<String, Link> patterns = listEntry.getValue();
-            if (patterns == null) {
-                continue;
+        Route route = findRoute(routingTree, linkTokens, 0, null);
+        if (route == null) {
+            return null;
+        }
+
+        Map<String, String> attrs = match(linkTokens, route.linkText);
+        if (attrs == null) {
+            logger.error("Routing tree is inconsistent with linkText=\"" + route.linkText + "\".");
+            throw new NocturneException("Routing tree is inconsistent with linkText=\"" + route.linkText + "\".");
+        }
+
+        return new LinkMatchResult(route.pageClass, route.linkText, attrs, route.link);
+    }
+
+    /**
+     * @param node        Current routing tree node.
+     * @param linkTokens  Requested link tokens.
+     * @param tokenIndex  Index of the token to be matched by the children of {@code node}.
+     * @param bestRoute   Best (with minimal rank) route found so far or {@code null}.
+     * @return Matched route with minimal rank or {@code null} if not found.
+     */
+    @Nullable
+    private static Route findRoute(RoutingNode node, String[] linkTokens, int tokenIndex, @Nullable Route bestRoute) {
+        if (bestRoute != null && node.minRank >= bestRoute.rank) {
+            return bestRoute;
+        }
+
+        if (tokenIndex == linkTokens.length) {
+            if (node.route != null && (bestRoute == null || node.route.rank < bestRoute.rank)) {
+                return node.route;
             }
+            return bestRoute;
+        }
 
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (patterns) {
-                for (Map.Entry<String, Link> patternEntry : patterns.entrySet()) {
-                    String linkText = patternEntry.getKey();
-                    Map<String, String> attrs = match(linkTokens, linkText);
+        String linkToken = linkTokens[tokenIndex];
 
-                    if (attrs != null) {
-                        return new LinkMatchResult(listEntry.getKey(), linkText, attrs, patternEntry.getValue());
-                    }
-                }
+        RoutingNode valueChild = node.valueChildren.get(linkToken);
+        if (valueChild != null) {
+            bestRoute = findRoute(valueChild, linkTokens, tokenIndex + 1, bestRoute);
+        }
+
+        for (int i = 0; i < node.parameterSections.size(); ++i) {
+            if (node.parameterSections.get(i).isSuitable(linkToken)) {
+                bestRoute = findRoute(node.parameterChildren.get(i), linkTokens, tokenIndex + 1, bestRoute);
             }
         }
 
-        return null;
+        return bestRoute;
     }
 
     /**
@@ -760,7 +934,9 @@ public class Links {
         }
 
         public boolean isSuitable(String value) {
-            for (ParameterRestriction parameterRestriction : getParameterRestrictions()) {
+            ensureParameterSection("parameterRestrictions");
+
+            for (ParameterRestriction parameterRestriction : parameterRestrictions) {
                 if (!parameterRestriction.isSuitable(value)) {
                     return false;
                 }
@@ -1016,6 +1192,299 @@ public class Links {
         }
     }
 
+    /**
+     * Link generation plans of all the links of a page.
+     */
+    private static final class PagePlan {
+        /**
+         * Plans in the order of links registration, it defines priority among equally good links.
+         */
+        private final List<LinkPlan> linkPlans = new ArrayList<>();
+
+        /**
+         * Distinct parameter names of all the links, index in the array is a bit in the masks.
+         * Contains at most 64 names, the other parameters are not covered by masks.
+         */
+        private final String[] maskedParameterNames;
+        private final Map<String, Integer> bitByParameterName = new HashMap<>();
+
+        private PagePlan(Map<String, Link> links) {
+
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (links) {
+                for (Map.Entry<String, Link> entry : links.entrySet()) {
+                    List<LinkSection> sections = sectionsByLinkText.get(entry.getKey());
+
+                    for (LinkSection section : sections) {
+                        if (section.isParameter() && bitByParameterName.size() < Long.SIZE) {
+                            bitByParameterName.putIfAbsent(section.getParameterName(), bitByParameterName.size());
+                        }
+                    }
+
+                    linkPlans.add(new LinkPlan(entry.getValue(), sections, bitByParameterName));
+                }
+            }
+
+            maskedParameterNames = new String[bitByParameterName.size()];
+            for (Map.Entry<String, Integer> entry : bitByParameterName.entrySet()) {
+                maskedParameterNames[entry.getValue()] = entry.getKey();
+            }
+        }
+
+        /**
+         * @param params Parameters for substitution.
+         * @return Mask of the parameters having non-missing values.
+         */
+        private long getPresentParameterMask(Map<String, ?> params) {
+            if (params.isEmpty()) {
+                return 0L;
+            }
+
+            long mask = 0L;
+            for (int i = 0; i < maskedParameterNames.length; ++i) {
+                if (getFirstValue(params.get(maskedParameterNames[i])) != null) {
+                    mask |= 1L << i;
+                }
+            }
+            return mask;
+        }
+
+        /**
+         * @param pairs Parameters for substitution: distinct keys and values, alternately.
+         * @return Mask of the parameters having non-missing values.
+         */
+        private long getPresentParameterMask(Object[] pairs) {
+            long mask = 0L;
+            for (int i = 0; i < pairs.length; i += 2) {
+                Integer bit = bitByParameterName.get(pairs[i]);
+                if (bit != null && getFirstValue(pairs[i + 1]) != null) {
+                    mask |= 1L << bit;
+                }
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * Compiled link: literal parts between parameter sections are joined with slashes in advance.
+     */
+    private static final class LinkPlan {
+        private final Link link;
+        private final Set<String> skipInterceptors;
+
+        /**
+         * Parameter sections in order of appearance.
+         */
+        private final LinkSection[] parameterSections;
+        private final String[] parameterNames;
+        private final int parameterCount;
+        private final int distinctParameterCount;
+
+        /**
+         * literalParts[i] precedes parameterSections[i], the last item ends the link.
+         */
+        private final String[] literalParts;
+
+        /**
+         * Parameters which should be present to use the link.
+         */
+        private final long requiredParameterMask;
+
+        private LinkPlan(Link link, List<LinkSection> sections, Map<String, Integer> bitByParameterName) {
+            this.link = link;
+            this.skipInterceptors = new HashSet<>(Arrays.asList(link.skipInterceptors()));
+
+            List<LinkSection> parameterSectionList = new ArrayList<>();
+            List<String> literalPartList = new ArrayList<>();
+            StringBuilder literalPart = new StringBuilder();
+            long mask = 0L;
+
+            for (LinkSection section : sections) {
+                literalPart.append('/');
+
+                if (section.isParameter()) {
+                    literalPartList.add(literalPart.toString());
+                    literalPart.setLength(0);
+                    parameterSectionList.add(section);
+
+                    Integer bit = bitByParameterName.get(section.getParameterName());
+                    if (bit != null) {
+                        mask |= 1L << bit;
+                    }
+                } else {
+                    literalPart.append(section.getValue());
+                }
+            }
+            literalPartList.add(literalPart.toString());
+
+            parameterSections = parameterSectionList.toArray(new LinkSection[0]);
+            parameterCount = parameterSections.length;
+            parameterNames = new String[parameterCount];
+            for (int i = 0; i < parameterCount; ++i) {
+                parameterNames[i] = parameterSections[i].getParameterName();
+            }
+            distinctParameterCount = new HashSet<>(Arrays.asList(parameterNames)).size();
+            literalParts = literalPartList.toArray(new String[0]);
+            requiredParameterMask = mask;
+        }
+
+        /**
+         * @param presentParameterMask Mask of the parameters having non-missing values.
+         * @param bestMatchedPlan      Best matched plan so far or {@code null}.
+         * @return {@code false} if the plan can't match or can't be better than {@code bestMatchedPlan}.
+         */
+        private boolean isCandidate(long presentParameterMask, @Nullable LinkPlan bestMatchedPlan) {
+            return (requiredParameterMask & ~presentParameterMask) == 0
+                    && (bestMatchedPlan == null || parameterCount > bestMatchedPlan.parameterCount);
+        }
+
+        private boolean isMatched(Map<String, ?> params) {
+            for (int i = 0; i < parameterCount; ++i) {
+                String value = getFirstValue(params.get(parameterNames[i]));
+                if (value == null || !parameterSections[i].isSuitable(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isMatched(Object[] pairs) {
+            for (int i = 0; i < parameterCount; ++i) {
+                String value = getFirstValue(getPairValue(pairs, parameterNames[i]));
+                if (value == null || !parameterSections[i].isSuitable(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isUsedParameter(String name) {
+            for (int i = 0; i < parameterCount; ++i) {
+                if (parameterNames[i].equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String generate(String contextPath, Map<String, ?> params) {
+            StringBuilder result = new StringBuilder(contextPath.length() + 64);
+            result.append(contextPath);
+
+            for (int i = 0; i < parameterCount; ++i) {
+                result.append(literalParts[i]).append(getFirstValue(params.get(parameterNames[i])));
+            }
+            result.append(literalParts[parameterCount]);
+
+            if (params.size() > distinctParameterCount || hasMultiValueParameters(params)) {
+                int pathLength = result.length();
+                for (Map.Entry<String, ?> entry : params.entrySet()) {
+                    appendQueryValues(result, pathLength, entry.getKey(), entry.getValue(),
+                            isUsedParameter(entry.getKey()));
+                }
+            }
+
+            return result.toString();
+        }
+
+        private String generate(String contextPath, Object[] pairs) {
+            StringBuilder result = new StringBuilder(contextPath.length() + 64);
+            result.append(contextPath);
+
+            for (int i = 0; i < parameterCount; ++i) {
+                result.append(literalParts[i]).append(getFirstValue(getPairValue(pairs, parameterNames[i])));
+            }
+            result.append(literalParts[parameterCount]);
+
+            if (pairs.length / 2 > distinctParameterCount || hasMultiValueParameters(pairs)) {
+                int pathLength = result.length();
+                for (int i = 0; i < pairs.length; i += 2) {
+                    String key = (String) pairs[i];
+                    appendQueryValues(result, pathLength, key, pairs[i + 1], isUsedParameter(key));
+                }
+            }
+
+            return result.toString();
+        }
+
+        private static boolean hasMultiValueParameters(Map<String, ?> params) {
+            for (Object value : params.values()) {
+                if (isMultiValue(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean hasMultiValueParameters(Object[] pairs) {
+            for (int i = 1; i < pairs.length; i += 2) {
+                if (isMultiValue(pairs[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isMultiValue(@Nullable Object value) {
+            return value instanceof TemplateSequenceModel || value instanceof Collection
+                    || (value != null && value.getClass().isArray());
+        }
+    }
+
+    /**
+     * Node of the routing tree. Value sections are looked up by exact token, parameter
+     * sections are checked one by one. Nodes are never modified after the tree is published.
+     */
+    private static final class RoutingNode {
+        private final Map<String, RoutingNode> valueChildren = new HashMap<>();
+        private final List<LinkSection> parameterSections = new ArrayList<>(0);
+        private final List<RoutingNode> parameterChildren = new ArrayList<>(0);
+        private final Map<String, RoutingNode> parameterChildrenBySection = new HashMap<>();
+
+        /**
+         * Route which ends exactly at this node (with minimal rank).
+         */
+        private Route route;
+
+        /**
+         * Minimal rank of the routes in the subtree.
+         */
+        private int minRank = Integer.MAX_VALUE;
+
+        private RoutingNode getOrCreateChild(LinkSection section) {
+            if (section.isParameter()) {
+                RoutingNode child = parameterChildrenBySection.get(section.section);
+                if (child == null) {
+                    child = new RoutingNode();
+                    parameterChildrenBySection.put(section.section, child);
+                    parameterSections.add(section);
+                    parameterChildren.add(child);
+                }
+                return child;
+            } else {
+                return valueChildren.computeIfAbsent(section.getValue(), value -> new RoutingNode());
+            }
+        }
+
+        private void updateMinRank(int rank) {
+            minRank = Math.min(minRank, rank);
+        }
+    }
+
+    private static final class Route {
+        private final Class<? extends Page> pageClass;
+        private final String linkText;
+        private final Link link;
+        private final int rank;
+
+        private Route(Class<? extends Page> pageClass, String linkText, Link link, int rank) {
+            this.pageClass = pageClass;
+            this.linkText = linkText;
+            this.link = link;
+            this.rank = rank;
+        }
+    }
+
     /**
      * Adds interceptor to the Links. Link will be processed by interceptors before return.
      *
@@ -1030,15 +1499,18 @@ public class Links {
             throw new IllegalArgumentException("Argument 'interceptor' is 'null'.");
         }
 
-        interceptorSemaphore.acquireUninterruptibly(INTERCEPTOR_MAX_PERMIT_COUNT);
+        interceptorLock.lock();
         try {
             if (interceptorByNameMap.containsKey(name)) {
                 logger.error("Interceptor with name '" + name + "' already added.");
                 throw new IllegalStateException("Interceptor with name '" + name + "' already added.");
             }
-            interceptorByNameMap.put(name, interceptor);
+
+            Map<String, Interceptor> interceptors = new LinkedHashMap<>(interceptorByNameMap);
+            interceptors.put(name, interceptor);
+            interceptorByNameMap = interceptors;
         } finally {
-            interceptorSemaphore.release(INTERCEPTOR_MAX_PERMIT_COUNT);
+            interceptorLock.unlock();
         }
     }
 
@@ -1050,11 +1522,13 @@ public class Links {
     public static void removeInterceptor(String name) {
         ensureInterceptorName(name);
 
-        interceptorSemaphore.acquireUninterruptibly(INTERCEPTOR_MAX_PERMIT_COUNT);
+        interceptorLock.lock();
         try {
-            interceptorByNameMap.remove(name);
+            Map<String, Interceptor> interceptors = new LinkedHashMap<>(interceptorByNameMap);
+            interceptors.remove(name);
+            interceptorByNameMap = interceptors;
         } finally {
-            interceptorSemaphore.release(INTERCEPTOR_MAX_PERMIT_COUNT);
+            interceptorLock.unlock();
         }
     }
 
@@ -1067,12 +1541,7 @@ public class Links {
     public static boolean hasInterceptor(String name) {
         ensureInterceptorName(name);
 
-        interceptorSemaphore.acquireUninterruptibly(INTERCEPTOR_MAX_PERMIT_COUNT);
-        try {
-            return interceptorByNameMap.containsKey(name);
-        } finally {
-            interceptorSemaphore.release(INTERCEPTOR_MAX_PERMIT_COUNT);
-        }
+        return interceptorByNameMap.containsKey(name);
     }
 
     private static void ensureInterceptorName(String name) {
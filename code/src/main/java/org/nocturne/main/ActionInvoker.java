@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import org.apache.log4j.Logger;
+import org.nocturne.annotation.Action;
+import org.nocturne.exception.NocturneException;
+import org.nocturne.util.RequestUtil;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invokes action, validate or invalid method of the component. The method handle and
+ * the parameter bindings are prepared once per method, methods with up to three
+ * parameters are invoked without allocating an array of arguments.
+ *
+ * @author Mike Mirzayanov
+ */
+final class ActionInvoker {
+    private static final Logger logger = Logger.getLogger(ActionInvoker.class);
+
+    /**
+     * Methods with more parameters are invoked through the spreader.
+     */
+    private static final int MAX_EXACT_ARITY = 3;
+
+    private final Method method;
+    private final Action action;
+    private final ParametersInjector.ArgumentBinding[] argumentBindings;
+
+    /**
+     * Handle of type (Object, Object, ...)Object which takes the component and the arguments,
+     * or (Object, Object[])Object if the method has more than {@link #MAX_EXACT_ARITY} parameters.
+     */
+    private final MethodHandle handle;
+
+    ActionInvoker(Method method, @Nullable Action action) {
+        this.method = method;
+        this.action = action;
+        this.argumentBindings = ParametersInjector.newArgumentBindings(method);
+
+        int arity = argumentBindings.length;
+        try {
+            method.setAccessible(true);
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.genericMethodType(arity + 1));
+            handle = arity > MAX_EXACT_ARITY ? methodHandle.asSpreader(Object[].class, arity) : methodHandle;
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.error("Can't access method " + method.getDeclaringClass().getName() + '#' + method.getName() + '.', e);
+            throw new NocturneException("Can't access method "
+                    + method.getDeclaringClass().getName() + '#' + method.getName() + '.', e);
+        }
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return Annotation of the action method, {@code null} for the default action and validate/invalid methods.
+     */
+    @Nullable
+    Action getAction() {
+        return action;
+    }
+
+    /**
+     * @param component Component to invoke the method of.
+     * @param request   Http request to take the arguments from.
+     * @return Value returned by the method ({@code null} for void methods).
+     * @throws InvocationTargetException If the method throws an exception.
+     */
+    Object invoke(Component component, HttpServletRequest request) throws InvocationTargetException {
+        if (argumentBindings.length == 0) {
+            return invokeExact(component);
+        }
+
+        Map<String, List<String>> overrideParameters = ApplicationContext.getInstance().getRequestOverrideParameters();
+        Map<String, List<String>> requestParameters = RequestUtil.getRequestParams(request);
+
+        switch (argumentBindings.length) {
+            case 1:
+                return invokeExact(component, argumentBindings[0].getValue(request, overrideParameters, requestParameters));
+            case 2:
+                return invokeExact(component, argumentBindings[0].getValue(request, overrideParameters, requestParameters),
+                        argumentBindings[1].getValue(request, overrideParameters, requestParameters));
+            case 3:
+                return invokeExact(component, argumentBindings[0].getValue(request, overrideParameters, requestParameters),
+                        argumentBindings[1].getValue(request, overrideParameters, requestParameters),
+                        argumentBindings[2].getValue(request, overrideParameters, requestParameters));
+            default:
+                Object[] arguments = new Object[argumentBindings.length];
+                for (int i = 0; i < arguments.length; ++i) {
+                    arguments[i] = argumentBindings[i].getValue(request, overrideParameters, requestParameters);
+                }
+                return invokeExact(component, arguments);
+        }
+    }
+
+    private Object invokeExact(Object component) throws InvocationTargetException {
+        try {
+            return handle.invokeExact(component);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private Object invokeExact(Object component, Object argument0) throws InvocationTargetException {
+        try {
+            return handle.invokeExact(component, argument0);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private Object invokeExact(Object component, Object argument0, Object argument1) throws InvocationTargetException {
+        try {
+            return handle.invokeExact(component, argument0, argument1);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private Object invokeExact(Object component, Object argument0, Object argument1, Object argument2)
+            throws InvocationTargetException {
+        try {
+            return handle.invokeExact(component, argument0, argument1, argument2);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private Object invokeExact(Object component, Object[] arguments) throws InvocationTargetException {
+        try {
+            return handle.invokeExact(component, arguments);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+}
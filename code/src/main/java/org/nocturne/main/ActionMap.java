@@ -3,8 +3,6 @@
  */
 package org.nocturne.main;
 
-import net.sf.cglib.reflect.FastClass;
-import net.sf.cglib.reflect.FastMethod;
 import org.nocturne.annotation.Action;
 import org.nocturne.annotation.Invalid;
 import org.nocturne.annotation.Parameter;
@@ -27,17 +25,15 @@ class ActionMap {
     private static final org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger(ActionMap.class);
 
     /* Default action has empty key "". */
-    private final Map<String, ActionMethod> actions = new ConcurrentHashMap<>();
+    private final Map<String, ActionInvoker> actions = new ConcurrentHashMap<>();
 
     /* Default validator has empty key "". */
-    private final Map<String, FastMethod> validators = new ConcurrentHashMap<>();
+    private final Map<String, ActionInvoker> validators = new ConcurrentHashMap<>();
 
     /* Default invalid method has empty key "". */
-    private final Map<String, FastMethod> invalids = new ConcurrentHashMap<>();
+    private final Map<String, ActionInvoker> invalids = new ConcurrentHashMap<>();
 
     ActionMap(Class<? extends Component> pageClass) {
-        FastClass clazz = FastClass.create(pageClass);
-
         List<Method> methods = new ArrayList<>();
         Class<?> auxClass = pageClass;
         while (auxClass != null) {
@@ -46,15 +42,15 @@ class ActionMap {
         }
 
         for (Method method : methods) {
-            processMethod(clazz, method);
+            processMethod(pageClass, method);
         }
 
         for (Method method : methods) {
-            processMethodAsDefault(clazz, method);
+            processMethodAsDefault(pageClass, method);
         }
     }
 
-    private void processMethodAsDefault(FastClass clazz, Method method) {
+    private void processMethodAsDefault(Class<? extends Component> clazz, Method method) {
         if (!actions.containsKey("") && "action".equals(method.getName()) && method.getParameterTypes().length == 0) {
             if (method.getReturnType() != void.class) {
                 logger.error("Default action method [name=" + method.getName() + ", " +
@@ -62,7 +58,7 @@ class ActionMap {
                 throw new ConfigurationException("Default action method [name=" + method.getName() + ", " +
                         "class=" + clazz.getName() + "] should return void.");
             }
-            actions.put("", new ActionMethod(clazz.getMethod(method), method.getAnnotation(Action.class)));
+            actions.put("", new ActionInvoker(method, method.getAnnotation(Action.class)));
         }
 
         if (!validators.containsKey("") && "validate".equals(method.getName()) && method.getParameterTypes().length == 0) {
@@ -72,7 +68,7 @@ class ActionMap {
                 throw new ConfigurationException("Default validation method [name=" + method.getName() + ", " +
                         "class=" + clazz.getName() + "] should return boolean.");
             }
-            validators.put("", clazz.getMethod(method));
+            validators.put("", new ActionInvoker(method, null));
         }
 
         if (!invalids.containsKey("") && "invalid".equals(method.getName()) && method.getParameterTypes().length == 0) {
@@ -82,7 +78,7 @@ class ActionMap {
                 throw new ConfigurationException("Default invalid method [name=" + method.getName() + ", " +
                         "class=" + clazz.getName() + "] should return void.");
             }
-            invalids.put("", clazz.getMethod(method));
+            invalids.put("", new ActionInvoker(method, null));
         }
     }
 
@@ -117,7 +113,7 @@ class ActionMap {
         }
     }
 
-    private void processMethod(FastClass clazz, Method method) {
+    private void processMethod(Class<? extends Component> clazz, Method method) {
         Action action = method.getAnnotation(Action.class);
 
         if (action != null) {
@@ -137,7 +133,7 @@ class ActionMap {
                         "class=" + clazz.getName() + "] should return void.");
             }
 
-            actions.put(action.value(), new ActionMethod(clazz.getMethod(method), action));
+            actions.put(action.value(), new ActionInvoker(method, action));
         }
 
         Validate validate = method.getAnnotation(Validate.class);
@@ -159,7 +155,7 @@ class ActionMap {
                         "class=" + clazz.getName() + "] should return boolean.");
             }
 
-            validators.put(validate.value(), clazz.getMethod(method));
+            validators.put(validate.value(), new ActionInvoker(method, null));
         }
 
         Invalid invalid = method.getAnnotation(Invalid.class);
@@ -181,11 +177,11 @@ class ActionMap {
                         "class=" + clazz.getName() + "] should return void.");
             }
 
-            invalids.put(invalid.value(), clazz.getMethod(method));
+            invalids.put(invalid.value(), new ActionInvoker(method, null));
         }
     }
 
-    ActionMethod getActionMethod(String action) {
+    ActionInvoker getActionInvoker(String action) {
         if (actions.containsKey(action)) {
             return actions.get(action);
         } else {
@@ -193,7 +189,7 @@ class ActionMap {
         }
     }
 
-    FastMethod getValidateMethod(String action) {
+    ActionInvoker getValidateInvoker(String action) {
         if (validators.containsKey(action)) {
             return validators.get(action);
         } else {
@@ -201,29 +197,11 @@ class ActionMap {
         }
     }
 
-    FastMethod getInvalidMethod(String action) {
+    ActionInvoker getInvalidInvoker(String action) {
         if (invalids.containsKey(action)) {
             return invalids.get(action);
         } else {
             return invalids.get("");
         }
     }
-
-    public static final class ActionMethod {
-        private final FastMethod method;
-        private final Action action;
-
-        private ActionMethod(FastMethod method, Action action) {
-            this.method = method;
-            this.action = action;
-        }
-
-        public FastMethod getMethod() {
-            return method;
-        }
-
-        public Action getAction() {
-            return action;
-        }
-    }
 }
@@ -3,7 +3,6 @@
  */
 package org.nocturne.main;
 
-import com.google.common.base.Preconditions;
 import com.google.common.primitives.Ints;
 import com.google.inject.Injector;
 import org.apache.commons.lang3.ArrayUtils;
@@ -17,12 +16,11 @@ import org.nocturne.exception.ReflectionException;
 import org.nocturne.geoip.GeoIpUtil;
 import org.nocturne.link.Link;
 import org.nocturne.module.Module;
+import org.nocturne.pool.TemplateEngineConfigurationPool;
 import org.nocturne.reset.ResetStrategy;
 import org.nocturne.util.ReflectionUtil;
 import org.nocturne.util.RequestUtil;
-import org.nocturne.util.StringUtil;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.ServletContext;
 import javax.servlet.http.Cookie;
@@ -54,8 +52,6 @@ public class ApplicationContext {
      */
     private static final ApplicationContext INSTANCE = new ApplicationContext();
 
-    private static final String[] EMPTY_STRING_ARRAY = new String[0];
-
     /**
      * Lock to perform synchronized operations.
      */
@@ -141,6 +137,11 @@ public class ApplicationContext {
      */
     private ServletContext servletContext;
 
+    /**
+     * Shared template engine configurations of the request dispatcher.
+     */
+    private volatile TemplateEngineConfigurationPool templateEngineConfigurationPool;
+
     /**
      * What page to show if RequestRouter returns {@code null}.
      */
@@ -193,6 +194,11 @@ public class ApplicationContext {
      */
     private Map<String, String> countryToLanguage = new HashMap<>();
 
+    /**
+     * Resolves locales for allowedLanguages and defaultLocale, created on the first request.
+     */
+    private volatile LocaleResolver localeResolver;
+
     /**
      * Default reset strategy for fields of Components: should they be reset after request processing.
      */
@@ -203,6 +209,61 @@ public class ApplicationContext {
      */
     private int templatesUpdateDelay = 60;
 
+    /**
+     * Render page templates straight into the response output stream instead of buffering the whole page.
+     */
+    private boolean streamingRender;
+
+    /**
+     * Maximal number of frames parsed concurrently by Component.parseAsync().
+     */
+    private int asyncFrameThreads = 4 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Default timeout (in milliseconds) to wait for a frame parsed by Component.parseAsync().
+     */
+    private long asyncFrameTimeout = 30000;
+
+    /**
+     * Maximal total length of the results cached by FragmentCacheHandler.
+     */
+    private long fragmentCacheMaxSize = 64L * 1024 * 1024;
+
+    /**
+     * Maximal size of each uploaded file in bytes, negative value means no limit.
+     */
+    private long uploadMaxFileSize = -1;
+
+    /**
+     * Maximal size of the multipart request in bytes, negative value means no limit.
+     */
+    private long uploadMaxRequestSize = -1;
+
+    /**
+     * Uploaded files larger than it (in bytes) are streamed to temporary files.
+     */
+    private int uploadSizeThreshold = 64 * 1024;
+
+    /**
+     * Directory for temporary files of uploads, {@code null} means java.io.tmpdir.
+     */
+    private File uploadDirectory;
+
+    /**
+     * Minimal number of idle page instances in each page pool, they are created on startup.
+     */
+    private int pagePoolMinSize;
+
+    /**
+     * Maximal number of idle page instances in each page pool.
+     */
+    private int pagePoolMaxSize = 12;
+
+    /**
+     * Idle page instances are evicted from page pools after the timeout (in seconds), zero means never.
+     */
+    private int pagePoolIdleTimeout = 600;
+
     /**
      * List of annotation classes to override default strategy, should be used on classes or fields.
      */
@@ -331,6 +392,18 @@ public class ApplicationContext {
         return Collections.unmodifiableList(allowedLanguages);
     }
 
+    /**
+     * @return Resolver for the current allowed languages and default locale.
+     */
+    LocaleResolver getLocaleResolver() {
+        LocaleResolver result = localeResolver;
+        if (result == null) {
+            result = new LocaleResolver(allowedLanguages, defaultLocale);
+            localeResolver = result;
+        }
+        return result;
+    }
+
     /**
      * @return Map to setup language by 2-letter uppercase country code (ISO 3166 code).
      * The property should have a form like: RU,BY:ru;EN,GB,US,CA:en.
@@ -372,6 +445,129 @@ public class ApplicationContext {
         this.templatesUpdateDelay = templatesUpdateDelay;
     }
 
+    /**
+     * @return {@code true} iff page templates are rendered straight into the response output stream
+     * instead of buffering the whole page, see {@link Page#isStreamingRender()}.
+     */
+    public boolean isStreamingRender() {
+        return streamingRender;
+    }
+
+    void setStreamingRender(boolean streamingRender) {
+        this.streamingRender = streamingRender;
+    }
+
+    /**
+     * @return Maximal number of frames parsed concurrently by {@link Component#parseAsync(String, Frame)}.
+     */
+    public int getAsyncFrameThreads() {
+        return asyncFrameThreads;
+    }
+
+    void setAsyncFrameThreads(int asyncFrameThreads) {
+        this.asyncFrameThreads = asyncFrameThreads;
+    }
+
+    /**
+     * @return Default timeout (in milliseconds) to wait for a frame parsed by {@link Component#parseAsync(String, Frame)}.
+     */
+    public long getAsyncFrameTimeout() {
+        return asyncFrameTimeout;
+    }
+
+    void setAsyncFrameTimeout(long asyncFrameTimeout) {
+        this.asyncFrameTimeout = asyncFrameTimeout;
+    }
+
+    /**
+     * @return Maximal total length of the results cached by {@link org.nocturne.cache.FragmentCacheHandler}.
+     */
+    public long getFragmentCacheMaxSize() {
+        return fragmentCacheMaxSize;
+    }
+
+    void setFragmentCacheMaxSize(long fragmentCacheMaxSize) {
+        this.fragmentCacheMaxSize = fragmentCacheMaxSize;
+    }
+
+    /**
+     * @return Maximal size of each uploaded file in bytes, negative value means no limit.
+     */
+    public long getUploadMaxFileSize() {
+        return uploadMaxFileSize;
+    }
+
+    void setUploadMaxFileSize(long uploadMaxFileSize) {
+        this.uploadMaxFileSize = uploadMaxFileSize;
+    }
+
+    /**
+     * @return Maximal size of the multipart request in bytes, negative value means no limit.
+     */
+    public long getUploadMaxRequestSize() {
+        return uploadMaxRequestSize;
+    }
+
+    void setUploadMaxRequestSize(long uploadMaxRequestSize) {
+        this.uploadMaxRequestSize = uploadMaxRequestSize;
+    }
+
+    /**
+     * @return Uploaded files larger than it (in bytes) are streamed to temporary files.
+     */
+    public int getUploadSizeThreshold() {
+        return uploadSizeThreshold;
+    }
+
+    void setUploadSizeThreshold(int uploadSizeThreshold) {
+        this.uploadSizeThreshold = uploadSizeThreshold;
+    }
+
+    /**
+     * @return Directory for temporary files of uploads, {@code null} means java.io.tmpdir.
+     */
+    @Nullable
+    public File getUploadDirectory() {
+        return uploadDirectory;
+    }
+
+    void setUploadDirectory(File uploadDirectory) {
+        this.uploadDirectory = uploadDirectory;
+    }
+
+    /**
+     * @return Minimal number of idle page instances in each page pool, they are created on startup.
+     */
+    public int getPagePoolMinSize() {
+        return pagePoolMinSize;
+    }
+
+    void setPagePoolMinSize(int pagePoolMinSize) {
+        this.pagePoolMinSize = pagePoolMinSize;
+    }
+
+    /**
+     * @return Maximal number of idle page instances in each page pool.
+     */
+    public int getPagePoolMaxSize() {
+        return pagePoolMaxSize;
+    }
+
+    void setPagePoolMaxSize(int pagePoolMaxSize) {
+        this.pagePoolMaxSize = pagePoolMaxSize;
+    }
+
+    /**
+     * @return Idle page instances are evicted from page pools after the timeout (in seconds), zero means never.
+     */
+    public int getPagePoolIdleTimeout() {
+        return pagePoolIdleTimeout;
+    }
+
+    void setPagePoolIdleTimeout(int pagePoolIdleTimeout) {
+        this.pagePoolIdleTimeout = pagePoolIdleTimeout;
+    }
+
     void setUseComponentTemplates(boolean useComponentTemplates) {
         this.useComponentTemplates = useComponentTemplates;
     }
@@ -536,6 +732,7 @@ public class ApplicationContext {
 
     void setDefaultLocale(String defaultLanguage) {
         this.defaultLocale = new Locale(defaultLanguage.toLowerCase());
+        this.localeResolver = null;
     }
 
     void setGuiceModuleClassName(String guiceModuleClassName) {
@@ -622,6 +819,7 @@ public class ApplicationContext {
 
     void setAllowedLanguages(List<String> allowedLanguages) {
         this.allowedLanguages = new ArrayList<>(allowedLanguages);
+        this.localeResolver = null;
     }
 
     void setCountryToLanguage(Map<String, String> countryToLanguage) {
@@ -632,6 +830,10 @@ public class ApplicationContext {
         this.servletContext = servletContext;
     }
 
+    void setTemplateEngineConfigurationPool(TemplateEngineConfigurationPool templateEngineConfigurationPool) {
+        this.templateEngineConfigurationPool = templateEngineConfigurationPool;
+    }
+
     void setDebugCaptionsDir(String debugCaptionsDir) {
         this.debugCaptionsDir = debugCaptionsDir;
     }
@@ -684,6 +886,33 @@ public class ApplicationContext {
         return requestsPerThread.get().getResponse();
     }
 
+    /**
+     * @return Thread-local state of the current thread: current page and component,
+     * request context and reloading class loader.
+     */
+    ThreadContext getThreadContext() {
+        return new ThreadContext(currentPage.get(), currentComponent.get(),
+                requestsPerThread.get(), reloadingClassLoaderPerThread.get());
+    }
+
+    /**
+     * Replaces thread-local state of the current thread. Use it to process the current
+     * request in other thread.
+     *
+     * @param threadContext Thread-local state taken by {@link #getThreadContext()}.
+     * @return Previous thread-local state of the current thread.
+     */
+    ThreadContext setThreadContext(ThreadContext threadContext) {
+        ThreadContext previous = getThreadContext();
+
+        currentPage.set(threadContext.page);
+        currentComponent.set(threadContext.component);
+        requestsPerThread.set(threadContext.requestContext);
+        reloadingClassLoaderPerThread.set(threadContext.reloadingClassLoader);
+
+        return previous;
+    }
+
     void setReloadingClassLoader(ClassLoader loader) {
         if (debug) {
             reloadingClassLoaderPerThread.set(loader);
@@ -774,6 +1003,26 @@ public class ApplicationContext {
         return captions.find(locale, shortcut);
     }
 
+    /**
+     * Reads the captions again (see {@link Captions#reload()}), the pages rendered after that use new values.
+     */
+    public void reloadCaptions() {
+        initializeCaptions();
+        captions.reload();
+    }
+
+    /**
+     * Drops the compiled templates, they will be loaded and preprocessed again on the next use.
+     * Static captions ("{{shortcut}}") are substituted into templates on preprocessing, so
+     * the implementations of {@link Captions} call it on reload.
+     */
+    public void clearTemplateCache() {
+        TemplateEngineConfigurationPool pool = templateEngineConfigurationPool;
+        if (pool != null) {
+            pool.clearTemplateCache();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void initializeCaptions() {
         if (captions != null) {
@@ -882,11 +1131,28 @@ public class ApplicationContext {
         }).start();
     }
 
+    /**
+     * Snapshot of the thread-local state.
+     */
+    static final class ThreadContext {
+        private final Page page;
+        private final Component component;
+        private final RequestContext requestContext;
+        private final ClassLoader reloadingClassLoader;
+
+        private ThreadContext(Page page, Component component, RequestContext requestContext,
+                              ClassLoader reloadingClassLoader) {
+            this.page = page;
+            this.component = component;
+            this.requestContext = requestContext;
+            this.reloadingClassLoader = reloadingClassLoader;
+        }
+    }
+
     /**
      * Stores current request context: request, response and locale.
      */
     private static final class RequestContext {
-        private static final Pattern ACCEPT_LANGUAGE_SPLIT_PATTERN = Pattern.compile("[,;-]");
         private static final String LANGUAGE_COOKIE_NAME = "nocturne.language";
         /**
          * Http servlet request.
@@ -954,6 +1220,7 @@ public class ApplicationContext {
         }
 
         private void setupLocale() {
+            LocaleResolver localeResolver = getInstance().getLocaleResolver();
             Map<String, List<String>> requestMap = RequestUtil.getRequestParams(request);
 
             String lang = RequestUtil.getFirst(requestMap, "lang");
@@ -977,30 +1244,17 @@ public class ApplicationContext {
                 }
 
                 if (isInvalidLanguage(lang)) {
-                    lang = getLanguageByGeoIp();
-                    if (isInvalidLanguage(lang)) {
-                        String[] languages = getAcceptLanguages();
-                        for (String language : languages) {
-                            if (getInstance().getAllowedLanguages().contains(language)
-                                    && !"en".equalsIgnoreCase(language)) {
-                                lang = language;
-                                break;
-                            }
-                        }
+                    LocaleResolver.AcceptLanguage acceptLanguage
+                            = localeResolver.getAcceptLanguage(request.getHeader("Accept-Language"));
 
-                        if (isInvalidLanguage(lang)) {
-                            for (String language : languages) {
-                                if (getInstance().getAllowedLanguages().contains(language)) {
-                                    lang = language;
-                                    break;
-                                }
-                            }
-                        }
+                    lang = getLanguageByGeoIp(localeResolver, acceptLanguage);
+                    if (isInvalidLanguage(lang)) {
+                        lang = acceptLanguage.getPreferredLanguage();
                     }
                 }
-                locale = localeByLanguage(lang);
+                locale = localeResolver.getLocale(lang);
             } else {
-                locale = localeByLanguage(lang);
+                locale = localeResolver.getLocale(lang);
                 request.getSession().setAttribute("nocturne.language", locale.getLanguage());
                 addCookie(LANGUAGE_COOKIE_NAME, lang, TimeUnit.DAYS.toSeconds(30));
             }
@@ -1048,39 +1302,20 @@ public class ApplicationContext {
         }
 
         @Nullable
-        private String getLanguageByGeoIp() {
-            String countryCode = null; // GeoIpUtil.getCountryCode(request);
-            String lang = getInstance().getCountryToLanguage().get(countryCode);
-            String[] languages = getAcceptLanguages();
-
-            if (ArrayUtils.indexOf(languages, lang) >= 0 && getInstance().getAllowedLanguages().contains(lang)) {
-                return lang;
+        private String getLanguageByGeoIp(LocaleResolver localeResolver, LocaleResolver.AcceptLanguage acceptLanguage) {
+            // The language should be both allowed and accepted, so there is nothing to detect.
+            if (getInstance().countryToLanguage.isEmpty() || acceptLanguage.getPreferredLanguage() == null) {
+                return null;
             }
 
-            return null;
-        }
-
-        private String[] getAcceptLanguages() {
-            String header = request.getHeader("Accept-Language");
+            String countryCode = GeoIpUtil.getCountryCode(request);
+            String lang = getInstance().countryToLanguage.get(countryCode);
 
-            if (StringUtil.isEmpty(header)) {
-                return EMPTY_STRING_ARRAY;
-            } else {
-                String[] result = ACCEPT_LANGUAGE_SPLIT_PATTERN.split(header);
-                for (int i = 0; i < result.length; ++i) {
-                    result[i] = result[i].toLowerCase();
-                }
-                return result;
+            if (acceptLanguage.contains(lang) && localeResolver.isAllowedLanguage(lang)) {
+                return lang;
             }
-        }
 
-        @Nonnull
-        private static Locale localeByLanguage(@Nullable String language) {
-            if (getInstance().getAllowedLanguages().contains(language)) {
-                return new Locale(Preconditions.checkNotNull(language));
-            } else {
-                return getInstance().getDefaultLocale();
-            }
+            return null;
         }
 
         private void addOverrideParameter(String name, String value) {
@@ -11,6 +11,7 @@ import org.apache.log4j.Logger;
 import org.nocturne.exception.ConfigurationException;
 import org.nocturne.exception.ModuleInitializationException;
 import org.nocturne.exception.NocturneException;
+import org.nocturne.geoip.GeoIpUtil;
 import org.nocturne.module.Configuration;
 import org.nocturne.module.Module;
 import org.nocturne.prometheus.Prometheus;
@@ -25,6 +26,7 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
@@ -67,6 +69,127 @@ class ApplicationContextLoader {
         setupDefaultPageClassName();
         setupContextPath();
         setupResetProperties();
+        setupPagePool();
+        setupAsyncFrames();
+        setupFragmentCache();
+        setupUploads();
+    }
+
+    private static void setupUploads() {
+        long maxFileSize = getNonNegativeLongProperty("nocturne.upload.max-file-size");
+        if (maxFileSize >= 0) {
+            ApplicationContext.getInstance().setUploadMaxFileSize(maxFileSize);
+        }
+
+        long maxRequestSize = getNonNegativeLongProperty("nocturne.upload.max-request-size");
+        if (maxRequestSize >= 0) {
+            ApplicationContext.getInstance().setUploadMaxRequestSize(maxRequestSize);
+        }
+
+        int sizeThreshold = getNonNegativeIntegerProperty("nocturne.upload.size-threshold");
+        if (sizeThreshold >= 0) {
+            ApplicationContext.getInstance().setUploadSizeThreshold(sizeThreshold);
+        }
+
+        String directory = properties.getProperty("nocturne.upload.directory");
+        if (directory != null && !directory.isEmpty()) {
+            if (!new File(directory).isDirectory()) {
+                logger.error("nocturne.upload.directory property should be a directory.");
+                throw new ConfigurationException("nocturne.upload.directory property should be a directory.");
+            }
+            ApplicationContext.getInstance().setUploadDirectory(new File(directory));
+        }
+    }
+
+    private static void setupFragmentCache() {
+        int maxSize = getNonNegativeIntegerProperty("nocturne.fragment-cache.max-size");
+        if (maxSize >= 0) {
+            ApplicationContext.getInstance().setFragmentCacheMaxSize(maxSize);
+        }
+    }
+
+    private static void setupAsyncFrames() {
+        int threads = getNonNegativeIntegerProperty("nocturne.async-frame-threads");
+        if (threads == 0) {
+            logger.error("Parameter nocturne.async-frame-threads should be positive integer.");
+            throw new ConfigurationException("Parameter nocturne.async-frame-threads should be positive integer.");
+        }
+        if (threads > 0) {
+            ApplicationContext.getInstance().setAsyncFrameThreads(threads);
+        }
+
+        int timeout = getNonNegativeIntegerProperty("nocturne.async-frame-timeout");
+        if (timeout >= 0) {
+            ApplicationContext.getInstance().setAsyncFrameTimeout(timeout);
+        }
+    }
+
+    private static void setupPagePool() {
+        int minSize = getNonNegativeIntegerProperty("nocturne.page-pool.min-size");
+        if (minSize >= 0) {
+            ApplicationContext.getInstance().setPagePoolMinSize(minSize);
+        }
+
+        int maxSize = getNonNegativeIntegerProperty("nocturne.page-pool.max-size");
+        if (maxSize >= 0) {
+            ApplicationContext.getInstance().setPagePoolMaxSize(maxSize);
+        }
+
+        int idleTimeout = getNonNegativeIntegerProperty("nocturne.page-pool.idle-timeout");
+        if (idleTimeout >= 0) {
+            ApplicationContext.getInstance().setPagePoolIdleTimeout(idleTimeout);
+        }
+
+        if (ApplicationContext.getInstance().getPagePoolMinSize() > ApplicationContext.getInstance().getPagePoolMaxSize()) {
+            logger.error("Parameter nocturne.page-pool.min-size should not be greater than nocturne.page-pool.max-size.");
+            throw new ConfigurationException("Parameter nocturne.page-pool.min-size should not be greater than nocturne.page-pool.max-size.");
+        }
+    }
+
+    /**
+     * @param name Property name.
+     * @return Property value or {@code -1} if the property is missing or empty.
+     */
+    private static int getNonNegativeIntegerProperty(String name) {
+        String value = StringUtils.trimToEmpty(properties.getProperty(name));
+        if (value.isEmpty()) {
+            return -1;
+        }
+
+        try {
+            int result = Integer.parseInt(value);
+            if (result < 0) {
+                logger.error("Parameter " + name + " should be non-negative integer.");
+                throw new ConfigurationException("Parameter " + name + " should be non-negative integer.");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            logger.error("Parameter " + name + " should be integer.", e);
+            throw new ConfigurationException("Parameter " + name + " should be integer.", e);
+        }
+    }
+
+    /**
+     * @param name Property name.
+     * @return Property value or {@code -1} if the property is missing or empty.
+     */
+    private static long getNonNegativeLongProperty(String name) {
+        String value = StringUtils.trimToEmpty(properties.getProperty(name));
+        if (value.isEmpty()) {
+            return -1;
+        }
+
+        try {
+            long result = Long.parseLong(value);
+            if (result < 0) {
+                logger.error("Parameter " + name + " should be non-negative integer.");
+                throw new ConfigurationException("Parameter " + name + " should be non-negative integer.");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            logger.error("Parameter " + name + " should be integer.", e);
+            throw new ConfigurationException("Parameter " + name + " should be integer.", e);
+        }
     }
 
     private static void setupResetProperties() {
@@ -159,6 +282,10 @@ class ApplicationContextLoader {
                     }
                 }
                 ApplicationContext.getInstance().setCountryToLanguage(result);
+
+                if (!result.isEmpty()) {
+                    GeoIpUtil.loadCountries();
+                }
             }
         }
     }
@@ -361,6 +488,15 @@ class ApplicationContextLoader {
             }
         }
 
+        if (properties.containsKey("nocturne.streaming-render")) {
+            String streamingRender = StringUtils.trimToEmpty(properties.getProperty("nocturne.streaming-render"));
+            if (!"false".equals(streamingRender) && !"true".equals(streamingRender)) {
+                logger.error("Parameter nocturne.streaming-render expected to be 'false' or 'true'.");
+                throw new ConfigurationException("Parameter nocturne.streaming-render expected to be 'false' or 'true'.");
+            }
+            ApplicationContext.getInstance().setStreamingRender("true".equals(streamingRender));
+        }
+
         if (properties.containsKey("nocturne.use-component-templates")) {
             String useComponentTemplates = properties.getProperty("nocturne.use-component-templates");
             if (!"false".equals(useComponentTemplates) && !"true".equals(useComponentTemplates)) {
@@ -406,9 +542,7 @@ class ApplicationContextLoader {
      */
     private static List<Module> getModulesFromClasspath() {
         List<Module> modules = new ArrayList<>();
-        URLClassLoader loader = (URLClassLoader) ApplicationContext.class.getClassLoader();
-        URL[] classPath = loader.getURLs();
-        for (URL url : classPath) {
+        for (URL url : getClassPath()) {
             if (Module.isModuleUrl(url)) {
                 modules.add(new Module(url));
             }
@@ -416,6 +550,29 @@ class ApplicationContextLoader {
         return modules;
     }
 
+    /**
+     * @return URLs of the web-application class loader or, if it is the application class loader
+     * (no servlet container, Java 9+), the entries of java.class.path.
+     */
+    private static URL[] getClassPath() {
+        ClassLoader loader = ApplicationContext.class.getClassLoader();
+        if (loader instanceof URLClassLoader) {
+            return ((URLClassLoader) loader).getURLs();
+        }
+
+        String[] paths = StringUtils.split(System.getProperty("java.class.path", ""), File.pathSeparatorChar);
+        URL[] classPath = new URL[paths.length];
+        for (int i = 0; i < paths.length; ++i) {
+            try {
+                classPath[i] = new File(paths[i]).toURI().toURL();
+            } catch (MalformedURLException e) {
+                logger.error("Can't convert class path entry '" + paths[i] + "' to URL.", e);
+                throw new ConfigurationException("Can't convert class path entry '" + paths[i] + "' to URL.", e);
+            }
+        }
+        return classPath;
+    }
+
     /**
      * Runs init() method for all modules.
      * Each module should be initialized on the application startup.
@@ -13,6 +13,7 @@ import org.nocturne.util.FileUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -39,9 +40,10 @@ public class ApplicationTemplateLoader implements TemplateLoader {
     private final ApplicationContext applicationContext = ApplicationContext.getInstance();
 
     /**
-     * For debug mode stores loader by loaded object.
+     * For debug mode stores loader by loaded object. Synchronized because the loader
+     * is shared between concurrent requests.
      */
-    private final Map<Object, TemplateLoader> loadersByTemplate = new WeakHashMap<>();
+    private final Map<Object, TemplateLoader> loadersByTemplate = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * Usual file template loader, uses nocturne.templates-path.
@@ -102,16 +104,18 @@ public class ApplicationTemplateLoader implements TemplateLoader {
 
     @Override
     public long getLastModified(Object o) {
-        if (applicationContext.isDebug() && loadersByTemplate.containsKey(o)) {
-            return loadersByTemplate.get(o).getLastModified(o);
+        TemplateLoader loader = applicationContext.isDebug() ? loadersByTemplate.get(o) : null;
+        if (loader != null) {
+            return loader.getLastModified(o);
         }
         return templateLoader.getLastModified(o);
     }
 
     @Override
     public Reader getReader(Object o, String s) throws IOException {
-        if (applicationContext.isDebug() && loadersByTemplate.containsKey(o)) {
-            return loadersByTemplate.get(o).getReader(o, s);
+        TemplateLoader loader = applicationContext.isDebug() ? loadersByTemplate.get(o) : null;
+        if (loader != null) {
+            return loader.getReader(o, s);
         }
 
         return templateLoader.getReader(o, s);
@@ -119,11 +123,10 @@ public class ApplicationTemplateLoader implements TemplateLoader {
 
     @Override
     public void closeTemplateSource(Object o) throws IOException {
-        if (applicationContext.isDebug() && loadersByTemplate.containsKey(o)) {
-            TemplateLoader loader = loadersByTemplate.get(o);
+        if (applicationContext.isDebug()) {
+            TemplateLoader loader = loadersByTemplate.remove(o);
             if (loader != null) {
                 loader.closeTemplateSource(o);
-                loadersByTemplate.remove(o);
             }
         }
 
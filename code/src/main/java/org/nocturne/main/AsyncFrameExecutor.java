@@ -0,0 +1,118 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs frames parsed by {@link Component#parseAsync(String, Frame)}. The number of concurrently
+ * parsed frames is limited by {@link ApplicationContext#getAsyncFrameThreads()}: on Java 21+
+ * each frame is parsed in a new virtual thread, otherwise a fixed thread pool is used.
+ * <p>
+ * The tasks are {@link FutureTask}s: if a task hasn't been started when the component needs
+ * its result (for example, all the threads are busy or the queue is full), the task is run
+ * in the waiting thread. So nested asynchronous frames never deadlock.
+ * <p>
+ * The threads are stopped by {@link #shutdown()} when the webapp is destroyed.
+ *
+ * @author Mike Mirzayanov
+ */
+final class AsyncFrameExecutor {
+    private static final Logger logger = Logger.getLogger(AsyncFrameExecutor.class);
+
+    private static volatile Executor executor;
+
+    /**
+     * Service which runs the threads of the executor. Guarded by AsyncFrameExecutor.class.
+     */
+    private static ExecutorService executorService;
+
+    private AsyncFrameExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param task Task to run. It is not run if the executor is saturated.
+     */
+    static void execute(FutureTask<?> task) {
+        try {
+            getExecutor().execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // The task will be run by the waiting thread.
+        }
+    }
+
+    private static Executor getExecutor() {
+        Executor result = executor;
+
+        if (result == null) {
+            synchronized (AsyncFrameExecutor.class) {
+                result = executor;
+                if (result == null) {
+                    result = newExecutor(ApplicationContext.getInstance().getAsyncFrameThreads());
+                    executor = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Stops the threads: running frames are interrupted, the frames which haven't been started
+     * are run by the waiting threads. The frames submitted after that start a new executor.
+     */
+    static void shutdown() {
+        synchronized (AsyncFrameExecutor.class) {
+            if (executorService != null) {
+                executorService.shutdownNow();
+                executorService = null;
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Creates executor and sets its {@link #executorService}, should be called under the lock.
+     */
+    private static Executor newExecutor(int threadCount) {
+        try {
+            ExecutorService virtualThreadExecutor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Asynchronous frames are parsed in virtual threads [limit=" + threadCount + "].");
+            executorService = virtualThreadExecutor;
+
+            Semaphore semaphore = new Semaphore(threadCount);
+            return task -> virtualThreadExecutor.execute(() -> {
+                if (semaphore.tryAcquire()) {
+                    try {
+                        task.run();
+                    } finally {
+                        semaphore.release();
+                    }
+                }
+            });
+        } catch (ReflectiveOperationException ignored) {
+            // Virtual threads are not supported, use platform threads.
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                threadCount, threadCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threadCount * 16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "nocturne-async-frame-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+        logger.info("Asynchronous frames are parsed in thread pool [threads=" + threadCount + "].");
+        executorService = threadPoolExecutor;
+        return threadPoolExecutor;
+    }
+}
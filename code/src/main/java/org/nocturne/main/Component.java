@@ -11,17 +11,18 @@ import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
-import net.sf.cglib.reflect.FastMethod;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.nocturne.cache.CacheHandler;
+import org.nocturne.cache.FragmentCacheHandler;
 import org.nocturne.caption.CaptionDirective;
 import org.nocturne.collection.SingleEntryList;
 import org.nocturne.exception.*;
 import org.nocturne.link.LinkDirective;
 import org.nocturne.link.Links;
 import org.nocturne.reset.ComponentFieldsResetter;
+import org.nocturne.upload.UploadedFile;
 import org.nocturne.util.ReflectionUtil;
 import org.nocturne.util.RequestUtil;
 import org.nocturne.validation.ValidationException;
@@ -38,8 +39,15 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -71,6 +79,11 @@ public abstract class Component {
      */
     private CacheHandler cacheHandler;
 
+    /**
+     * Is the component class marked with @Cached? If so, FragmentCacheHandler is used by default.
+     */
+    private final boolean cached = FragmentCacheHandler.isCached(getClass());
+
     /**
      * Log4j logger.
      */
@@ -89,12 +102,28 @@ public abstract class Component {
     /**
      * Map to store template variables.
      */
-    private Map<String, Object> templateMap;
+    private final Map<String, Object> templateMap = Collections.synchronizedMap(new HashMap<>());
+
+    /**
+     * Template variables of the component and global variables of the page as FreeMarker data model.
+     */
+    private final TemplateDataModel templateDataModel = new TemplateDataModel();
 
     /**
      * Map to store frame contents after parse().
      */
-    private Map<String, String> frameMap = new HashMap<>(0);
+    private final Map<String, String> frameMap = new HashMap<>();
+
+    /**
+     * Frames parsed by parseAsync() which haven't been awaited yet.
+     */
+    private final Map<String, AsyncFrame> asyncFrameMap = new LinkedHashMap<>(0);
+
+    /**
+     * Frames which have been cancelled while running. An interrupt doesn't stop template processing or DAO calls,
+     * so they are awaited by finalizeAfterAction(): the component shouldn't be reused while they write into it.
+     */
+    private final List<AsyncFrame> cancelledAsyncFrames = new ArrayList<>(0);
 
     /**
      * Should workflow skip template processing?
@@ -119,7 +148,7 @@ public abstract class Component {
     /**
      * List of validators by parameter names.
      */
-    private Map<String, List<Validator>> validators;
+    private final Map<String, List<Validator>> validators = new LinkedHashMap<>();
 
     /**
      * Http servlet response output stream.
@@ -150,13 +179,19 @@ public abstract class Component {
     /**
      * Stores current indices of instances for #getInstance(clazz).
      */
-    private Map<Class<?>, Integer> instanceIndexForCacheForGetInstance;
+    private final Map<Class<?>, Integer> instanceIndexForCacheForGetInstance
+            = Collections.synchronizedMap(new HashMap<>());
 
     /**
      * Stores information about action, validation and invalid methods for component.
      */
     private static final ConcurrentMap<Class<? extends Component>, ActionMap> actionMaps = new ConcurrentHashMap<>();
 
+    /**
+     * How long finalizeAfterAction() waits for cancelled asynchronous frames to stop.
+     */
+    private static final long ASYNC_FRAME_STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
     /**
      * Template file name: simple class name + ".ftl" by default.
      * If component class is instrumented via AOP (so inherited class auto-generated), the main class is used.
@@ -166,7 +201,7 @@ public abstract class Component {
     /**
      * Map, containing parameters, which will be checked before request.getParameter().
      */
-    private Map<String, List<String>> overrideParameters;
+    private final Map<String, List<String>> overrideParameters = Collections.synchronizedMap(new HashMap<>());
 
     /**
      * Stores params from request.
@@ -184,13 +219,16 @@ public abstract class Component {
      * cache.
      */
     public CacheHandler getCacheHandler() {
+        if (cacheHandler == null && cached) {
+            return FragmentCacheHandler.getInstance();
+        }
         return cacheHandler;
     }
 
     /**
      * @param cacheHandler Component cache handler. Use it if you want to avoid typical
      *                     rendering life-cycle and get component HTML (or other parsed result) from
-     *                     cache.
+     *                     cache. Components marked with @Cached use FragmentCacheHandler by default.
      */
     public void setCacheHandler(CacheHandler cacheHandler) {
         this.cacheHandler = cacheHandler;
@@ -219,26 +257,26 @@ public abstract class Component {
     protected void internalRunAction(String actionParameter) {
         try {
             ActionMap actionMap = actionMaps.get(getClass());
-            FastMethod validateMethod = actionMap.getValidateMethod(actionParameter);
+            ActionInvoker validateInvoker = actionMap.getValidateInvoker(actionParameter);
             Boolean validationResult = true;
-            if (validateMethod != null) {
-                validationResult = (Boolean) validateMethod.invoke(this, parametersInjector.setupParameters(request, validateMethod));
+            if (validateInvoker != null) {
+                validationResult = (Boolean) validateInvoker.invoke(this, request);
             }
 
             if (validationResult) {
-                ActionMap.ActionMethod actionMethod = actionMap.getActionMethod(actionParameter);
+                ActionInvoker actionInvoker = actionMap.getActionInvoker(actionParameter);
                 // TODO: Can't be applied now because of Codeforces frames.
-                // ensureHttpMethod(actionMethod);
-                if (actionMethod != null) {
-                    actionMethod.getMethod().invoke(this, parametersInjector.setupParameters(request, actionMethod.getMethod()));
+                // ensureHttpMethod(actionInvoker);
+                if (actionInvoker != null) {
+                    actionInvoker.invoke(this, request);
                 } else {
                     throw new NocturneException("Can't find action method for component "
                             + getClass().getName() + " and action parameter = " + actionParameter + '.');
                 }
             } else {
-                FastMethod invalidMethod = actionMap.getInvalidMethod(actionParameter);
-                if (invalidMethod != null) {
-                    invalidMethod.invoke(this, parametersInjector.setupParameters(request, invalidMethod));
+                ActionInvoker invalidInvoker = actionMap.getInvalidInvoker(actionParameter);
+                if (invalidInvoker != null) {
+                    invalidInvoker.invoke(this, request);
                 }
             }
         } catch (InvocationTargetException e) {
@@ -255,16 +293,16 @@ public abstract class Component {
         }
     }
 
-    private void ensureHttpMethod(ActionMap.ActionMethod actionMethod) {
+    private void ensureHttpMethod(ActionInvoker actionInvoker) {
         HttpMethod requestMethod = HttpMethod.valueOf(request.getMethod().toUpperCase());
 
-        if (actionMethod.getAction() == null && requestMethod != HttpMethod.GET) {
+        if (actionInvoker.getAction() == null && requestMethod != HttpMethod.GET) {
             abortWithError(HttpServletResponse.SC_BAD_REQUEST, "HTTP requestMethod GET is not supported by "
-                    + getClass().getSimpleName() + '#' + actionMethod.getMethod().getName());
+                    + getClass().getSimpleName() + '#' + actionInvoker.getMethod().getName());
         }
 
-        if (actionMethod.getAction() != null) {
-            for (HttpMethod httpMethod : actionMethod.getAction().method()) {
+        if (actionInvoker.getAction() != null) {
+            for (HttpMethod httpMethod : actionInvoker.getAction().method()) {
                 if (httpMethod == requestMethod) {
                     return;
                 }
@@ -272,7 +310,7 @@ public abstract class Component {
 
             abortWithError(HttpServletResponse.SC_BAD_REQUEST, "HTTP requestMethod " + requestMethod
                     + " is not supported by "
-                    + getClass().getSimpleName() + '#' + actionMethod.getMethod().getName());
+                    + getClass().getSimpleName() + '#' + actionInvoker.getMethod().getName());
         }
     }
 
@@ -538,14 +576,16 @@ public abstract class Component {
         if (skipTemplate) {
             template = null;
         } else {
-            if (template == null || !template.getName().equals(templateFileName)) {
+            // Template contains captions of its locale, the component can be reused for the other locale.
+            Locale locale = ApplicationContext.getInstance().getLocale();
+            if (template == null || !template.getName().equals(templateFileName) || !locale.equals(template.getLocale())) {
                 try {
-                    template = templateEngineConfiguration.getTemplate(templateFileName, ApplicationContext.getInstance().getLocale());
+                    template = templateEngineConfiguration.getTemplate(templateFileName, locale);
                 } catch (IOException e) {
                     if (templateFileName.endsWith(".ftl")) {
                         String templateFileNameH = templateFileName + "h"; // .ftlh
                         try {
-                            template = templateEngineConfiguration.getTemplate(templateFileNameH, ApplicationContext.getInstance().getLocale());
+                            template = templateEngineConfiguration.getTemplate(templateFileNameH, locale);
                         } catch (IOException ignored) {
                             throw new FreemarkerException("Can't get freemarker template [name=" + templateFileName + "].", e);
                         }
@@ -647,7 +687,16 @@ public abstract class Component {
     }
 
     public Map<String, Object> getTemplateMap() {
-        return templateMap == null ? null : new HashMap<>(templateMap);
+        return new HashMap<>(templateMap);
+    }
+
+    /**
+     * @param globalTemplateMap Global template variables of the current page.
+     * @return Data model of the component template, valid until the next call.
+     */
+    TemplateDataModel getTemplateDataModel(Map<String, Object> globalTemplateMap) {
+        templateDataModel.setup(templateMap, globalTemplateMap, getTemplate().getObjectWrapper());
+        return templateDataModel;
     }
 
     /**
@@ -903,8 +952,26 @@ public abstract class Component {
         return getString(key) != null;
     }
 
+    /**
+     * @param key Form field name.
+     * @return The last file uploaded with the field or {@code null} if there is no such file.
+     */
+    @Nullable
+    public UploadedFile getUploadedFile(String key) {
+        return RequestUtil.getUploadedFile(request, key);
+    }
+
+    /**
+     * @param key Form field name.
+     * @return Files uploaded with the field, empty array if there is no such file.
+     */
+    @Nonnull
+    public UploadedFile[] getUploadedFiles(String key) {
+        return RequestUtil.getUploadedFiles(request, key);
+    }
+
     Map<String, List<String>> getRequestParams() {
-        return new HashMap<>(requestParams);
+        return Collections.unmodifiableMap(requestParams);
     }
 
     void setRequest(HttpServletRequest request) {
@@ -995,6 +1062,126 @@ public abstract class Component {
         frameMap.put(key, frame.parseTemplate());
     }
 
+    /**
+     * Parses frame concurrently with the current component action and other asynchronous frames.
+     * The result is awaited before the current component template is processed (or on
+     * {@link #awaitAsyncFrames()}) and stored as if {@link #parse(String, Frame)} was called.
+     * Waits for at most {@link ApplicationContext#getAsyncFrameTimeout()} milliseconds.
+     * <p>
+     * The frame is parsed in other thread with the same current page, request and response, so it should
+     * be independent of the current component and other frames. In the debug mode the frame is parsed
+     * immediately in the current thread.
+     *
+     * @param key   Parsed frame name, refer to it via name attribute for
+     *              directive @frame.
+     * @param frame Frame instance.
+     */
+    public void parseAsync(String key, Frame frame) {
+        parseAsync(key, frame, ApplicationContext.getInstance().getAsyncFrameTimeout(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The same as {@link #parseAsync(String, Frame)} but with the specific timeout. If the frame
+     * hasn't been parsed in time, it is cancelled (its thread is interrupted, so the frame
+     * should stop on interruption) and its body is empty. The cancelled frame is awaited after
+     * the component has been processed, so the page isn't reused while the frame is running.
+     *
+     * @param key     Parsed frame name, refer to it via name attribute for
+     *                directive @frame.
+     * @param frame   Frame instance.
+     * @param timeout Timeout to wait for the frame, zero means no timeout.
+     * @param unit    Timeout unit.
+     */
+    public void parseAsync(String key, Frame frame, long timeout, TimeUnit unit) {
+        setup(frame);
+
+        if (ApplicationContext.getInstance().isDebug()) {
+            frameMap.put(key, frame.parseTemplate());
+            return;
+        }
+
+        cancelAsync(key);
+
+        long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0L;
+        AsyncFrame asyncFrame = new AsyncFrame(frame, ApplicationContext.getInstance().getThreadContext(), deadline);
+        asyncFrameMap.put(key, asyncFrame);
+        AsyncFrameExecutor.execute(asyncFrame.task);
+    }
+
+    /**
+     * Cancels asynchronous parsing of the frame (interrupts its thread if it has been started).
+     * If the frame is still running, it is awaited after the component has been processed, so
+     * it never outlives the request.
+     *
+     * @param key Parsed frame name, see {@link #parseAsync(String, Frame)}.
+     * @return {@code true} iff the frame was being parsed asynchronously.
+     */
+    public boolean cancelAsync(String key) {
+        AsyncFrame asyncFrame = asyncFrameMap.remove(key);
+        if (asyncFrame == null) {
+            return false;
+        } else {
+            asyncFrame.cancel();
+            return true;
+        }
+    }
+
+    /**
+     * Waits for all the frames parsed by {@link #parseAsync(String, Frame)}. It is called automatically
+     * before the component template is processed. Exceptions thrown by frames are rethrown.
+     * Frames which haven't been started yet are parsed in the current thread.
+     */
+    protected void awaitAsyncFrames() {
+        if (asyncFrameMap.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (Map.Entry<String, AsyncFrame> entry : asyncFrameMap.entrySet()) {
+                frameMap.put(entry.getKey(), entry.getValue().await(entry.getKey()));
+            }
+        } finally {
+            cancelAsyncFrames();
+        }
+    }
+
+    private void cancelAsyncFrames() {
+        for (AsyncFrame asyncFrame : asyncFrameMap.values()) {
+            asyncFrame.cancel();
+        }
+        asyncFrameMap.clear();
+    }
+
+    /**
+     * Cancels asynchronous frames and waits till the cancelled frames stop. If they haven't stopped in
+     * {@link #ASYNC_FRAME_STOP_TIMEOUT_MILLIS}, the current page is marked as not reusable,
+     * so it is not returned into the page pool.
+     */
+    void stopAsyncFrames() {
+        cancelAsyncFrames();
+
+        if (cancelledAsyncFrames.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ASYNC_FRAME_STOP_TIMEOUT_MILLIS);
+        boolean stopped = true;
+        for (AsyncFrame asyncFrame : cancelledAsyncFrames) {
+            stopped &= asyncFrame.awaitStop(deadline);
+        }
+        cancelledAsyncFrames.clear();
+
+        if (!stopped) {
+            Page page = this instanceof Page ? (Page) this : ApplicationContext.getInstance().getCurrentPage();
+            getLogger().error("Cancelled asynchronous frames of " + getClass().getName()
+                    + " haven't stopped in " + ASYNC_FRAME_STOP_TIMEOUT_MILLIS + " ms, page "
+                    + (page == null ? null : page.getClass().getName()) + " will not be reused.");
+            if (page != null) {
+                page.markNotReusable();
+            }
+        }
+    }
+
     /**
      * Sets frame body without #parse().
      *
@@ -1023,15 +1210,11 @@ public abstract class Component {
         parentComponent = ApplicationContext.getInstance().getCurrentComponent();
         ApplicationContext.getInstance().setCurrentComponent(this);
 
-        templateMap = Collections.synchronizedMap(new HashMap<>());
-        instanceIndexForCacheForGetInstance = Collections.synchronizedMap(new HashMap<>());
+        clearRequestMaps();
         template = null;
         skipTemplate = false;
         outputStream = null;
         writer = null;
-        validators = new LinkedHashMap<>();
-        frameMap = new HashMap<>();
-        overrideParameters = Collections.synchronizedMap(new HashMap<>());
 
         parametersInjector.inject(request);
 
@@ -1052,9 +1235,29 @@ public abstract class Component {
             ApplicationContext.getInstance().setCurrentComponent(parentComponent);
         }
 
+        stopAsyncFrames();
+
+        CacheHandler handler = getCacheHandler();
+        if (handler != null) {
+            handler.finish(this);
+        }
+
         resetFields();
-        templateMap = null;
-        frameMap = null;
+        clearRequestMaps();
+    }
+
+    /**
+     * The maps are owned by the component (and so reused by pooled pages), they are cleared
+     * before and after each request.
+     */
+    private void clearRequestMaps() {
+        templateMap.clear();
+        templateDataModel.clear();
+        instanceIndexForCacheForGetInstance.clear();
+        validators.clear();
+        frameMap.clear();
+        asyncFrameMap.clear();
+        overrideParameters.clear();
     }
 
     void resetFields() {
@@ -1252,7 +1455,7 @@ public abstract class Component {
     }
 
     private void setupTemplateMapByParameter(String parameter) {
-        Object previousValue = getTemplateMap().get(parameter);
+        Object previousValue = internalGetTemplateMap().get(parameter);
         String value = getString(parameter);
         if (previousValue == null || !previousValue.toString().equals(value)) {
             put(parameter, getString(parameter));
@@ -1540,4 +1743,96 @@ public abstract class Component {
     protected interface ErrorValidationHandler {
         void onError(String fieldName, String errorText);
     }
+
+    /**
+     * Frame parsed by parseAsync().
+     */
+    private final class AsyncFrame {
+        private final FutureTask<String> task;
+
+        /**
+         * Deadline in terms of System.nanoTime() or zero if there is no timeout.
+         */
+        private final long deadline;
+
+        /**
+         * Set by the task when it starts or by cancel() if the task hasn't started, so a cancelled task
+         * either never runs the frame or is known to be running. FutureTask can't tell it after cancellation.
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        /**
+         * Released when the frame has stopped.
+         */
+        private final CountDownLatch stopLatch = new CountDownLatch(1);
+
+        private AsyncFrame(Frame frame, ApplicationContext.ThreadContext threadContext, long deadline) {
+            this.task = new FutureTask<>(() -> parse(frame, threadContext));
+            this.deadline = deadline;
+        }
+
+        private String parse(Frame frame, ApplicationContext.ThreadContext threadContext) {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new CancellationException();
+            }
+
+            ApplicationContext.ThreadContext previous = ApplicationContext.getInstance().setThreadContext(threadContext);
+            try {
+                return frame.parseTemplate();
+            } finally {
+                ApplicationContext.getInstance().setThreadContext(previous);
+                stopLatch.countDown();
+            }
+        }
+
+        private void cancel() {
+            task.cancel(true);
+            if (!claimed.compareAndSet(false, true) && stopLatch.getCount() > 0
+                    && !cancelledAsyncFrames.contains(this)) {
+                cancelledAsyncFrames.add(this);
+            }
+        }
+
+        /**
+         * @param stopDeadline Deadline in terms of System.nanoTime().
+         * @return {@code true} iff the frame has stopped.
+         */
+        private boolean awaitStop(long stopDeadline) {
+            try {
+                return stopLatch.await(Math.max(0L, stopDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+                return stopLatch.getCount() == 0;
+            }
+        }
+
+        private String await(String key) {
+            // Runs the task in the current thread if it hasn't been started yet.
+            task.run();
+
+            try {
+                if (deadline == 0L) {
+                    return task.get();
+                } else {
+                    return task.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+            } catch (TimeoutException e) {
+                cancel();
+                getLogger().warn("Frame '" + key + "' hasn't been parsed in time, it is cancelled.");
+                return "";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NocturneException("Interrupted while waiting for frame '" + key + "'.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new NocturneException("Can't parse frame '" + key + "'.", cause);
+            }
+        }
+    }
 }
@@ -150,7 +150,7 @@ public class DebugResourceFilter implements Filter {
     public void destroy() {
     }
 
-    private static final class MimeUtil {
+    static final class MimeUtil {
         private static final Map<String, String> mimeTypeByExtension = new ConcurrentHashMap<>();
 
         private static void add(String mimeType, String... extensions) {
@@ -162,7 +162,7 @@ public class DebugResourceFilter implements Filter {
             }
         }
 
-        private static String getMimeType(String path) {
+        static String getMimeType(String path) {
             String extension = (path.indexOf('.') < 0 ? path : path.substring(path.lastIndexOf('.') + 1)).toLowerCase();
             String result = mimeTypeByExtension.get(extension);
             if (result != null) {
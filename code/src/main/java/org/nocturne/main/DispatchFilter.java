@@ -5,6 +5,7 @@ package org.nocturne.main;
 
 import org.nocturne.exception.NocturneException;
 import org.nocturne.exception.ReflectionException;
+import org.nocturne.pool.Pool;
 import org.nocturne.util.FileUtil;
 import org.nocturne.util.ReflectionUtil;
 
@@ -101,6 +102,9 @@ public class DispatchFilter implements Filter {
         reloadingContext.stop();
 
         productionModeRequestDispatcher.destroy();
+
+        AsyncFrameExecutor.shutdown();
+        Pool.shutdownMaintenance();
     }
 
     private static void destroyDebugMode() {
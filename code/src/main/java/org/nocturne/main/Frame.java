@@ -14,8 +14,6 @@ import org.nocturne.util.ReflectionUtil;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Often there are small pieces of logic+view exist. For example, panel
@@ -123,9 +121,12 @@ public abstract class Frame extends Component {
                 if (isSkipTemplate()) {
                     return null;
                 } else {
+                    awaitAsyncFrames();
+
                     StringWriter writer = new StringWriter(4096);
-                    Map<String, Object> params = new HashMap<>(internalGetTemplateMap());
-                    params.putAll(ApplicationContext.getInstance().getCurrentPage().internalGetGlobalTemplateMap());
+                    TemplateDataModel params = getTemplateDataModel(
+                            ApplicationContext.getInstance().getCurrentPage().internalGetGlobalTemplateMap()
+                    );
 
                     Summary.Timer templateTimer = Prometheus.getFramesLatencySeconds()
                             .labels(simpleClassName, "template").startTimer();
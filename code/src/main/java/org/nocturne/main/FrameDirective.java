@@ -8,9 +8,9 @@ import freemarker.template.*;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_OPEN_PREFIX;
 import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_CLOSE_PREFIX;
@@ -23,7 +23,7 @@ import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MA
  * @author Mike Mirzayanov
  */
 public class FrameDirective implements TemplateDirectiveModel {
-    private final Set<String> UNIQUE_RENDER_KEYS = new HashSet<>();
+    private final Set<String> UNIQUE_RENDER_KEYS = ConcurrentHashMap.newKeySet();
 
     FrameDirective() {
         // No operations.
@@ -49,8 +49,9 @@ public class FrameDirective implements TemplateDirectiveModel {
             if (html == null) {
                 throw new TemplateException("Frame directive expected parsed frame '" + frameName + "', but didn't find.", environment);
             } else {
-                if (html.contains(UNIQUE_MAGIC_OPEN_PREFIX)) {
-                    html = processComponentUniques(new StringBuilder(html));
+                // The page writer removes markers itself as it streams.
+                if (!(environment.getOut() instanceof UniqueFilterWriter) && html.contains(UNIQUE_MAGIC_OPEN_PREFIX)) {
+                    html = processComponentUniques(html);
                 }
             }
 
@@ -61,36 +62,69 @@ public class FrameDirective implements TemplateDirectiveModel {
         }
     }
 
+    /**
+     * @param key Unique render key.
+     * @return {@code true} iff the block with the key has not been rendered before.
+     */
+    boolean addUniqueRenderKey(@Nonnull String key) {
+        return UNIQUE_RENDER_KEYS.add(key);
+    }
+
+    /**
+     * Removes unique magic markers and the repeated unique blocks (which have been rendered before).
+     * Scans the text once: the markers are found with the increasing start positions and the result
+     * is built by appending the kept parts.
+     *
+     * @param sb Rendered html.
+     * @return Html without unique magic markers and repeated unique blocks.
+     */
     @Nonnull
-    String processComponentUniques(@Nonnull StringBuilder sb) {
-        int open;
-        while ((open = sb.indexOf(UNIQUE_MAGIC_OPEN_PREFIX)) >= 0) {
-            int close = sb.indexOf(UNIQUE_MAGIC_CLOSE_PREFIX, open + 1);
-            if (open < close) {
-                int i = open + UNIQUE_MAGIC_OPEN_PREFIX.length();
-                while (i < sb.length() && sb.charAt(i) != '>') {
-                    i++;
-                }
-                int j = close + UNIQUE_MAGIC_CLOSE_PREFIX.length();
-                while (j < sb.length() && sb.charAt(j) != '>') {
-                    j++;
-                }
-                if (i < sb.length() && sb.charAt(i) == '>'
-                        && j < sb.length() && sb.charAt(j) == '>') {
-                    String openKey = sb.substring(open + UNIQUE_MAGIC_OPEN_PREFIX.length(), i);
-                    String closeKey = sb.substring(close + UNIQUE_MAGIC_CLOSE_PREFIX.length(), j);
-                    if (openKey.equals(closeKey) && !openKey.isEmpty()) {
-                        if (UNIQUE_RENDER_KEYS.contains(openKey)) {
-                            sb.delete(open, j + 2);
-                        } else {
-                            UNIQUE_RENDER_KEYS.add(openKey);
-                            sb.delete(close, j + 2);
-                            sb.delete(open, i + 2);
-                        }
-                    }
+    String processComponentUniques(@Nonnull CharSequence sb) {
+        String text = sb.toString();
+        int open = text.indexOf(UNIQUE_MAGIC_OPEN_PREFIX);
+        if (open < 0) {
+            return text;
+        }
+
+        StringBuilder result = new StringBuilder(text.length());
+        int position = 0;
+
+        while (open >= 0) {
+            int close = text.indexOf(UNIQUE_MAGIC_CLOSE_PREFIX, open + 1);
+            if (close < 0) {
+                break;
+            }
+
+            int i = text.indexOf('>', open + UNIQUE_MAGIC_OPEN_PREFIX.length());
+            int j = text.indexOf('>', close + UNIQUE_MAGIC_CLOSE_PREFIX.length());
+            if (i < 0 || j < 0) {
+                break;
+            }
+
+            String openKey = text.substring(open + UNIQUE_MAGIC_OPEN_PREFIX.length(), i);
+            String closeKey = text.substring(close + UNIQUE_MAGIC_CLOSE_PREFIX.length(), j);
+            if (openKey.equals(closeKey) && !openKey.isEmpty()) {
+                // Markers are removed together with the following line break.
+                result.append(text, position, open);
+                if (UNIQUE_RENDER_KEYS.add(openKey)) {
+                    result.append(text, skipLineBreak(text, i + 1, close), close);
                 }
+                position = skipLineBreak(text, j + 1, text.length());
+                open = text.indexOf(UNIQUE_MAGIC_OPEN_PREFIX, position);
+            } else {
+                // Broken markers, leave them as is.
+                open = text.indexOf(UNIQUE_MAGIC_OPEN_PREFIX, open + 1);
             }
         }
-        return sb.toString();
+
+        result.append(text, position, text.length());
+        return result.toString();
+    }
+
+    /**
+     * @return Position after the whitespace char at the given position (if any), but not after the limit.
+     */
+    static int skipLineBreak(@Nonnull CharSequence text, int position, int limit) {
+        return position < limit && Character.isWhitespace(text.charAt(position)) ? position + 1 : position;
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.ArrayUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves languages and locales of the requests for the allowed languages. Locale instances
+ * are created once per allowed language, Accept-Language headers are parsed once and cached
+ * because browsers send a few distinct values.
+ *
+ * @author Mike Mirzayanov
+ */
+@ThreadSafe
+final class LocaleResolver {
+    private static final Pattern ACCEPT_LANGUAGE_SPLIT_PATTERN = Pattern.compile("[,;-]");
+
+    /**
+     * Maximal number of the cached Accept-Language headers.
+     */
+    private static final int ACCEPT_LANGUAGE_CACHE_SIZE = 4096;
+
+    /**
+     * Longer headers are parsed on each request and not cached.
+     */
+    private static final int MAX_CACHED_ACCEPT_LANGUAGE_LENGTH = 256;
+
+    private static final AcceptLanguage EMPTY_ACCEPT_LANGUAGE = new AcceptLanguage(ArrayUtils.EMPTY_STRING_ARRAY, null);
+
+    private final Locale defaultLocale;
+
+    /**
+     * Locale by allowed language.
+     */
+    private final Map<String, Locale> localeByLanguage;
+
+    private final Cache<String, AcceptLanguage> acceptLanguageByHeader = CacheBuilder.newBuilder()
+            .maximumSize(ACCEPT_LANGUAGE_CACHE_SIZE)
+            .build();
+
+    LocaleResolver(List<String> allowedLanguages, Locale defaultLocale) {
+        this.defaultLocale = defaultLocale;
+
+        Map<String, Locale> locales = new HashMap<>();
+        for (String language : allowedLanguages) {
+            Locale locale = new Locale(language);
+            locales.put(language, locale.equals(defaultLocale) ? defaultLocale : locale);
+        }
+        this.localeByLanguage = locales;
+    }
+
+    /**
+     * @param language Language to check.
+     * @return {@code true} iff the language is allowed (see nocturne.allowed-languages).
+     */
+    boolean isAllowedLanguage(@Nullable String language) {
+        return language != null && localeByLanguage.containsKey(language);
+    }
+
+    /**
+     * @param language Language.
+     * @return Shared locale instance for the allowed language or default locale.
+     */
+    @Nonnull
+    Locale getLocale(@Nullable String language) {
+        Locale locale = language == null ? null : localeByLanguage.get(language);
+        return locale == null ? defaultLocale : locale;
+    }
+
+    /**
+     * @param header Value of the Accept-Language header.
+     * @return Parsed header.
+     */
+    @Nonnull
+    AcceptLanguage getAcceptLanguage(@Nullable String header) {
+        if (header == null || header.isEmpty()) {
+            return EMPTY_ACCEPT_LANGUAGE;
+        }
+
+        if (header.length() > MAX_CACHED_ACCEPT_LANGUAGE_LENGTH) {
+            return parseAcceptLanguage(header);
+        }
+
+        AcceptLanguage acceptLanguage = acceptLanguageByHeader.getIfPresent(header);
+        if (acceptLanguage == null) {
+            acceptLanguage = parseAcceptLanguage(header);
+            acceptLanguageByHeader.put(header, acceptLanguage);
+        }
+
+        return acceptLanguage;
+    }
+
+    private AcceptLanguage parseAcceptLanguage(String header) {
+        String[] languages = ACCEPT_LANGUAGE_SPLIT_PATTERN.split(header);
+        for (int i = 0; i < languages.length; ++i) {
+            languages[i] = languages[i].toLowerCase();
+        }
+
+        // English is the last choice: it is often added by browsers by default.
+        String preferredLanguage = null;
+        for (String language : languages) {
+            if (isAllowedLanguage(language) && !"en".equalsIgnoreCase(language)) {
+                preferredLanguage = language;
+                break;
+            }
+        }
+
+        if (preferredLanguage == null) {
+            for (String language : languages) {
+                if (isAllowedLanguage(language)) {
+                    preferredLanguage = language;
+                    break;
+                }
+            }
+        }
+
+        return new AcceptLanguage(languages, preferredLanguage);
+    }
+
+    /**
+     * Parsed Accept-Language header.
+     */
+    static final class AcceptLanguage {
+        /**
+         * Lowercase tokens of the header.
+         */
+        private final String[] languages;
+
+        private final String preferredLanguage;
+
+        private AcceptLanguage(String[] languages, @Nullable String preferredLanguage) {
+            this.languages = languages;
+            this.preferredLanguage = preferredLanguage;
+        }
+
+        /**
+         * @param language Language.
+         * @return {@code true} iff the header contains the language.
+         */
+        boolean contains(@Nullable String language) {
+            return ArrayUtils.indexOf(languages, language) >= 0;
+        }
+
+        /**
+         * @return The first allowed language of the header, English is taken only if there is no other.
+         */
+        @Nullable
+        String getPreferredLanguage() {
+            return preferredLanguage;
+        }
+    }
+}
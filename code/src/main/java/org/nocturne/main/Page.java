@@ -9,10 +9,17 @@ import org.nocturne.cache.CacheHandler;
 import org.nocturne.exception.*;
 import org.nocturne.postprocess.ResponsePostprocessor;
 import org.nocturne.prometheus.Prometheus;
+import org.nocturne.upload.UploadedFile;
+import org.nocturne.upload.annotation.UploadLimits;
 import org.nocturne.util.ReflectionUtil;
+import org.nocturne.util.RequestUtil;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -25,20 +32,30 @@ import java.util.*;
  */
 @SuppressWarnings({"unused", "WeakerAccess"})
 public abstract class Page extends Component {
+    /**
+     * Upload limits of the page class, {@code null} if it is not annotated.
+     */
+    private static final ClassValue<UploadLimits> uploadLimitsByClass = new ClassValue<UploadLimits>() {
+        @Override
+        protected UploadLimits computeValue(Class<?> type) {
+            return type.getAnnotation(UploadLimits.class);
+        }
+    };
+
     /**
      * Global template variables map.
      */
-    private Map<String, Object> globalTemplateMap;
+    private final Map<String, Object> globalTemplateMap = Collections.synchronizedMap(new HashMap<>());
 
     /**
      * Stores additional css resources added by addCss() from the page or internal frames.
      */
-    private final Set<String> cssSet = new LinkedHashSet<>();
+    private final Set<String> cssSet = Collections.synchronizedSet(new LinkedHashSet<>());
 
     /**
      * Stores additional js resources added by addJs() from the page or internal frames.
      */
-    private final Set<String> jsSet = new LinkedHashSet<>();
+    private final Set<String> jsSet = Collections.synchronizedSet(new LinkedHashSet<>());
 
     /**
      * Default is null, which means no postprocessing.
@@ -48,21 +65,22 @@ public abstract class Page extends Component {
     /**
      * Request-scoped cache. For internal usage.
      */
-    private Map<String, Object> requestCache;
+    private final Map<String, Object> requestCache = Collections.synchronizedMap(new HashMap<>());
 
     /**
      * Flag, which stores should workflow be passed to filterChain.
      */
     private boolean processChain;
 
+    /**
+     * Becomes {@code false} if cancelled asynchronous frames haven't stopped.
+     */
+    private boolean reusable = true;
+
     Map<String, Object> getRequestCache() {
         return requestCache;
     }
 
-    void setRequestCache(Map<String, Object> requestCache) {
-        this.requestCache = requestCache;
-    }
-
     /**
      * @return {@code true} iff setProcessChain(true) has been called and
      *         it means that workflow will be passed to filterChain after page processed.
@@ -85,6 +103,22 @@ public abstract class Page extends Component {
         this.responsePostprocessor = responsePostprocessor;
     }
 
+    /**
+     * Override it to choose the page rendering mode. By default returns
+     * {@link ApplicationContext#isStreamingRender()}.
+     * <p>
+     * In the streaming mode the template is written straight into the response output stream
+     * (the head of the page is flushed as soon as {@code </head>} has been written) without
+     * buffering the whole page in memory. Pages with {@link CacheHandler} or
+     * {@link ResponsePostprocessor} are always rendered into a buffer. Note that a template error
+     * in the streaming mode leaves the response partially written.
+     *
+     * @return {@code true} iff the page template should be rendered in the streaming mode.
+     */
+    protected boolean isStreamingRender() {
+        return ApplicationContext.getInstance().isStreamingRender();
+    }
+
     /**
      * @param processChain {@code true} if you want to use filterChain after
      *                     page usage.
@@ -94,19 +128,15 @@ public abstract class Page extends Component {
     }
 
     void putRequestCache(String key, Object value) {
-        if (requestCache != null) {
-            requestCache.put(key, value);
-        }
+        requestCache.put(key, value);
     }
 
     Object getRequestCache(String key) {
-        return requestCache == null ? null : requestCache.get(key);
+        return requestCache.get(key);
     }
 
     void removeRequestCache(String key) {
-        if (requestCache != null) {
-            requestCache.remove(key);
-        }
+        requestCache.remove(key);
     }
 
     Set<String> getCssSet() {
@@ -118,7 +148,7 @@ public abstract class Page extends Component {
     }
 
     public Map<String, Object> getGlobalTemplateMap() {
-        return globalTemplateMap == null ? null : new HashMap<>(globalTemplateMap);
+        return new HashMap<>(globalTemplateMap);
     }
 
     Map<String, Object> internalGetGlobalTemplateMap() {
@@ -137,6 +167,7 @@ public abstract class Page extends Component {
 
         try {
             prepareForAction();
+            ensureUploadLimits();
 
             CacheHandler cacheHandler = getCacheHandler();
             String result = null;
@@ -206,26 +237,36 @@ public abstract class Page extends Component {
                 }
 
                 if (!isSkipTemplate()) {
-                    Map<String, Object> params = new HashMap<>(internalGetTemplateMap());
-                    params.putAll(internalGetGlobalTemplateMap());
+                    awaitAsyncFrames();
+
+                    TemplateDataModel params = getTemplateDataModel(internalGetGlobalTemplateMap());
 
                     Summary.Timer templateTimer = Prometheus.getPagesLatencySeconds()
                             .labels(simpleClassName, "template").startTimer();
                     try {
                         getTemplate().setOutputEncoding(StandardCharsets.UTF_8.name());
-
-                        StringWriter stringWriter = new StringWriter(65536);
-                        getTemplate().process(params, stringWriter);
-                        stringWriter.close();
-
-                        result = ((FrameDirective) getGlobalTemplateMap().get("frame")).processComponentUniques(
-                                new StringBuilder(stringWriter.getBuffer()));
-
-                        if (cacheHandler != null) {
-                            cacheHandler.postprocess(this, result);
+                        FrameDirective frameDirective = (FrameDirective) internalGetGlobalTemplateMap().get("frame");
+
+                        if (cacheHandler == null && responsePostprocessor == null && isStreamingRender()) {
+                            Writer writer = new UniqueFilterWriter(frameDirective, new Utf8StreamWriter(getOutputStream()));
+                            try {
+                                getTemplate().process(params, writer);
+                            } finally {
+                                writer.close();
+                            }
+                        } else {
+                            StringWriter stringWriter = new StringWriter(65536);
+                            getTemplate().process(params, stringWriter);
+                            stringWriter.close();
+
+                            result = frameDirective.processComponentUniques(stringWriter.getBuffer());
+
+                            if (cacheHandler != null) {
+                                cacheHandler.postprocess(this, result);
+                            }
+
+                            result = handleRequestPostprocessor(result);
                         }
-
-                        result = handleRequestPostprocessor(result);
                     } catch (TemplateException e) {
                         throw new FreemarkerException("Can't parse template for page " + getClass().getName() + '.', e);
                     } catch (IOException e) {
@@ -251,12 +292,59 @@ public abstract class Page extends Component {
         }
     }
 
+    private void ensureUploadLimits() {
+        HttpServletRequest request = getRequest();
+        if (RequestUtil.isUploadLimitExceeded(request)) {
+            abortWithError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Upload exceeds the limits.");
+        }
+
+        UploadLimits uploadLimits = uploadLimitsByClass.get(getClass());
+        if (uploadLimits == null) {
+            return;
+        }
+
+        List<UploadedFile> uploadedFiles = RequestUtil.getUploadedFiles(request);
+        if (uploadedFiles.isEmpty()) {
+            return;
+        }
+
+        long totalSize = 0;
+        for (UploadedFile uploadedFile : uploadedFiles) {
+            if (uploadLimits.maxFileSize() >= 0 && uploadedFile.getSize() > uploadLimits.maxFileSize()) {
+                abortWithError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Uploaded file "
+                        + uploadedFile.getFieldName() + " exceeds " + uploadLimits.maxFileSize() + " bytes.");
+            }
+            totalSize += uploadedFile.getSize();
+        }
+
+        long requestSize = Math.max(request.getContentLengthLong(), totalSize);
+        if (uploadLimits.maxRequestSize() >= 0 && requestSize > uploadLimits.maxRequestSize()) {
+            abortWithError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Request exceeds " + uploadLimits.maxRequestSize() + " bytes.");
+        }
+    }
+
     void finalizeAfterAction() {
-        requestCache = null;
-        globalTemplateMap = null;
+        // Cancelled frames may still write into the global template map.
+        stopAsyncFrames();
+
+        requestCache.clear();
+        globalTemplateMap.clear();
         super.finalizeAfterAction();
     }
 
+    /**
+     * @return {@code false} if the page shouldn't be returned into the page pool, because
+     * its asynchronous frames are still running.
+     */
+    boolean isReusable() {
+        return reusable;
+    }
+
+    void markNotReusable() {
+        reusable = false;
+    }
+
     private String handleRequestPostprocessor(String result) {
         ResponsePostprocessor postprocessor = responsePostprocessor;
         if (postprocessor != null) {
@@ -272,8 +360,8 @@ public abstract class Page extends Component {
 
         setupCurrentPage();
 
-        globalTemplateMap = Collections.synchronizedMap(new HashMap<>());
-        requestCache = Collections.synchronizedMap(new HashMap<>());
+        globalTemplateMap.clear();
+        requestCache.clear();
 
         super.prepareForAction();
 
@@ -5,6 +5,7 @@ package org.nocturne.main;
 
 import org.apache.log4j.Logger;
 import org.nocturne.exception.ConfigurationException;
+import org.nocturne.link.Links;
 import org.nocturne.pool.PagePool;
 
 import java.util.Collection;
@@ -88,7 +89,11 @@ public class PageLoader {
     public void unloadPage(String path, Map<String, List<String>> parameterMap, Page page) {
         String className = ApplicationContext.getInstance().getRequestPageClassName();
         PagePool pool = getPoolByClassName(className);
-        pool.release(page);
+        if (page.isReusable()) {
+            pool.release(page);
+        } else {
+            pool.discard(page);
+        }
     }
 
     private PagePool getPoolByClassName(String className) {
@@ -113,6 +118,22 @@ public class PageLoader {
         }
     }
 
+    /**
+     * Creates page instances for the pools of all the pages added into Links,
+     * see {@link org.nocturne.pool.Pool#prewarm()}.
+     */
+    void prewarm() {
+        initialize();
+
+        for (Class<? extends Page> pageClass : Links.getPageClasses()) {
+            try {
+                getPoolByClassName(pageClass.getName()).prewarm();
+            } catch (RuntimeException e) {
+                logger.warn("Can't prewarm pool of page " + pageClass.getName() + '.', e);
+            }
+        }
+    }
+
     public void close() {
         Collection<PagePool> values = pagePoolMap.values();
         PagePool[] pools = values.toArray(new PagePool[0]);
@@ -3,13 +3,12 @@
  */
 package org.nocturne.main;
 
-import com.google.common.base.Preconditions;
-import net.sf.cglib.reflect.FastMethod;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.Contract;
 import org.nocturne.annotation.Parameter;
 import org.nocturne.exception.ConfigurationException;
 import org.nocturne.exception.NocturneException;
+import org.nocturne.upload.UploadedFile;
 import org.nocturne.util.RequestUtil;
 import org.nocturne.util.StringUtil;
 
@@ -17,10 +16,14 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * <p>
@@ -31,6 +34,11 @@ import java.util.regex.Pattern;
  * Also this class can be used if you want to
  * inject parameters into some object.
  * </p>
+ * <p>
+ * The @Parameter fields of a class are scanned once: each field gets a binding
+ * which parses values of the field type and sets them through a method handle,
+ * primitive values are neither boxed nor matched by regular expressions.
+ * </p>
  *
  * @author Mike Mirzayanov
  */
@@ -38,9 +46,6 @@ import java.util.regex.Pattern;
 public class ParametersInjector {
     private static final Logger logger = Logger.getLogger(ParametersInjector.class);
 
-    private static final Pattern INTEGRAL_VALUE_PATTERN = Pattern.compile("0|(-?[1-9][0-9]*)");
-    private static final Pattern REAL_VALUE_PATTERN = Pattern.compile("(0|(-?[1-9][0-9]*))((\\.[0-9]+)?)");
-
     private static final Character NULL_ASSIGN_CHAR = 0;
     private static final Byte NULL_ASSIGN_BYTE = 0;
     private static final Short NULL_ASSIGN_SHORT = 0;
@@ -49,15 +54,25 @@ public class ParametersInjector {
     private static final Float NULL_ASSIGN_FLOAT = 0.0F;
     private static final Double NULL_ASSIGN_DOUBLE = 0.0D;
 
+    /**
+     * Field bindings by the injection target class.
+     */
+    private static final ClassValue<FieldBinding[]> fieldBindingsByClass = new ClassValue<FieldBinding[]>() {
+        @Override
+        protected FieldBinding[] computeValue(Class<?> type) {
+            return newFieldBindings(type);
+        }
+    };
+
     /**
      * Injection target object.
      */
     private final Object component;
 
     /**
-     * Stores information about
+     * Bindings of the @Parameter fields of the component class.
      */
-    private Set<InjectField> fields;
+    private FieldBinding[] fieldBindings;
 
     /**
      * @param component Object which has fields with @Parameter annotation.
@@ -71,33 +86,37 @@ public class ParametersInjector {
      *                Also more priority parameters are retrieved from ApplicationContext.getInstance().getRequestOverrideParameters().
      */
     public void inject(HttpServletRequest request) {
-        if (fields == null) {
-            scanFields();
+        if (fieldBindings == null) {
+            fieldBindings = fieldBindingsByClass.get(component.getClass());
         }
 
-        setupFields(request, fields);
+        Map<String, List<String>> overrideParameters =
+                ApplicationContext.getInstance().getRequestOverrideParameters();
+        Map<String, List<String>> requestParameters = RequestUtil.getRequestParams(request);
+
+        for (FieldBinding fieldBinding : fieldBindings) {
+            fieldBinding.bind(component, request, overrideParameters, requestParameters);
+        }
+
+        addOverrideParameters(overrideParameters);
     }
 
     /**
-     * Returns parameter values, all parameters expected to be annotated with named @Parameter.
-     *
-     * @param request Http request.
-     * @param method  Method which parameters will be analyzed to assign values.
-     * @return Object[] containing values for method parameters from the http request.
+     * @param method Method, each parameter of it expected to be annotated with named @Parameter.
+     * @return Bindings of the method parameters.
      */
-    Object[] setupParameters(HttpServletRequest request, FastMethod method) {
+    static ArgumentBinding[] newArgumentBindings(Method method) {
         Class<?>[] parameterTypes = method.getParameterTypes();
-        Annotation[][] parameterAnnotations = method.getJavaMethod().getParameterAnnotations();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
 
         if (parameterTypes.length != parameterAnnotations.length) {
             logger.error("Expected the same number of parameters and annotations.");
             throw new NocturneException("Expected the same number of parameters and annotations.");
         }
 
-        List<InjectField> injectFields = new ArrayList<>(parameterTypes.length);
+        ArgumentBinding[] argumentBindings = new ArgumentBinding[parameterTypes.length];
 
         for (int i = 0; i < parameterTypes.length; ++i) {
-            Class<?> parameterType = parameterTypes[i];
             Parameter parameter = null;
             for (int j = 0; j < parameterAnnotations[i].length; ++j) {
                 if (parameterAnnotations[i][j] instanceof Parameter) {
@@ -116,69 +135,48 @@ public class ParametersInjector {
                 throw new ConfigurationException("Each @Parameter in the method " + method.getDeclaringClass().getName()
                         + '#' + method.getName() + " should have name.");
             }
-            InjectField injectField = new InjectField(null, parameter);
-            injectField.nonFieldType = parameterType;
-            injectFields.add(injectField);
+            argumentBindings[i] = new ArgumentBinding(parameter, parameterTypes[i]);
         }
 
-        setupFields(request, injectFields);
+        return argumentBindings;
+    }
 
-        Object[] result = new Object[injectFields.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = injectFields.get(i).nonFieldValue;
+    @Nullable
+    private static List<String> getValues(@Nullable Map<String, List<String>> overrideParameters,
+                                          Map<String, List<String>> requestParameters, String key) {
+        if (overrideParameters != null && overrideParameters.containsKey(key)) {
+            return overrideParameters.get(key);
+        } else {
+            return requestParameters.get(key);
         }
-
-        return result;
     }
 
-    private void setupFields(HttpServletRequest request, Collection<InjectField> fields) {
-        Map<String, List<String>> overrideParameters =
-                ApplicationContext.getInstance().getRequestOverrideParameters();
-        Map<String, List<String>> requestParameters = RequestUtil.getRequestParams(request);
-
-        for (InjectField field : fields) {
-            String key = field.parameter.name().isEmpty()
-                    ? Preconditions.checkNotNull(field.field).getName() : field.parameter.name();
-
-            List<String> values;
-            if (overrideParameters != null && overrideParameters.containsKey(key)) {
-                values = overrideParameters.get(key);
-            } else {
-                values = requestParameters.get(key);
-            }
+    private static boolean isUploadType(Class<?> type) {
+        return type == UploadedFile.class || type == UploadedFile[].class;
+    }
 
-            setupField(field, values);
-        }
+    @Nullable
+    private static Object getUpload(HttpServletRequest request, String name, Class<?> type) {
+        return type == UploadedFile.class
+                ? RequestUtil.getUploadedFile(request, name)
+                : RequestUtil.getUploadedFiles(request, name);
+    }
 
-        if (component instanceof Component) {
+    private void addOverrideParameters(@Nullable Map<String, List<String>> overrideParameters) {
+        if (component instanceof Component && overrideParameters != null) {
             Component comp = (Component) component;
-            if (overrideParameters != null) {
-                for (Map.Entry<String, List<String>> entry : overrideParameters.entrySet()) {
-                    comp.addOverrideParameter(entry.getKey(), entry.getValue());
-                }
+            for (Map.Entry<String, List<String>> entry : overrideParameters.entrySet()) {
+                comp.addOverrideParameter(entry.getKey(), entry.getValue());
             }
         }
     }
 
-    private void setupField(InjectField field, @Nullable List<String> values) {
-        Class<?> fieldType = getFieldType(field);
-
-        if (fieldType.isArray()) {
-            setFieldValue(field, getArrayAssignValue(field, values, fieldType));
-        } else {
-            String value = RequestUtil.getFirst(values);
-
-            if (value == null) {
-                setFieldValue(field, getNullAssignValue(fieldType));
-            } else {
-                value = field.parameter.stripMode().strip(value);
-                setFieldValue(field, getAssignValue(field, value, fieldType));
-            }
-        }
+    static Object getArrayAssignValue(@Nullable Field field, @Nullable List<String> values, Class<?> fieldType) {
+        return getArrayAssignValue(field, null, values, fieldType);
     }
 
-    static Object getArrayAssignValue(
-            @Nullable InjectField field, @Nullable List<String> values, Class<?> fieldType) {
+    private static Object getArrayAssignValue(@Nullable Field field, @Nullable Parameter.StripMode stripMode,
+                                              @Nullable List<String> values, Class<?> fieldType) {
         Class<?> componentType = fieldType.getComponentType();
 
         if (componentType.isArray()) {
@@ -194,8 +192,8 @@ public class ParametersInjector {
             if (value == null) {
                 Array.set(fieldValue, valueIndex, getNullAssignValue(componentType));
             } else {
-                if (field != null) {
-                    value = field.parameter.stripMode().strip(value);
+                if (stripMode != null) {
+                    value = stripMode.strip(value);
                 }
                 Array.set(fieldValue, valueIndex, getAssignValue(field, value, componentType));
             }
@@ -244,107 +242,41 @@ public class ParametersInjector {
 
     @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
     @Nullable
-    private static Object getAssignValue(@Nullable InjectField field, String value, @Nonnull Class<?> targetType) {
-        if (targetType.equals(String.class)) {
+    private static Object getAssignValue(@Nullable Field field, String value, @Nonnull Class<?> targetType) {
+        if (targetType == String.class) {
             return value;
         }
 
-        if (targetType.equals(Boolean.class) || targetType.equals(boolean.class)) {
-            if ("true".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value)
-                    || "yes".equalsIgnoreCase(value) || "1".equalsIgnoreCase(value)
-                    || "y".equalsIgnoreCase(value) || "checked".equalsIgnoreCase(value)) {
-                return Boolean.TRUE;
-            } else {
-                try {
-                    return Boolean.valueOf(value);
-                } catch (RuntimeException ignored) {
-                    return Boolean.FALSE;
-                }
-            }
+        if (targetType == Boolean.class || targetType == boolean.class) {
+            return parseBoolean(value);
         }
 
-        if (targetType.equals(Character.class) || targetType.equals(char.class)) {
-            try {
-                if (value.isEmpty()) {
-                    return NULL_ASSIGN_CHAR;
-                } else {
-                    return value.charAt(0);
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_CHAR;
-            }
+        if (targetType == Character.class || targetType == char.class) {
+            return parseChar(value);
         }
 
-        if (targetType.equals(Byte.class) || targetType.equals(byte.class)) {
-            try {
-                if (INTEGRAL_VALUE_PATTERN.matcher(value).matches()) {
-                    return Byte.valueOf(value);
-                } else {
-                    return NULL_ASSIGN_BYTE;
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_BYTE;
-            }
+        if (targetType == Byte.class || targetType == byte.class) {
+            return (byte) parseIntegral(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
         }
 
-        if (targetType.equals(Short.class) || targetType.equals(short.class)) {
-            try {
-                if (INTEGRAL_VALUE_PATTERN.matcher(value).matches()) {
-                    return Short.valueOf(value);
-                } else {
-                    return NULL_ASSIGN_SHORT;
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_SHORT;
-            }
+        if (targetType == Short.class || targetType == short.class) {
+            return (short) parseIntegral(value, Short.MIN_VALUE, Short.MAX_VALUE);
         }
 
-        if (targetType.equals(Integer.class) || targetType.equals(int.class)) {
-            try {
-                if (INTEGRAL_VALUE_PATTERN.matcher(value).matches()) {
-                    return Integer.valueOf(value);
-                } else {
-                    return NULL_ASSIGN_INT;
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_INT;
-            }
+        if (targetType == Integer.class || targetType == int.class) {
+            return (int) parseIntegral(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
         }
 
-        if (targetType.equals(Long.class) || targetType.equals(long.class)) {
-            try {
-                if (INTEGRAL_VALUE_PATTERN.matcher(value).matches()) {
-                    return Long.valueOf(value);
-                } else {
-                    return NULL_ASSIGN_LONG;
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_LONG;
-            }
+        if (targetType == Long.class || targetType == long.class) {
+            return parseIntegral(value, Long.MIN_VALUE, Long.MAX_VALUE);
         }
 
-        if (targetType.equals(Float.class) || targetType.equals(float.class)) {
-            try {
-                if (REAL_VALUE_PATTERN.matcher(value).matches()) {
-                    return Float.valueOf(value);
-                } else {
-                    return NULL_ASSIGN_FLOAT;
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_FLOAT;
-            }
+        if (targetType == Float.class || targetType == float.class) {
+            return parseFloat(value);
         }
 
-        if (targetType.equals(Double.class) || targetType.equals(double.class)) {
-            try {
-                if (REAL_VALUE_PATTERN.matcher(value).matches()) {
-                    return Double.valueOf(value);
-                } else {
-                    return NULL_ASSIGN_DOUBLE;
-                }
-            } catch (RuntimeException ignored) {
-                return NULL_ASSIGN_DOUBLE;
-            }
+        if (targetType == Double.class || targetType == double.class) {
+            return parseDouble(value);
         }
 
         if (targetType.isEnum()) {
@@ -359,72 +291,426 @@ public class ParametersInjector {
         throw getIllegalFieldTypeException(field, targetType);
     }
 
-    @Contract(pure = true)
-    private static Class<?> getFieldType(InjectField field) {
-        return field.field == null ? field.nonFieldType : field.field.getType();
+    private static boolean parseBoolean(String value) {
+        return "true".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value)
+                || "yes".equalsIgnoreCase(value) || "1".equalsIgnoreCase(value)
+                || "y".equalsIgnoreCase(value) || "checked".equalsIgnoreCase(value);
     }
 
-    private void setFieldValue(InjectField field, @Nullable Object assign) {
-        if (field.field == null) {
-            field.nonFieldValue = assign;
+    private static char parseChar(String value) {
+        return value.isEmpty() ? 0 : value.charAt(0);
+    }
+
+    /**
+     * @return Value if it matches "0|(-?[1-9][0-9]*)" and fits into [minValue, maxValue], zero otherwise.
+     */
+    private static long parseIntegral(String value, long minValue, long maxValue) {
+        int length = value.length();
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        int position = negative ? 1 : 0;
+
+        if (position == length || value.charAt(position) < '1' || value.charAt(position) > '9') {
+            // Empty, zero (also "-0"), leading zero or not a number.
+            return 0;
+        }
+
+        // Accumulates negated value to handle Long.MIN_VALUE.
+        long limit = negative ? minValue : -maxValue;
+        long limitDividedBy10 = limit / 10;
+        long result = 0;
+
+        for (; position < length; ++position) {
+            char c = value.charAt(position);
+            if (c < '0' || c > '9' || result < limitDividedBy10) {
+                return 0;
+            }
+
+            result *= 10;
+            int digit = c - '0';
+            if (result < limit + digit) {
+                return 0;
+            }
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    private static float parseFloat(String value) {
+        return isRealValue(value) ? Float.parseFloat(value) : 0.0F;
+    }
+
+    private static double parseDouble(String value) {
+        return isRealValue(value) ? Double.parseDouble(value) : 0.0D;
+    }
+
+    /**
+     * @return {@code true} iff value matches "(0|(-?[1-9][0-9]*))((\.[0-9]+)?)".
+     */
+    private static boolean isRealValue(String value) {
+        int length = value.length();
+        int position = 0;
+
+        if (length == 0) {
+            return false;
+        }
+
+        if (value.charAt(0) == '0') {
+            position = 1;
         } else {
-            field.field.setAccessible(true);
-            try {
-                field.field.set(component, assign);
-            } catch (IllegalAccessException e) {
-                String message = String.format(
-                        "Don't have access to set field %s of %s.",
-                        field.field.getName(), field.field.getDeclaringClass().getName()
-                );
-                logger.error(message, e);
-                throw new IllegalArgumentException(message, e);
+            if (value.charAt(0) == '-') {
+                position = 1;
             }
+            if (position == length || value.charAt(position) < '1' || value.charAt(position) > '9') {
+                return false;
+            }
+            position = skipDigits(value, position + 1);
+        }
+
+        if (position == length) {
+            return true;
         }
+
+        if (value.charAt(position) != '.' || position + 1 == length) {
+            return false;
+        }
+
+        return skipDigits(value, position + 1) == length;
     }
 
-    private void scanFields() {
-        fields = new HashSet<>();
-        Class<?> clazz = component.getClass();
+    private static int skipDigits(String value, int position) {
+        while (position < value.length() && value.charAt(position) >= '0' && value.charAt(position) <= '9') {
+            ++position;
+        }
+        return position;
+    }
 
-        while (clazz != null) {
-            Field[] clazzFields = clazz.getDeclaredFields();
+    private static FieldBinding[] newFieldBindings(Class<?> clazz) {
+        List<FieldBinding> fieldBindings = new ArrayList<>();
 
-            for (Field clazzField : clazzFields) {
-                Parameter parameter = clazzField.getAnnotation(Parameter.class);
+        for (; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                Parameter parameter = field.getAnnotation(Parameter.class);
                 if (parameter != null) {
-                    fields.add(new InjectField(clazzField, parameter));
+                    fieldBindings.add(newFieldBinding(field, parameter));
                 }
             }
+        }
+
+        return fieldBindings.toArray(new FieldBinding[0]);
+    }
+
+    @SuppressWarnings("OverlyComplexMethod")
+    private static FieldBinding newFieldBinding(Field field, Parameter parameter) {
+        Class<?> fieldType = field.getType();
+
+        if (isUploadType(fieldType)) {
+            return new UploadFieldBinding(field, parameter);
+        }
+
+        if (fieldType == boolean.class) {
+            return new BooleanFieldBinding(field, parameter);
+        }
+
+        if (fieldType == char.class) {
+            return new CharFieldBinding(field, parameter);
+        }
+
+        if (fieldType == byte.class) {
+            return new ByteFieldBinding(field, parameter);
+        }
+
+        if (fieldType == short.class) {
+            return new ShortFieldBinding(field, parameter);
+        }
+
+        if (fieldType == int.class) {
+            return new IntFieldBinding(field, parameter);
+        }
 
-            clazz = clazz.getSuperclass();
+        if (fieldType == long.class) {
+            return new LongFieldBinding(field, parameter);
         }
+
+        if (fieldType == float.class) {
+            return new FloatFieldBinding(field, parameter);
+        }
+
+        if (fieldType == double.class) {
+            return new DoubleFieldBinding(field, parameter);
+        }
+
+        return new ObjectFieldBinding(field, parameter);
     }
 
     @Nonnull
     private static ConfigurationException getIllegalFieldTypeException(
-            @Nullable InjectField field, @Nonnull Class<?> fieldType) {
-        if (field == null || field.field == null) {
+            @Nullable Field field, @Nonnull Class<?> fieldType) {
+        if (field == null) {
             return new ConfigurationException(String.format("Field has unexpected type %s.", fieldType.getName()));
         } else {
             return new ConfigurationException(String.format(
                     "Field %s of %s has unexpected type %s.",
-                    field.field.getName(), field.field.getDeclaringClass().getName(), fieldType.getName()
+                    field.getName(), field.getDeclaringClass().getName(), fieldType.getName()
             ));
         }
     }
 
-    @SuppressWarnings("PackageVisibleField")
-    private static class InjectField {
-        @Nullable
+    /**
+     * Takes the value of the @Parameter field from the request and sets it into the field.
+     */
+    private abstract static class FieldBinding {
         final Field field;
-        final Parameter parameter;
+        final String key;
 
-        Object nonFieldValue;
-        Class<?> nonFieldType;
+        /**
+         * Setter of type (Object, value type)void, where value type is the field type for
+         * primitive fields and Object for others.
+         */
+        final MethodHandle setter;
 
-        private InjectField(@Nullable Field field, Parameter parameter) {
+        private FieldBinding(Field field, Parameter parameter) {
             this.field = field;
-            this.parameter = parameter;
+            this.key = parameter.name().isEmpty() ? field.getName() : parameter.name();
+
+            Class<?> valueType = field.getType().isPrimitive() ? field.getType() : Object.class;
+            try {
+                field.setAccessible(true);
+                MethodHandle fieldSetter = MethodHandles.lookup().unreflectSetter(field);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    fieldSetter = MethodHandles.dropArguments(fieldSetter, 0, Object.class);
+                }
+                setter = fieldSetter.asType(MethodType.methodType(void.class, Object.class, valueType));
+            } catch (IllegalAccessException | RuntimeException e) {
+                String message = String.format(
+                        "Don't have access to set field %s of %s.",
+                        field.getName(), field.getDeclaringClass().getName()
+                );
+                logger.error(message, e);
+                throw new IllegalArgumentException(message, e);
+            }
+        }
+
+        final void bind(Object target, HttpServletRequest request,
+                        @Nullable Map<String, List<String>> overrideParameters, Map<String, List<String>> requestParameters) {
+            try {
+                inject(target, request, overrideParameters, requestParameters);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new NocturneException("Can't set field " + field.getName()
+                        + " of " + field.getDeclaringClass().getName() + '.', e);
+            }
+        }
+
+        abstract void inject(Object target, HttpServletRequest request,
+                             @Nullable Map<String, List<String>> overrideParameters,
+                             Map<String, List<String>> requestParameters) throws Throwable;
+    }
+
+    /**
+     * Parses parameter values (override parameters have priority over the request ones)
+     * and sets them into the @Parameter field.
+     */
+    private abstract static class ValueFieldBinding extends FieldBinding {
+        final Parameter.StripMode stripMode;
+
+        private ValueFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+            this.stripMode = parameter.stripMode();
+        }
+
+        @Override
+        final void inject(Object target, HttpServletRequest request,
+                          @Nullable Map<String, List<String>> overrideParameters,
+                          Map<String, List<String>> requestParameters) throws Throwable {
+            set(target, getValues(overrideParameters, requestParameters, key));
+        }
+
+        /**
+         * @return Stripped first value or {@code null} if there is no value.
+         */
+        @Nullable
+        final String getFirstValue(@Nullable List<String> values) {
+            String value = RequestUtil.getFirst(values);
+            return value == null ? null : stripMode.strip(value);
+        }
+
+        abstract void set(Object target, @Nullable List<String> values) throws Throwable;
+    }
+
+    private static final class BooleanFieldBinding extends ValueFieldBinding {
+        private BooleanFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value != null && parseBoolean(value));
+        }
+    }
+
+    private static final class CharFieldBinding extends ValueFieldBinding {
+        private CharFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? (char) 0 : parseChar(value));
+        }
+    }
+
+    private static final class ByteFieldBinding extends ValueFieldBinding {
+        private ByteFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? (byte) 0 : (byte) parseIntegral(value, Byte.MIN_VALUE, Byte.MAX_VALUE));
+        }
+    }
+
+    private static final class ShortFieldBinding extends ValueFieldBinding {
+        private ShortFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? (short) 0 : (short) parseIntegral(value, Short.MIN_VALUE, Short.MAX_VALUE));
+        }
+    }
+
+    private static final class IntFieldBinding extends ValueFieldBinding {
+        private IntFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? 0 : (int) parseIntegral(value, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+    }
+
+    private static final class LongFieldBinding extends ValueFieldBinding {
+        private LongFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? 0L : parseIntegral(value, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    private static final class FloatFieldBinding extends ValueFieldBinding {
+        private FloatFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? 0.0F : parseFloat(value));
+        }
+    }
+
+    private static final class DoubleFieldBinding extends ValueFieldBinding {
+        private DoubleFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            String value = getFirstValue(values);
+            setter.invokeExact(target, value == null ? 0.0D : parseDouble(value));
+        }
+    }
+
+    /**
+     * Binding of the UploadedFile and UploadedFile[] fields, files are taken from the request
+     * (override parameters don't affect them).
+     */
+    private static final class UploadFieldBinding extends FieldBinding {
+        private UploadFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void inject(Object target, HttpServletRequest request,
+                    @Nullable Map<String, List<String>> overrideParameters,
+                    Map<String, List<String>> requestParameters) throws Throwable {
+            setter.invokeExact(target, getUpload(request, key, field.getType()));
+        }
+    }
+
+    /**
+     * Binding of the String, boxed primitive, enum and array fields.
+     */
+    private static final class ObjectFieldBinding extends ValueFieldBinding {
+        private ObjectFieldBinding(Field field, Parameter parameter) {
+            super(field, parameter);
+        }
+
+        @Override
+        void set(Object target, @Nullable List<String> values) throws Throwable {
+            Class<?> fieldType = field.getType();
+            Object assign;
+
+            if (fieldType.isArray()) {
+                assign = getArrayAssignValue(field, stripMode, values, fieldType);
+            } else {
+                String value = getFirstValue(values);
+                assign = value == null ? null : getAssignValue(field, value, fieldType);
+            }
+
+            setter.invokeExact(target, assign);
+        }
+    }
+
+    /**
+     * Parses request values of the action method parameter.
+     */
+    static final class ArgumentBinding {
+        private final String key;
+        private final Parameter.StripMode stripMode;
+        private final Class<?> type;
+
+        private ArgumentBinding(Parameter parameter, Class<?> type) {
+            this.key = parameter.name();
+            this.stripMode = parameter.stripMode();
+            this.type = type;
+        }
+
+        /**
+         * @param request            Http request.
+         * @param overrideParameters Override parameters of the request, they have priority over the request ones.
+         * @param requestParameters  Request parameters, see {@link RequestUtil#getRequestParams(HttpServletRequest)}.
+         * @return Value to pass as the method argument.
+         */
+        @Nullable
+        Object getValue(HttpServletRequest request, @Nullable Map<String, List<String>> overrideParameters,
+                        Map<String, List<String>> requestParameters) {
+            if (isUploadType(type)) {
+                return getUpload(request, key, type);
+            }
+
+            List<String> values = getValues(overrideParameters, requestParameters, key);
+
+            if (type.isArray()) {
+                return getArrayAssignValue(null, stripMode, values, type);
+            }
+
+            String value = RequestUtil.getFirst(values);
+            return value == null ? getNullAssignValue(type) : getAssignValue(null, stripMode.strip(value), type);
         }
     }
 }
@@ -260,12 +260,17 @@ public class RequestDispatcher {
 
             filterConfig = config;
             applicationContext.setServletContext(config.getServletContext());
+            applicationContext.setTemplateEngineConfigurationPool(templateEngineConfigurationPool);
 
             // Pass application context to servlet
             config.getServletContext().setAttribute("applicationContext", applicationContext);
 
             ApplicationContextLoader.initialize();
 
+            if (!applicationContext.isDebug()) {
+                pageLoader.prewarm();
+            }
+
             // Log.
             if (!applicationContext.isDebug()) {
                 logger.info("Nocturne RequestDispatcher has been initialized.");
@@ -307,6 +312,7 @@ public class RequestDispatcher {
             logger.error("Exception while processing request.", e);
             throw new ServletException(e);
         } finally {
+            RequestUtil.deleteUploadedFiles(request);
             applicationContext.unsetRequestAndResponse();
         }
     }
@@ -0,0 +1,516 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.apache.log4j.Logger;
+import org.nocturne.gzip.AcceptEncoding;
+
+import javax.annotation.Nullable;
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Serves static resources of the webapp (including the resources of the modules, they are copied into
+ * the webapp on startup) in production. Use {@link DebugResourceFilter} in debug mode, this filter
+ * passes the requests through there.
+ * </p>
+ * <p>
+ * Each resource gets strong ETag (content hash) which is computed once and recomputed only if the file
+ * changes (files are checked at most once a second). Conditional requests (If-None-Match, If-Modified-Since) are answered with 304. If a resource
+ * has sibling with suffix ".gz", it is sent to the clients which accept gzip. Large files are sent
+ * with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, small ones are kept in memory:
+ * their ETag and length are computed from the bytes which are sent. Paths without resources are
+ * remembered for the same second, so the other requests don't touch the file system.
+ * </p>
+ * <p>
+ * Init parameters:
+ * <ul>
+ * <li>max-cached-file-size &mdash; files up to this number of bytes are kept in memory, default is 65536;</li>
+ * <li>max-cache-size &mdash; total size of the files in memory, least recently used are evicted,
+ * default is 16777216;</li>
+ * <li>cache-control &mdash; value of Cache-Control header for the resources, no header by default.</li>
+ * </ul>
+ * </p>
+ */
+public class StaticResourceFilter implements Filter {
+    private static final Logger logger = Logger.getLogger(StaticResourceFilter.class);
+
+    private static final int DEFAULT_MAX_CACHED_FILE_SIZE = 65536;
+    private static final long DEFAULT_MAX_CACHE_SIZE = 16L * 1024 * 1024;
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * Files are checked for changes at most once in this interval.
+     */
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private static final int MAX_MISSING_PATH_COUNT = 65536;
+
+    /**
+     * Attempts to serve a resource which changes while it is read, after that the request is passed through.
+     */
+    private static final int MAX_SERVE_ATTEMPT_COUNT = 3;
+
+    private ServletContext servletContext;
+    private int maxCachedFileSize = DEFAULT_MAX_CACHED_FILE_SIZE;
+    private String cacheControl;
+
+    private final ConcurrentMap<String, Resource> resourceByPath = new ConcurrentHashMap<>();
+    private Cache<Representation, byte[]> contentCache;
+    private final Cache<String, Boolean> missingPaths = CacheBuilder.newBuilder()
+            .maximumSize(MAX_MISSING_PATH_COUNT)
+            .expireAfterWrite(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        servletContext = filterConfig.getServletContext();
+
+        maxCachedFileSize = (int) getSizeParameter(filterConfig, "max-cached-file-size", DEFAULT_MAX_CACHED_FILE_SIZE);
+        long maxCacheSize = getSizeParameter(filterConfig, "max-cache-size", DEFAULT_MAX_CACHE_SIZE);
+        cacheControl = filterConfig.getInitParameter("cache-control");
+
+        contentCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCacheSize)
+                .weigher((Representation representation, byte[] content) -> content.length)
+                .build();
+    }
+
+    private static long getSizeParameter(FilterConfig filterConfig, String name, long defaultValue)
+            throws ServletException {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        long result;
+        try {
+            result = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            result = -1;
+        }
+
+        if (result < 0 || result > Integer.MAX_VALUE) {
+            logger.error("Init parameter " + name + " of StaticResourceFilter should be a non-negative integer.");
+            throw new ServletException("Init parameter " + name + " of StaticResourceFilter should be a non-negative integer.");
+        }
+
+        return result;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!ReloadingContext.getInstance().isDebug()
+                && request instanceof HttpServletRequest && response instanceof HttpServletResponse
+                && serveResource((HttpServletRequest) request, (HttpServletResponse) response)) {
+            return;
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * @return {@code true} iff the request is for a static resource and it has been served.
+     */
+    boolean serveResource(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String method = request.getMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            return false;
+        }
+
+        String path = request.getServletPath();
+        if (request.getPathInfo() != null) {
+            path += request.getPathInfo();
+        }
+
+        path = getServablePath(path);
+        for (int attempt = 0; path != null && attempt < MAX_SERVE_ATTEMPT_COUNT; ++attempt) {
+            Resource resource = getResource(path);
+            if (resource == null) {
+                break;
+            }
+            if (serve(request, response, resource, head)) {
+                return true;
+            }
+            // The file has changed since the resource was created.
+            dropResource(path, resource);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param path Decoded request path.
+     * @return Path without empty segments or {@code null} if the path is not a static resource path:
+     * it is a directory, has "." or ".." segments, escaped characters or WEB-INF/META-INF segments.
+     */
+    @Nullable
+    static String getServablePath(String path) {
+        if (!path.startsWith("/") || path.endsWith("/")) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder(path.length());
+        int segmentStart = 1;
+        while (segmentStart <= path.length()) {
+            int segmentEnd = path.indexOf('/', segmentStart);
+            if (segmentEnd < 0) {
+                segmentEnd = path.length();
+            }
+
+            if (segmentEnd > segmentStart) {
+                String segment = path.substring(segmentStart, segmentEnd);
+                if (!isServableSegment(segment)) {
+                    return null;
+                }
+                result.append('/').append(segment);
+            }
+
+            segmentStart = segmentEnd + 1;
+        }
+
+        return result.length() == 0 ? null : result.toString();
+    }
+
+    private static boolean isServableSegment(String segment) {
+        // Trailing dots are ignored by some file systems ("WEB-INF." is "WEB-INF"), '%' is left
+        // by double encoding ("%252e" is "%2e"), ';' starts path parameters in some containers.
+        if (segment.endsWith(".") || segment.endsWith(" ")) {
+            return false;
+        }
+
+        for (int i = 0; i < segment.length(); ++i) {
+            char c = segment.charAt(i);
+            if (c == '\\' || c == '%' || c == ';' || c < ' ') {
+                return false;
+            }
+        }
+
+        return !"WEB-INF".equalsIgnoreCase(segment) && !"META-INF".equalsIgnoreCase(segment);
+    }
+
+    /**
+     * @param path Path of the resource in the webapp.
+     * @return Actual resource or {@code null} if there is no such resource.
+     */
+    @Nullable
+    private Resource getResource(String path) throws IOException {
+        Resource resource = resourceByPath.get(path);
+        if (resource != null) {
+            if (resource.isActual()) {
+                return resource;
+            }
+            dropResource(path, resource);
+        } else if (missingPaths.getIfPresent(path) != null) {
+            return null;
+        }
+
+        resource = newResource(path);
+        if (resource == null) {
+            missingPaths.put(path, Boolean.TRUE);
+        } else {
+            resourceByPath.put(path, resource);
+        }
+        return resource;
+    }
+
+    private void dropResource(String path, Resource resource) {
+        resourceByPath.remove(path, resource);
+        contentCache.invalidate(resource.identity);
+        if (resource.gzip != null) {
+            contentCache.invalidate(resource.gzip);
+        }
+    }
+
+    @Nullable
+    private Resource newResource(String path) throws IOException {
+        String contentType = DebugResourceFilter.MimeUtil.getMimeType(path);
+
+        // Not FileUtil.getRealPath(): it would take the request path for an absolute file path.
+        String realPath = servletContext.getRealPath(path);
+        if (realPath != null) {
+            File file = new File(realPath);
+            if (!file.isFile()) {
+                return null;
+            }
+
+            File gzipFile = new File(realPath + GZIP_SUFFIX);
+            return new Resource(contentType, newRepresentation(file, null, null),
+                    gzipFile.isFile() ? newRepresentation(gzipFile, null, "gzip") : null);
+        }
+
+        // Packed webapp, the resources don't change.
+        URL url = servletContext.getResource(path);
+        if (url == null) {
+            return null;
+        }
+
+        URL gzipUrl = servletContext.getResource(path + GZIP_SUFFIX);
+        return new Resource(contentType, newRepresentation(null, url, null),
+                gzipUrl == null ? null : newRepresentation(null, gzipUrl, "gzip"));
+    }
+
+    /**
+     * Small content is read once: its ETag and length are computed from the bytes put into the cache.
+     */
+    private Representation newRepresentation(@Nullable File file, @Nullable URL url, @Nullable String encoding)
+            throws IOException {
+        // Stat before reading: if the file changes meanwhile, the next request finds it.
+        long lastModified = file != null ? file.lastModified() : url.openConnection().getLastModified();
+        ByteSource byteSource = file != null ? Files.asByteSource(file) : Resources.asByteSource(url);
+
+        long length = byteSource.size();
+        if (length > maxCachedFileSize) {
+            return new Representation(file, url, encoding, length, lastModified, Representation.getEtag(byteSource));
+        }
+
+        byte[] content = byteSource.read();
+        Representation representation = new Representation(file, url, encoding, content.length, lastModified,
+                Representation.getEtag(ByteSource.wrap(content)));
+        if (content.length <= maxCachedFileSize) {
+            contentCache.put(representation, content);
+        }
+        return representation;
+    }
+
+    /**
+     * @return {@code false} iff nothing has been sent because the content differs from the resource,
+     * it should be recreated.
+     */
+    private boolean serve(HttpServletRequest request, HttpServletResponse response, Resource resource, boolean head)
+            throws IOException {
+        Representation representation = resource.identity;
+        if (resource.gzip != null
+                && AcceptEncoding.parse(request.getHeader("Accept-Encoding")).accepts("gzip")) {
+            representation = resource.gzip;
+        }
+
+        boolean notModified = isNotModified(request, representation);
+        byte[] content = null;
+        if (!notModified && !head && representation.length <= maxCachedFileSize) {
+            content = getContent(representation);
+            if (content == null) {
+                return false;
+            }
+        }
+
+        if (resource.gzip != null) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        response.setContentType(resource.contentType);
+        response.setHeader("ETag", representation.etag);
+        if (representation.lastModified > 0) {
+            response.setDateHeader("Last-Modified", representation.lastModified);
+        }
+        if (cacheControl != null) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        if (representation.encoding != null) {
+            response.setHeader("Content-Encoding", representation.encoding);
+        }
+        response.setContentLengthLong(representation.length);
+
+        if (head) {
+            return true;
+        }
+
+        if (content != null) {
+            response.getOutputStream().write(content);
+        } else {
+            try {
+                representation.writeTo(response.getOutputStream());
+            } finally {
+                // The file is streamed as is, so the next request has to notice the change made meanwhile.
+                if (!representation.isActual()) {
+                    resource.invalidate();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Cached content or the content read again if it still matches the representation,
+     * {@code null} if the content has changed.
+     */
+    @Nullable
+    private byte[] getContent(Representation representation) throws IOException {
+        byte[] content = contentCache.getIfPresent(representation);
+        if (content == null) {
+            content = representation.read();
+            if (content.length != representation.length
+                    || !representation.etag.equals(Representation.getEtag(ByteSource.wrap(content)))) {
+                return null;
+            }
+            contentCache.put(representation, content);
+        }
+        return content;
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, Representation representation) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String etag : ifNoneMatch.split(",")) {
+                etag = etag.trim();
+                if (etag.startsWith("W/")) {
+                    etag = etag.substring(2);
+                }
+                if ("*".equals(etag) || representation.etag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (representation.lastModified <= 0) {
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException ignored) {
+            return false;
+        }
+
+        return ifModifiedSince >= 0 && representation.lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    @Override
+    public void destroy() {
+        resourceByPath.clear();
+        missingPaths.invalidateAll();
+        if (contentCache != null) {
+            contentCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Resource with its variants.
+     */
+    private static final class Resource {
+        private final String contentType;
+        private final Representation identity;
+        @Nullable
+        private final Representation gzip;
+        private volatile long checkTimeMillis = System.currentTimeMillis();
+
+        private Resource(String contentType, Representation identity, @Nullable Representation gzip) {
+            this.contentType = contentType;
+            this.identity = identity;
+            this.gzip = gzip;
+        }
+
+        /**
+         * Makes the next request check the files.
+         */
+        private void invalidate() {
+            checkTimeMillis = 0;
+        }
+
+        private boolean isActual() {
+            long currentTimeMillis = System.currentTimeMillis();
+            if (currentTimeMillis - checkTimeMillis < CHECK_INTERVAL_MILLIS) {
+                return true;
+            }
+
+            if (identity.isActual() && (gzip == null || gzip.isActual())) {
+                checkTimeMillis = currentTimeMillis;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Content of the resource as it is sent: the file itself or its compressed sibling.
+     * Instances are immutable, a changed file gets new instance.
+     */
+    private static final class Representation {
+        @Nullable
+        private final File file;
+        @Nullable
+        private final URL url;
+        @Nullable
+        private final String encoding;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+
+        private Representation(@Nullable File file, @Nullable URL url, @Nullable String encoding,
+                               long length, long lastModified, String etag) {
+            this.file = file;
+            this.url = url;
+            this.encoding = encoding;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        private static String getEtag(ByteSource byteSource) throws IOException {
+            return '"' + byteSource.hash(Hashing.murmur3_128()).toString() + '"';
+        }
+
+        private boolean isActual() {
+            return file == null || (file.lastModified() == lastModified && file.length() == length);
+        }
+
+        private byte[] read() throws IOException {
+            return file != null ? Files.toByteArray(file) : Resources.toByteArray(url);
+        }
+
+        private void writeTo(OutputStream outputStream) throws IOException {
+            if (file == null) {
+                Resources.copy(url, outputStream);
+                return;
+            }
+
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                // Containers which expose a channel get zero-copy transfer.
+                WritableByteChannel target = outputStream instanceof WritableByteChannel
+                        ? (WritableByteChannel) outputStream : Channels.newChannel(outputStream);
+
+                long position = 0;
+                while (position < length) {
+                    long transferred = channel.transferTo(position, length - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("File " + file + " has been truncated while sending.");
+                    }
+                    position += transferred;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file != null ? file.toString() : String.valueOf(url);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import freemarker.template.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FreeMarker data model of the component template: global variables of the page over
+ * the template variables of the component. Unlike a merged copy of the maps, it reads
+ * the maps directly, each value is wrapped on the first access.
+ * <p>
+ * Each component owns an instance and reuses it for every request.
+ *
+ * @author Mike Mirzayanov
+ */
+final class TemplateDataModel implements TemplateHashModelEx {
+    private final Map<String, TemplateModel> wrappedValues = new HashMap<>();
+
+    private Map<String, Object> templateMap;
+    private Map<String, Object> globalTemplateMap;
+    private ObjectWrapper objectWrapper;
+
+    void setup(Map<String, Object> templateMap, Map<String, Object> globalTemplateMap, ObjectWrapper objectWrapper) {
+        this.templateMap = templateMap;
+        this.globalTemplateMap = globalTemplateMap;
+        this.objectWrapper = objectWrapper;
+        wrappedValues.clear();
+    }
+
+    void clear() {
+        templateMap = null;
+        globalTemplateMap = null;
+        objectWrapper = null;
+        wrappedValues.clear();
+    }
+
+    @Override
+    public TemplateModel get(String key) throws TemplateModelException {
+        TemplateModel result = wrappedValues.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        Object value = globalTemplateMap.get(key);
+        if (value == null && !globalTemplateMap.containsKey(key)) {
+            value = templateMap.get(key);
+        }
+
+        if (value == null) {
+            return null;
+        }
+
+        result = objectWrapper.wrap(value);
+        wrappedValues.put(key, result);
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return templateMap.isEmpty() && globalTemplateMap.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return getVariables().size();
+    }
+
+    @Override
+    public TemplateCollectionModel keys() {
+        return new SimpleCollection(getVariables().keySet(), objectWrapper);
+    }
+
+    @Override
+    public TemplateCollectionModel values() {
+        return new SimpleCollection(getVariables().values(), objectWrapper);
+    }
+
+    /**
+     * @return Merged copy of the variables, used only to list them.
+     */
+    private Map<String, Object> getVariables() {
+        Map<String, Object> variables = new HashMap<>(templateMap);
+        variables.putAll(globalTemplateMap);
+        return variables;
+    }
+}
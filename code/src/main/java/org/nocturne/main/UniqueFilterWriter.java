@@ -0,0 +1,186 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_CLOSE_PREFIX;
+import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_OPEN_PREFIX;
+
+/**
+ * Streaming version of {@link FrameDirective#processComponentUniques(CharSequence)}:
+ * removes unique magic markers on the fly and skips blocks which have already been rendered.
+ * Only a possible marker at the tail of the written text is kept in memory.
+ * <p>
+ * Also it flushes the underlying writer (and so the response) after {@code </head>} has been written
+ * (possibly by several writes) to send the head of the page to the client as soon as possible.
+ * The underlying writer is closed on {@link #close()}.
+ *
+ * @author Mike Mirzayanov
+ */
+class UniqueFilterWriter extends Writer {
+    private static final String HEAD_CLOSE_TAG = "</head>";
+
+    private final FrameDirective frameDirective;
+    private final Writer out;
+    private final StringBuilder pending = new StringBuilder(1024);
+
+    /**
+     * Current block state: outside unique block, inside rendered block or inside skipped block.
+     */
+    private State state = State.OUTSIDE;
+
+    /**
+     * Number of the chars of {@code </head>} matched at the end of the written text.
+     */
+    private int headCloseMatched;
+    private boolean headFlushed;
+
+    UniqueFilterWriter(@Nonnull FrameDirective frameDirective, @Nonnull Writer out) {
+        this.frameDirective = frameDirective;
+        this.out = out;
+    }
+
+    @Override
+    public void write(@Nonnull char[] buffer, int offset, int length) throws IOException {
+        pending.append(buffer, offset, length);
+        process(false);
+    }
+
+    @Override
+    public void write(@Nonnull String s, int offset, int length) throws IOException {
+        pending.append(s, offset, offset + length);
+        process(false);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        pending.append((char) c);
+        process(false);
+    }
+
+    /**
+     * Doesn't flush the response: template directives call it often.
+     */
+    @Override
+    public void flush() {
+        // No operations.
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            process(true);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void process(boolean finish) throws IOException {
+        int position = 0;
+
+        while (position < pending.length()) {
+            String prefix = state == State.OUTSIDE ? UNIQUE_MAGIC_OPEN_PREFIX : UNIQUE_MAGIC_CLOSE_PREFIX;
+            int markerStart = pending.indexOf(prefix, position);
+
+            if (markerStart < 0) {
+                int end = finish ? pending.length() : pending.length() - getPartialPrefixLength(position, prefix);
+                emit(position, end);
+                position = end;
+                break;
+            }
+
+            int keyEnd = pending.indexOf(">", markerStart + prefix.length());
+            if (!finish && (keyEnd < 0 || keyEnd + 1 >= pending.length())) {
+                // Wait for the complete marker and the char after it.
+                emit(position, markerStart);
+                position = markerStart;
+                break;
+            }
+
+            if (keyEnd < 0) {
+                // Broken marker at the end of the page, leave it as is.
+                emit(position, pending.length());
+                position = pending.length();
+                break;
+            }
+
+            emit(position, markerStart);
+
+            if (state == State.OUTSIDE) {
+                String key = pending.substring(markerStart + prefix.length(), keyEnd);
+                state = frameDirective.addUniqueRenderKey(key) ? State.RENDERED : State.SKIPPED;
+            } else {
+                state = State.OUTSIDE;
+            }
+
+            // The marker is removed together with the following line break.
+            position = FrameDirective.skipLineBreak(pending, keyEnd + 1, pending.length());
+        }
+
+        pending.delete(0, position);
+    }
+
+    private void emit(int start, int end) throws IOException {
+        if (start < end && state != State.SKIPPED) {
+            out.append(pending, start, end);
+
+            if (!headFlushed && isHeadClosed(start, end)) {
+                headFlushed = true;
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} iff {@code </head>} ends in the emitted chars, its beginning can be
+     * in the previously emitted chars.
+     */
+    private boolean isHeadClosed(int start, int end) {
+        // No proper prefix of "</head>" is its suffix, so a mismatch restarts the matching.
+        for (int i = start; i < end; ++i) {
+            char c = pending.charAt(i);
+            if (c == HEAD_CLOSE_TAG.charAt(headCloseMatched)) {
+                if (++headCloseMatched == HEAD_CLOSE_TAG.length()) {
+                    return true;
+                }
+            } else {
+                headCloseMatched = c == HEAD_CLOSE_TAG.charAt(0) ? 1 : 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Length of the longest suffix of pending (starting not before position)
+     * which is a proper prefix of the given prefix.
+     */
+    private int getPartialPrefixLength(int position, String prefix) {
+        int maxLength = Math.min(pending.length() - position, prefix.length() - 1);
+        for (int length = maxLength; length > 0; --length) {
+            int start = pending.length() - length;
+            if (pending.charAt(start) == '<') {
+                boolean matches = true;
+                for (int i = 1; i < length; ++i) {
+                    if (pending.charAt(start + i) != prefix.charAt(i)) {
+                        matches = false;
+                        break;
+                    }
+                }
+                if (matches) {
+                    return length;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private enum State {
+        OUTSIDE,
+        RENDERED,
+        SKIPPED
+    }
+}
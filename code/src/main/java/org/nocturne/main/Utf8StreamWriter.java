@@ -0,0 +1,173 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.main;
+
+import org.nocturne.pool.Pool;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes chars into the output stream as UTF-8. Unlike {@link java.io.OutputStreamWriter}
+ * it doesn't allocate encoder and buffers for each instance: they are taken from the pool
+ * and returned into it on {@link #close()}. The output stream itself is not closed.
+ *
+ * @author Mike Mirzayanov
+ */
+class Utf8StreamWriter extends Writer {
+    private static final int CHAR_BUFFER_SIZE = 4096;
+    private static final int BYTE_BUFFER_SIZE = 3 * CHAR_BUFFER_SIZE;
+
+    private static final Pool<EncoderBuffers> encoderBuffersPool = new Pool<EncoderBuffers>() {
+        @Override
+        protected EncoderBuffers newInstance() {
+            return new EncoderBuffers();
+        }
+
+        @Override
+        protected int getAcquireIncrement() {
+            return 1;
+        }
+
+        @Override
+        protected int getMaxSize() {
+            return 4 * Runtime.getRuntime().availableProcessors();
+        }
+    };
+
+    private final OutputStream out;
+    private EncoderBuffers encoderBuffers;
+
+    Utf8StreamWriter(@Nonnull OutputStream out) {
+        this.out = out;
+        this.encoderBuffers = encoderBuffersPool.getInstance();
+    }
+
+    @Override
+    public void write(@Nonnull char[] buffer, int offset, int length) throws IOException {
+        CharBuffer chars = getEncoderBuffers().chars;
+        while (length > 0) {
+            int count = Math.min(length, chars.remaining());
+            chars.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(@Nonnull String s, int offset, int length) throws IOException {
+        CharBuffer chars = getEncoderBuffers().chars;
+        while (length > 0) {
+            int count = Math.min(length, chars.remaining());
+            chars.put(s, offset, offset + count);
+            offset += count;
+            length -= count;
+
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        write(new char[]{(char) c}, 0, 1);
+    }
+
+    /**
+     * Encodes all the written chars and flushes the output stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        out.flush();
+    }
+
+    /**
+     * Encodes all the written chars, flushes the output stream and returns buffers into the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (encoderBuffers != null) {
+            try {
+                encode(true);
+                out.flush();
+            } finally {
+                encoderBuffers.clear();
+                encoderBuffersPool.release(encoderBuffers);
+                encoderBuffers = null;
+            }
+        }
+    }
+
+    private EncoderBuffers getEncoderBuffers() throws IOException {
+        if (encoderBuffers == null) {
+            throw new IOException("Writer has been closed.");
+        }
+        return encoderBuffers;
+    }
+
+    /**
+     * Encodes chars and writes bytes into the output stream. A trailing high surrogate
+     * stays in the char buffer until the next call unless {@code endOfInput} is set.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        EncoderBuffers buffers = getEncoderBuffers();
+        CharBuffer chars = buffers.chars;
+        ByteBuffer bytes = buffers.bytes;
+
+        chars.flip();
+        try {
+            while (true) {
+                CoderResult coderResult = buffers.encoder.encode(chars, bytes, endOfInput);
+                if (endOfInput && coderResult.isUnderflow()) {
+                    coderResult = buffers.encoder.flush(bytes);
+                }
+                writeBytes(bytes);
+                if (coderResult.isUnderflow()) {
+                    break;
+                }
+            }
+        } finally {
+            chars.compact();
+        }
+
+        if (endOfInput) {
+            buffers.encoder.reset();
+        }
+    }
+
+    private void writeBytes(ByteBuffer bytes) throws IOException {
+        if (bytes.position() > 0) {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+    }
+
+    private static final class EncoderBuffers {
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+        private void clear() {
+            encoder.reset();
+            chars.clear();
+            bytes.clear();
+        }
+    }
+}
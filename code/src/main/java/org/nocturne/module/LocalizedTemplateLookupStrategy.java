@@ -0,0 +1,65 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.module;
+
+import freemarker.cache.TemplateLookupContext;
+import freemarker.cache.TemplateLookupResult;
+import freemarker.cache.TemplateLookupStrategy;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Default freemarker lookup strategy which tells {@link PreprocessFreemarkerFileTemplateLoader} the locale
+ * of the template being looked up. The loader binds found sources to the locale and substitutes
+ * {{...}} captions in this locale, so each (template, locale) pair is preprocessed and parsed once
+ * and cached by freemarker under its own key.
+ * </p>
+ * <p>
+ * Without it the loader uses the locale of the current request.
+ * </p>
+ *
+ * @author Mike Mirzayanov
+ */
+public final class LocalizedTemplateLookupStrategy extends TemplateLookupStrategy {
+    private static final LocalizedTemplateLookupStrategy INSTANCE = new LocalizedTemplateLookupStrategy();
+
+    private static final ThreadLocal<Locale> lookupLocale = new ThreadLocal<>();
+
+    private LocalizedTemplateLookupStrategy() {
+        // No operations.
+    }
+
+    @Override
+    public TemplateLookupResult lookup(TemplateLookupContext ctx) throws IOException {
+        Locale previousLocale = lookupLocale.get();
+        lookupLocale.set(ctx.getTemplateLocale());
+        try {
+            return DEFAULT_2_3_0.lookup(ctx);
+        } finally {
+            if (previousLocale == null) {
+                lookupLocale.remove();
+            } else {
+                lookupLocale.set(previousLocale);
+            }
+        }
+    }
+
+    /**
+     * @return Locale of the template being looked up by the current thread, {@code null} outside the lookup.
+     */
+    @Nullable
+    static Locale getLookupLocale() {
+        return lookupLocale.get();
+    }
+
+    /**
+     * @return Singleton instance.
+     */
+    public static LocalizedTemplateLookupStrategy getInstance() {
+        return INSTANCE;
+    }
+}
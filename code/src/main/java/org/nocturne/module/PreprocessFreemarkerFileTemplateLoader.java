@@ -19,12 +19,18 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * Scans loaded templates to contains {{...}} and uses captions framework to
  * substitute them to caption values. Also prepares @once directive (sets scopes) and
+ * <p>
+ * Found template sources are bound to the locale of the template (see {@link LocalizedTemplateLookupStrategy}),
+ * so captions are substituted once per template and locale, and the sources of different
+ * locales are different templates for freemarker.
  *
  * @author Mike Mirzayanov
  */
@@ -34,6 +40,11 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
             = org.apache.log4j.Logger.getLogger(PreprocessFreemarkerFileTemplateLoader.class);
 
     private static final ConcurrentMap<String, InmemoryTemplateSource> templateSourceByName = new ConcurrentHashMap<>();
+
+    /**
+     * UTF-8 size of the last preprocessed content by template source.
+     */
+    private static final ConcurrentMap<String, Integer> preprocessedSourceBytesBySource = new ConcurrentHashMap<>();
     private final int templateDirCount;
 
     public PreprocessFreemarkerFileTemplateLoader(File... templateDirs) throws IOException {
@@ -69,6 +80,11 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
 
     @Override
     public Object findTemplateSource(String name) throws IOException {
+        Object templateSource = findUnlocalizedTemplateSource(name);
+        return templateSource == null ? null : new LocalizedTemplateSource(templateSource, getTemplateLocale());
+    }
+
+    private Object findUnlocalizedTemplateSource(String name) throws IOException {
         InmemoryTemplateSource templateSource = templateSourceByName.get(name);
 
         if (templateSource == null) {
@@ -91,7 +107,8 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
 
     @SuppressWarnings("RefusedBequest")
     @Override
-    public Reader getReader(Object templateSource, String encoding) throws IOException {
+    public Reader getReader(Object localizedTemplateSource, String encoding) throws IOException {
+        Object templateSource = unwrap(localizedTemplateSource);
         StringBuilder stringBuilder = getTemplateAsStringBuilder(templateSource, encoding);
 
         if (ApplicationContext.getInstance().isUseComponentTemplates()) {
@@ -99,9 +116,14 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
             preprocessor.preprocess(templateSource, stringBuilder);
         }
 
-        processCaptions(stringBuilder);
+        Locale locale = localizedTemplateSource instanceof LocalizedTemplateSource
+                ? ((LocalizedTemplateSource) localizedTemplateSource).locale : getTemplateLocale();
+        processCaptions(stringBuilder, locale);
         processOnceDirectiveCalls(templateSource, stringBuilder);
-        return new StringReader(stringBuilder.toString());
+
+        String content = stringBuilder.toString();
+        preprocessedSourceBytesBySource.put(localizedTemplateSource.toString(), content.getBytes(StandardCharsets.UTF_8).length);
+        return new StringReader(content);
     }
 
     private StringBuilder getTemplateAsStringBuilder(Object templateSource, String encoding) throws IOException {
@@ -127,9 +149,10 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
     /**
      * Scans content to find "{{...some-text...}}" and replaces it using InteropImpl.
      *
-     * @param sb content to be processed
+     * @param sb     content to be processed
+     * @param locale locale of the template
      */
-    private static void processCaptions(StringBuilder sb) {
+    private static void processCaptions(StringBuilder sb, Locale locale) {
         int index = 0;
 
         while (index + 1 < sb.length()) {
@@ -144,7 +167,7 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
                         throw new UnsupportedOperationException("{{!...}} syntax is no more supported.");
                     }
 
-                    String replacement = ApplicationContext.getInstance().$(content);
+                    String replacement = ApplicationContext.getInstance().getCaption(locale, content);
                     sb.replace(index, closeIndex + 2, replacement);
                 }
             }
@@ -210,12 +233,24 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
         templateSourceByName.put(name, new InmemoryTemplateSource(name, content, modificationTime));
     }
 
+    /**
+     * @return Total UTF-8 size of the preprocessed template sources (the last version of each).
+     */
+    public static long getPreprocessedSourceBytes() {
+        long result = 0;
+        for (Integer size : preprocessedSourceBytesBySource.values()) {
+            result += size;
+        }
+        return result;
+    }
+
     @Override
     public long getLastModified(Object templateSource) {
         if (templateSource == null) {
             return 0;
         }
 
+        templateSource = unwrap(templateSource);
         if (templateSource instanceof InmemoryTemplateSource) {
             return ((InmemoryTemplateSource) templateSource).lastModified();
         }
@@ -225,11 +260,61 @@ public class PreprocessFreemarkerFileTemplateLoader extends MultiTemplateLoader
 
     @Override
     public void closeTemplateSource(Object templateSource) throws IOException {
+        templateSource = unwrap(templateSource);
         if (!(templateSource instanceof InmemoryTemplateSource)) {
             super.closeTemplateSource(templateSource);
         }
     }
 
+    /**
+     * @return Locale of the template being looked up, or the current locale if the lookup strategy is not used.
+     */
+    private static Locale getTemplateLocale() {
+        Locale locale = LocalizedTemplateLookupStrategy.getLookupLocale();
+        return locale == null ? ApplicationContext.getInstance().getLocale() : locale;
+    }
+
+    private static Object unwrap(Object templateSource) {
+        return templateSource instanceof LocalizedTemplateSource
+                ? ((LocalizedTemplateSource) templateSource).templateSource : templateSource;
+    }
+
+    /**
+     * Template source bound to the locale, it is equal only to the same source of the same locale.
+     */
+    private static final class LocalizedTemplateSource {
+        private final Object templateSource;
+        private final Locale locale;
+
+        private LocalizedTemplateSource(Object templateSource, Locale locale) {
+            this.templateSource = templateSource;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            LocalizedTemplateSource that = (LocalizedTemplateSource) o;
+            return templateSource.equals(that.templateSource) && Objects.equals(locale, that.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * templateSource.hashCode() + Objects.hashCode(locale);
+        }
+
+        @Override
+        public String toString() {
+            return templateSource + " [locale=" + locale + ']';
+        }
+    }
+
     @SuppressWarnings("DeserializableClassInSecureContext")
     private static final class InmemoryTemplateSource extends File {
         private final String content;
@@ -4,9 +4,12 @@
 package org.nocturne.pool;
 
 import org.apache.log4j.Logger;
+import org.nocturne.main.ApplicationContext;
 import org.nocturne.main.Page;
 import org.nocturne.main.PageLoader;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Stores all the instances of the specific page class.
  *
@@ -49,4 +52,45 @@ public class PagePool extends Pool<Page> {
     protected int getAcquireIncrement() {
         return 3;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getMinSize() {
+        return ApplicationContext.getInstance().getPagePoolMinSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getMaxSize() {
+        return ApplicationContext.getInstance().getPagePoolMaxSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getIdleTimeoutMillis() {
+        return TimeUnit.SECONDS.toMillis(ApplicationContext.getInstance().getPagePoolIdleTimeout());
+    }
+
+    /**
+     * Page pools are maintained in production mode only: in the debug mode
+     * pages are reloaded with each request.
+     */
+    @Override
+    protected boolean isMaintained() {
+        return !ApplicationContext.getInstance().isDebug();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getName() {
+        return pageClassName;
+    }
 }
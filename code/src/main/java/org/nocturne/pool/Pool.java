@@ -3,21 +3,77 @@
  */
 package org.nocturne.pool;
 
+import io.prometheus.client.Gauge;
 import org.apache.log4j.Logger;
+import org.nocturne.prometheus.Prometheus;
 
-import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Generic class for any pool.
+ * <p>
+ * The pool doesn't use locks. Free instances are stored in striped slots (each thread
+ * prefers the slot chosen by its id, so usually it takes back the instance it has released)
+ * and in a lock-free shared overflow queue.
+ * <p>
+ * If the pool is maintained (see {@link #isMaintained()}), a background thread creates
+ * instances after a miss (only one instance is created on the caller thread), keeps at least
+ * {@link #getMinSize()} idle instances, finalizes instances which are idle longer than
+ * {@link #getIdleTimeoutMillis()} and trims idle instances down to {@link #getMaxSize()}.
  *
  * @author Mike Mirzayanov
  */
 public abstract class Pool<T> {
     private static final Logger logger = Logger.getLogger(Pool.class);
-    private final Queue<T> instances = new LinkedList<>();
+
+    /**
+     * How many neighbour slots to check before going to the overflow queue.
+     */
+    private static final int SLOT_PROBE_COUNT = 2;
+
+    private static final int SLOT_COUNT = getSlotCount();
+
+    /**
+     * Period of the background maintenance.
+     */
+    private static final long MAINTENANCE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Executor of the background maintenance of all the pools, it is created on the first use and
+     * shut down by {@link #shutdownMaintenance()}. Guarded by Pool.class.
+     */
+    private static ScheduledExecutorService maintenanceExecutor;
+
+    private final AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(SLOT_COUNT);
+    private final AtomicLongArray slotReleaseTimes = new AtomicLongArray(SLOT_COUNT);
+    private final Queue<IdleInstance<T>> overflowInstances = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of idle instances both in the slots and in the overflow queue. It is incremented
+     * before an instance is stored and decremented after it is taken, so it never underestimates.
+     */
+    private final AtomicInteger idleSize = new AtomicInteger();
+
     private final AtomicInteger createdCount = new AtomicInteger();
+    private final AtomicLong finalizedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private final AtomicBoolean maintenanceStarted = new AtomicBoolean();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private volatile ScheduledFuture<?> maintenanceFuture;
 
     /**
      * Override it to define the method how pool should get new instance.
@@ -33,6 +89,45 @@ public abstract class Pool<T> {
         return 5;
     }
 
+    /**
+     * @return Minimal number of idle instances: they are created by {@link #prewarm()} and
+     *         never evicted as idle.
+     */
+    protected int getMinSize() {
+        return 0;
+    }
+
+    /**
+     * @return Maximal number of idle instances (in the slots and in the overflow queue together).
+     *         Released instances over the limit are finalized.
+     */
+    protected int getMaxSize() {
+        return 4 * getAcquireIncrement();
+    }
+
+    /**
+     * @return Idle instances older than the timeout are finalized by background maintenance,
+     *         zero means no eviction by idle time.
+     */
+    protected long getIdleTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * @return {@code true} iff the pool should be maintained in the background thread.
+     *         Otherwise instances are created only on the caller thread and never evicted as idle.
+     */
+    protected boolean isMaintained() {
+        return false;
+    }
+
+    /**
+     * @return Pool name, used as metrics label.
+     */
+    protected String getName() {
+        return getClass().getName();
+    }
+
     /**
      * Close() method will force finalizeInstance() for each
      * pooled instance.
@@ -49,36 +144,56 @@ public abstract class Pool<T> {
      *         storage is empty.
      */
     public T getInstance() {
-        synchronized (instances) {
-            checkSize();
-            ensureElement();
-            return instances.remove();
+        int slotIndex = getSlotIndex();
+        for (int i = 0; i < SLOT_PROBE_COUNT; ++i) {
+            int index = (slotIndex + i) & (SLOT_COUNT - 1);
+            T instance = slots.get(index);
+            if (instance != null && slots.compareAndSet(index, instance, null)) {
+                idleSize.decrementAndGet();
+                hitCount.increment();
+                return instance;
+            }
         }
-    }
 
-    private void ensureElement() {
-        if (instances.isEmpty()) {
-            int acquireIncrement = getAcquireIncrement();
-            for (int i = 0; i < acquireIncrement; i++) {
-                T instance = newInstance();
-                instances.add(instance);
-                createdCount.incrementAndGet();
-            }
+        IdleInstance<T> idleInstance = overflowInstances.poll();
+        if (idleInstance != null) {
+            idleSize.decrementAndGet();
+            hitCount.increment();
+            return idleInstance.instance;
+        }
+
+        missCount.increment();
+
+        if (isMaintained()) {
+            startMaintenance();
+            scheduleRefill();
+            return createInstance();
+        } else {
+            return createInstances();
         }
     }
 
-    private void checkSize() {
+    /**
+     * Creates getAcquireIncrement() instances: returns one of them, others are
+     * stored into the pool.
+     *
+     * @return New instance.
+     */
+    private T createInstances() {
+        T result = createInstance();
+
         int acquireIncrement = getAcquireIncrement();
-        if (instances.size() > 4 * acquireIncrement) {
-            T t = instances.peek();
-            if (t != null) {
-                logger.warn("Pool queue '" + getClass().getName() + "' [t=" + t.getClass().getName() + "] is too large.");
-            }
-            while (instances.size() > 2 * acquireIncrement) {
-                T instance = instances.remove();
-                finalizeInstance(instance);
-            }
+        for (int i = 1; i < acquireIncrement; i++) {
+            addOverflowInstance(createInstance());
         }
+
+        return result;
+    }
+
+    private T createInstance() {
+        T instance = newInstance();
+        createdCount.incrementAndGet();
+        return instance;
     }
 
     /**
@@ -87,8 +202,49 @@ public abstract class Pool<T> {
      * @param instance Instance to be returned into the pool.
      */
     public void release(T instance) {
-        synchronized (instances) {
-            instances.add(instance);
+        if (idleSize.incrementAndGet() > getMaxSize()) {
+            idleSize.decrementAndGet();
+            logger.warn("Pool queue '" + getClass().getName() + "' [t=" + instance.getClass().getName() + "] is too large.");
+            doFinalizeInstance(instance);
+            return;
+        }
+
+        int slotIndex = getSlotIndex();
+        for (int i = 0; i < SLOT_PROBE_COUNT; ++i) {
+            int index = (slotIndex + i) & (SLOT_COUNT - 1);
+            if (slots.get(index) == null) {
+                slotReleaseTimes.set(index, System.currentTimeMillis());
+                if (slots.compareAndSet(index, null, instance)) {
+                    return;
+                }
+            }
+        }
+
+        overflowInstances.add(new IdleInstance<>(instance, System.currentTimeMillis()));
+    }
+
+    /**
+     * Finalizes the instance taken from the pool instead of returning it into the pool.
+     * Use it for instances which can't be reused.
+     *
+     * @param instance Instance to be finalized.
+     */
+    public void discard(T instance) {
+        doFinalizeInstance(instance);
+    }
+
+    /**
+     * Creates instances in the caller thread to have at least getMinSize() idle instances.
+     * Use it on startup.
+     */
+    public void prewarm() {
+        if (isMaintained()) {
+            startMaintenance();
+        }
+
+        int count = getMinSize() - getIdleCount();
+        for (int i = 0; i < count; ++i) {
+            addOverflowInstance(createInstance());
         }
     }
 
@@ -97,12 +253,48 @@ public abstract class Pool<T> {
      * internal storage of the pool.
      */
     public void close() {
-        synchronized (instances) {
-            while (!instances.isEmpty()) {
-                T instance = instances.remove();
-                finalizeInstance(instance);
+        ScheduledFuture<?> future = maintenanceFuture;
+        if (future != null) {
+            future.cancel(false);
+            unexportMetrics();
+        }
+
+        for (int index = 0; index < SLOT_COUNT; ++index) {
+            T instance = slots.getAndSet(index, null);
+            if (instance != null) {
+                idleSize.decrementAndGet();
+                doFinalizeInstance(instance);
             }
         }
+
+        IdleInstance<T> idleInstance;
+        while ((idleInstance = overflowInstances.poll()) != null) {
+            idleSize.decrementAndGet();
+            doFinalizeInstance(idleInstance.instance);
+        }
+    }
+
+    /**
+     * Stops the background maintenance thread of all the pools, it should be called when the webapp
+     * is destroyed (after the pools are closed), otherwise the thread keeps the webapp classes loaded.
+     * Pools which start after that use a new thread.
+     */
+    public static synchronized void shutdownMaintenance() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getMaintenanceExecutor() {
+        if (maintenanceExecutor == null) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "nocturne-pool-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return maintenanceExecutor;
     }
 
     /**
@@ -111,4 +303,213 @@ public abstract class Pool<T> {
     public int getCreatedCount() {
         return createdCount.get();
     }
+
+    /**
+     * @return Number of getInstance() calls served by a pooled instance.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return Number of getInstance() calls which have created new instances.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return Number of instances finalized by the background maintenance.
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * @return Number of idle instances in the pool.
+     */
+    public int getIdleCount() {
+        return idleSize.get();
+    }
+
+    /**
+     * @return Number of instances taken from the pool (or created) and not returned yet.
+     */
+    public long getInUseCount() {
+        return Math.max(0, createdCount.get() - finalizedCount.get() - getIdleCount());
+    }
+
+    private void addOverflowInstance(T instance) {
+        idleSize.incrementAndGet();
+        overflowInstances.add(new IdleInstance<>(instance, System.currentTimeMillis()));
+    }
+
+    private void doFinalizeInstance(T instance) {
+        finalizedCount.incrementAndGet();
+        finalizeInstance(instance);
+    }
+
+    private void scheduleRefill() {
+        if (refillScheduled.compareAndSet(false, true)) {
+            try {
+                getMaintenanceExecutor().execute(() -> {
+                    try {
+                        refill(getAcquireIncrement() - 1);
+                    } finally {
+                        refillScheduled.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                refillScheduled.set(false);
+                logger.warn("Can't schedule refill of pool '" + getName() + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * Creates instances to have at least getMinSize() idle instances (and at least
+     * {@code count} new instances) but no more than getMaxSize() idle instances.
+     *
+     * @param count Number of instances to create.
+     */
+    private void refill(int count) {
+        int idleCount = getIdleCount();
+        count = Math.max(count, getMinSize() - idleCount);
+        count = Math.min(count, getMaxSize() - idleCount);
+
+        try {
+            for (int i = 0; i < count; ++i) {
+                addOverflowInstance(createInstance());
+            }
+        } catch (RuntimeException e) {
+            logger.error("Can't create instance in the background for pool '" + getName() + "'.", e);
+        }
+    }
+
+    /**
+     * Finalizes idle instances which have not been used for getIdleTimeoutMillis() and
+     * trims idle instances to getMaxSize(). Keeps at least getMinSize() idle instances.
+     */
+    private void evict() {
+        long idleTimeoutMillis = getIdleTimeoutMillis();
+        long minReleaseTime = idleTimeoutMillis > 0 ? System.currentTimeMillis() - idleTimeoutMillis : Long.MIN_VALUE;
+        int minSize = getMinSize();
+        int maxSize = getMaxSize();
+        int idleCount = getIdleCount();
+
+        for (int index = 0; index < SLOT_COUNT && idleCount > minSize; ++index) {
+            T instance = slots.get(index);
+            if (instance != null && (idleCount > maxSize || slotReleaseTimes.get(index) < minReleaseTime)
+                    && slots.compareAndSet(index, instance, null)) {
+                idleSize.decrementAndGet();
+                --idleCount;
+                evictedCount.incrementAndGet();
+                doFinalizeInstance(instance);
+            }
+        }
+
+        while (idleCount > minSize) {
+            IdleInstance<T> idleInstance = overflowInstances.peek();
+            if (idleInstance == null || (idleCount <= maxSize && idleInstance.releaseTime >= minReleaseTime)) {
+                break;
+            }
+
+            if (overflowInstances.remove(idleInstance)) {
+                idleSize.decrementAndGet();
+                --idleCount;
+                evictedCount.incrementAndGet();
+                doFinalizeInstance(idleInstance.instance);
+            }
+        }
+
+        if (idleCount < minSize) {
+            refill(0);
+        }
+    }
+
+    private void maintain() {
+        try {
+            evict();
+        } catch (RuntimeException e) {
+            logger.error("Can't evict idle instances of pool '" + getName() + "'.", e);
+        }
+    }
+
+    private void startMaintenance() {
+        if (maintenanceStarted.compareAndSet(false, true)) {
+            maintenanceFuture = getMaintenanceExecutor().scheduleWithFixedDelay(
+                    this::maintain, MAINTENANCE_PERIOD_MILLIS, MAINTENANCE_PERIOD_MILLIS, TimeUnit.MILLISECONDS
+            );
+            exportMetrics();
+        }
+    }
+
+    private void exportMetrics() {
+        String name = getName();
+
+        Prometheus.getPoolIdleInstances().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return getIdleCount();
+            }
+        }, name);
+
+        Prometheus.getPoolInUseInstances().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return getInUseCount();
+            }
+        }, name);
+
+        Prometheus.getPoolCreatedInstances().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return getCreatedCount();
+            }
+        }, name);
+
+        Prometheus.getPoolEvictedInstances().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return getEvictedCount();
+            }
+        }, name);
+    }
+
+    /**
+     * Removes the metrics of the pool, they refer the pool and would keep it from being collected.
+     */
+    private void unexportMetrics() {
+        String name = getName();
+
+        Prometheus.getPoolIdleInstances().remove(name);
+        Prometheus.getPoolInUseInstances().remove(name);
+        Prometheus.getPoolCreatedInstances().remove(name);
+        Prometheus.getPoolEvictedInstances().remove(name);
+    }
+
+    private static int getSlotIndex() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (SLOT_COUNT - 1);
+    }
+
+    private static int getSlotCount() {
+        int desiredCount = 2 * Runtime.getRuntime().availableProcessors();
+        int slotCount = 1;
+        while (slotCount < desiredCount) {
+            slotCount <<= 1;
+        }
+        return Math.max(slotCount, SLOT_PROBE_COUNT);
+    }
+
+    private static final class IdleInstance<T> {
+        private final T instance;
+        private final long releaseTime;
+
+        private IdleInstance(T instance, long releaseTime) {
+            this.instance = instance;
+            this.releaseTime = releaseTime;
+        }
+    }
 }
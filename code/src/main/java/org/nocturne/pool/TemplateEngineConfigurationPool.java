@@ -3,13 +3,19 @@
  */
 package org.nocturne.pool;
 
+import freemarker.cache.CacheStorage;
+import freemarker.cache.CacheStorageWithGetSize;
 import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapper;
+import io.prometheus.client.Gauge;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.nocturne.main.ApplicationTemplateLoader;
 import org.nocturne.main.Constants;
 import org.nocturne.main.ReloadingContext;
+import org.nocturne.module.LocalizedTemplateLookupStrategy;
+import org.nocturne.module.PreprocessFreemarkerFileTemplateLoader;
+import org.nocturne.prometheus.Prometheus;
 
 import javax.servlet.FilterConfig;
 import java.nio.charset.StandardCharsets;
@@ -17,12 +23,17 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Storage to store template configurations.
- * Nocturne will not create new configuration on request but reuses old (if exists).
+ * Storage to store template configuration.
+ * <p>
+ * Freemarker configuration is thread-safe after it has been set up, so
+ * nocturne keeps exactly one instance and shares it (and its template cache) between
+ * all the requests. As a result each template is loaded, preprocessed and parsed once.
+ * The methods {@link #getInstance()} and {@link #release(Configuration)} are kept to
+ * preserve the pool-like usage.
  *
  * @author Mike Mirzayanov
  */
-public class TemplateEngineConfigurationPool extends Pool<Configuration> {
+public class TemplateEngineConfigurationPool {
     private static final Logger logger = Logger.getLogger(TemplateEngineConfigurationPool.class);
 
     private final FilterConfig filterConfig;
@@ -30,17 +41,94 @@ public class TemplateEngineConfigurationPool extends Pool<Configuration> {
     private static final AtomicLong count = new AtomicLong(0);
     private volatile TemplateEngineConfigurationHandler handler;
 
+    /**
+     * Shared configuration, lazily created on the first request.
+     */
+    private volatile Configuration configuration;
+
+    /**
+     * Lock to create configuration exactly once.
+     */
+    private final Object configurationLock = new Object();
+
     public TemplateEngineConfigurationPool(FilterConfig filterConfig) {
         this.filterConfig = filterConfig;
         this.handler = null;
     }
 
+    /**
+     * @param handler Handler to be called for the configuration instance. If the instance
+     *                has already been created, the handler is called immediately.
+     */
     public void setInstanceHandler(TemplateEngineConfigurationHandler handler) {
-        this.handler = handler;
+        synchronized (configurationLock) {
+            this.handler = handler;
+
+            if (handler != null && configuration != null) {
+                handler.onInstance(configuration);
+            }
+        }
+    }
+
+    /**
+     * @return Shared configuration instance. Creates it on the first call.
+     */
+    public Configuration getInstance() {
+        Configuration result = configuration;
+
+        if (result == null) {
+            synchronized (configurationLock) {
+                result = configuration;
+                if (result == null) {
+                    result = newInstance();
+                    configuration = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Does nothing: the configuration is shared, so there is nothing to return into the pool.
+     *
+     * @param configuration Configuration returned by {@link #getInstance()}.
+     */
+    @SuppressWarnings("unused")
+    public void release(Configuration configuration) {
+        // No operations.
     }
 
-    @Override
-    protected Configuration newInstance() {
+    /**
+     * Drops the compiled templates of the shared configuration, they are loaded and preprocessed again.
+     */
+    public void clearTemplateCache() {
+        Configuration result = configuration;
+        if (result != null) {
+            result.clearTemplateCache();
+        }
+    }
+
+    /**
+     * Drops the shared configuration and its template cache.
+     */
+    public void close() {
+        synchronized (configurationLock) {
+            if (configuration != null) {
+                configuration.clearTemplateCache();
+                configuration = null;
+            }
+        }
+    }
+
+    /**
+     * @return Total count of the created configurations.
+     */
+    public int getCreatedCount() {
+        return (int) count.get();
+    }
+
+    private Configuration newInstance() {
         Configuration templateEngineConfiguration = new Configuration(Constants.FREEMARKER_VERSION);
         templateEngineConfiguration.setDefaultEncoding(StandardCharsets.UTF_8.name());
 
@@ -57,6 +145,7 @@ public class TemplateEngineConfigurationPool extends Pool<Configuration> {
         }
 
         templateEngineConfiguration.setTemplateLoader(new ApplicationTemplateLoader());
+        templateEngineConfiguration.setTemplateLookupStrategy(LocalizedTemplateLookupStrategy.getInstance());
         templateEngineConfiguration.setObjectWrapper(new DefaultObjectWrapper(Constants.FREEMARKER_VERSION));
 
         logger.debug("Created instance of Configuration [count=" + count.incrementAndGet() + "].");
@@ -65,9 +154,31 @@ public class TemplateEngineConfigurationPool extends Pool<Configuration> {
             handler.onInstance(templateEngineConfiguration);
         }
 
+        exportMetrics(templateEngineConfiguration);
         return templateEngineConfiguration;
     }
 
+    private static void exportMetrics(Configuration templateEngineConfiguration) {
+        Prometheus.getTemplateCacheEntries().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                CacheStorage cacheStorage = templateEngineConfiguration.getCacheStorage();
+                if (cacheStorage instanceof CacheStorageWithGetSize) {
+                    return ((CacheStorageWithGetSize) cacheStorage).getSize();
+                } else {
+                    return Double.NaN;
+                }
+            }
+        });
+
+        Prometheus.getTemplateCacheSourceBytes().setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return PreprocessFreemarkerFileTemplateLoader.getPreprocessedSourceBytes();
+            }
+        });
+    }
+
     public interface TemplateEngineConfigurationHandler {
         void onInstance(Configuration configuration);
     }
@@ -1,6 +1,7 @@
 package org.nocturne.prometheus;
 
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.Summary;
 
 public class Prometheus {
@@ -24,6 +25,47 @@ public class Prometheus {
             .labelNames("className", "phase")
             .register();
 
+    private static final Gauge TEMPLATE_CACHE_ENTRIES = Gauge.build()
+            .name("nocturne_template_cache_entries").help("Nocturne parsed templates in the shared template cache")
+            .register();
+
+    private static final Gauge TEMPLATE_CACHE_SOURCE_BYTES = Gauge.build()
+            .name("nocturne_template_cache_source_bytes").help("Nocturne preprocessed template sources size in bytes")
+            .register();
+
+    private static final Gauge POOL_IDLE_INSTANCES = Gauge.build()
+            .name("nocturne_pool_idle_instances").help("Nocturne pool idle instances count")
+            .labelNames("pool")
+            .register();
+
+    private static final Gauge POOL_IN_USE_INSTANCES = Gauge.build()
+            .name("nocturne_pool_in_use_instances").help("Nocturne pool instances in use count")
+            .labelNames("pool")
+            .register();
+
+    private static final Gauge POOL_CREATED_INSTANCES = Gauge.build()
+            .name("nocturne_pool_created_instances").help("Nocturne pool created instances total count")
+            .labelNames("pool")
+            .register();
+
+    private static final Gauge POOL_EVICTED_INSTANCES = Gauge.build()
+            .name("nocturne_pool_evicted_instances").help("Nocturne pool evicted instances total count")
+            .labelNames("pool")
+            .register();
+
+    private static final Counter FRAGMENT_CACHE_REQUESTS_COUNTER = Counter.build()
+            .name("nocturne_fragment_cache_requests_total").help("Nocturne fragment cache requests total count")
+            .labelNames("className", "result")
+            .register();
+
+    private static final Counter FRAGMENT_CACHE_EVICTIONS_COUNTER = Counter.build()
+            .name("nocturne_fragment_cache_evictions_total").help("Nocturne fragment cache evictions total count")
+            .register();
+
+    private static final Gauge FRAGMENT_CACHE_SIZE = Gauge.build()
+            .name("nocturne_fragment_cache_size").help("Nocturne fragment cache total length of cached results")
+            .register();
+
     public static Counter getPagesCounter() {
         return PAGES_COUNTER;
     }
@@ -39,4 +81,40 @@ public class Prometheus {
     public static Summary getFramesLatencySeconds() {
         return FRAMES_LATENCY_SECONDS;
     }
+
+    public static Gauge getTemplateCacheEntries() {
+        return TEMPLATE_CACHE_ENTRIES;
+    }
+
+    public static Gauge getTemplateCacheSourceBytes() {
+        return TEMPLATE_CACHE_SOURCE_BYTES;
+    }
+
+    public static Gauge getPoolIdleInstances() {
+        return POOL_IDLE_INSTANCES;
+    }
+
+    public static Gauge getPoolInUseInstances() {
+        return POOL_IN_USE_INSTANCES;
+    }
+
+    public static Gauge getPoolCreatedInstances() {
+        return POOL_CREATED_INSTANCES;
+    }
+
+    public static Gauge getPoolEvictedInstances() {
+        return POOL_EVICTED_INSTANCES;
+    }
+
+    public static Counter getFragmentCacheRequestsCounter() {
+        return FRAGMENT_CACHE_REQUESTS_COUNTER;
+    }
+
+    public static Counter getFragmentCacheEvictionsCounter() {
+        return FRAGMENT_CACHE_EVICTIONS_COUNTER;
+    }
+
+    public static Gauge getFragmentCacheSize() {
+        return FRAGMENT_CACHE_SIZE;
+    }
 }
@@ -4,16 +4,24 @@ import org.nocturne.main.Component;
 import org.nocturne.main.Frame;
 import org.nocturne.main.Page;
 
+import java.lang.invoke.MethodHandle;
+
 /**
  * @author Mike Mirzayanov
  */
 public class ComponentFieldsResetter extends FieldsResetter {
+    private static final ClassValue<MethodHandle[]> fieldResettersByClass = new ClassValue<MethodHandle[]>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            return newFieldResetters(type, ComponentFieldsResetter::isResetStopClass);
+        }
+    };
+
     public ComponentFieldsResetter(Component component) {
-        super(component);
+        super(component, fieldResettersByClass);
     }
 
-    @Override
-    boolean isResetStopClass(Class<?> clazz) {
+    private static boolean isResetStopClass(Class<?> clazz) {
         return clazz.getCanonicalName().equals(Component.class.getCanonicalName())
                 || clazz.getCanonicalName().equals(Page.class.getCanonicalName())
                 || clazz.getCanonicalName().equals(Frame.class.getCanonicalName());
@@ -1,9 +1,14 @@
 package org.nocturne.reset;
 
+import org.apache.log4j.Logger;
 import org.nocturne.exception.ConfigurationException;
+import org.nocturne.exception.NocturneException;
 import org.nocturne.main.ApplicationContext;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -12,20 +17,30 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 
 /**
+ * Resets fields of the object to default values. The fields to reset are found once per class:
+ * each of them gets a method handle which sets the default value, so resetting
+ * uses neither reflection nor allocations.
+ *
  * @author Mike Mirzayanov
  */
 abstract class FieldsResetter {
-    private static final org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger(FieldsResetter.class);
+    private static final Logger logger = Logger.getLogger(FieldsResetter.class);
 
     private static final Map<Class<?>, Object> PRIMITIVES_DEFAULT_VALUES = new ConcurrentHashMap<>();
     private static final ConcurrentMap<AnnotatedElement, Boolean> RESET_ANNOTATIONS_CACHE = new ConcurrentHashMap<>();
     private static final ConcurrentMap<AnnotatedElement, Boolean> PERSIST_ANNOTATIONS_CACHE = new ConcurrentHashMap<>();
 
+    private static final MethodType FIELD_RESETTER_TYPE = MethodType.methodType(void.class, Object.class);
+
     private final Object object;
-    private final List<Field> fieldsToReset = new ArrayList<>();
-    private final ResetStrategy resetStrategy;
+
+    /**
+     * Handles of type (Object)void, each of them resets a field.
+     */
+    private final MethodHandle[] fieldResetters;
 
     private static boolean hasResetAnnotation(AnnotatedElement annotatedElement) {
         Boolean result = RESET_ANNOTATIONS_CACHE.get(annotatedElement);
@@ -65,25 +80,37 @@ abstract class FieldsResetter {
         return result;
     }
 
-    public FieldsResetter(Object object) {
-        resetStrategy = getStrategy(ApplicationContext.getInstance().getResetStrategy(),
-                hasResetAnnotation(object.getClass()),
-                hasPersistAnnotation(object.getClass()),
-                object.getClass().getCanonicalName());
-
+    /**
+     * @param object                 Object to reset.
+     * @param fieldResettersByClass  Field resetters by class, see {@link #newFieldResetters(Class, Predicate)}.
+     */
+    FieldsResetter(Object object, ClassValue<MethodHandle[]> fieldResettersByClass) {
         this.object = object;
-        addFieldsToReset();
+        this.fieldResetters = fieldResettersByClass.get(object.getClass());
     }
 
-    private boolean isGuiceOrCglibField(Field field) {
+    private static boolean isGuiceOrCglibField(Field field) {
         return field.getName().contains("$") && (field.getDeclaringClass().getName().contains("$$")
                 || field.getDeclaringClass().getName().contains("EnhancerByGuice"));
     }
 
-    private void addFieldsToReset() {
-        Class<?> clazz = object.getClass();
-        while (!isResetStopClass(clazz)) {
-            Field[] declaredFields = clazz.getDeclaredFields();
+    /**
+     * @param clazz             Class of the objects to reset.
+     * @param isResetStopClass  Returns {@code true} for the class which fields (and fields of its
+     *                          superclasses) shouldn't be reset.
+     * @return Handles of type (Object)void to reset fields of the class instances.
+     */
+    static MethodHandle[] newFieldResetters(Class<?> clazz, Predicate<Class<?>> isResetStopClass) {
+        ResetStrategy resetStrategy = getStrategy(ApplicationContext.getInstance().getResetStrategy(),
+                hasResetAnnotation(clazz),
+                hasPersistAnnotation(clazz),
+                clazz.getCanonicalName());
+
+        List<MethodHandle> fieldResetters = new ArrayList<>();
+
+        for (Class<?> currentClass = clazz; currentClass != null && !isResetStopClass.test(currentClass);
+             currentClass = currentClass.getSuperclass()) {
+            Field[] declaredFields = currentClass.getDeclaredFields();
             for (Field declaredField : declaredFields) {
                 if (Modifier.isStatic(declaredField.getModifiers())
                         || Modifier.isFinal(declaredField.getModifiers())
@@ -98,48 +125,37 @@ abstract class FieldsResetter {
                 );
 
                 if (fieldStrategy == ResetStrategy.RESET) {
-                    fieldsToReset.add(declaredField);
+                    fieldResetters.add(newFieldResetter(declaredField));
                 }
             }
-            clazz = clazz.getSuperclass();
         }
-    }
 
-    abstract boolean isResetStopClass(Class<?> clazz);
-
-    public void resetFields() {
-        for (Field field : fieldsToReset) {
-            resetField(field);
-        }
+        return fieldResetters.toArray(new MethodHandle[0]);
     }
 
-    private void resetField(Field field) {
-        boolean accessible = field.isAccessible();
+    private static MethodHandle newFieldResetter(Field field) {
+        Class<?> type = field.getType();
+
         try {
             field.setAccessible(true);
-            if (field.getType().isPrimitive()) {
-                resetPrimitiveField(field);
-                return;
-            }
-
-            try {
-                field.set(object, null);
-            } catch (IllegalAccessException ignored) {
-                // No operations.
-            }
-        } finally {
-            field.setAccessible(accessible);
+            MethodHandle setter = MethodHandles.lookup().unreflectSetter(field);
+            Object defaultValue = type.isPrimitive() ? PRIMITIVES_DEFAULT_VALUES.get(type) : null;
+            return MethodHandles.insertArguments(setter, 1, defaultValue).asType(FIELD_RESETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.error("Can't reset field " + field + '.', e);
+            throw new NocturneException("Can't reset field " + field + '.', e);
         }
     }
 
-    private void resetPrimitiveField(Field field) {
-        Class<?> type = field.getType();
-        if (type != void.class) {
-            try {
-                field.set(object, PRIMITIVES_DEFAULT_VALUES.get(type));
-            } catch (IllegalAccessException ignored) {
-                // No operations.
+    public void resetFields() {
+        try {
+            for (MethodHandle fieldResetter : fieldResetters) {
+                fieldResetter.invokeExact(object);
             }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new NocturneException("Can't reset fields of " + object.getClass().getName() + '.', e);
         }
     }
 
@@ -170,5 +186,6 @@ abstract class FieldsResetter {
         PRIMITIVES_DEFAULT_VALUES.put(byte.class, (byte) 0);
         PRIMITIVES_DEFAULT_VALUES.put(short.class, (short) 0);
         PRIMITIVES_DEFAULT_VALUES.put(boolean.class, false);
+        PRIMITIVES_DEFAULT_VALUES.put(char.class, (char) 0);
     }
 }
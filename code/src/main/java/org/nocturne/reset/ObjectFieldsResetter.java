@@ -1,18 +1,28 @@
 package org.nocturne.reset;
 
+import java.lang.invoke.MethodHandle;
+
 /**
  * @author Mike Mirzayanov
  */
 public class ObjectFieldsResetter extends FieldsResetter {
-    private final Class<?> resetStopClass;
+    /**
+     * Field resetters by reset stop class and object class.
+     */
+    private static final ClassValue<ClassValue<MethodHandle[]>> fieldResettersByStopClass
+            = new ClassValue<ClassValue<MethodHandle[]>>() {
+        @Override
+        protected ClassValue<MethodHandle[]> computeValue(Class<?> resetStopClass) {
+            return new ClassValue<MethodHandle[]>() {
+                @Override
+                protected MethodHandle[] computeValue(Class<?> type) {
+                    return newFieldResetters(type, clazz -> clazz == resetStopClass);
+                }
+            };
+        }
+    };
 
     public ObjectFieldsResetter(Object object, Class<?> resetStopClass) {
-        super(object);
-        this.resetStopClass = resetStopClass;
-    }
-
-    @Override
-    boolean isResetStopClass(Class<?> clazz) {
-        return clazz == resetStopClass;
+        super(object, fieldResettersByStopClass.get(resetStopClass));
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.upload;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItem;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>
+ * File uploaded with the multipart request. Small files are kept in memory, others are
+ * streamed to a temporary file (see nocturne.upload.* properties), the content is never
+ * read into memory unless {@link #getBytes()} or {@link #getString(Charset)} is called.
+ * </p>
+ * <p>
+ * Set it into fields or action method parameters with @Parameter (type UploadedFile or UploadedFile[])
+ * or use {@link org.nocturne.util.RequestUtil#getUploadedFile(javax.servlet.http.HttpServletRequest, String)}.
+ * Temporary files are deleted after the request, move the file with {@link #write(File)} to keep it.
+ * </p>
+ *
+ * @author Mike Mirzayanov
+ */
+public final class UploadedFile {
+    private final FileItem item;
+
+    public UploadedFile(FileItem item) {
+        this.item = item;
+    }
+
+    /**
+     * @return Name of the form field.
+     */
+    public String getFieldName() {
+        return item.getFieldName();
+    }
+
+    /**
+     * @return Original file name as sent by the browser, may be empty.
+     */
+    @Nullable
+    public String getFileName() {
+        return item.getName();
+    }
+
+    @Nullable
+    public String getContentType() {
+        return item.getContentType();
+    }
+
+    /**
+     * @return File size in bytes.
+     */
+    public long getSize() {
+        return item.getSize();
+    }
+
+    /**
+     * @return {@code true} iff the content is kept in memory instead of the temporary file.
+     */
+    public boolean isInMemory() {
+        return item.isInMemory();
+    }
+
+    @Nonnull
+    public InputStream getInputStream() throws IOException {
+        return item.getInputStream();
+    }
+
+    /**
+     * @return Channel to read the content, it is a {@link FileChannel} if the content is in the temporary file.
+     * @throws IOException if the channel can't be opened.
+     */
+    @Nonnull
+    public ReadableByteChannel openChannel() throws IOException {
+        File file = getStoreFile();
+        if (file == null) {
+            return Channels.newChannel(new ByteArrayInputStream(item.get()));
+        } else {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * @return Read-only buffer with the content, the temporary file is memory-mapped.
+     * @throws IOException if the file can't be mapped.
+     */
+    @Nonnull
+    public ByteBuffer map() throws IOException {
+        File file = getStoreFile();
+        if (file == null) {
+            return ByteBuffer.wrap(item.get()).asReadOnlyBuffer();
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads the whole content into memory, prefer streams or channels for large files.
+     *
+     * @return File content.
+     */
+    @Nonnull
+    public byte[] getBytes() {
+        return item.get();
+    }
+
+    /**
+     * Reads the whole content into memory, prefer streams or channels for large files.
+     *
+     * @param charset Charset of the content.
+     * @return File content as string.
+     */
+    @Nonnull
+    public String getString(Charset charset) {
+        return new String(item.get(), charset);
+    }
+
+    /**
+     * Writes the content into the file, the temporary file is renamed if possible.
+     *
+     * @param file Target file.
+     * @throws IOException if the file can't be written.
+     */
+    public void write(File file) throws IOException {
+        try {
+            item.write(file);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Can't write uploaded file to " + file + '.', e);
+        }
+    }
+
+    /**
+     * Deletes the temporary file, if any. It is called for all the uploaded files after the request.
+     */
+    public void delete() {
+        item.delete();
+    }
+
+    @Nullable
+    private File getStoreFile() {
+        if (item.isInMemory() || !(item instanceof DiskFileItem)) {
+            return null;
+        }
+        return ((DiskFileItem) item).getStoreLocation();
+    }
+
+    @Override
+    public String toString() {
+        return "UploadedFile {fieldName='" + getFieldName() + "', fileName='" + getFileName()
+                + "', size=" + getSize() + '}';
+    }
+}
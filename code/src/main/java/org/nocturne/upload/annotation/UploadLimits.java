@@ -0,0 +1,31 @@
+package org.nocturne.upload.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>
+ * Mark page class with it to restrict uploads to the page. The request which exceeds
+ * the limits is aborted with 413 (Request Entity Too Large) before the page action.
+ * </p>
+ * <p>
+ * The limits of nocturne.upload.max-file-size and nocturne.upload.max-request-size are applied
+ * while the request is read (before the page is known), so they should not be less than the page limits.
+ * </p>
+ *
+ * @author Mike Mirzayanov
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface UploadLimits {
+    /**
+     * @return Maximal size of each uploaded file in bytes, negative value means no limit.
+     */
+    long maxFileSize() default -1;
+
+    /**
+     * @return Maximal size of the request in bytes, negative value means no limit.
+     */
+    long maxRequestSize() default -1;
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2009 Mike Mirzayanov
+ */
+package org.nocturne.util;
+
+import org.nocturne.collection.SingleEntryList;
+import org.nocturne.upload.UploadedFile;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Parameters of the request (see {@link RequestUtil#getRequestParams(HttpServletRequest)}): values of
+ * the request parameter map, each parameter "name[]" is also available as "name", request attributes
+ * override them. Uploaded files are not parameters, the file contents are not converted to strings.
+ * <p>
+ * The map is a view: a value is converted to the list of strings when it is read the first time.
+ * Attributes are taken as they were on the map creation, so the attributes set later are not parameters.
+ * Iteration, size or modification make a plain map of all the values, the map works through it since then.
+ *
+ * @author Mike Mirzayanov
+ */
+@ThreadSafe
+final class RequestParameterMap extends AbstractMap<String, List<String>> {
+    private static final String ARRAY_SUFFIX = "[]";
+
+    /**
+     * Request parameter map, values are usually String[].
+     */
+    private final Map<?, ?> parameterMap;
+
+    /**
+     * Not null request attributes by names, except uploaded files.
+     */
+    private final Map<String, Object> attributes;
+
+    /**
+     * Values which have been read, {@code null} for the missing keys.
+     */
+    private final Map<String, List<String>> values = new HashMap<>();
+
+    /**
+     * Converted values of the request parameter map, the same list is shared by "name[]" and "name".
+     */
+    private final Map<String, List<String>> parameterValues = new HashMap<>();
+
+    /**
+     * All the values, created on the first iteration or modification.
+     */
+    private Map<String, List<String>> allValues;
+
+    RequestParameterMap(HttpServletRequest request) {
+        parameterMap = request.getParameterMap();
+        attributes = new HashMap<>();
+
+        Enumeration<?> enumeration = request.getAttributeNames();
+        while (enumeration.hasMoreElements()) {
+            String name = enumeration.nextElement().toString();
+            Object value = request.getAttribute(name);
+            if (value != null && !(value instanceof UploadedFile) && !(value instanceof UploadedFile[])) {
+                attributes.put(name, value);
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<String> get(Object key) {
+        if (allValues != null) {
+            return allValues.get(key);
+        }
+
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        String name = (String) key;
+        List<String> result = values.get(name);
+        if (result == null && !values.containsKey(name)) {
+            result = getValue(name);
+            values.put(name, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public synchronized int size() {
+        return getAllValues().size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return getAllValues().isEmpty();
+    }
+
+    @Override
+    public synchronized List<String> put(String key, List<String> value) {
+        return getAllValues().put(key, value);
+    }
+
+    @Override
+    public synchronized List<String> remove(Object key) {
+        return getAllValues().remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        getAllValues().clear();
+    }
+
+    @Nonnull
+    @Override
+    public synchronized Set<Entry<String, List<String>>> entrySet() {
+        return getAllValues().entrySet();
+    }
+
+    @Nullable
+    private List<String> getValue(String name) {
+        Object attribute = attributes.get(name);
+        if (attribute != null) {
+            return convertAttribute(attribute);
+        }
+
+        String arrayName = name + ARRAY_SUFFIX;
+        boolean hasParameter = parameterMap.containsKey(name);
+        boolean hasArrayParameter = parameterMap.containsKey(arrayName);
+
+        if (hasParameter && hasArrayParameter) {
+            // The latest of "name" and "name[]" wins, as if they were put into a map one by one.
+            for (Object parameterName : parameterMap.keySet()) {
+                String parameterNameString = parameterName.toString();
+                if (name.equals(parameterNameString)) {
+                    hasArrayParameter = false;
+                } else if (arrayName.equals(parameterNameString)) {
+                    hasArrayParameter = true;
+                }
+            }
+        }
+
+        if (hasArrayParameter) {
+            return getParameterValue(arrayName);
+        }
+
+        return hasParameter ? getParameterValue(name) : null;
+    }
+
+    private List<String> getParameterValue(String name) {
+        List<String> result = parameterValues.get(name);
+        if (result == null) {
+            result = convertParameter(parameterMap.get(name));
+            parameterValues.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return All the values, the same as {@link #get(Object)} returns for each key.
+     */
+    private Map<String, List<String>> getAllValues() {
+        if (allValues == null) {
+            Map<String, List<String>> result = new HashMap<>();
+
+            for (Object parameterName : parameterMap.keySet()) {
+                String name = parameterName.toString();
+                List<String> value = getParameterValue(name);
+                result.put(name, value);
+
+                if (name.endsWith(ARRAY_SUFFIX)) {
+                    result.put(name.substring(0, name.length() - ARRAY_SUFFIX.length()), value);
+                }
+            }
+
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                String name = entry.getKey();
+                List<String> value = values.get(name);
+                result.put(name, value == null ? convertAttribute(entry.getValue()) : value);
+            }
+
+            allValues = result;
+            values.clear();
+        }
+
+        return allValues;
+    }
+
+    private static List<String> convertParameter(Object value) {
+        if (value.getClass().isArray()) {
+            Object[] parameterValues = (Object[]) value;
+            int count = parameterValues.length;
+
+            List<String> result = count <= 1 ? new SingleEntryList<>() : new ArrayList<>(count);
+            for (Object parameterValue : parameterValues) {
+                result.add(parameterValue.toString());
+            }
+            return result;
+        } else {
+            return new SingleEntryList<>(value.toString());
+        }
+    }
+
+    private static List<String> convertAttribute(Object value) {
+        if (value instanceof byte[]) {
+            return new SingleEntryList<>(new String((byte[]) value, StandardCharsets.UTF_8));
+        }
+
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            if (isListOfStrings(list)) {
+                return castToStringList(list);
+            }
+        }
+
+        if (value instanceof Collection) {
+            List<?> list = new ArrayList<>((Collection<?>) value);
+            if (isListOfStrings(list)) {
+                return castToStringList(list);
+            }
+        }
+
+        return new SingleEntryList<>(value.toString());
+    }
+
+    private static boolean isListOfStrings(List<?> list) {
+        for (Object o : list) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> castToStringList(List<?> list) {
+        return (List<String>) list;
+    }
+}
@@ -4,16 +4,16 @@
 package org.nocturne.util;
 
 import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
-import org.nocturne.collection.SingleEntryList;
 import org.nocturne.exception.NocturneException;
+import org.nocturne.main.ApplicationContext;
+import org.nocturne.upload.UploadedFile;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
@@ -28,6 +28,8 @@ import java.util.regex.Pattern;
 public class RequestUtil {
     private static final String GET_REQUEST_PARAMS_CACHED_RESULT = "Codeforces::getRequestParamsCachedResult";
     private static final Pattern QUERY_STRING_SPLIT_PATTERN = Pattern.compile("&");
+    private static final String UPLOADED_FILES_ATTRIBUTE = "nocturne.uploaded-files";
+    private static final String UPLOAD_LIMIT_EXCEEDED_ATTRIBUTE = "nocturne.upload-limit-exceeded";
 
     public static String getRequestUriAndQueryString(HttpServletRequest request) {
         String result = request.getRequestURI();
@@ -37,21 +39,25 @@ public class RequestUtil {
         return result;
     }
 
+    /**
+     * Returns parameters of the request: values of the request parameters (each parameter "name[]"
+     * is also available as "name") and request attributes, the attributes have priority.
+     * Values are converted to strings when they are read the first time.
+     *
+     * @param request Http request.
+     * @return Parameters of the request, the same map for all the calls with the request.
+     */
     public static Map<String, List<String>> getRequestParams(HttpServletRequest request) {
         Map<String, List<String>> cachedRequestParameters = getCachedRequestParameters(request);
         if (cachedRequestParameters != null) {
             return cachedRequestParameters;
         }
 
-        if ("POST".equalsIgnoreCase(request.getMethod())) {
+        if (ServletFileUpload.isMultipartContent(request)) {
             addUploadedItemsToRequestAttributes(request);
         }
 
-        Map<String, List<String>> requestParameters = new HashMap<>();
-
-        addRequestParametersFromParameterMap(requestParameters, request);
-        addRequestParametersFromAttributes(requestParameters, request);
-
+        Map<String, List<String>> requestParameters = new RequestParameterMap(request);
         setCachedRequestParameters(request, requestParameters);
 
         return requestParameters;
@@ -73,138 +79,136 @@ public class RequestUtil {
     }
 
     private static void addUploadedItemsToRequestAttributes(HttpServletRequest request) {
+        ApplicationContext applicationContext = ApplicationContext.getInstance();
+
+        DiskFileItemFactory factory = new DiskFileItemFactory(
+                applicationContext.getUploadSizeThreshold(), applicationContext.getUploadDirectory()
+        );
+        ServletFileUpload upload = new ServletFileUpload(factory);
+        upload.setFileSizeMax(applicationContext.getUploadMaxFileSize());
+        upload.setSizeMax(applicationContext.getUploadMaxRequestSize());
+
+        List<FileItem> items;
         try {
-            FileItemFactory factory = new DiskFileItemFactory();
-            ServletFileUpload upload = new ServletFileUpload(factory);
-            List<FileItem> items = upload.parseRequest(request);
-
-            Map<String, List<String>> fileNamesByFieldName = new HashMap<>();
-            Map<String, List<byte[]>> fileBytesByFieldName = new HashMap<>();
-            List<String> itemNames = new ArrayList<>(items.size());
-
-            for (FileItem item : items) {
-                String name = item.getFieldName();
-                itemNames.add(name);
-                InputStream inputStream = item.getInputStream();
-                byte[] bytes = StreamUtil.getAsByteArray(inputStream);
-                if (bytes != null) {
-                    if (item.isFormField()) {
-                        Object existingValue = request.getAttribute(name);
-                        String value = new String(bytes, StandardCharsets.UTF_8);
-
-                        if (existingValue == null) {
-                            request.setAttribute(name, value);
-                        } else if (existingValue instanceof Collection) {
-                            addStringToRawCollection((Collection) existingValue, value);
-                        } else {
-                            Collection<Object> values = new ArrayList<>(4);
-                            values.add(existingValue);
-                            values.add(value);
-                            request.setAttribute(name, values);
-                        }
-                    } else {
-                        request.setAttribute(name, bytes);
+            items = upload.parseRequest(request);
+        } catch (FileUploadBase.SizeLimitExceededException | FileUploadBase.FileSizeLimitExceededException e) {
+            request.setAttribute(UPLOAD_LIMIT_EXCEEDED_ATTRIBUTE, Boolean.TRUE);
+            return;
+        } catch (Exception ignored) {
+            return;
+        }
 
-                        if (!fileBytesByFieldName.containsKey(name)) {
-                            fileBytesByFieldName.put(name, new ArrayList<>(1));
-                        }
-                        fileBytesByFieldName.get(name).add(bytes);
-                    }
+        Map<String, List<String>> fileNamesByFieldName = new HashMap<>();
+        Map<String, List<UploadedFile>> filesByFieldName = new LinkedHashMap<>();
+        List<String> itemNames = new ArrayList<>(items.size());
+        List<UploadedFile> uploadedFiles = new ArrayList<>();
+
+        for (FileItem item : items) {
+            String name = item.getFieldName();
+            itemNames.add(name);
+
+            if (item.isFormField()) {
+                Object existingValue = request.getAttribute(name);
+                String value;
+                try {
+                    value = item.getString(StandardCharsets.UTF_8.name());
+                } catch (UnsupportedEncodingException e) {
+                    throw new NocturneException("Can't decode form field because of illegal encoding.", e);
                 }
-                inputStream.close();
 
-                if (item.getName() != null && !item.getName().isEmpty()) {
-                    request.setAttribute(name + "::name", item.getName());
-
-                    if (!fileNamesByFieldName.containsKey(name)) {
-                        fileNamesByFieldName.put(name, new ArrayList<>(1));
-                    }
-                    fileNamesByFieldName.get(name).add(item.getName());
+                if (existingValue == null) {
+                    request.setAttribute(name, value);
+                } else if (existingValue instanceof Collection) {
+                    addStringToRawCollection((Collection) existingValue, value);
+                } else {
+                    Collection<Object> values = new ArrayList<>(4);
+                    values.add(existingValue);
+                    values.add(value);
+                    request.setAttribute(name, values);
                 }
+            } else {
+                UploadedFile uploadedFile = new UploadedFile(item);
+                uploadedFiles.add(uploadedFile);
+                request.setAttribute(name, uploadedFile);
+                filesByFieldName.computeIfAbsent(name, key -> new ArrayList<>(1)).add(uploadedFile);
             }
 
-
-            for (Map.Entry<String, List<String>> e : fileNamesByFieldName.entrySet()) {
-                String fieldName = e.getKey();
-
-                String[] fileNames = new String[e.getValue().size()];
-                e.getValue().toArray(fileNames);
-                request.setAttribute(fieldName + "::name[]", fileNames);
-
-                byte[][] fileBytes = new byte[e.getValue().size()][];
-                fileBytesByFieldName.get(fieldName).toArray(fileBytes);
-                request.setAttribute(fieldName + "[]", fileBytes);
+            if (item.getName() != null && !item.getName().isEmpty()) {
+                request.setAttribute(name + "::name", item.getName());
+                fileNamesByFieldName.computeIfAbsent(name, key -> new ArrayList<>(1)).add(item.getName());
             }
-
-            request.setAttribute("nocturne.uploaded-item-names", itemNames);
-        } catch (Exception ignored) {
-            // No operations.
         }
-    }
 
-    private static void addRequestParametersFromParameterMap(
-            Map<String, List<String>> requestParameters, HttpServletRequest request) {
-        Map<?, ?> parameterMap = request.getParameterMap();
-
-        for (Map.Entry<?, ?> e : parameterMap.entrySet()) {
-            String name = e.getKey().toString();
-            Object value = e.getValue();
-
-            List<String> parameters;
-
-            if (value.getClass().isArray()) {
-                Object[] values = (Object[]) value;
-                int count = values.length;
+        for (Map.Entry<String, List<String>> e : fileNamesByFieldName.entrySet()) {
+            request.setAttribute(e.getKey() + "::name[]", e.getValue().toArray(new String[0]));
+        }
 
-                parameters = count <= 1 ? new SingleEntryList<>() : new ArrayList<>(count);
+        for (Map.Entry<String, List<UploadedFile>> e : filesByFieldName.entrySet()) {
+            request.setAttribute(e.getKey() + "[]", e.getValue().toArray(new UploadedFile[0]));
+        }
 
-                for (int index = 0; index < count; ++index) {
-                    parameters.add(values[index].toString());
-                }
-            } else {
-                parameters = new SingleEntryList<>(value.toString());
-            }
+        request.setAttribute("nocturne.uploaded-item-names", itemNames);
+        request.setAttribute(UPLOADED_FILES_ATTRIBUTE, uploadedFiles);
+    }
 
-            requestParameters.put(name, parameters);
+    /**
+     * @param request Http request.
+     * @param name    Form field name.
+     * @return The last file uploaded with the field or {@code null} if there is no such file.
+     */
+    @Nullable
+    public static UploadedFile getUploadedFile(HttpServletRequest request, String name) {
+        getRequestParams(request);
+        Object file = request.getAttribute(name);
+        return file instanceof UploadedFile ? (UploadedFile) file : null;
+    }
 
-            if (name.endsWith("[]")) {
-                name = name.substring(0, name.length() - "[]".length());
-                requestParameters.put(name, parameters);
-            }
+    /**
+     * @param request Http request.
+     * @param name    Form field name, "name" and "name[]" are the same.
+     * @return Files uploaded with the field, empty array if there is no such file.
+     */
+    @Nonnull
+    public static UploadedFile[] getUploadedFiles(HttpServletRequest request, String name) {
+        getRequestParams(request);
+        if (!name.endsWith("[]")) {
+            name += "[]";
         }
+        Object files = request.getAttribute(name);
+        return files instanceof UploadedFile[] ? ((UploadedFile[]) files).clone() : new UploadedFile[0];
     }
 
-    private static void addRequestParametersFromAttributes(
-            Map<String, List<String>> requestParameters, HttpServletRequest request) {
-        Enumeration enumeration = request.getAttributeNames();
-
-        while (enumeration.hasMoreElements()) {
-            String name = enumeration.nextElement().toString();
-            Object value = request.getAttribute(name);
-
-            if (value != null) {
-                if (value instanceof byte[]) {
-                    requestParameters.put(name, new SingleEntryList<>(new String((byte[]) value, StandardCharsets.UTF_8)));
-                    continue;
-                }
-
-                if (value instanceof List) {
-                    List list = (List) value;
-                    if (isListOfStrings(list)) {
-                        requestParameters.put(name, castToStringList(list));
-                        continue;
-                    }
-                }
+    /**
+     * @param request Http request.
+     * @return {@code true} iff the multipart request has been skipped because it exceeds
+     * nocturne.upload.max-file-size or nocturne.upload.max-request-size.
+     */
+    public static boolean isUploadLimitExceeded(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(UPLOAD_LIMIT_EXCEEDED_ATTRIBUTE));
+    }
 
-                if (value instanceof Collection) {
-                    List<?> list = new ArrayList<>((Collection<?>) value);
-                    if (isListOfStrings(list)) {
-                        requestParameters.put(name, castToStringList(list));
-                        continue;
-                    }
-                }
+    /**
+     * @param request Http request.
+     * @return All files uploaded with the request.
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static List<UploadedFile> getUploadedFiles(HttpServletRequest request) {
+        getRequestParams(request);
+        Object files = request.getAttribute(UPLOADED_FILES_ATTRIBUTE);
+        return files instanceof List ? Collections.unmodifiableList((List<UploadedFile>) files) : Collections.emptyList();
+    }
 
-                requestParameters.put(name, new SingleEntryList<>(request.getAttribute(name).toString()));
+    /**
+     * Deletes temporary files of the request uploads, it doesn't parse the request if it hasn't been parsed.
+     *
+     * @param request Http request.
+     */
+    public static void deleteUploadedFiles(HttpServletRequest request) {
+        Object files = request.getAttribute(UPLOADED_FILES_ATTRIBUTE);
+        if (files instanceof List) {
+            for (Object file : (List<?>) files) {
+                ((UploadedFile) file).delete();
             }
         }
     }
@@ -228,21 +232,6 @@ public class RequestUtil {
         return "";
     }
 
-    private static boolean isListOfStrings(List list) {
-        for (Object o : list) {
-            if (!(o instanceof String)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    @SuppressWarnings("unchecked")
-    private static List<String> castToStringList(List list) {
-        return (List<String>) list;
-    }
-
     @SuppressWarnings("unchecked")
     private static void addStringToRawCollection(Collection existingValue, String value) {
         existingValue.add(value);
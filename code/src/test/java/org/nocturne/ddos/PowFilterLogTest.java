@@ -0,0 +1,111 @@
+package org.nocturne.ddos;
+
+import junit.framework.TestCase;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PowFilterLogTest extends TestCase {
+    public void testStopAndRestartWriter() throws InterruptedException {
+        for (int i = 0; i < 3; ++i) {
+            PowFilterLog log = PowFilterLog.start(1.0);
+            assertNotNull(log);
+            log.add("request", "uri", "/");
+            log.finish();
+
+            Thread writer = findWriter();
+            assertNotNull(writer);
+
+            PowFilterLog.stop();
+            writer.join(1000);
+            assertFalse(writer.isAlive());
+            assertNull(findWriter());
+        }
+
+        PowFilterLog.stop();
+    }
+
+    public void testWriterSurvivesFailingAppender() throws InterruptedException {
+        List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        AppenderSkeleton appender = new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                String message = String.valueOf(event.getMessage());
+                if (message.contains("failingEvent")) {
+                    throw new IllegalStateException("Can't append " + message + '.');
+                }
+                if (message.contains("fatalEvent")) {
+                    throw new OutOfMemoryError("Can't append " + message + '.');
+                }
+                messages.add(message);
+            }
+
+            @Override
+            public void close() {
+                // No operations.
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        };
+
+        Logger logger = Logger.getLogger(PowFilter.class);
+        logger.addAppender(appender);
+        try {
+            PowFilterLog log = PowFilterLog.start(1.0);
+            assertNotNull(log);
+            log.add("failingEvent");
+            log.finish();
+
+            log = PowFilterLog.start(1.0);
+            assertNotNull(log);
+            log.add("nextEvent");
+            log.finish();
+
+            for (int i = 0; i < 100 && messages.size() < 2; ++i) {
+                Thread.sleep(50);
+            }
+            assertEquals(2, messages.size());
+            assertEquals("PowFilter: 1 log records have been dropped.", messages.get(0));
+            assertTrue(messages.get(1).endsWith(" | nextEvent"));
+
+            // The writer dies, the next record starts new one.
+            Thread writer = findWriter();
+            assertNotNull(writer);
+            log = PowFilterLog.start(1.0);
+            assertNotNull(log);
+            log.add("fatalEvent");
+            log.finish();
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+
+            log = PowFilterLog.start(1.0);
+            assertNotNull(log);
+            log.add("lastEvent");
+            log.finish();
+            for (int i = 0; i < 100 && messages.size() < 3; ++i) {
+                Thread.sleep(50);
+            }
+            assertEquals(3, messages.size());
+            assertTrue(messages.get(2).endsWith(" | lastEvent"));
+        } finally {
+            logger.removeAppender(appender);
+            PowFilterLog.stop();
+        }
+    }
+
+    private static Thread findWriter() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("PowFilterLog".equals(thread.getName()) && thread.isAlive()) {
+                return thread;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package org.nocturne.ddos;
+
+import junit.framework.TestCase;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PowFilterTest extends TestCase {
+    private static final String HALF_SECRET = "0123456789abcdef0123";
+
+    public void testDefaultDifficulty() throws ServletException {
+        PowFilter filter = newFilter(new HashMap<>());
+        assertEquals(4, filter.getDifficulty(0.0, 0.0));
+        assertEquals(4, filter.getDifficulty(1000.0, 1E9));
+    }
+
+    public void testDifficultyScaling() throws ServletException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("challenge-load", "100");
+        parameters.put("challenge-rate", "5");
+        parameters.put("difficulty", "2");
+        parameters.put("max-difficulty", "5");
+        PowFilter filter = newFilter(parameters);
+
+        assertEquals(2, filter.getDifficulty(0.0, 50.0));
+        assertEquals(2, filter.getDifficulty(0.0, 100.0));
+        assertEquals(2, filter.getDifficulty(0.0, 199.0));
+        assertEquals(3, filter.getDifficulty(0.0, 200.0));
+        assertEquals(3, filter.getDifficulty(4.9, 399.0));
+        assertEquals(4, filter.getDifficulty(0.0, 400.0));
+        assertEquals(3, filter.getDifficulty(5.0, 50.0));
+        assertEquals(4, filter.getDifficulty(5.0, 200.0));
+
+        // Clamped to max-difficulty.
+        assertEquals(5, filter.getDifficulty(0.0, 800.0));
+        assertEquals(5, filter.getDifficulty(5.0, 800.0));
+        assertEquals(5, filter.getDifficulty(100.0, 1E12));
+    }
+
+    public void testIllegalDifficulty() {
+        for (String[] difficulties : new String[][]{{"0", "6"}, {"7", "6"}, {"4", "9"}, {"-1", "6"}, {"x", "6"}}) {
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put("difficulty", difficulties[0]);
+            parameters.put("max-difficulty", difficulties[1]);
+            try {
+                newFilter(parameters);
+                fail("Difficulty " + difficulties[0] + " and max-difficulty " + difficulties[1]
+                        + " are expected to be rejected.");
+            } catch (ServletException ignored) {
+                // No operations.
+            }
+        }
+    }
+
+    public void testIsResult() {
+        // Solutions with the hash which has exactly the given number of leading zeros.
+        String[] solutions = new String[6];
+        int foundCount = 0;
+        for (long nonce = 0; foundCount < solutions.length; ++nonce) {
+            String cookie = Long.toString(nonce, 36) + '_' + HALF_SECRET;
+            int zeroCount = getLeadingZeroCount(DigestUtils.sha1Hex(cookie));
+            if (zeroCount < solutions.length && solutions[zeroCount] == null) {
+                solutions[zeroCount] = cookie;
+                ++foundCount;
+            }
+        }
+
+        for (int difficulty = 1; difficulty <= 8; ++difficulty) {
+            for (int zeroCount = 0; zeroCount < solutions.length; ++zeroCount) {
+                assertEquals("difficulty=" + difficulty + ", zeroCount=" + zeroCount, zeroCount >= difficulty,
+                        PowFilter.isResult(solutions[zeroCount], HALF_SECRET, difficulty));
+            }
+        }
+
+        String solution = solutions[solutions.length - 1];
+        assertFalse(PowFilter.isResult(solution, HALF_SECRET, 0));
+        assertFalse(PowFilter.isResult(solution, HALF_SECRET, -1));
+        assertFalse(PowFilter.isResult(solution, "1" + HALF_SECRET.substring(1), 1));
+        assertFalse(PowFilter.isResult(solution.replace("_", ""), HALF_SECRET, 1));
+        assertFalse(PowFilter.isResult("", HALF_SECRET, 1));
+    }
+
+    private static int getLeadingZeroCount(String hash) {
+        int result = 0;
+        while (result < hash.length() && hash.charAt(result) == '0') {
+            ++result;
+        }
+        return result;
+    }
+
+    private static PowFilter newFilter(Map<String, String> parameters) throws ServletException {
+        FilterConfig filterConfig = (FilterConfig) Proxy.newProxyInstance(PowFilterTest.class.getClassLoader(),
+                new Class<?>[]{FilterConfig.class}, (proxy, method, args) -> {
+                    if ("getInitParameter".equals(method.getName())) {
+                        return parameters.get((String) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        PowFilter filter = new PowFilter();
+        filter.init(filterConfig);
+        return filter;
+    }
+}
@@ -0,0 +1,144 @@
+package org.nocturne.ddos;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+public class PowTokensTest extends TestCase {
+    private static final long PERIOD_MILLIS = 60000;
+    private static final long START_MILLIS = 1700000000000L / PERIOD_MILLIS * PERIOD_MILLIS;
+    private static final String FINGERPRINT = "#10.0.0.1!Mozilla/5.0";
+
+    public void testChallengeRoundTrip() {
+        PowTokens tokens = newTokens("secret", 3);
+        for (int difficulty = 1; difficulty <= 15; ++difficulty) {
+            String challenge = tokens.getChallenge(FINGERPRINT, difficulty, START_MILLIS);
+            assertEquals(PowTokens.CHALLENGE_LENGTH, challenge.length());
+            assertEquals(difficulty, tokens.getChallengeDifficulty(challenge, FINGERPRINT, START_MILLIS + 1));
+        }
+    }
+
+    public void testTamperedChallenge() {
+        PowTokens tokens = newTokens("secret", 3);
+        String challenge = tokens.getChallenge(FINGERPRINT, 4, START_MILLIS);
+
+        assertEquals(-1, tokens.getChallengeDifficulty('1' + challenge.substring(1), FINGERPRINT, START_MILLIS));
+        assertEquals(-1, tokens.getChallengeDifficulty('f' + challenge.substring(1), FINGERPRINT, START_MILLIS));
+        assertEquals(-1, tokens.getChallengeDifficulty(replaceLast(challenge), FINGERPRINT, START_MILLIS));
+        assertEquals(-1, tokens.getChallengeDifficulty(challenge.substring(1), FINGERPRINT, START_MILLIS));
+        assertEquals(-1, tokens.getChallengeDifficulty(challenge, FINGERPRINT + 'x', START_MILLIS));
+        assertEquals(-1, newTokens("other", 3).getChallengeDifficulty(challenge, FINGERPRINT, START_MILLIS));
+    }
+
+    public void testChallengeKeyRotation() {
+        PowTokens tokens = newTokens("secret", 3);
+        String challenge = tokens.getChallenge(FINGERPRINT, 5, START_MILLIS + PERIOD_MILLIS - 1);
+
+        // Accepted in the next period, even if the keys have been rotated by another request.
+        assertNotNull(tokens.getChallenge(FINGERPRINT, 5, START_MILLIS + PERIOD_MILLIS));
+        assertEquals(5, tokens.getChallengeDifficulty(challenge, FINGERPRINT, START_MILLIS + PERIOD_MILLIS));
+        assertEquals(5, tokens.getChallengeDifficulty(challenge, FINGERPRINT, START_MILLIS + 2 * PERIOD_MILLIS - 1));
+        assertEquals(-1, tokens.getChallengeDifficulty(challenge, FINGERPRINT, START_MILLIS + 2 * PERIOD_MILLIS));
+
+        // Another server with the same secret.
+        assertEquals(5, newTokens("secret", 3).getChallengeDifficulty(challenge, FINGERPRINT, START_MILLIS + PERIOD_MILLIS));
+    }
+
+    public void testPassTokenRoundTrip() {
+        PowTokens tokens = newTokens("secret", 3);
+        String token = tokens.newPassToken(FINGERPRINT, START_MILLIS);
+
+        assertTrue(tokens.isPassToken(token, FINGERPRINT, START_MILLIS));
+        assertTrue(newTokens("secret", 3).isPassToken(token, FINGERPRINT, START_MILLIS));
+        assertFalse(newTokens("other", 3).isPassToken(token, FINGERPRINT, START_MILLIS));
+        assertFalse(tokens.isPassToken(token, FINGERPRINT + 'x', START_MILLIS));
+        assertFalse(tokens.isPassToken(replaceLast(token), FINGERPRINT, START_MILLIS));
+        assertFalse(tokens.isPassToken(token.substring(0, token.length() - 1), FINGERPRINT, START_MILLIS));
+        assertFalse(tokens.isPassToken(tokens.getChallenge(FINGERPRINT, 4, START_MILLIS), FINGERPRINT, START_MILLIS));
+    }
+
+    public void testTamperedPassTokenPeriod() {
+        PowTokens tokens = newTokens("secret", 3);
+        String token = tokens.newPassToken(FINGERPRINT, START_MILLIS);
+        String signature = token.substring(token.indexOf('_'));
+        long period = START_MILLIS / PERIOD_MILLIS;
+
+        // The signature is checked with the key of the period in the token.
+        assertTrue(tokens.isPassToken("p" + Long.toString(period, 36) + signature, FINGERPRINT, START_MILLIS + PERIOD_MILLIS));
+        assertFalse(tokens.isPassToken("p" + Long.toString(period + 1, 36) + signature, FINGERPRINT, START_MILLIS + PERIOD_MILLIS));
+        assertFalse(tokens.isPassToken("p" + Long.toString(period - 1, 36) + signature, FINGERPRINT, START_MILLIS + PERIOD_MILLIS));
+
+        // The difference of the periods overflows.
+        for (long tamperedPeriod : new long[]{Long.MIN_VALUE, Long.MIN_VALUE + period, -period, Long.MAX_VALUE}) {
+            assertFalse(tokens.isPassToken("p" + Long.toString(tamperedPeriod, 36) + signature, FINGERPRINT, START_MILLIS));
+        }
+        assertFalse(tokens.isPassToken("p_" + signature.substring(1), FINGERPRINT, START_MILLIS));
+        assertFalse(tokens.isPassToken("p!" + signature, FINGERPRINT, START_MILLIS));
+    }
+
+    public void testPassTokenExpiry() {
+        PowTokens tokens = newTokens("secret", 3);
+        String token = tokens.newPassToken(FINGERPRINT, START_MILLIS + PERIOD_MILLIS / 2);
+
+        assertFalse(tokens.isPassToken(token, FINGERPRINT, START_MILLIS - 1));
+        assertTrue(tokens.isPassToken(token, FINGERPRINT, START_MILLIS));
+        assertTrue(tokens.isPassToken(token, FINGERPRINT, START_MILLIS + 3 * PERIOD_MILLIS - 1));
+        assertFalse(tokens.isPassToken(token, FINGERPRINT, START_MILLIS + 3 * PERIOD_MILLIS));
+        assertFalse(tokens.isPassToken(token, FINGERPRINT, START_MILLIS + 100 * PERIOD_MILLIS));
+
+        // The lifetime is rounded up to the periods.
+        PowTokens shortTokens = new PowTokens("secret".getBytes(StandardCharsets.UTF_8), PERIOD_MILLIS, 1);
+        token = shortTokens.newPassToken(FINGERPRINT, START_MILLIS);
+        assertTrue(shortTokens.isPassToken(token, FINGERPRINT, START_MILLIS + PERIOD_MILLIS - 1));
+        assertFalse(shortTokens.isPassToken(token, FINGERPRINT, START_MILLIS + PERIOD_MILLIS));
+    }
+
+    public void testPassTokensOfAllPeriods() {
+        int passTokenPeriods = 24;
+        PowTokens tokens = newTokens("secret", passTokenPeriods);
+        String[] issued = new String[passTokenPeriods];
+        for (int i = 0; i < passTokenPeriods; ++i) {
+            issued[i] = tokens.newPassToken(FINGERPRINT + i, START_MILLIS + i * PERIOD_MILLIS);
+        }
+
+        // The keys kept by the rotations and the keys derived at once are the same.
+        long currentMillis = START_MILLIS + (passTokenPeriods - 1) * PERIOD_MILLIS;
+        PowTokens otherTokens = newTokens("secret", passTokenPeriods);
+        for (int i = 0; i < passTokenPeriods; ++i) {
+            assertTrue(tokens.isPassToken(issued[i], FINGERPRINT + i, currentMillis));
+            assertTrue(otherTokens.isPassToken(issued[i], FINGERPRINT + i, currentMillis));
+            assertFalse(tokens.isPassToken(issued[i], FINGERPRINT + (i + 1), currentMillis));
+        }
+
+        // Skipped periods.
+        currentMillis += 10 * PERIOD_MILLIS;
+        for (int i = 0; i < passTokenPeriods; ++i) {
+            assertEquals(i >= 10, tokens.isPassToken(issued[i], FINGERPRINT + i, currentMillis));
+        }
+    }
+
+    public void testIllegalLifetime() {
+        try {
+            new PowTokens(new byte[1], PERIOD_MILLIS, 0);
+            fail("Non-positive lifetime is expected to be rejected.");
+        } catch (IllegalArgumentException ignored) {
+            // No operations.
+        }
+
+        try {
+            new PowTokens(new byte[1], 1, Long.MAX_VALUE);
+            fail("Too long lifetime is expected to be rejected.");
+        } catch (IllegalArgumentException ignored) {
+            // No operations.
+        }
+    }
+
+    private static PowTokens newTokens(String secret, int passTokenPeriods) {
+        return new PowTokens(secret.getBytes(StandardCharsets.UTF_8), PERIOD_MILLIS, passTokenPeriods * PERIOD_MILLIS);
+    }
+
+    private static String replaceLast(String s) {
+        char last = s.charAt(s.length() - 1);
+        return s.substring(0, s.length() - 1) + (last == '0' ? '1' : '0');
+    }
+}
@@ -0,0 +1,108 @@
+package org.nocturne.ddos;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RequestRateCounterTest extends TestCase {
+    private static final long WINDOW_MILLIS = 10000;
+
+    /**
+     * Start of a window after the creation of the counters.
+     */
+    private static final long START_MILLIS = (System.currentTimeMillis() / WINDOW_MILLIS + 1) * WINDOW_MILLIS;
+
+    public void testRatesInWindow() {
+        RequestRateCounter counter = new RequestRateCounter(WINDOW_MILLIS, 1024);
+        for (int i = 0; i < 10; ++i) {
+            counter.increment("a", START_MILLIS + i);
+        }
+        for (int i = 0; i < 30; ++i) {
+            counter.increment("b", START_MILLIS + WINDOW_MILLIS / 2);
+        }
+
+        assertEquals(1.0, counter.getRate("a", START_MILLIS + WINDOW_MILLIS - 1), 1E-9);
+        assertEquals(3.0, counter.getRate("b", START_MILLIS + WINDOW_MILLIS - 1), 1E-9);
+        assertEquals(0.0, counter.getRate("c", START_MILLIS + WINDOW_MILLIS - 1), 1E-9);
+        assertEquals(4.0, counter.getTotalRate(START_MILLIS + WINDOW_MILLIS - 1), 1E-9);
+    }
+
+    public void testWindowRollover() {
+        RequestRateCounter counter = new RequestRateCounter(WINDOW_MILLIS, 1024);
+        for (int i = 0; i < 40; ++i) {
+            counter.increment("a", START_MILLIS + WINDOW_MILLIS - 1);
+        }
+
+        // A quarter of the previous window is out of the sliding window.
+        long currentMillis = START_MILLIS + WINDOW_MILLIS + WINDOW_MILLIS / 4;
+        assertEquals(3.0, counter.getRate("a", currentMillis), 1E-9);
+        assertEquals(3.0, counter.getTotalRate(currentMillis), 1E-9);
+
+        for (int i = 0; i < 5; ++i) {
+            counter.increment("a", currentMillis);
+        }
+        assertEquals(3.5, counter.getRate("a", currentMillis), 1E-9);
+        assertEquals(3.5, counter.getTotalRate(currentMillis), 1E-9);
+
+        currentMillis = START_MILLIS + 2 * WINDOW_MILLIS - 1;
+        assertEquals(0.5, counter.getRate("a", currentMillis), 1E-3);
+
+        // The counts of the skipped window are not used.
+        currentMillis = START_MILLIS + 3 * WINDOW_MILLIS;
+        assertEquals(0.0, counter.getRate("a", currentMillis), 1E-9);
+        assertEquals(0.0, counter.getTotalRate(currentMillis), 1E-9);
+
+        counter.increment("a", START_MILLIS + 5 * WINDOW_MILLIS);
+        assertEquals(0.1, counter.getRate("a", START_MILLIS + 5 * WINDOW_MILLIS), 1E-9);
+    }
+
+    public void testEstimateIsNotLessThanCount() {
+        Random random = new Random(1);
+        RequestRateCounter counter = new RequestRateCounter(WINDOW_MILLIS, 64);
+        Map<String, Integer> countByKey = new HashMap<>();
+
+        for (int i = 0; i < 20000; ++i) {
+            // A few heavy keys and many light ones, there are collisions in each row.
+            String key = random.nextInt(10) == 0 ? "heavy" + random.nextInt(5) : "light" + random.nextInt(1000);
+            counter.increment(key, START_MILLIS);
+            countByKey.merge(key, 1, Integer::sum);
+        }
+
+        int exactCount = 0;
+        for (Map.Entry<String, Integer> entry : countByKey.entrySet()) {
+            double estimate = counter.getRate(entry.getKey(), START_MILLIS) * WINDOW_MILLIS / 1000.0;
+            assertTrue(entry.getKey(), estimate >= entry.getValue() - 1E-9);
+            if (entry.getKey().startsWith("heavy") && estimate < entry.getValue() * 1.5) {
+                ++exactCount;
+            }
+        }
+        assertEquals(5, exactCount);
+    }
+
+    public void testConcurrentIncrements() throws InterruptedException {
+        RequestRateCounter counter = new RequestRateCounter(WINDOW_MILLIS, 1024);
+        int threadCount = 8;
+        int incrementCount = 20000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; ++i) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < incrementCount; ++j) {
+                    counter.increment("a", START_MILLIS);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals((double) threadCount * incrementCount,
+                counter.getRate("a", START_MILLIS) * WINDOW_MILLIS / 1000.0, 1E-6);
+    }
+}
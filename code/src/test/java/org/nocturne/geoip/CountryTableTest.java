@@ -0,0 +1,228 @@
+package org.nocturne.geoip;
+
+import junit.framework.TestCase;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+
+/**
+ * Compares {@link CountryTable} with the brute-force search over the networks it is built from.
+ */
+public class CountryTableTest extends TestCase {
+    private static final String[] COUNTRY_CODES = {"RU", "US", "DE", null};
+
+    public void testEmpty() throws UnknownHostException {
+        assertNull(CountryTable.empty().getCountryCode(InetAddress.getByName("10.0.0.1")));
+        assertNull(CountryTable.empty().getCountryCode(InetAddress.getByName("2a00::1")));
+    }
+
+    public void testWholeAddressSpace() throws UnknownHostException {
+        CountryTable.Builder builder = new CountryTable.Builder();
+        builder.add(InetAddress.getByName("0.0.0.0"), 0, "RU");
+        builder.add(InetAddress.getByName("::"), 0, "US");
+        CountryTable table = builder.build();
+
+        assertEquals("RU", table.getCountryCode(InetAddress.getByName("0.0.0.0")));
+        assertEquals("RU", table.getCountryCode(InetAddress.getByName("255.255.255.255")));
+        assertEquals("US", table.getCountryCode(InetAddress.getByName("2a00::1")));
+        assertEquals("US", table.getCountryCode(InetAddress.getByName("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")));
+    }
+
+    public void testEmbeddedIpv4Address() throws UnknownHostException {
+        CountryTable.Builder builder = new CountryTable.Builder();
+        builder.add(InetAddress.getByName("10.1.0.0"), 16, "DE");
+        CountryTable table = builder.build();
+
+        assertEquals("DE", table.getCountryCode(InetAddress.getByName("2002:0a01:0203::")));
+        assertNull(table.getCountryCode(InetAddress.getByName("2002:0a02:0203::")));
+    }
+
+    public void testRandomIpv4Networks() throws UnknownHostException {
+        Random random = new Random(1);
+
+        for (int iteration = 0; iteration < 300; ++iteration) {
+            List<CountryNetwork> networks = getRandomNetworks(random, 4, 8);
+            CountryTable table = newTable(random, networks);
+
+            for (int i = 0; i < 3000; ++i) {
+                byte[] address = getRandomAddress(random, networks, 4);
+                assertEquals(Arrays.toString(address), getCountryCodeByBruteForce(networks, address),
+                        table.getCountryCode(InetAddress.getByAddress(address)));
+            }
+        }
+    }
+
+    public void testRandomIpv6Networks() throws UnknownHostException {
+        Random random = new Random(2);
+
+        for (int iteration = 0; iteration < 300; ++iteration) {
+            List<CountryNetwork> networks = getRandomNetworks(random, 16, 24);
+            CountryTable table = newTable(random, networks);
+
+            for (int i = 0; i < 3000; ++i) {
+                byte[] address = getRandomAddress(random, networks, 16);
+                assertEquals(Arrays.toString(address), getCountryCodeByBruteForce(networks, address),
+                        table.getCountryCode(InetAddress.getByAddress(address)));
+            }
+        }
+    }
+
+    private static CountryTable newTable(Random random, List<CountryNetwork> networks) throws UnknownHostException {
+        List<CountryNetwork> shuffled = new ArrayList<>(networks);
+        Collections.shuffle(shuffled, random);
+
+        CountryTable.Builder builder = new CountryTable.Builder();
+        for (CountryNetwork network : shuffled) {
+            builder.add(InetAddress.getByAddress(network.address), network.prefixLength, network.countryCode);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return Not overlapping networks, most of them are in a few small parts of the address space,
+     * so there are adjacent networks and gaps between them.
+     */
+    private static List<CountryNetwork> getRandomNetworks(Random random, int length, int minPrefixLength) {
+        List<CountryNetwork> networks = new ArrayList<>();
+        int maxPrefixLength = length * 8;
+        int networkCount = random.nextInt(40);
+
+        for (int i = 0; i < networkCount; ++i) {
+            byte[] address = getRandomAddress(random, length);
+            int prefixLength = random.nextInt(10) == 0
+                    ? minPrefixLength + random.nextInt(maxPrefixLength - minPrefixLength + 1)
+                    : maxPrefixLength - 16 + random.nextInt(17);
+            CountryNetwork network = new CountryNetwork(
+                    mask(address, prefixLength), prefixLength, COUNTRY_CODES[random.nextInt(COUNTRY_CODES.length)]
+            );
+
+            boolean overlaps = false;
+            for (CountryNetwork other : networks) {
+                overlaps |= network.contains(other.address) || other.contains(network.address);
+            }
+            if (!overlaps) {
+                networks.add(network);
+            }
+        }
+
+        return networks;
+    }
+
+    private static byte[] getRandomAddress(Random random, List<CountryNetwork> networks, int length) {
+        if (networks.isEmpty() || random.nextInt(4) == 0) {
+            return getRandomAddress(random, length);
+        }
+
+        CountryNetwork network = networks.get(random.nextInt(networks.size()));
+        byte[] address = getRandomAddress(random, length);
+        for (int bit = 0; bit < network.prefixLength; ++bit) {
+            setBit(address, bit, getBit(network.address, bit));
+        }
+
+        // Addresses just before and after the network.
+        if (random.nextBoolean()) {
+            int delta = random.nextBoolean() ? 1 : -1;
+            byte[] bound = random.nextBoolean() ? network.address : getLastAddress(network);
+            address = add(bound, delta);
+        }
+
+        return address;
+    }
+
+    /**
+     * IPv4 addresses are in 10.0.0.0/16 or 255.255.0.0/16, IPv6 addresses start with 2a00:0 or 2a00:1
+     * (they don't have embedded IPv4 addresses).
+     */
+    private static byte[] getRandomAddress(Random random, int length) {
+        byte[] address = new byte[length];
+        random.nextBytes(address);
+
+        if (length == 4) {
+            if (random.nextBoolean()) {
+                address[0] = 10;
+                address[1] = 0;
+            } else {
+                address[0] = (byte) 255;
+                address[1] = (byte) 255;
+            }
+        } else {
+            address[0] = 0x2a;
+            address[1] = 0;
+            address[2] = 0;
+            address[3] = (byte) random.nextInt(2);
+        }
+
+        return address;
+    }
+
+    private static String getCountryCodeByBruteForce(List<CountryNetwork> networks, byte[] address) {
+        for (CountryNetwork network : networks) {
+            if (network.contains(address)) {
+                return network.countryCode;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] getLastAddress(CountryNetwork network) {
+        byte[] address = network.address.clone();
+        for (int bit = network.prefixLength; bit < address.length * 8; ++bit) {
+            setBit(address, bit, true);
+        }
+        return address;
+    }
+
+    private static byte[] add(byte[] address, int delta) {
+        byte[] result = address.clone();
+        for (int i = result.length - 1; i >= 0; --i) {
+            int value = (result[i] & 0xFF) + delta;
+            result[i] = (byte) value;
+            if (value >= 0 && value <= 0xFF) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] mask(byte[] address, int prefixLength) {
+        byte[] result = address.clone();
+        for (int bit = prefixLength; bit < result.length * 8; ++bit) {
+            setBit(result, bit, false);
+        }
+        return result;
+    }
+
+    private static boolean getBit(byte[] address, int bit) {
+        return (address[bit >> 3] & (0x80 >>> (bit & 7))) != 0;
+    }
+
+    private static void setBit(byte[] address, int bit, boolean value) {
+        if (value) {
+            address[bit >> 3] |= 0x80 >>> (bit & 7);
+        } else {
+            address[bit >> 3] &= ~(0x80 >>> (bit & 7));
+        }
+    }
+
+    private static final class CountryNetwork {
+        private final byte[] address;
+        private final int prefixLength;
+        private final String countryCode;
+
+        private CountryNetwork(byte[] address, int prefixLength, String countryCode) {
+            this.address = address;
+            this.prefixLength = prefixLength;
+            this.countryCode = countryCode;
+        }
+
+        private boolean contains(byte[] otherAddress) {
+            for (int bit = 0; bit < prefixLength; ++bit) {
+                if (getBit(address, bit) != getBit(otherAddress, bit)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
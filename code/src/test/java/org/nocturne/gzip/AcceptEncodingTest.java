@@ -0,0 +1,43 @@
+package org.nocturne.gzip;
+
+import junit.framework.TestCase;
+
+public class AcceptEncodingTest extends TestCase {
+    public void testAbsentHeader() {
+        assertFalse(AcceptEncoding.parse(null).accepts("gzip"));
+        assertFalse(AcceptEncoding.parse("").accepts("gzip"));
+    }
+
+    public void testQualityValues() {
+        AcceptEncoding acceptEncoding = AcceptEncoding.parse("deflate;q=0.5, GZIP , br;q=0.25");
+        assertEquals(0.5, acceptEncoding.getQuality("deflate"), 0.0);
+        assertEquals(1.0, acceptEncoding.getQuality("gzip"), 0.0);
+        assertEquals(0.25, acceptEncoding.getQuality("Br"), 0.0);
+        assertFalse(acceptEncoding.accepts("compress"));
+
+        assertEquals(0.75, AcceptEncoding.parse("gzip; Q = 0.75").getQuality("gzip"), 0.0);
+        assertEquals(1.0, AcceptEncoding.parse("gzip;level=1").getQuality("gzip"), 0.0);
+    }
+
+    public void testZeroQuality() {
+        assertFalse(AcceptEncoding.parse("gzip;q=0").accepts("gzip"));
+        assertFalse(AcceptEncoding.parse("gzip;q=0.000, deflate").accepts("gzip"));
+        assertFalse(AcceptEncoding.parse("identity;q=0").accepts("identity"));
+        assertFalse(AcceptEncoding.parse("identity;q=0").accepts("gzip"));
+        assertTrue(AcceptEncoding.parse("identity;q=0, gzip").accepts("gzip"));
+    }
+
+    public void testWildcard() {
+        assertTrue(AcceptEncoding.parse("*").accepts("gzip"));
+        assertEquals(0.5, AcceptEncoding.parse("*;q=0.5").getQuality("gzip"), 0.0);
+        assertFalse(AcceptEncoding.parse("*;q=0, deflate").accepts("gzip"));
+        assertTrue(AcceptEncoding.parse("*;q=0, gzip").accepts("gzip"));
+        assertFalse(AcceptEncoding.parse("*, gzip;q=0").accepts("gzip"));
+    }
+
+    public void testMalformedQuality() {
+        assertFalse(AcceptEncoding.parse("gzip;q=abc").accepts("gzip"));
+        assertFalse(AcceptEncoding.parse("gzip;q=2").accepts("gzip"));
+        assertFalse(AcceptEncoding.parse("gzip;q=-1").accepts("gzip"));
+    }
+}
@@ -0,0 +1,110 @@
+package org.nocturne.gzip;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class GzipCodecTest extends TestCase {
+    public void testRoundTrip() throws IOException {
+        GzipCodec codec = new GzipCodec();
+        Random random = new Random(1);
+
+        for (int length : new int[]{0, 1, 100, 8192, 100000}) {
+            byte[] content = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                content[i] = (byte) ('a' + random.nextInt(random.nextBoolean() ? 3 : 26));
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = codec.newOutputStream(bytes);
+            for (int i = 0; i < length; i += 1000) {
+                out.write(content, i, Math.min(1000, length - i));
+                if (i % 3000 == 0) {
+                    out.flush();
+                }
+            }
+            out.close();
+
+            assertEquals(new String(content, StandardCharsets.ISO_8859_1), decompress(bytes.toByteArray()));
+        }
+    }
+
+    public void testCompressorReturnedToThreadCache() throws Exception {
+        GzipCodec codec = new GzipCodec();
+        ThreadLocal<?> compressors = getCompressors(codec);
+        assertNull(compressors.get());
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        OutputStream out = codec.newOutputStream(first);
+        out.write("first response".getBytes(StandardCharsets.UTF_8));
+        out.close();
+
+        Object compressor = compressors.get();
+        assertNotNull(compressor);
+
+        // The compressor is taken out while used, a nested stream gets its own one.
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        out = codec.newOutputStream(second);
+        assertNull(compressors.get());
+        ByteArrayOutputStream nested = new ByteArrayOutputStream();
+        OutputStream nestedOut = codec.newOutputStream(nested);
+        nestedOut.write("nested".getBytes(StandardCharsets.UTF_8));
+        nestedOut.close();
+        assertNotNull(compressors.get());
+        assertNotSame(compressor, compressors.get());
+
+        out.write("second".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertSame(compressor, compressors.get());
+
+        // The reset compressor produces the same output as the new one.
+        assertEquals("first response", decompress(first.toByteArray()));
+        assertEquals("second", decompress(second.toByteArray()));
+        assertEquals("nested", decompress(nested.toByteArray()));
+
+        ByteArrayOutputStream fresh = new ByteArrayOutputStream();
+        out = new GzipCodec().newOutputStream(fresh);
+        out.write("second".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertEquals(new String(fresh.toByteArray(), StandardCharsets.ISO_8859_1),
+                new String(second.toByteArray(), StandardCharsets.ISO_8859_1));
+    }
+
+    public void testWriteAfterClose() throws IOException {
+        OutputStream out = new GzipCodec().newOutputStream(new ByteArrayOutputStream());
+        out.close();
+        out.close();
+
+        try {
+            out.write(1);
+            fail("Write to a closed stream is expected to fail.");
+        } catch (IOException ignored) {
+            // No operations.
+        }
+    }
+
+    private static ThreadLocal<?> getCompressors(GzipCodec codec) throws ReflectiveOperationException {
+        Field field = GzipCodec.class.getDeclaredField("compressors");
+        field.setAccessible(true);
+        return (ThreadLocal<?>) field.get(codec);
+    }
+
+    static String decompress(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                result.write(buffer, 0, length);
+            }
+            return new String(result.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.nocturne.gzip;
+
+import junit.framework.TestCase;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class GzipResponseStreamTest extends TestCase {
+    private static final int MIN_SIZE = 100;
+
+    public void testSmallResponseIsBuffered() throws IOException {
+        ResponseStub stub = new ResponseStub();
+        GzipResponseStream stream = newStream(stub);
+
+        stream.write(newContent(MIN_SIZE - 1).getBytes(StandardCharsets.UTF_8));
+        stream.flush();
+        assertEquals(0, stub.body.size());
+        assertFalse(stub.outputStreamRequested);
+
+        stream.write('x');
+        stream.close();
+        assertEquals(MIN_SIZE, stub.contentLength);
+        assertNull(stub.headers.get("Content-Encoding"));
+        assertEquals(newContent(MIN_SIZE - 1) + 'x', stub.getBody());
+    }
+
+    public void testLargeResponseIsCompressed() throws IOException {
+        ResponseStub stub = new ResponseStub();
+        GzipResponseStream stream = newStream(stub);
+
+        String content = newContent(10 * MIN_SIZE);
+        stream.write(content.substring(0, MIN_SIZE).getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, stub.body.size());
+        stream.write(content.substring(MIN_SIZE).getBytes(StandardCharsets.UTF_8));
+        stream.flush();
+        assertTrue(stub.body.size() > 0);
+        stream.close();
+
+        assertEquals(-1, stub.contentLength);
+        assertEquals("gzip", stub.headers.get("Content-Encoding"));
+        assertEquals("Accept-Encoding", stub.headers.get("Vary"));
+        assertEquals(content, GzipCodecTest.decompress(stub.body.toByteArray()));
+    }
+
+    public void testExcludedContentType() throws IOException {
+        ResponseStub stub = new ResponseStub();
+        stub.contentType = "image/png";
+        GzipResponseStream stream = newStream(stub);
+        stream.setContentLength(10 * MIN_SIZE);
+
+        String content = newContent(10 * MIN_SIZE);
+        stream.write(content.getBytes(StandardCharsets.UTF_8));
+        stream.close();
+
+        assertEquals(10 * MIN_SIZE, stub.contentLength);
+        assertNull(stub.headers.get("Content-Encoding"));
+        assertEquals(content, stub.getBody());
+    }
+
+    public void testAlreadyEncoded() throws IOException {
+        ResponseStub stub = new ResponseStub();
+        stub.headers.put("Content-Encoding", "br");
+        GzipResponseStream stream = newStream(stub);
+
+        String content = newContent(10 * MIN_SIZE);
+        stream.write(content.getBytes(StandardCharsets.UTF_8));
+        stream.close();
+
+        assertEquals("br", stub.headers.get("Content-Encoding"));
+        assertEquals(content, stub.getBody());
+    }
+
+    public void testContentLengthIntercepted() throws IOException {
+        ResponseStub stub = new ResponseStub();
+        GzipResponseWrapper wrapper = newWrapper(stub);
+
+        wrapper.setHeader("content-length", String.valueOf(10 * MIN_SIZE));
+        assertEquals(-1, stub.contentLength);
+        assertNull(stub.headers.get("Content-Length"));
+
+        String content = newContent(10 * MIN_SIZE);
+        PrintWriter writer = wrapper.getWriter();
+        writer.print(content);
+        wrapper.finishResponse();
+
+        // The compressed content has another length.
+        assertEquals(-1, stub.contentLength);
+        assertNull(stub.headers.get("Content-Length"));
+        assertEquals(content, GzipCodecTest.decompress(stub.body.toByteArray()));
+
+        stub = new ResponseStub();
+        stub.contentType = "image/png";
+        wrapper = newWrapper(stub);
+        wrapper.getOutputStream();
+        wrapper.addIntHeader("Content-Length", 10 * MIN_SIZE);
+        wrapper.getOutputStream().write(content.getBytes(StandardCharsets.UTF_8));
+        wrapper.finishResponse();
+
+        assertEquals(10 * MIN_SIZE, stub.contentLength);
+        assertEquals(content, stub.getBody());
+    }
+
+    public void testContentLengthWithoutContent() throws IOException {
+        // HEAD request, the stream has been created.
+        ResponseStub stub = new ResponseStub();
+        GzipResponseWrapper wrapper = newWrapper(stub);
+        wrapper.getOutputStream();
+        wrapper.setContentLength(12345);
+        wrapper.finishResponse();
+        assertEquals(12345, stub.contentLength);
+        assertEquals(0, stub.body.size());
+
+        // HEAD request, the stream has not been created.
+        stub = new ResponseStub();
+        wrapper = newWrapper(stub);
+        wrapper.setHeader("Content-Length", "12345");
+        wrapper.finishResponse();
+        assertEquals(12345, stub.contentLength);
+
+        // Empty body.
+        stub = new ResponseStub();
+        wrapper = newWrapper(stub);
+        wrapper.setContentLengthLong(0);
+        wrapper.getWriter();
+        wrapper.finishResponse();
+        assertEquals(0, stub.contentLength);
+
+        // Length dropped with the content.
+        stub = new ResponseStub();
+        wrapper = newWrapper(stub);
+        wrapper.setContentLength(12345);
+        wrapper.getOutputStream().write('x');
+        wrapper.resetBuffer();
+        wrapper.reset();
+        wrapper.finishResponse();
+        assertEquals(-1, stub.contentLength);
+        assertEquals(0, stub.body.size());
+    }
+
+    private static GzipResponseStream newStream(ResponseStub stub) {
+        return new GzipResponseStream(stub.newResponse(), new GzipCodec(), MIN_SIZE, ContentTypes.DEFAULT_EXCLUDED);
+    }
+
+    private static GzipResponseWrapper newWrapper(ResponseStub stub) {
+        return new GzipResponseWrapper(stub.newResponse(), new GzipCodec(), MIN_SIZE, ContentTypes.DEFAULT_EXCLUDED);
+    }
+
+    private static String newContent(int length) {
+        StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            result.append((char) ('a' + i % 7));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Records what is sent to the client.
+     */
+    private static final class ResponseStub implements InvocationHandler {
+        private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private long contentLength = -1;
+        private String contentType = "text/html";
+        private boolean outputStreamRequested;
+
+        private HttpServletResponse newResponse() {
+            return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{HttpServletResponse.class}, this);
+        }
+
+        private String getBody() {
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "setHeader":
+                case "addHeader":
+                    headers.put((String) args[0], (String) args[1]);
+                    return null;
+                case "containsHeader":
+                    return headers.containsKey((String) args[0]);
+                case "getHeader":
+                    return headers.get((String) args[0]);
+                case "setContentLength":
+                    contentLength = (Integer) args[0];
+                    return null;
+                case "setContentLengthLong":
+                    contentLength = (Long) args[0];
+                    return null;
+                case "setContentType":
+                    contentType = (String) args[0];
+                    return null;
+                case "getContentType":
+                    return contentType;
+                case "getOutputStream":
+                    outputStreamRequested = true;
+                    return new ServletOutputStream() {
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setWriteListener(WriteListener writeListener) {
+                            throw new UnsupportedOperationException();
+                        }
+
+                        @Override
+                        public void write(int b) {
+                            body.write(b);
+                        }
+                    };
+                case "isCommitted":
+                    return outputStreamRequested;
+                case "resetBuffer":
+                case "reset":
+                case "flushBuffer":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
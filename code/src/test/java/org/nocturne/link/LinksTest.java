@@ -6,11 +6,23 @@ import org.nocturne.link.pages.*;
 import org.nocturne.main.ApplicationContextHelper;
 import org.nocturne.main.Page;
 
+import org.apache.commons.lang3.StringUtils;
+
 import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 /**
  * @author Mike Mirzayanov
@@ -26,8 +38,21 @@ public class LinksTest extends TestCase {
         Links.add(NewsPage.class);
         Links.add(ProfilePage.class);
         Links.add(SectionsPage.class);
+        Links.add(RoutingPage.class);
     }
 
+    private static final String[] ROUTING_TOKENS = {"5", "-5", "0", "a", "b", "x", "new", "edit", "delete", "list", "extra"};
+
+    private static final String[] PARAMETER_NAMES = {
+            "pageIndex", "a", "b", "c", "userName", "sectionId", "sectionName",
+            "id", "name", "any", "section", "tail", "item", "action", "i", "q"
+    };
+
+    private static final Object[] PARAMETER_VALUES = {
+            null, "", "5", "-5", "0", "01", "11", "a", "b", "x", "new", "edit", "delete", "list",
+            "Mike", "Max", "a b", "x&y=z", "\u043f\u0440\u0438\u0432\u0435\u0442", 17, 3L
+    };
+
     public void testIndexPage() {
         internalTestIndexPageWithoutInterceptors();
 
@@ -143,6 +168,360 @@ public class LinksTest extends TestCase {
         }, ConfigurationException.class);
     }
 
+    public void testRandomLinksComparedWithPreviousImplementation() {
+        List<Class<? extends Page>> pageClasses = Arrays.<Class<? extends Page>>asList(
+                IndexPage.class, LongLinkedPage.class, NewsPage.class, ProfilePage.class,
+                SectionsPage.class, RoutingPage.class
+        );
+        Random random = new Random(1);
+
+        for (int iteration = 0; iteration < 20000; ++iteration) {
+            Class<? extends Page> pageClass = pageClasses.get(random.nextInt(pageClasses.size()));
+
+            int pairCount = random.nextInt(5);
+            Object[] pairs = new Object[2 * pairCount];
+            Map<String, Object> params = new LinkedHashMap<>();
+            for (int i = 0; i < pairCount; ++i) {
+                pairs[2 * i] = PARAMETER_NAMES[random.nextInt(PARAMETER_NAMES.length)];
+                pairs[2 * i + 1] = getRandomValue(random);
+                params.put((String) pairs[2 * i], pairs[2 * i + 1]);
+            }
+
+            String linkName = null;
+            if (random.nextInt(4) == 0) {
+                List<Link> pageLinks = getLinks(pageClass);
+                linkName = random.nextInt(5) == 0 ? "unknown" : pageLinks.get(random.nextInt(pageLinks.size())).name();
+            }
+
+            String message = pageClass.getSimpleName() + ' ' + linkName + ' ' + Arrays.deepToString(pairs);
+            String expected = getLinkPreviously(pageClass, linkName, params);
+
+            assertEquals(message, expected, getLinkOrNull(pageClass, linkName, params, null));
+            if (linkName == null) {
+                assertEquals(message, expected, getLinkOrNull(pageClass, null, null, pairs));
+            }
+        }
+    }
+
+    @Nullable
+    private static Object getRandomValue(Random random) {
+        switch (random.nextInt(6)) {
+            case 0: {
+                String[] values = new String[random.nextInt(4)];
+                for (int i = 0; i < values.length; ++i) {
+                    Object value = PARAMETER_VALUES[random.nextInt(PARAMETER_VALUES.length)];
+                    values[i] = value == null ? null : value.toString();
+                }
+                return values;
+            }
+            case 1: {
+                List<Object> values = new ArrayList<>();
+                for (int i = random.nextInt(4); i > 0; --i) {
+                    values.add(PARAMETER_VALUES[random.nextInt(PARAMETER_VALUES.length)]);
+                }
+                return values;
+            }
+            case 2:
+                return new byte[]{(byte) random.nextInt(4), (byte) -random.nextInt(4)};
+            default:
+                return PARAMETER_VALUES[random.nextInt(PARAMETER_VALUES.length)];
+        }
+    }
+
+    /**
+     * @return Link by {@link Links#getLinkByMap(Class, String, Map)} if {@code pairs} is {@code null} or by
+     * {@link Links#getLink(Class, Object...)} otherwise, {@code null} if there is no such link.
+     */
+    @Nullable
+    private static String getLinkOrNull(Class<? extends Page> pageClass, @Nullable String linkName,
+                                        @Nullable Map<String, ?> params, @Nullable Object[] pairs) {
+        try {
+            return pairs == null ? Links.getLinkByMap(pageClass, linkName, params) : Links.getLink(pageClass, pairs);
+        } catch (Links.NoSuchLinkException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Reference implementation: link generation as it was before the links were compiled into plans.
+     *
+     * @return Link or {@code null} if there is no such link.
+     */
+    @Nullable
+    private static String getLinkPreviously(Class<? extends Page> pageClass, @Nullable String linkName,
+                                            Map<String, ?> params) {
+        boolean multiValueParams = false;
+        Map<String, List<String>> nonEmptyParams = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : params.entrySet()) {
+            List<String> values = new ArrayList<>();
+            Object value = entry.getValue();
+            if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    if (item != null) {
+                        values.add(item.toString());
+                    }
+                }
+            } else if (value != null && value.getClass().isArray()) {
+                for (int i = 0; i < Array.getLength(value); ++i) {
+                    if (Array.get(value, i) != null) {
+                        values.add(Array.get(value, i).toString());
+                    }
+                }
+            } else if (value != null && !value.toString().isEmpty()) {
+                values.add(value.toString());
+            }
+
+            if (!values.isEmpty()) {
+                nonEmptyParams.put(entry.getKey(), values);
+                multiValueParams |= values.size() > 1;
+            }
+        }
+
+        int bestMatchedCount = -1;
+        String[] bestMatchedSections = null;
+        for (Link link : getLinks(pageClass)) {
+            if (linkName != null && !linkName.isEmpty() && !linkName.equals(link.name())) {
+                continue;
+            }
+
+            for (String pattern : link.value().split(";")) {
+                String[] sections = pattern.split("/");
+                boolean matched = true;
+                int matchedCount = 0;
+                for (String section : sections) {
+                    if (section.startsWith("{")) {
+                        ++matchedCount;
+                        List<String> values = nonEmptyParams.get(getParameterName(section));
+                        if (values == null || !isSuitableSection(section, values.get(0))) {
+                            matched = false;
+                            break;
+                        }
+                    }
+                }
+                if (matched && matchedCount > bestMatchedCount) {
+                    bestMatchedCount = matchedCount;
+                    bestMatchedSections = sections;
+                }
+            }
+        }
+
+        if (bestMatchedSections == null) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder(CONTEXT_PATH);
+        Set<String> usedKeys = new HashSet<>();
+        for (String section : bestMatchedSections) {
+            if (section.startsWith("{")) {
+                usedKeys.add(getParameterName(section));
+                result.append('/').append(nonEmptyParams.get(getParameterName(section)).get(0));
+            } else {
+                result.append('/').append(section);
+            }
+        }
+
+        if (nonEmptyParams.size() > usedKeys.size() || multiValueParams) {
+            boolean first = true;
+            for (Map.Entry<String, List<String>> entry : nonEmptyParams.entrySet()) {
+                List<String> values = entry.getValue();
+                for (int i = usedKeys.contains(entry.getKey()) ? 1 : 0; i < values.size(); ++i) {
+                    result.append(first ? '?' : '&').append(entry.getKey()).append('=')
+                            .append(URLEncoder.encode(values.get(i), StandardCharsets.UTF_8));
+                    first = false;
+                }
+            }
+        }
+
+        return result.toString();
+    }
+
+    private static List<Link> getLinks(Class<? extends Page> pageClass) {
+        List<Link> pageLinks = new ArrayList<>();
+        if (pageClass.getAnnotation(Link.class) != null) {
+            pageLinks.add(pageClass.getAnnotation(Link.class));
+        }
+        if (pageClass.getAnnotation(LinkSet.class) != null) {
+            pageLinks.addAll(Arrays.asList(pageClass.getAnnotation(LinkSet.class).value()));
+        }
+        return pageLinks;
+    }
+
+    public void testOverlappingLinks() {
+        assertEqualsLinkMatchResultWithName(Links.match("/routing/5"), RoutingPage.class, "routing/{id(long,positive)}", "RoutingPageByIdOrName", "id", "5");
+        assertEqualsLinkMatchResultWithName(Links.match("/routing/-5"), RoutingPage.class, "routing/{name:!new,!edit}", "RoutingPageByIdOrName", "name", "-5");
+        assertEqualsLinkMatchResultWithName(Links.match("/routing/new"), RoutingPage.class, "routing/new", "RoutingPageOther");
+        assertEqualsLinkMatchResultWithName(Links.match("/routing/edit"), RoutingPage.class, "routing/{any}", "RoutingPageOther", "any", "edit");
+        assertEqualsLinkMatchResult(Links.match("/routing/a/5"), RoutingPage.class, "routing/{section:a,b}/{id(long)}", "section", "a", "id", "5");
+        assertEqualsLinkMatchResult(Links.match("/routing/a/x"), RoutingPage.class, "routing/a/{tail}", "tail", "x");
+        assertEqualsLinkMatchResult(Links.match("/routing/a/list"), RoutingPage.class, "routing/a/{tail}", "tail", "list");
+        assertEqualsLinkMatchResult(Links.match("/routing/x/list"), RoutingPage.class, "routing/{item(!numeric)}/list", "item", "x");
+        assertEqualsLinkMatchResult(Links.match("/routing/5/list"), null, null);
+        assertEqualsLinkMatchResult(Links.match("/routing/5/delete"), RoutingPage.class, "routing/{item}/{action:edit,delete}", "item", "5", "action", "delete");
+
+        assertSameAsLinearMatching(Collections.<Class<? extends Page>>singletonList(RoutingPage.class));
+    }
+
+    public void testReAddedLinks() {
+        assertThrows(new Invokable() {
+            @Override
+            public void invoke() {
+                Links.add(RoutingPage.class);
+            }
+        }, ConfigurationException.class);
+        assertSameAsLinearMatching(Collections.<Class<? extends Page>>singletonList(RoutingPage.class));
+
+        if (!Links.getPageClasses().contains(RoutingExtraPage.class)) {
+            assertEqualsLinkMatchResult(Links.match("/routing/extra/5"), null, null);
+            Links.add(RoutingExtraPage.class);
+        }
+        assertEqualsLinkMatchResult(Links.match("/routing/extra/5"), RoutingExtraPage.class, "routing/extra/{id(long)}", "id", "5");
+        assertSameAsLinearMatching(Arrays.<Class<? extends Page>>asList(RoutingPage.class, RoutingExtraPage.class));
+
+        assertThrows(new Invokable() {
+            @Override
+            public void invoke() {
+                Links.add(RoutingExtraPage.class);
+            }
+        }, ConfigurationException.class);
+        assertSameAsLinearMatching(Arrays.<Class<? extends Page>>asList(RoutingPage.class, RoutingExtraPage.class));
+    }
+
+    /**
+     * Checks all the links "/routing", "/routing/t1", "/routing/t1/t2" and "/routing/t1/t2/t3" for tokens
+     * from {@link #ROUTING_TOKENS}: the match should be the first matched pattern in order of declaration.
+     */
+    private static void assertSameAsLinearMatching(List<Class<? extends Page>> pageClasses) {
+        List<String> links = new ArrayList<>();
+        links.add("/routing");
+        for (String a : ROUTING_TOKENS) {
+            links.add("/routing/" + a);
+            for (String b : ROUTING_TOKENS) {
+                links.add("/routing/" + a + '/' + b);
+                for (String c : ROUTING_TOKENS) {
+                    links.add("/routing/" + a + '/' + b + '/' + c);
+                }
+            }
+        }
+
+        for (String link : links) {
+            LinkMatchResult expected = matchLinearly(pageClasses, link);
+            LinkMatchResult actual = Links.match(link);
+
+            if (expected == null) {
+                assertNull(link, actual);
+            } else {
+                assertNotNull(link, actual);
+                assertEquals(link, expected.getPageClass(), actual.getPageClass());
+                assertEquals(link, expected.getPattern(), actual.getPattern());
+                assertEquals(link, expected.getAttributes(), actual.getAttributes());
+            }
+        }
+    }
+
+    /**
+     * Reference implementation: scans the patterns of the pages in order of declaration.
+     */
+    @Nullable
+    private static LinkMatchResult matchLinearly(List<Class<? extends Page>> pageClasses, String link) {
+        String[] tokens = link.substring(1).split("/");
+
+        for (Class<? extends Page> pageClass : pageClasses) {
+            for (Link pageLink : getLinks(pageClass)) {
+                for (String pattern : pageLink.value().split(";")) {
+                    Map<String, String> attributes = matchLinearly(pattern, tokens);
+                    if (attributes != null) {
+                        return new LinkMatchResult(pageClass, pattern, attributes, pageLink);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static Map<String, String> matchLinearly(String pattern, String[] tokens) {
+        String[] sections = pattern.split("/");
+        if (sections.length != tokens.length) {
+            return null;
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < sections.length; ++i) {
+            String section = sections[i];
+            String token = tokens[i];
+
+            if (!section.startsWith("{")) {
+                if (!section.equals(token)) {
+                    return null;
+                }
+                continue;
+            }
+
+            if (!isSuitableSection(section, token)) {
+                return null;
+            }
+            attributes.put(getParameterName(section), token);
+        }
+
+        return attributes;
+    }
+
+    private static String getParameterName(String section) {
+        String name = section.substring(1, section.length() - 1).split(":")[0];
+        return name.endsWith(")") ? name.substring(0, name.indexOf('(')) : name;
+    }
+
+    private static boolean isSuitableSection(String section, String token) {
+        String[] parts = section.substring(1, section.length() - 1).split(":");
+        String name = parts[0];
+        if (name.endsWith(")")) {
+            for (String restriction : name.substring(name.indexOf('(') + 1, name.length() - 1).split(",")) {
+                boolean negated = restriction.startsWith("!");
+                if (isSuitable(negated ? restriction.substring(1) : restriction, token) == negated) {
+                    return false;
+                }
+            }
+        }
+
+        if (parts.length > 1) {
+            Set<String> allowed = new HashSet<>();
+            Set<String> forbidden = new HashSet<>();
+            for (String value : parts[1].split(",")) {
+                if (value.startsWith("!")) {
+                    forbidden.add(value.substring(1));
+                } else {
+                    allowed.add(value);
+                }
+            }
+            return (allowed.isEmpty() || allowed.contains(token)) && !forbidden.contains(token);
+        }
+
+        return true;
+    }
+
+    private static boolean isSuitable(String restriction, String token) {
+        switch (restriction) {
+            case "long":
+                try {
+                    Long.parseLong(token);
+                    return true;
+                } catch (NumberFormatException ignored) {
+                    return false;
+                }
+            case "positive":
+                try {
+                    return Double.parseDouble(token) > 0.0D;
+                } catch (NumberFormatException ignored) {
+                    return false;
+                }
+            case "numeric":
+                return StringUtils.isNumeric(token);
+            default:
+                throw new IllegalArgumentException("Unexpected restriction '" + restriction + "'.");
+        }
+    }
+
     private static void assertEqualsLinkMatchResult(
             LinkMatchResult linkMatchResult, @Nullable Class<? extends Page> clazz, @Nullable String pattern,
             String... attributes) {
@@ -0,0 +1,14 @@
+package org.nocturne.link.pages;
+
+import org.nocturne.link.Link;
+import org.nocturne.main.Page;
+
+/**
+ * Page added after the others to check that the routing is rebuilt.
+ */
+@Link("routing/extra/{id(long)};routing/extra/{id}/{name:!list}")
+public class RoutingExtraPage extends Page {
+    @Override
+    public void action() {
+    }
+}
@@ -0,0 +1,20 @@
+package org.nocturne.link.pages;
+
+import org.nocturne.link.Link;
+import org.nocturne.link.LinkSet;
+import org.nocturne.main.Page;
+
+/**
+ * Page with overlapping links, the first matched (in order of declaration) should win.
+ */
+@LinkSet({
+        @Link(value = "routing/{id(long,positive)};routing/{name:!new,!edit}", name = "RoutingPageByIdOrName"),
+        @Link(value = "routing/new;routing/{any}", name = "RoutingPageOther"),
+        @Link(value = "routing/{section:a,b}/{id(long)};routing/a/{tail};routing/{item(!numeric)}/list;"
+                + "routing/{item}/{action:edit,delete}")
+})
+public class RoutingPage extends Page {
+    @Override
+    public void action() {
+    }
+}
@@ -0,0 +1,120 @@
+package org.nocturne.main;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that frames cancelled by {@link Component#parseAsync(String, Frame, long, TimeUnit)} timeout
+ * don't outlive the page processing.
+ */
+public class AsyncFrameTest extends TestCase {
+    private static final long FRAME_DURATION_MILLIS = 500;
+
+    static {
+        ApplicationContext.getInstance().setDebug(false);
+    }
+
+    public void testTimedOutFrameStopsBeforePageIsReleased() throws InterruptedException {
+        TestPage page = new TestPage();
+        SlowFrame frame = new SlowFrame(page);
+        ApplicationContext.getInstance().setCurrentPage(page);
+
+        page.parseAsync("slow", frame, 10, TimeUnit.MILLISECONDS);
+        assertTrue(frame.started.await(10, TimeUnit.SECONDS));
+
+        long startTime = System.nanoTime();
+        page.awaitAsyncFrames();
+        assertEquals("", page.getFrameHtml("slow"));
+        assertTrue("The page should not wait for the timed out frame.",
+                System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(FRAME_DURATION_MILLIS / 2));
+        assertFalse(frame.stopped);
+
+        page.finalizeAfterAction();
+        assertTrue("The frame should have stopped before the page is released.", frame.stopped);
+        assertTrue(page.isReusable());
+        assertNull(page.internalGetGlobalTemplateMap().get("slow"));
+    }
+
+    public void testCancelledFrameStopsBeforePageIsReleased() throws InterruptedException {
+        TestPage page = new TestPage();
+        SlowFrame frame = new SlowFrame(page);
+        ApplicationContext.getInstance().setCurrentPage(page);
+
+        page.parseAsync("slow", frame, 0, TimeUnit.MILLISECONDS);
+        assertTrue(frame.started.await(10, TimeUnit.SECONDS));
+        assertTrue(page.cancelAsync("slow"));
+        assertFalse(frame.stopped);
+
+        page.finalizeAfterAction();
+        assertTrue("The frame should have stopped before the page is released.", frame.stopped);
+        assertTrue(page.isReusable());
+    }
+
+    public void testShutdownStopsThreads() throws InterruptedException {
+        for (int i = 0; i < 2; ++i) {
+            TestPage page = new TestPage();
+            SlowFrame frame = new SlowFrame(page);
+            ApplicationContext.getInstance().setCurrentPage(page);
+
+            page.parseAsync("slow", frame, 10, TimeUnit.SECONDS);
+            assertTrue(frame.started.await(10, TimeUnit.SECONDS));
+            page.awaitAsyncFrames();
+            assertTrue(frame.stopped);
+            page.finalizeAfterAction();
+
+            AsyncFrameExecutor.shutdown();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("nocturne-async-frame-")) {
+                    thread.join(TimeUnit.SECONDS.toMillis(10));
+                    assertFalse(thread.isAlive());
+                }
+            }
+        }
+    }
+
+    private static final class TestPage extends Page {
+        @Override
+        public void action() {
+            // No operations.
+        }
+    }
+
+    /**
+     * Frame which ignores interruption, like a long template or DAO call.
+     */
+    private static final class SlowFrame extends Frame {
+        private final Page page;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile boolean stopped;
+
+        private SlowFrame(Page page) {
+            this.page = page;
+        }
+
+        @Override
+        public void action() {
+            // No operations.
+        }
+
+        @Override
+        public String parseTemplate() {
+            started.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FRAME_DURATION_MILLIS);
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                } catch (InterruptedException ignored) {
+                    // Keeps running as if it were a blocking call.
+                }
+            }
+
+            page.internalGetGlobalTemplateMap().put("slow", "parsed");
+            stopped = true;
+            return "parsed";
+        }
+    }
+}
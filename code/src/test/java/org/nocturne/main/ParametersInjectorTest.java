@@ -0,0 +1,447 @@
+package org.nocturne.main;
+
+import junit.framework.TestCase;
+import org.nocturne.annotation.Parameter;
+import org.nocturne.annotation.Parameter.StripMode;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link ParametersInjector} with the injector which parsed values by regular expressions before.
+ */
+public class ParametersInjectorTest extends TestCase {
+    private static final Pattern INTEGRAL_VALUE_PATTERN = Pattern.compile("0|(-?[1-9][0-9]*)");
+    private static final Pattern REAL_VALUE_PATTERN = Pattern.compile("(0|(-?[1-9][0-9]*))((\\.[0-9]+)?)");
+
+    private static final String[] VALUES = {
+            "", "0", "-0", "00", "01", "-01", "1", "-1", "7", "42", "-42", "+1", " 1", "1 ", "1_000", "1-2",
+            "127", "128", "-128", "-129", "255", "32767", "32768", "-32768", "-32769", "65535",
+            "2147483647", "2147483648", "-2147483648", "-2147483649", "4294967296",
+            "9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+            "18446744073709551616", "99999999999999999999999",
+            "0.0", "0.5", "-0.5", "1.5", "-1.50", ".5", "1.", "1..5", "1.5.5", "3.4028235E38", "1e5", "1E-5",
+            "340282350000000000000000000000000000000.0", "3402823500000000000000000000000000000000",
+            "1.00000000000000000000001", "NaN", "Infinity", "-Infinity", "0x10", "١٢",
+            "true", "TRUE", "on", "On", "yes", "y", "Y", "checked", "false", "no", "off", "x",
+            "RED", "red", "Green", "blue ", "a/b", "<b>", "a&b", "\"q\"", "'", "tab\t", "\u0000", "é",
+            "snake_case", "kebab-case", "dot.ted"
+    };
+
+    private static final String[] PARAMETER_NAMES = {
+            "booleanValue", "boxedBoolean", "charValue", "boxedChar", "byteValue", "boxedByte",
+            "shortValue", "boxedShort", "intValue", "boxedInt", "longValue", "boxedLong",
+            "floatValue", "boxedFloat", "doubleValue", "boxedDouble", "none", "safe", "id", "color",
+            "ints", "longs", "doubles", "floats", "booleans", "chars", "strings", "colors", "boxedInts",
+            "renamed"
+    };
+
+    public void testBoundaryValues() {
+        for (String value : VALUES) {
+            Map<String, String[]> parameters = new LinkedHashMap<>();
+            for (String name : PARAMETER_NAMES) {
+                parameters.put(name, new String[]{value, value});
+            }
+            assertSameAsPreviousInjection(parameters, Collections.emptyMap());
+        }
+    }
+
+    public void testRandomRequests() {
+        Random random = new Random(1);
+
+        for (int iteration = 0; iteration < 20000; ++iteration) {
+            Map<String, String[]> parameters = new LinkedHashMap<>();
+            Map<String, List<String>> overrideParameters = new LinkedHashMap<>();
+
+            for (String name : PARAMETER_NAMES) {
+                int kind = random.nextInt(8);
+                if (kind == 0) {
+                    continue;
+                }
+
+                List<String> values = new ArrayList<>();
+                int valueCount = random.nextInt(4);
+                for (int i = 0; i < valueCount; ++i) {
+                    values.add(getRandomValue(random));
+                }
+
+                if (kind == 1) {
+                    overrideParameters.put(name, values);
+                } else {
+                    parameters.put(name, values.toArray(new String[0]));
+                }
+            }
+
+            assertSameAsPreviousInjection(parameters, overrideParameters);
+        }
+    }
+
+    public void testArgumentBindings() throws NoSuchMethodException {
+        Method method = Arguments.class.getDeclaredMethod("action",
+                int.class, Double.class, String[].class, Color.class, long[].class, char.class);
+        ParametersInjector.ArgumentBinding[] bindings = ParametersInjector.newArgumentBindings(method);
+        Parameter[] parameters = new Parameter[bindings.length];
+        for (int i = 0; i < parameters.length; ++i) {
+            parameters[i] = (Parameter) method.getParameterAnnotations()[i][0];
+        }
+
+        Random random = new Random(2);
+        for (int iteration = 0; iteration < 20000; ++iteration) {
+            Map<String, List<String>> requestParameters = new HashMap<>();
+            for (Parameter parameter : parameters) {
+                if (random.nextInt(6) > 0) {
+                    List<String> values = new ArrayList<>();
+                    int valueCount = random.nextInt(4);
+                    for (int i = 0; i < valueCount; ++i) {
+                        values.add(getRandomValue(random));
+                    }
+                    requestParameters.put(parameter.name(), values);
+                }
+            }
+
+            for (int i = 0; i < bindings.length; ++i) {
+                Object expected = getPreviousValue(parameters[i], method.getParameterTypes()[i],
+                        requestParameters.get(parameters[i].name()));
+                Object actual = bindings[i].getValue(null, null, requestParameters);
+                assertTrue(requestParameters + " " + parameters[i].name() + ": expected "
+                                + toString(expected) + " but was " + toString(actual),
+                        Objects.deepEquals(expected, actual));
+            }
+        }
+    }
+
+    private static void assertSameAsPreviousInjection(Map<String, String[]> parameters,
+                                                      Map<String, List<String>> overrideParameters) {
+        ApplicationContext.getInstance().unsetRequestAndResponse();
+        for (Map.Entry<String, List<String>> entry : overrideParameters.entrySet()) {
+            ApplicationContext.getInstance().addRequestOverrideParameter(entry.getKey(), entry.getValue());
+        }
+
+        Fields fields = new Fields();
+        new ParametersInjector(fields).inject(newRequest(parameters));
+
+        List<Field> declaredFields = new ArrayList<>(Arrays.asList(Fields.class.getDeclaredFields()));
+        declaredFields.addAll(Arrays.asList(BaseFields.class.getDeclaredFields()));
+
+        for (Field field : declaredFields) {
+            Parameter parameter = field.getAnnotation(Parameter.class);
+            if (parameter == null) {
+                continue;
+            }
+
+            String key = parameter.name().isEmpty() ? field.getName() : parameter.name();
+            List<String> values;
+            if (overrideParameters.containsKey(key)) {
+                values = overrideParameters.get(key);
+            } else {
+                values = parameters.containsKey(key) ? Arrays.asList(parameters.get(key)) : null;
+            }
+
+            Object expected = getPreviousValue(parameter, field.getType(), values);
+            Object actual;
+            try {
+                field.setAccessible(true);
+                actual = field.get(fields);
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+
+            assertTrue(key + '=' + values + ": expected " + toString(expected) + " but was " + toString(actual),
+                    Objects.deepEquals(expected, actual));
+        }
+    }
+
+    private static String toString(Object value) {
+        return value != null && value.getClass().isArray()
+                ? Arrays.deepToString(new Object[]{value}) : String.valueOf(value);
+    }
+
+    private static String getRandomValue(Random random) {
+        if (random.nextBoolean()) {
+            return VALUES[random.nextInt(VALUES.length)];
+        }
+
+        // Random number-like string.
+        String alphabet = "0123456789-.e ";
+        StringBuilder value = new StringBuilder();
+        int length = random.nextInt(22);
+        for (int i = 0; i < length; ++i) {
+            value.append(random.nextInt(4) == 0
+                    ? alphabet.charAt(random.nextInt(alphabet.length())) : (char) ('0' + random.nextInt(10)));
+        }
+        if (random.nextInt(4) == 0) {
+            value.insert(0, '-');
+        }
+        return value.toString();
+    }
+
+    private static HttpServletRequest newRequest(Map<String, String[]> parameters) {
+        Map<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                ParametersInjectorTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getParameterMap":
+                            return Collections.unmodifiableMap(parameters);
+                        case "getAttributeNames":
+                            return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+                        case "getAttribute":
+                            return attributes.get(args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "getMethod":
+                            return "GET";
+                        case "getContentType":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+    }
+
+    /**
+     * Reference implementation: the value as it was assigned before the bindings.
+     */
+    private static Object getPreviousValue(Parameter parameter, Class<?> type, List<String> values) {
+        if (type.isArray()) {
+            Class<?> componentType = type.getComponentType();
+            int valueCount = values == null || values.isEmpty() ? 0 : values.size();
+            Object result = Array.newInstance(componentType, valueCount);
+
+            for (int valueIndex = 0; valueIndex < valueCount; ++valueIndex) {
+                String value = values.get(valueIndex);
+                if (value == null) {
+                    Array.set(result, valueIndex, getPreviousNullAssignValue(componentType));
+                } else {
+                    Array.set(result, valueIndex,
+                            getPreviousAssignValue(parameter.stripMode().strip(value), componentType));
+                }
+            }
+
+            return result;
+        }
+
+        String value = values == null || values.isEmpty() ? null : values.get(0);
+        return value == null
+                ? getPreviousNullAssignValue(type)
+                : getPreviousAssignValue(parameter.stripMode().strip(value), type);
+    }
+
+    private static Object getPreviousNullAssignValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == char.class) {
+            return (char) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0.0F;
+        }
+        if (type == double.class) {
+            return 0.0D;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("OverlyComplexMethod")
+    private static Object getPreviousAssignValue(String value, Class<?> type) {
+        if (type == String.class) {
+            return value;
+        }
+
+        if (type == Boolean.class || type == boolean.class) {
+            return "true".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value)
+                    || "yes".equalsIgnoreCase(value) || "1".equalsIgnoreCase(value)
+                    || "y".equalsIgnoreCase(value) || "checked".equalsIgnoreCase(value)
+                    || Boolean.parseBoolean(value);
+        }
+
+        if (type == Character.class || type == char.class) {
+            return value.isEmpty() ? (char) 0 : value.charAt(0);
+        }
+
+        boolean integral = INTEGRAL_VALUE_PATTERN.matcher(value).matches();
+        boolean real = REAL_VALUE_PATTERN.matcher(value).matches();
+        try {
+            if (type == Byte.class || type == byte.class) {
+                return integral ? Byte.valueOf(value) : (byte) 0;
+            }
+            if (type == Short.class || type == short.class) {
+                return integral ? Short.valueOf(value) : (short) 0;
+            }
+            if (type == Integer.class || type == int.class) {
+                return integral ? Integer.valueOf(value) : 0;
+            }
+            if (type == Long.class || type == long.class) {
+                return integral ? Long.valueOf(value) : 0L;
+            }
+        } catch (NumberFormatException ignored) {
+            return getPreviousNullAssignValue(getPrimitiveType(type));
+        }
+
+        if (type == Float.class || type == float.class) {
+            return real ? Float.valueOf(value) : 0.0F;
+        }
+        if (type == Double.class || type == double.class) {
+            return real ? Double.valueOf(value) : 0.0D;
+        }
+
+        if (type.isEnum()) {
+            for (Object constant : type.getEnumConstants()) {
+                if (constant.toString().equalsIgnoreCase(value)) {
+                    return constant;
+                }
+            }
+            return null;
+        }
+
+        throw new IllegalArgumentException("Unexpected type " + type.getName() + '.');
+    }
+
+    private static Class<?> getPrimitiveType(Class<?> type) {
+        if (type == Byte.class) {
+            return byte.class;
+        }
+        if (type == Short.class) {
+            return short.class;
+        }
+        if (type == Integer.class) {
+            return int.class;
+        }
+        if (type == Long.class) {
+            return long.class;
+        }
+        return type;
+    }
+
+    private enum Color {
+        RED, GREEN, BLUE
+    }
+
+    @SuppressWarnings("unused")
+    private static class BaseFields {
+        @Parameter(stripMode = StripMode.NONE)
+        private int intValue;
+
+        @Parameter(name = "renamed", stripMode = StripMode.SAFE)
+        private Long inheritedLong;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Fields extends BaseFields {
+        @Parameter(stripMode = StripMode.NONE)
+        private boolean booleanValue;
+
+        @Parameter
+        private Boolean boxedBoolean;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private char charValue;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private Character boxedChar;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private byte byteValue;
+
+        @Parameter
+        private Byte boxedByte;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private short shortValue;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private Short boxedShort;
+
+        @Parameter(name = "intValue")
+        private Integer boxedInt;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private long longValue;
+
+        @Parameter
+        private Long boxedLong;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private float floatValue;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private Float boxedFloat;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private double doubleValue;
+
+        @Parameter
+        private Double boxedDouble;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private String none;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private String safe;
+
+        @Parameter
+        private String id;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private Color color;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private int[] ints;
+
+        @Parameter
+        private long[] longs;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private double[] doubles;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private float[] floats;
+
+        @Parameter
+        private boolean[] booleans;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private char[] chars;
+
+        @Parameter(stripMode = StripMode.NONE)
+        private String[] strings;
+
+        @Parameter
+        private Color[] colors;
+
+        @Parameter(stripMode = StripMode.SAFE)
+        private Integer[] boxedInts;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Arguments {
+        void action(@Parameter(name = "intValue", stripMode = StripMode.NONE) int intValue,
+                    @Parameter(name = "boxedDouble") Double boxedDouble,
+                    @Parameter(name = "strings", stripMode = StripMode.SAFE) String[] strings,
+                    @Parameter(name = "color") Color color,
+                    @Parameter(name = "longs", stripMode = StripMode.NONE) long[] longs,
+                    @Parameter(name = "charValue", stripMode = StripMode.NONE) char charValue) {
+            // No operations.
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.nocturne.main;
+
+import com.google.common.hash.Hashing;
+import junit.framework.TestCase;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StaticResourceFilterTest extends TestCase {
+    public void testServablePaths() {
+        assertEquals("/css/style.css", StaticResourceFilter.getServablePath("/css/style.css"));
+        assertEquals("/css/style.css", StaticResourceFilter.getServablePath("//css///style.css"));
+        assertEquals("/favicon.ico", StaticResourceFilter.getServablePath("/favicon.ico"));
+        assertEquals("/js/.hidden.js", StaticResourceFilter.getServablePath("/js/.hidden.js"));
+        assertEquals("/js/WEB-INF.js", StaticResourceFilter.getServablePath("/js/WEB-INF.js"));
+    }
+
+    public void testDirectories() {
+        assertNull(StaticResourceFilter.getServablePath(""));
+        assertNull(StaticResourceFilter.getServablePath("/"));
+        assertNull(StaticResourceFilter.getServablePath("//"));
+        assertNull(StaticResourceFilter.getServablePath("/css/"));
+        assertNull(StaticResourceFilter.getServablePath("css/style.css"));
+    }
+
+    public void testWebInfAndMetaInf() {
+        assertNull(StaticResourceFilter.getServablePath("/WEB-INF/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("//WEB-INF/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/./WEB-INF/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/web-inf/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/Meta-Inf/MANIFEST.MF"));
+        assertNull(StaticResourceFilter.getServablePath("/module/WEB-INF/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/WEB-INF./web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/WEB-INF;x/web.xml"));
+    }
+
+    public void testDotAndEscapedSegments() {
+        assertNull(StaticResourceFilter.getServablePath("/css/./style.css"));
+        assertNull(StaticResourceFilter.getServablePath("/css/../WEB-INF/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/%2e/WEB-INF/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/%2E%2E/web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/css\\..\\WEB-INF\\web.xml"));
+        assertNull(StaticResourceFilter.getServablePath("/css/style.css\u0000.png"));
+    }
+
+    public void testSameSizeRewrite() throws Exception {
+        File directory = Files.createTempDirectory("static").toFile();
+        File file = new File(directory, "style.css");
+        try {
+            Files.write(file.toPath(), "aaaa".getBytes(StandardCharsets.UTF_8));
+            long lastModified = file.lastModified();
+
+            // Nothing is kept in memory, the content is read again for each request.
+            StaticResourceFilter filter = newFilter(directory, new AtomicInteger(), "0");
+            Map<String, String> headers = new HashMap<>();
+            assertEquals("aaaa", get(filter, "/style.css", headers, new AtomicInteger()));
+            assertEquals(getEtag("aaaa"), headers.get("ETag"));
+
+            // The change is not visible by the file attributes.
+            Files.write(file.toPath(), "bbbb".getBytes(StandardCharsets.UTF_8));
+            assertTrue(file.setLastModified(lastModified));
+
+            headers.clear();
+            assertEquals("bbbb", get(filter, "/style.css", headers, new AtomicInteger()));
+            assertEquals(getEtag("bbbb"), headers.get("ETag"));
+            assertEquals("4", headers.get("Content-Length"));
+        } finally {
+            assertTrue(file.delete());
+            assertTrue(directory.delete());
+        }
+    }
+
+    public void testMissingPathIsRemembered() throws Exception {
+        File directory = Files.createTempDirectory("static").toFile();
+        try {
+            AtomicInteger realPathCount = new AtomicInteger();
+            StaticResourceFilter filter = newFilter(directory, realPathCount, null);
+
+            AtomicInteger passedCount = new AtomicInteger();
+            for (int i = 0; i < 10; ++i) {
+                get(filter, "/page", new HashMap<>(), passedCount);
+            }
+            assertEquals(10, passedCount.get());
+            assertEquals(1, realPathCount.get());
+        } finally {
+            assertTrue(directory.delete());
+        }
+    }
+
+    private static StaticResourceFilter newFilter(File directory, AtomicInteger realPathCount, String maxCacheSize)
+            throws ServletException {
+        ServletContext servletContext = (ServletContext) Proxy.newProxyInstance(
+                StaticResourceFilterTest.class.getClassLoader(), new Class<?>[]{ServletContext.class},
+                (proxy, method, args) -> {
+                    if ("getRealPath".equals(method.getName())) {
+                        realPathCount.incrementAndGet();
+                        return new File(directory, (String) args[0]).getPath();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        FilterConfig filterConfig = (FilterConfig) Proxy.newProxyInstance(
+                StaticResourceFilterTest.class.getClassLoader(), new Class<?>[]{FilterConfig.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getServletContext":
+                            return servletContext;
+                        case "getInitParameter":
+                            return "max-cache-size".equals(args[0]) ? maxCacheSize : null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        StaticResourceFilter filter = new StaticResourceFilter();
+        filter.init(filterConfig);
+        return filter;
+    }
+
+    /**
+     * @return Sent content, the headers are put into {@code headers}. Requests which are not served
+     * are counted in {@code passedCount}.
+     */
+    private static String get(StaticResourceFilter filter, String path, Map<String, String> headers,
+                              AtomicInteger passedCount) throws IOException {
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+                StaticResourceFilterTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return "GET";
+                        case "getServletPath":
+                            return path;
+                        case "getPathInfo":
+                        case "getHeader":
+                            return null;
+                        case "getDateHeader":
+                            return -1L;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        };
+
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                StaticResourceFilterTest.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setHeader":
+                        case "addHeader":
+                            headers.put((String) args[0], (String) args[1]);
+                            return null;
+                        case "setContentLengthLong":
+                            headers.put("Content-Length", String.valueOf(args[0]));
+                            return null;
+                        case "setContentType":
+                        case "setDateHeader":
+                            return null;
+                        case "getOutputStream":
+                            return outputStream;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        if (!filter.serveResource(request, response)) {
+            passedCount.incrementAndGet();
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String getEtag(String content) {
+        return '"' + Hashing.murmur3_128().hashBytes(content.getBytes(StandardCharsets.UTF_8)).toString() + '"';
+    }
+}
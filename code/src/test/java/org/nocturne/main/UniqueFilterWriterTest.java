@@ -0,0 +1,88 @@
+package org.nocturne.main;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_CLOSE_PREFIX;
+import static org.nocturne.template.impl.ComponentTemplatePreprocessor.UNIQUE_MAGIC_OPEN_PREFIX;
+
+public class UniqueFilterWriterTest extends TestCase {
+    public void testCloseReleasesBuffers() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utf8StreamWriter utf8Writer = new Utf8StreamWriter(bytes);
+        Writer writer = new UniqueFilterWriter(new FrameDirective(), utf8Writer);
+
+        writer.write("<html></html>");
+        writer.close();
+        assertEquals("<html></html>", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+        try {
+            utf8Writer.write("x");
+            fail("Utf8StreamWriter is expected to be closed.");
+        } catch (IOException ignored) {
+            // No operations.
+        }
+    }
+
+    public void testTrailingSurrogate() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new UniqueFilterWriter(new FrameDirective(), new Utf8StreamWriter(bytes));
+
+        writer.write("a\uD83D");
+        writer.write("\uDE00b\uD83D");
+        writer.close();
+
+        // The pair split between writes is encoded, the unpaired surrogate is replaced.
+        assertEquals("a😀b?", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    public void testUniqueBlocks() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new UniqueFilterWriter(new FrameDirective(), new Utf8StreamWriter(bytes));
+
+        String block = UNIQUE_MAGIC_OPEN_PREFIX + "k>\n<script/>\n" + UNIQUE_MAGIC_CLOSE_PREFIX + "k>";
+        String text = "<p>" + block + block + "</p>";
+        for (int i = 0; i < text.length(); i += 5) {
+            writer.write(text, i, Math.min(5, text.length() - i));
+        }
+        writer.close();
+
+        assertEquals("<p><script/>\n</p>", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    public void testHeadCloseSplitBetweenWrites() throws IOException {
+        for (int split = 1; split <= "</head>".length(); ++split) {
+            CountingOutputStream out = new CountingOutputStream();
+            Writer writer = new UniqueFilterWriter(new FrameDirective(), new Utf8StreamWriter(out));
+
+            String head = "<html><head><</</h</head>";
+            writer.write(head.substring(0, head.length() - split));
+            assertEquals(0, out.flushCount);
+            writer.write(head.substring(head.length() - split));
+            assertEquals(1, out.flushCount);
+
+            writer.write("<body></head></body>");
+            assertEquals(1, out.flushCount);
+            writer.close();
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private int flushCount;
+
+        @Override
+        public void write(int b) {
+            // No operations.
+        }
+
+        @Override
+        public void flush() {
+            ++flushCount;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.nocturne.util;
+
+import junit.framework.TestCase;
+import org.nocturne.collection.SingleEntryList;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compares {@link RequestParameterMap} with the plain map which was built by
+ * {@link RequestUtil#getRequestParams(HttpServletRequest)} before.
+ */
+public class RequestParameterMapTest extends TestCase {
+    private static final String[] PARAMETER_NAMES = {"a", "a[]", "a[][]", "b", "b[]", "c", "d[]"};
+    private static final String[] ATTRIBUTE_NAMES = {"a", "a[]", "b", "c", "e"};
+
+    public void testArrayParameterOrder() {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        parameters.put("a", new String[]{"1"});
+        parameters.put("a[]", new String[]{"2", "3"});
+        assertEquals(Arrays.asList("2", "3"), newMap(parameters, Collections.emptyMap()).get("a"));
+        assertEquals(Arrays.asList("2", "3"), newMap(parameters, Collections.emptyMap()).get("a[]"));
+
+        parameters = new LinkedHashMap<>();
+        parameters.put("a[]", new String[]{"2", "3"});
+        parameters.put("a", new String[]{"1"});
+        assertEquals(Collections.singletonList("1"), newMap(parameters, Collections.emptyMap()).get("a"));
+        assertEquals(Arrays.asList("2", "3"), newMap(parameters, Collections.emptyMap()).get("a[]"));
+
+        RequestParameterMap map = newMap(Collections.singletonMap("b[]", new String[]{"1", "2"}), Collections.emptyMap());
+        assertSame(map.get("b"), map.get("b[]"));
+    }
+
+    public void testNestedArrayParameter() {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        parameters.put("a[][]", new String[]{"1", "2"});
+        RequestParameterMap map = newMap(parameters, Collections.emptyMap());
+        assertEquals(Arrays.asList("1", "2"), map.get("a[]"));
+        assertEquals(Arrays.asList("1", "2"), map.get("a[][]"));
+        assertNull(map.get("a"));
+
+        parameters.put("a[]", new String[]{"3"});
+        assertEquals(Collections.singletonList("3"), newMap(parameters, Collections.emptyMap()).get("a[]"));
+        assertEquals(Collections.singletonList("3"), newMap(parameters, Collections.emptyMap()).get("a"));
+
+        parameters = new LinkedHashMap<>();
+        parameters.put("a[]", new String[]{"3"});
+        parameters.put("a[][]", new String[]{"1", "2"});
+        assertEquals(Arrays.asList("1", "2"), newMap(parameters, Collections.emptyMap()).get("a[]"));
+        assertEquals(Collections.singletonList("3"), newMap(parameters, Collections.emptyMap()).get("a"));
+    }
+
+    public void testAttributePriority() {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        parameters.put("a[]", new String[]{"1", "2"});
+        parameters.put("b", new String[]{"3"});
+
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        List<String> attributeList = new ArrayList<>(Arrays.asList("x", "y"));
+        attributes.put("a", attributeList);
+        attributes.put("b", "z".getBytes(StandardCharsets.UTF_8));
+        attributes.put("c", 17);
+
+        RequestParameterMap map = newMap(parameters, attributes);
+        assertSame(attributeList, map.get("a"));
+        assertEquals(Arrays.asList("1", "2"), map.get("a[]"));
+        assertEquals(Collections.singletonList("z"), map.get("b"));
+        assertEquals(Collections.singletonList("17"), map.get("c"));
+    }
+
+    public void testGetBeforeAndAfterEntrySet() {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        parameters.put("a[]", new String[]{"1", "2"});
+        parameters.put("b", new String[]{"3"});
+        Map<String, Object> attributes = Collections.singletonMap("c", "4");
+
+        RequestParameterMap map = newMap(parameters, attributes);
+        List<String> a = map.get("a");
+        List<String> c = map.get("c");
+        assertNull(map.get("d"));
+
+        Map<String, List<String>> expected = getPreviousMap(parameters, attributes);
+        assertEqualMaps("", expected, map);
+        assertEquals(expected.size(), map.size());
+
+        assertSame(a, map.get("a"));
+        assertSame(a, map.get("a[]"));
+        assertSame(c, map.get("c"));
+        assertNull(map.get("d"));
+
+        map.put("d", Collections.singletonList("5"));
+        assertEquals(Collections.singletonList("5"), map.get("d"));
+        map.remove("a");
+        assertNull(map.get("a"));
+        assertSame(a, map.get("a[]"));
+    }
+
+    public void testRandomRequests() {
+        Random random = new Random(1);
+
+        for (int iteration = 0; iteration < 20000; ++iteration) {
+            Map<String, String[]> parameters = new LinkedHashMap<>();
+            List<String> parameterNames = new ArrayList<>(Arrays.asList(PARAMETER_NAMES));
+            Collections.shuffle(parameterNames, random);
+            for (String name : parameterNames.subList(0, random.nextInt(parameterNames.size() + 1))) {
+                String[] values = new String[random.nextInt(4)];
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = Integer.toString(random.nextInt(10));
+                }
+                parameters.put(name, values);
+            }
+
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            for (String name : ATTRIBUTE_NAMES) {
+                if (random.nextInt(4) == 0) {
+                    attributes.put(name, getRandomAttribute(random));
+                }
+            }
+
+            Map<String, List<String>> expected = getPreviousMap(parameters, attributes);
+            RequestParameterMap map = newMap(parameters, attributes);
+            String message = parameters.keySet() + " " + attributes;
+
+            // Reads some keys before the map is iterated.
+            List<String> keys = new ArrayList<>();
+            keys.addAll(Arrays.asList(PARAMETER_NAMES));
+            keys.addAll(Arrays.asList(ATTRIBUTE_NAMES));
+            keys.add("a[][][]");
+            Collections.shuffle(keys, random);
+            int readCount = random.nextInt(keys.size() + 1);
+            for (String key : keys.subList(0, readCount)) {
+                assertEqualValues(message + " " + key, expected.get(key), map.get(key));
+                assertEquals(message + " " + key, expected.containsKey(key), map.containsKey(key));
+            }
+
+            for (String name : PARAMETER_NAMES) {
+                if (expected.get(name) != null && expected.get(name) == expected.get(name + "[]")) {
+                    assertSame(message + " " + name, map.get(name), map.get(name + "[]"));
+                }
+            }
+
+            if (random.nextBoolean()) {
+                assertEqualMaps(message, expected, map);
+                for (String key : keys) {
+                    assertEqualValues(message + " " + key, expected.get(key), map.get(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the maps by iteration, like the callers which iterate the parameters.
+     */
+    private static void assertEqualMaps(String message, Map<String, List<String>> expected,
+                                        Map<String, List<String>> actual) {
+        Map<String, List<String>> actualCopy = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : actual.entrySet()) {
+            actualCopy.put(entry.getKey(), entry.getValue());
+        }
+
+        assertEquals(message, expected.keySet(), actualCopy.keySet());
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            assertEqualValues(message + " " + entry.getKey(), entry.getValue(), actualCopy.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * SingleEntryList doesn't override equals(), so the lists are compared as ArrayLists.
+     */
+    private static void assertEqualValues(String message, List<String> expected, List<String> actual) {
+        assertEquals(message, expected == null ? null : new ArrayList<>(expected),
+                actual == null ? null : new ArrayList<>(actual));
+    }
+
+    private static Object getRandomAttribute(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return "s" + random.nextInt(10);
+            case 1:
+                return ("b" + random.nextInt(10)).getBytes(StandardCharsets.UTF_8);
+            case 2:
+                return new ArrayList<>(Arrays.asList("l" + random.nextInt(10), "m"));
+            case 3:
+                return new LinkedHashSet<>(Arrays.asList("x", "y" + random.nextInt(10)));
+            case 4:
+                return Arrays.asList("n", random.nextInt(10));
+            default:
+                return random.nextInt(100);
+        }
+    }
+
+    private static RequestParameterMap newMap(Map<String, String[]> parameters, Map<String, Object> attributes) {
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+                RequestParameterMapTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getParameterMap":
+                            return Collections.unmodifiableMap(parameters);
+                        case "getAttributeNames":
+                            return Collections.enumeration(attributes.keySet());
+                        case "getAttribute":
+                            return attributes.get(args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+        return new RequestParameterMap(request);
+    }
+
+    /**
+     * Reference implementation: the map as it was built before the values were converted lazily.
+     */
+    private static Map<String, List<String>> getPreviousMap(Map<String, String[]> parameters,
+                                                            Map<String, Object> attributes) {
+        Map<String, List<String>> result = new HashMap<>();
+
+        for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+            String name = entry.getKey();
+            String[] values = entry.getValue();
+
+            List<String> list = values.length <= 1 ? new SingleEntryList<>() : new ArrayList<>(values.length);
+            Collections.addAll(list, values);
+
+            result.put(name, list);
+            if (name.endsWith("[]")) {
+                result.put(name.substring(0, name.length() - 2), list);
+            }
+        }
+
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            Object value = entry.getValue();
+            List<String> list;
+
+            if (value instanceof byte[]) {
+                list = new SingleEntryList<>(new String((byte[]) value, StandardCharsets.UTF_8));
+            } else if (value instanceof Collection && isCollectionOfStrings((Collection<?>) value)) {
+                list = new ArrayList<>();
+                for (Object item : (Collection<?>) value) {
+                    list.add((String) item);
+                }
+            } else {
+                list = new SingleEntryList<>(value.toString());
+            }
+
+            result.put(entry.getKey(), list);
+        }
+
+        return result;
+    }
+
+    private static boolean isCollectionOfStrings(Collection<?> collection) {
+        for (Object item : collection) {
+            if (!(item instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}